@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures iteration over a stop_times.txt file with and without reuse of {@link CsvRow} and with
+ * both tokenizers of {@link CsvFile}.
+ *
+ * <p>Run with the GC profiler to compare the allocation rate per row ("gc.alloc.rate.norm") of both
+ * modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvFileBenchmark {
+  @Param({"100000"})
+  public int rowCount;
+
+  @Param({"false", "true"})
+  public boolean reuseRows;
+
+  @Param({"false", "true"})
+  public boolean byteTokenizer;
+
+  private byte[] content;
+
+  @Setup
+  public void createFile() {
+    StringBuilder builder =
+        new StringBuilder(
+            "trip_id,arrival_time,departure_time,stop_id,stop_sequence,shape_dist_traveled\n");
+    for (int i = 0; i < rowCount; ++i) {
+      int seconds = 6 * 3600 + i * 30;
+      String time =
+          String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+      builder
+          .append("trip")
+          .append(i / 40)
+          .append(',')
+          .append(time)
+          .append(',')
+          .append(time)
+          .append(",stop")
+          .append(i % 1000)
+          .append(',')
+          .append(i % 40)
+          .append(',')
+          .append(i % 40 * 250.5)
+          .append('\n');
+    }
+    content = builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public void iterateRows(Blackhole blackhole) {
+    CsvFile csvFile =
+        new CsvFile(new ByteArrayInputStream(content), "stop_times.txt", byteTokenizer);
+    csvFile.setRowReuseEnabled(reuseRows);
+    for (CsvRow row : csvFile) {
+      for (int i = 0; i < row.getColumnCount(); ++i) {
+        blackhole.consume(row.asString(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.type;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.mobilitydata.gtfsvalidator.parsing.FieldCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the hand-written parser of {@link GtfsTime#fromString(String)} with the former regular
+ * expression parser that was followed by a lookup in a {@link FieldCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GtfsTimeBenchmark {
+  private static final Pattern HHMMCC_PATTERN = Pattern.compile("(\\d{1,3}):(\\d\\d):(\\d\\d)");
+
+  private String[] times;
+
+  @Setup
+  public void createTimes() {
+    times = new String[1000];
+    for (int i = 0; i < times.length; ++i) {
+      int seconds = 5 * 3600 + i * 67;
+      times[i] = String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+  }
+
+  private static GtfsTime parseWithRegex(String time) {
+    Matcher matcher = HHMMCC_PATTERN.matcher(time);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException(
+          "Time must have H:MM:SS, HH:MM:SS or HHH:MM:SS format: " + time);
+    }
+    return GtfsTime.fromHourMinuteSecond(
+        Integer.parseInt(matcher.group(1)),
+        Integer.parseInt(matcher.group(2)),
+        Integer.parseInt(matcher.group(3)));
+  }
+
+  @Benchmark
+  public void regexWithCache(Blackhole blackhole) {
+    FieldCache<GtfsTime> timeCache = new FieldCache<>();
+    for (String time : times) {
+      blackhole.consume(timeCache.addIfAbsent(parseWithRegex(time)));
+    }
+  }
+
+  @Benchmark
+  public void fromString(Blackhole blackhole) {
+    for (String time : times) {
+      blackhole.consume(GtfsTime.fromString(time));
+    }
+  }
+}
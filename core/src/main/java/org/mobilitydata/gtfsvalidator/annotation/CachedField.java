@@ -21,8 +21,8 @@ package org.mobilitydata.gtfsvalidator.annotation;
  *
  * <p>See {@code FieldCache} for details.
  *
- * <p>Note that caching is already automatically enabled for certain field types (ID, date, time,
- * color, language code).
+ * <p>Note that caching is already automatically enabled for certain field types (ID, date, color,
+ * language code). Times are interned by {@code GtfsTime} and need no cache.
  *
  * <p>Example.
  *
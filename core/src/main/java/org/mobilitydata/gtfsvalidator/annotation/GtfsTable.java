@@ -26,6 +26,11 @@ import java.lang.annotation.Target;
  *
  * <p>Set {@code singleRow = true} if the table may have a single row, such as "feed_info.txt".
  *
+ * <p>Set {@code columnar = true} for large tables, such as "stop_times.txt". Rows of such a table
+ * are stored in primitive and dictionary-encoded columns instead of one object per row. The
+ * generated entity class becomes a lightweight view of a single row with the same getters, so
+ * validators do not depend on the layout.
+ *
  * <p>Example.
  *
  * <pre>
@@ -42,4 +47,6 @@ public @interface GtfsTable {
   String value();
 
   boolean singleRow() default false;
+
+  boolean columnar() default false;
 }
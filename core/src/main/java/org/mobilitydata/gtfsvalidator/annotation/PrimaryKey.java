@@ -51,7 +51,23 @@ import java.lang.annotation.Target;
  *       }
  *   }
  * </pre>
+ *
+ * <p>If {@code intCode} is set, every distinct key gets a dense integer code while the feed is
+ * loaded. The code is stored in the entity next to the string key and in every entity that
+ * references the key with {@code @ForeignKey}, and the container gets an array index by code.
+ *
+ * <pre>
+ *   @Generated
+ *   public class GtfsStopTableContainer extends GtfsTableContainer<GtfsStop> {
+ *       public GtfsStop byStopIdCode(int code) {
+ *           // ...
+ *       }
+ *   }
+ * </pre>
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.SOURCE)
-public @interface PrimaryKey {}
+public @interface PrimaryKey {
+  /** Whether keys are encoded as dense integer codes, see {@code IdPool.KeySpace}. */
+  boolean intCode() default false;
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import com.google.common.flogger.FluentLogger;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Cache of a large ZIP entry re-compressed into independent chunks, so that the entry can be
+ * inflated by several threads at once.
+ *
+ * <p>A deflate stream cannot be resumed from the middle because {@link Inflater} has no way to
+ * start at a bit offset with a preset window. Therefore, the first time an entry is read, its
+ * uncompressed bytes are split into chunks of {@link #CHUNK_SIZE} that are deflated separately in
+ * the background and stored in a sidecar file next to the archive. Later reads inflate the chunks
+ * from the sidecar file in parallel and return them in order.
+ *
+ * <p>The sidecar file has the following layout, all numbers are big-endian:
+ *
+ * <pre>
+ *   magic, archive size, archive modification time, entry CRC-32, entry size (8 bytes each)
+ *   compressed chunks
+ *   for each chunk: offset (8 bytes), compressed length (4 bytes), uncompressed length (4 bytes)
+ *   chunk count (4 bytes), offset of the chunk table (8 bytes)
+ * </pre>
+ */
+final class ChunkedEntryCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Number of uncompressed bytes in each chunk. */
+  static final int CHUNK_SIZE = 4 << 20;
+
+  private static final long MAGIC = 0x4754465343484b31L; // "GTFSCHK1"
+  private static final int HEADER_SIZE = 5 * Long.BYTES;
+  private static final int CHUNK_TABLE_ENTRY_SIZE = Long.BYTES + 2 * Integer.BYTES;
+  private static final int TRAILER_SIZE = Integer.BYTES + Long.BYTES;
+
+  private final Path sidecarPath;
+  private final long[] key;
+  private final ExecutorService executor;
+  private final int readAhead;
+
+  /**
+   * Creates a cache for an entry of a ZIP archive.
+   *
+   * @param archive the ZIP archive, the sidecar file is stored in the same directory
+   * @param entry the cached entry
+   * @param executor executor for compressing and inflating the chunks
+   * @param readAhead number of chunks that are inflated ahead of the reader
+   * @throws IOException if the archive cannot be accessed
+   */
+  ChunkedEntryCache(Path archive, ZipEntry entry, ExecutorService executor, int readAhead)
+      throws IOException {
+    this.sidecarPath = sidecarPath(archive, entry.getName());
+    this.key =
+        new long[] {
+          MAGIC,
+          Files.size(archive),
+          Files.getLastModifiedTime(archive).toMillis(),
+          entry.getCrc(),
+          entry.getSize()
+        };
+    this.executor = executor;
+    this.readAhead = Math.max(1, readAhead);
+  }
+
+  static Path sidecarPath(Path archive, String entryName) {
+    // Entries of nested feeds have slashes in their names.
+    return archive.resolveSibling(
+        archive.getFileName() + "." + entryName.replace('/', '_') + ".chunks");
+  }
+
+  /**
+   * Opens the cached entry if the sidecar file exists and matches the archive.
+   *
+   * @return a stream that inflates the chunks in parallel, or null if there is no valid cache
+   */
+  InputStream openCached() {
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(sidecarPath, StandardOpenOption.READ);
+      ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+      for (long value : key) {
+        if (header.getLong() != value) {
+          channel.close();
+          return null;
+        }
+      }
+      ByteBuffer trailer = readFully(channel, channel.size() - TRAILER_SIZE, TRAILER_SIZE);
+      int chunkCount = trailer.getInt();
+      long tableOffset = trailer.getLong();
+      ByteBuffer table =
+          readFully(channel, tableOffset, Math.multiplyExact(chunkCount, CHUNK_TABLE_ENTRY_SIZE));
+      List<Chunk> chunks = new ArrayList<>(chunkCount);
+      long totalSize = 0;
+      for (int i = 0; i < chunkCount; ++i) {
+        Chunk chunk = new Chunk(table.getLong(), table.getInt(), table.getInt());
+        totalSize += chunk.size;
+        chunks.add(chunk);
+      }
+      if (totalSize != key[4]) {
+        channel.close();
+        return null;
+      }
+      return new ParallelChunkInputStream(channel, chunks);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | RuntimeException e) {
+      logger.atWarning().withCause(e).log("Ignoring invalid chunk cache %s", sidecarPath);
+      closeQuietly(channel);
+      return null;
+    }
+  }
+
+  /**
+   * Wraps a sequential stream of the entry so that the sidecar file is built while the entry is
+   * being read. The sidecar file is stored only if the whole entry is read.
+   */
+  InputStream buildWhileReading(InputStream entryStream) {
+    return new ChunkingInputStream(entryStream);
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int length)
+      throws IOException {
+    if (position < 0 || position + length > channel.size()) {
+      throw new IOException("Truncated chunk cache");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Truncated chunk cache");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // Nothing to do.
+    }
+  }
+
+  private static byte[] deflate(byte[] data, int length) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data, 0, length);
+      deflater.finish();
+      byte[] buffer = new byte[length + length / 1000 + 64];
+      int size = 0;
+      while (!deflater.finished()) {
+        if (size == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        size += deflater.deflate(buffer, size, buffer.length - size);
+      }
+      return Arrays.copyOf(buffer, size);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static class Chunk {
+    final long offset;
+    final int compressedSize;
+    final int size;
+
+    Chunk(long offset, int compressedSize, int size) {
+      this.offset = offset;
+      this.compressedSize = compressedSize;
+      this.size = size;
+    }
+  }
+
+  /** Returns the chunks of a sidecar file in order while the following chunks are inflated. */
+  private class ParallelChunkInputStream extends InputStream {
+    private final FileChannel channel;
+    private final List<Chunk> chunks;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private int nextChunk = 0;
+    private byte[] current = new byte[0];
+    private int position = 0;
+
+    ParallelChunkInputStream(FileChannel channel, List<Chunk> chunks) {
+      this.channel = channel;
+      this.chunks = chunks;
+      fill();
+    }
+
+    private void fill() {
+      while (pending.size() < readAhead && nextChunk < chunks.size()) {
+        Chunk chunk = chunks.get(nextChunk++);
+        pending.add(executor.submit(() -> inflate(chunk)));
+      }
+    }
+
+    private byte[] inflate(Chunk chunk) throws IOException, DataFormatException {
+      ByteBuffer compressed = readFully(channel, chunk.offset, chunk.compressedSize);
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(compressed.array(), 0, chunk.compressedSize);
+        byte[] data = new byte[chunk.size];
+        int size = 0;
+        while (size < data.length && !inflater.finished()) {
+          int n = inflater.inflate(data, size, data.length - size);
+          if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          size += n;
+        }
+        if (size != data.length) {
+          throw new IOException("Corrupted chunk in " + sidecarPath);
+        }
+        return data;
+      } finally {
+        inflater.end();
+      }
+    }
+
+    /** Makes the next chunk current. Returns false at the end of the entry. */
+    private boolean advance() throws IOException {
+      while (position == current.length) {
+        Future<byte[]> future = pending.poll();
+        if (future == null) {
+          return false;
+        }
+        try {
+          current = future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        } catch (ExecutionException e) {
+          throw new IOException(e.getCause());
+        }
+        position = 0;
+        fill();
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return advance() ? current[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!advance()) {
+        return -1;
+      }
+      int n = Math.min(len, current.length - position);
+      System.arraycopy(current, position, b, off, n);
+      position += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (Future<byte[]> future : pending) {
+        future.cancel(false);
+      }
+      pending.clear();
+      channel.close();
+    }
+  }
+
+  /**
+   * Passes the entry through and deflates every {@link #CHUNK_SIZE} bytes in the background. The
+   * compressed chunks are written in order to a temporary file that replaces the sidecar file at
+   * the end of the entry.
+   */
+  private class ChunkingInputStream extends FilterInputStream {
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength = 0;
+    private Path tempPath;
+    private DataOutputStream output;
+    private long outputOffset;
+    private boolean failed = false;
+
+    ChunkingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n < 0) {
+        finish();
+      } else if (!failed) {
+        append(b, off, n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // Skipped bytes must be cached too.
+      byte[] buffer = new byte[(int) Math.min(n, 8192)];
+      int read = read(buffer, 0, buffer.length);
+      return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void append(byte[] b, int off, int len) {
+      crc.update(b, off, len);
+      while (len > 0) {
+        int n = Math.min(len, CHUNK_SIZE - chunkLength);
+        System.arraycopy(b, off, chunk, chunkLength, n);
+        chunkLength += n;
+        off += n;
+        len -= n;
+        if (chunkLength == CHUNK_SIZE) {
+          submitChunk();
+          if (failed) {
+            return;
+          }
+        }
+      }
+    }
+
+    private void submitChunk() {
+      final byte[] data = chunk;
+      final int length = chunkLength;
+      pending.add(executor.submit(() -> deflate(data, length)));
+      chunks.add(new Chunk(0, 0, length));
+      chunk = new byte[CHUNK_SIZE];
+      chunkLength = 0;
+      try {
+        // Keep memory bounded by writing out the chunks that are already compressed.
+        drain(false);
+      } catch (IOException | RuntimeException e) {
+        fail(e);
+      }
+    }
+
+    private void drain(boolean wait) throws IOException {
+      if (output == null) {
+        tempPath = Files.createTempFile(sidecarPath.getParent(), "gtfs", ".chunks.tmp");
+        output = new DataOutputStream(Files.newOutputStream(tempPath));
+        for (long value : key) {
+          output.writeLong(value);
+        }
+        outputOffset = HEADER_SIZE;
+      }
+      while (!pending.isEmpty()
+          && (wait || pending.size() > readAhead || pending.peek().isDone())) {
+        byte[] compressed;
+        try {
+          compressed = pending.poll().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        } catch (ExecutionException e) {
+          throw new IOException(e.getCause());
+        }
+        int index = chunks.size() - pending.size() - 1;
+        chunks.set(index, new Chunk(outputOffset, compressed.length, chunks.get(index).size));
+        output.write(compressed);
+        outputOffset += compressed.length;
+      }
+    }
+
+    private void finish() {
+      if (failed || chunk == null) {
+        return;
+      }
+      try {
+        if (chunkLength > 0) {
+          submitChunk();
+          if (failed) {
+            // The temporary file was discarded, a new one would only hold empty chunks.
+            return;
+          }
+        }
+        chunk = null;
+        drain(true);
+        if (crc.getValue() != key[3]) {
+          throw new IOException("Entry does not match its CRC-32");
+        }
+        for (Chunk c : chunks) {
+          output.writeLong(c.offset);
+          output.writeInt(c.compressedSize);
+          output.writeInt(c.size);
+        }
+        output.writeInt(chunks.size());
+        output.writeLong(outputOffset);
+        output.close();
+        output = null;
+        Files.move(tempPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING);
+        tempPath = null;
+      } catch (IOException | RuntimeException e) {
+        fail(e);
+      }
+    }
+
+    private void fail(Exception e) {
+      logger.atWarning().withCause(e).log("Cannot build chunk cache %s", sidecarPath);
+      failed = true;
+      discard();
+    }
+
+    private void discard() {
+      for (Future<byte[]> future : pending) {
+        future.cancel(false);
+      }
+      pending.clear();
+      chunk = null;
+      try {
+        if (output != null) {
+          output.close();
+        }
+        if (tempPath != null) {
+          Files.deleteIfExists(tempPath);
+        }
+      } catch (IOException e) {
+        // Nothing to do.
+      }
+      output = null;
+      tempPath = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+      // An entry that was not read to the end is not cached.
+      discard();
+      super.close();
+    }
+  }
+}
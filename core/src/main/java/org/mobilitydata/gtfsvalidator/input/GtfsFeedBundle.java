@@ -0,0 +1,248 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * Several GTFS feeds that are validated together.
+ *
+ * <p>A bundle is opened from one of:
+ *
+ * <ul>
+ *   <li>a ZIP archive with one or several feeds, either at its root or in folders;
+ *   <li>a directory with such ZIP archives and unarchived feeds in subdirectories;
+ *   <li>an unarchived feed.
+ * </ul>
+ *
+ * <p>A folder is a feed root if it directly contains one of the core GTFS files, such as stops.txt.
+ * All feeds of a bundle share a single pool to inflate large entries.
+ */
+public class GtfsFeedBundle implements Closeable {
+  private static final ImmutableSet<String> MARKER_FILES =
+      ImmutableSet.of("agency.txt", "stops.txt", "routes.txt", "trips.txt", "stop_times.txt");
+
+  private final List<Feed> feeds = new ArrayList<>();
+  private final List<ZipFile> zipFiles = new ArrayList<>();
+  private final int inflateThreads;
+  @Nullable private final ExecutorService inflateExecutor;
+
+  private GtfsFeedBundle(int inflateThreads) {
+    this.inflateThreads = inflateThreads;
+    this.inflateExecutor = GtfsZipFileInput.createInflateExecutor(inflateThreads);
+  }
+
+  /**
+   * Opens all feeds at the given path.
+   *
+   * @param path path to a ZIP archive or a directory
+   * @param inflateThreads number of threads to inflate a single large entry, see {@link
+   *     GtfsZipFileInput#GtfsZipFileInput(java.io.File, int)}
+   * @return the opened bundle
+   * @throws IOException if the path or an archive cannot be opened
+   */
+  public static GtfsFeedBundle open(Path path, int inflateThreads) throws IOException {
+    GtfsFeedBundle bundle = new GtfsFeedBundle(inflateThreads);
+    try {
+      if (!Files.isDirectory(path)) {
+        bundle.addArchive(path, path.getFileName().toString());
+      } else if (containsFeed(path)) {
+        bundle.feeds.add(new Feed(path.getFileName().toString(), new GtfsUnarchivedInput(path)));
+      } else {
+        List<Path> children;
+        try (Stream<Path> stream = Files.list(path)) {
+          children = stream.sorted().collect(Collectors.toList());
+        }
+        for (Path child : children) {
+          String name = child.getFileName().toString();
+          if (Files.isDirectory(child)) {
+            if (containsFeed(child)) {
+              bundle.feeds.add(new Feed(name, new GtfsUnarchivedInput(child)));
+            }
+          } else if (name.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            bundle.addArchive(child, name);
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      bundle.close();
+      throw e;
+    }
+    List<String> outputNames =
+        outputNames(bundle.feeds.stream().map(Feed::getName).collect(Collectors.toList()));
+    for (int i = 0; i < bundle.feeds.size(); ++i) {
+      bundle.feeds.get(i).outputName = outputNames.get(i);
+    }
+    return bundle;
+  }
+
+  /**
+   * Returns distinct names of output directories for feeds, e.g. "bundle.zip_nl" for
+   * "bundle.zip/nl".
+   *
+   * <p>Characters other than letters, digits, '.', '-' and '_' are replaced with '_'. If several
+   * feeds get the same name, ignoring case, a hash of the feed name is appended to all but the
+   * first one.
+   *
+   * @param feedNames names of feeds, see {@link Feed#getName()}
+   * @return output names in the same order
+   */
+  static List<String> outputNames(List<String> feedNames) {
+    Set<String> used = new HashSet<>();
+    List<String> outputNames = new ArrayList<>(feedNames.size());
+    for (String feedName : feedNames) {
+      String base = feedName.replaceAll("[^\\w.-]", "_");
+      String outputName = base;
+      String hash = Hashing.sha256().hashString(feedName, StandardCharsets.UTF_8).toString();
+      for (int suffix = 1; !used.add(outputName.toLowerCase(Locale.ROOT)); ++suffix) {
+        outputName = base + "_" + hash.substring(0, 8) + (suffix > 1 ? "_" + suffix : "");
+      }
+      outputNames.add(outputName);
+    }
+    return outputNames;
+  }
+
+  private void addArchive(Path archive, String name) throws IOException {
+    ZipFile zipFile = new ZipFile(archive.toFile());
+    zipFiles.add(zipFile);
+    List<String> entryNames = new ArrayList<>();
+    for (Enumeration<? extends ZipEntry> i = zipFile.entries(); i.hasMoreElements(); ) {
+      entryNames.add(i.nextElement().getName());
+    }
+    List<String> roots = findFeedRoots(entryNames);
+    if (roots.isEmpty()) {
+      // Let the validator report the missing files.
+      roots = Collections.singletonList("");
+    }
+    for (String root : roots) {
+      feeds.add(
+          new Feed(
+              root.isEmpty() ? name : name + "/" + root.substring(0, root.length() - 1),
+              new GtfsZipFileInput(
+                  zipFile,
+                  archive,
+                  root,
+                  inflateExecutor,
+                  inflateThreads,
+                  GtfsZipFileInput.DEFAULT_MIN_CHUNKED_ENTRY_SIZE,
+                  false)));
+    }
+  }
+
+  private static boolean containsFeed(Path directory) {
+    for (String marker : MARKER_FILES) {
+      if (Files.isRegularFile(directory.resolve(marker))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds folders of an archive that directly contain core GTFS files.
+   *
+   * @param entryNames names of all entries of the archive
+   * @return sorted feed roots, e.g. "" for the root of the archive or "nl/openov/"
+   */
+  static List<String> findFeedRoots(Collection<String> entryNames) {
+    TreeSet<String> roots = new TreeSet<>();
+    for (String entryName : entryNames) {
+      int slash = entryName.lastIndexOf('/');
+      String root = entryName.substring(0, slash + 1);
+      // Archives created on macOS carry resource forks with the same names.
+      if (root.startsWith("__MACOSX/")) {
+        continue;
+      }
+      if (MARKER_FILES.contains(entryName.substring(slash + 1).toLowerCase(Locale.ROOT))) {
+        roots.add(root);
+      }
+    }
+    return new ArrayList<>(roots);
+  }
+
+  public List<Feed> getFeeds() {
+    return Collections.unmodifiableList(feeds);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (inflateExecutor != null) {
+      inflateExecutor.shutdownNow();
+    }
+    IOException failure = null;
+    for (ZipFile zipFile : zipFiles) {
+      try {
+        zipFile.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** A single feed of a bundle. */
+  public static class Feed {
+    private final String name;
+    private final GtfsInput input;
+    private String outputName;
+
+    Feed(String name, GtfsInput input) {
+      this.name = name;
+      this.input = input;
+    }
+
+    /** Name of the feed within the bundle, e.g. "bundle.zip/nl". */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Name of the output directory of the feed, e.g. "bundle.zip_nl". It is distinct for all feeds
+     * of the bundle.
+     */
+    public String getOutputName() {
+      return outputName;
+    }
+
+    public GtfsInput getInput() {
+      return input;
+    }
+  }
+}
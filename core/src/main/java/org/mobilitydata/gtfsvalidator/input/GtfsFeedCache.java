@@ -0,0 +1,208 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.MoreFiles;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+/**
+ * On-disk cache of GTFS archives downloaded from URLs.
+ *
+ * <p>Every URL has its own subdirectory that holds the last downloaded archive together with its
+ * ETag, Last-Modified date and SHA-256 hash. Later downloads are conditional requests, so a feed
+ * that has not changed is not transferred again and the stored archive is reused.
+ */
+public class GtfsFeedCache implements Closeable {
+  static final String ARCHIVE_FILENAME = "feed.zip";
+  static final String METADATA_FILENAME = "metadata.properties";
+
+  private static final String URL_KEY = "url";
+  private static final String ETAG_KEY = "etag";
+  private static final String LAST_MODIFIED_KEY = "last_modified";
+  private static final String SHA256_KEY = "sha256";
+
+  private final Path directory;
+  private final CloseableHttpClient httpClient;
+
+  public GtfsFeedCache(Path directory) {
+    this(directory, HttpDownloader.getDefault());
+  }
+
+  GtfsFeedCache(Path directory, HttpDownloader downloader) {
+    this.directory = directory;
+    this.httpClient = downloader.getHttpClient();
+  }
+
+  /**
+   * Returns an up-to-date archive for the given URL, downloading it only if it has changed on the
+   * server since the previous call.
+   *
+   * @param sourceUrl the fully qualified URL of the archive
+   * @return the cached archive
+   * @throws IOException if the archive cannot be downloaded or stored
+   * @throws URISyntaxException if URL is malformed
+   */
+  public CachedFeed fetch(URL sourceUrl) throws IOException, URISyntaxException {
+    Path entryDirectory =
+        directory.resolve(
+            Hashing.sha256().hashString(sourceUrl.toString(), StandardCharsets.UTF_8).toString());
+    Files.createDirectories(entryDirectory);
+    Path archive = entryDirectory.resolve(ARCHIVE_FILENAME);
+    Path metadataPath = entryDirectory.resolve(METADATA_FILENAME);
+    Properties metadata = readMetadata(metadataPath);
+    boolean conditional = isArchiveIntact(archive, metadata);
+
+    HttpGet httpGet = new HttpGet(sourceUrl.toURI());
+    if (conditional) {
+      if (metadata.containsKey(ETAG_KEY)) {
+        httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, metadata.getProperty(ETAG_KEY));
+      }
+      if (metadata.containsKey(LAST_MODIFIED_KEY)) {
+        httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, metadata.getProperty(LAST_MODIFIED_KEY));
+      }
+    }
+    try (CloseableHttpResponse httpResponse = httpClient.execute(httpGet)) {
+      int statusCode = httpResponse.getStatusLine().getStatusCode();
+      if (conditional && statusCode == HttpStatus.SC_NOT_MODIFIED) {
+        return new CachedFeed(archive, metadata.getProperty(SHA256_KEY), false);
+      }
+      if (statusCode != HttpStatus.SC_OK) {
+        throw new IOException(
+            "Cannot download " + sourceUrl + ": " + httpResponse.getStatusLine().toString());
+      }
+
+      Path tempArchive = Files.createTempFile(entryDirectory, "feed", ".zip.tmp");
+      String sha256;
+      try {
+        HashingOutputStream hashingStream =
+            new HashingOutputStream(
+                Hashing.sha256(), new BufferedOutputStream(Files.newOutputStream(tempArchive)));
+        try (OutputStream outputStream = hashingStream) {
+          httpResponse.getEntity().writeTo(outputStream);
+        }
+        sha256 = hashingStream.hash().toString();
+        boolean modified = !sha256.equals(metadata.getProperty(SHA256_KEY));
+        if (modified || !conditional) {
+          Files.move(tempArchive, archive, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+          // Keep the file untouched when the server sent the same content again, so that caches
+          // keyed by the file modification time stay valid.
+          Files.delete(tempArchive);
+        }
+
+        Properties newMetadata = new Properties();
+        newMetadata.setProperty(URL_KEY, sourceUrl.toString());
+        newMetadata.setProperty(SHA256_KEY, sha256);
+        copyHeader(httpResponse, HttpHeaders.ETAG, newMetadata, ETAG_KEY);
+        copyHeader(httpResponse, HttpHeaders.LAST_MODIFIED, newMetadata, LAST_MODIFIED_KEY);
+        writeMetadata(metadataPath, newMetadata);
+        return new CachedFeed(archive, sha256, modified);
+      } finally {
+        Files.deleteIfExists(tempArchive);
+      }
+    }
+  }
+
+  private static void copyHeader(
+      CloseableHttpResponse httpResponse, String header, Properties metadata, String key) {
+    Header value = httpResponse.getFirstHeader(header);
+    if (value != null) {
+      metadata.setProperty(key, value.getValue());
+    }
+  }
+
+  private static Properties readMetadata(Path metadataPath) throws IOException {
+    Properties metadata = new Properties();
+    if (Files.exists(metadataPath)) {
+      try (InputStream inputStream = Files.newInputStream(metadataPath)) {
+        metadata.load(inputStream);
+      }
+    }
+    return metadata;
+  }
+
+  private static void writeMetadata(Path metadataPath, Properties metadata) throws IOException {
+    Path tempPath = Files.createTempFile(metadataPath.getParent(), "metadata", ".tmp");
+    try (OutputStream outputStream = Files.newOutputStream(tempPath)) {
+      metadata.store(outputStream, null);
+    }
+    Files.move(tempPath, metadataPath, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** Tells if the stored archive exists and still has the hash from the metadata. */
+  private static boolean isArchiveIntact(Path archive, Properties metadata) throws IOException {
+    if (!Files.exists(archive) || !metadata.containsKey(SHA256_KEY)) {
+      return false;
+    }
+    return MoreFiles.asByteSource(archive)
+        .hash(Hashing.sha256())
+        .toString()
+        .equals(metadata.getProperty(SHA256_KEY));
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The client is shared with other downloads of the process, so it stays open.
+  }
+
+  /** An archive stored in the cache. */
+  public static class CachedFeed {
+    private final Path archive;
+    private final String sha256;
+    private final boolean modified;
+
+    CachedFeed(Path archive, String sha256, boolean modified) {
+      this.archive = archive;
+      this.sha256 = sha256;
+      this.modified = modified;
+    }
+
+    /** Path to the stored archive. */
+    public Path getArchive() {
+      return archive;
+    }
+
+    /** Hex-encoded SHA-256 hash of the archive. */
+    public String getSha256() {
+      return sha256;
+    }
+
+    /** Tells if the archive has changed since the previous fetch or was fetched the first time. */
+    public boolean isModified() {
+      return modified;
+    }
+  }
+}
@@ -18,31 +18,28 @@ package org.mobilitydata.gtfsvalidator.input;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
+import java.io.Closeable;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.AccessDeniedException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Set;
-import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 
 /**
  * GtfsInput provides a common interface for reading GTFS data, either from a ZIP archive or from a
  * directory.
  */
-public abstract class GtfsInput {
+public abstract class GtfsInput implements Closeable {
   /**
    * Creates a specific GtfsInput to read data from the given path.
    *
@@ -51,6 +48,19 @@ public abstract class GtfsInput {
    * @throws IOException any IO exception that occurred during loading
    */
   public static GtfsInput createFromPath(Path path) throws IOException {
+    return createFromPath(path, 1);
+  }
+
+  /**
+   * Creates a specific GtfsInput to read data from the given path.
+   *
+   * @param path the path to the resource
+   * @param inflateThreads number of threads to inflate a single large file of a ZIP archive, see
+   *     {@link GtfsZipFileInput#GtfsZipFileInput(java.io.File, int)}
+   * @return the {@code GtfsInput} created after processing the GTFS archive
+   * @throws IOException any IO exception that occurred during loading
+   */
+  public static GtfsInput createFromPath(Path path, int inflateThreads) throws IOException {
     if (!Files.exists(path)) {
       throw new FileNotFoundException(path.toString());
     }
@@ -58,7 +68,7 @@ public abstract class GtfsInput {
       return new GtfsUnarchivedInput(path);
     }
     if (path.getFileSystem().equals(FileSystems.getDefault())) {
-      return new GtfsZipFileInput(path.toFile());
+      return new GtfsZipFileInput(path.toFile(), inflateThreads);
     }
     return new GtfsZipInMemoryInput(path.toString(), Files.readAllBytes(path));
   }
@@ -76,10 +86,30 @@ public abstract class GtfsInput {
    */
   public static GtfsInput createFromUrl(URL sourceUrl, String targetPathAsString)
       throws IOException, URISyntaxException, InterruptedException {
-    Path targetPath = createPath(targetPathAsString);
-    BufferedOutputStream outputStream =
-        new BufferedOutputStream(new FileOutputStream(targetPath.toString()));
-    loadFromUrl(sourceUrl, outputStream);
+    return createFromUrl(sourceUrl, targetPathAsString, 1);
+  }
+
+  /**
+   * Creates a specific GtfsInput to read data from the given URL.
+   *
+   * <p>If the server supports HTTP range requests, the archive is downloaded in parallel ranges and
+   * an interrupted download continues from the missing bytes on the next call. The archive is
+   * verified before it replaces the file at the target path.
+   *
+   * @param sourceUrl the fully qualified URL to download of the resource to download
+   * @param targetPathAsString the path to where the downloaded resource will be stored
+   * @param parallelChunks number of ranges that are downloaded in parallel
+   * @return the {@code GtfsInput} created after download of the GTFS archive
+   * @throws IOException if no file could not be found at the specified location
+   * @throws URISyntaxException if URL is malformed
+   * @throws InterruptedException when a thread is waiting, sleeping, or otherwise occupied, and the
+   *     thread is interrupted, either before or during the activity
+   */
+  public static GtfsInput createFromUrl(
+      URL sourceUrl, String targetPathAsString, int parallelChunks)
+      throws IOException, URISyntaxException, InterruptedException {
+    Path targetPath = Paths.get(targetPathAsString);
+    HttpDownloader.getDefault().downloadResumable(sourceUrl, targetPath, parallelChunks);
     return createFromPath(targetPath);
   }
 
@@ -100,51 +130,66 @@ public abstract class GtfsInput {
   }
 
   /**
-   * Downloads data from network.
+   * Creates a specific GtfsInput to read data from the given URL without keeping the whole archive
+   * in memory.
    *
-   * @param sourceUrl the fully qualified URL
-   * @param outputStream the output stream
+   * <p>If the server supports HTTP range requests, only the central directory of the ZIP archive is
+   * downloaded here and each file is downloaded when it is requested, so that the files can be
+   * parsed while other files are still being transferred. Otherwise, the archive is spooled to a
+   * temporary file that is deleted on exit.
+   *
+   * @param sourceUrl the fully qualified URL to download of the resource to download
+   * @param maxConnections number of files that may be downloaded in parallel
+   * @return the {@code GtfsInput} created for the GTFS archive
    * @throws IOException if no file could not be found at the specified location
    * @throws URISyntaxException if URL is malformed
    */
-  private static void loadFromUrl(URL sourceUrl, OutputStream outputStream)
+  public static GtfsInput createFromUrlStreaming(URL sourceUrl, int maxConnections)
       throws IOException, URISyntaxException {
-    CloseableHttpClient httpClient = HttpClients.createDefault();
-    HttpGet httpGet = new HttpGet(sourceUrl.toURI());
-    CloseableHttpResponse httpResponse = httpClient.execute(httpGet);
-    httpResponse.getEntity().writeTo(outputStream);
-    outputStream.close();
-    httpResponse.close();
-    httpClient.close();
+    URI uri = sourceUrl.toURI();
+    HttpDownloader downloader = HttpDownloader.getDefault();
+    downloader.allowConnections(uri, maxConnections);
+    CloseableHttpClient httpClient = downloader.getHttpClient();
+    try (CloseableHttpResponse httpResponse = GtfsZipUrlInput.requestTail(httpClient, uri)) {
+      int statusCode = httpResponse.getStatusLine().getStatusCode();
+      long archiveLength = GtfsZipUrlInput.parseTotalLength(httpResponse);
+      if (archiveLength >= 0) {
+        return new GtfsZipUrlInput(
+            uri,
+            httpClient,
+            GtfsZipUrlInput.readTail(httpResponse),
+            archiveLength,
+            GtfsZipUrlInput.getRangeValidator(httpResponse));
+      }
+      if (statusCode != HttpStatus.SC_OK) {
+        throw new IOException(
+            "Cannot download " + sourceUrl + ": " + httpResponse.getStatusLine().toString());
+      }
+      // The server sends the whole archive, so we keep it in a temporary file.
+      Path tempFile = Files.createTempFile("gtfs", ".zip");
+      tempFile.toFile().deleteOnExit();
+      try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+        httpResponse.getEntity().writeTo(outputStream);
+      }
+      return new GtfsZipFileInput(tempFile.toFile());
+    }
   }
 
   /**
-   * Creates a path from a given string or cleans it if the path already exists.
+   * Downloads data from network.
    *
-   * @param toCleanOrCreate the path to clean or create as string
-   * @return the created @code{Path}
+   * @param sourceUrl the fully qualified URL
+   * @param outputStream the output stream
+   * @throws IOException if no file could not be found at the specified location
+   * @throws URISyntaxException if URL is malformed
    */
-  private static Path createPath(final String toCleanOrCreate)
-      throws IOException, InterruptedException {
-    // to empty any already existing directory
-    Path pathToCleanOrCreate = Paths.get(toCleanOrCreate);
-    if (Files.exists(pathToCleanOrCreate)) {
-      FileUtils.deleteQuietly(new File(toCleanOrCreate));
-      Files.createFile(pathToCleanOrCreate);
-      return pathToCleanOrCreate;
-    }
-
-    // Create the directory
+  private static void loadFromUrl(URL sourceUrl, OutputStream outputStream)
+      throws IOException, URISyntaxException {
     try {
-      Files.createFile(pathToCleanOrCreate);
-    } catch (AccessDeniedException e) {
-      // Wait and try again - Windows can initially block creating a directory immediately after a
-      // delete when a
-      // file lock exists (#112)
-      Thread.sleep(500);
-      Files.createFile(pathToCleanOrCreate);
+      HttpDownloader.getDefault().download(sourceUrl, outputStream);
+    } finally {
+      outputStream.close();
     }
-    return pathToCleanOrCreate;
   }
 
   /**
@@ -165,4 +210,12 @@ public abstract class GtfsInput {
    * @throws IOException if no file could not be found at the specified location
    */
   public abstract InputStream getFile(String filename) throws IOException;
+
+  /**
+   * Releases resources held by this input, such as open archives or network connections.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  @Override
+  public void close() throws IOException {}
 }
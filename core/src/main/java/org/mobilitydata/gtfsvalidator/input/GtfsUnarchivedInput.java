@@ -18,12 +18,15 @@ package org.mobilitydata.gtfsvalidator.input;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.mobilitydata.gtfsvalidator.util.ByteBufferInputStream;
 
 /** Implements support for unarchived GTFS directories. */
 public class GtfsUnarchivedInput extends GtfsInput {
@@ -46,8 +49,23 @@ public class GtfsUnarchivedInput extends GtfsInput {
     return Collections.unmodifiableSet(filenames);
   }
 
+  /**
+   * Returns a stream over the given file.
+   *
+   * <p>Files are memory-mapped, so that {@link org.mobilitydata.gtfsvalidator.parsing.CsvFile} may
+   * decode them in place. Files that are too large for a single mapping are read with a regular
+   * stream.
+   */
   @Override
   public InputStream getFile(String filename) throws IOException {
-    return Files.newInputStream(directory.resolve(filename));
+    Path path = directory.resolve(filename);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size <= Integer.MAX_VALUE) {
+        // The mapping stays valid after the channel is closed.
+        return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+      }
+    }
+    return Files.newInputStream(path);
   }
 }
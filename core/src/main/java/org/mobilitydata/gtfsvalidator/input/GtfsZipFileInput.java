@@ -20,37 +20,153 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
 
-/** Implements support for GTFS ZIP archives. */
+/**
+ * Implements support for GTFS ZIP archives.
+ *
+ * <p>The feed is read from the root of the archive. If the root has no files and the archive wraps
+ * a single feed in a folder, e.g. "feed/stops.txt", that folder is used instead, see {@link
+ * GtfsFeedBundle} for archives with several feeds.
+ */
 public class GtfsZipFileInput extends GtfsInput {
+  /** Entries of at least this uncompressed size are inflated in parallel if enabled. */
+  static final long DEFAULT_MIN_CHUNKED_ENTRY_SIZE = 16 << 20;
+
   private final Set<String> filenames = new HashSet();
   private final ZipFile zipFile;
+  private final Path path;
+  private final String root;
+  private final long minChunkedEntrySize;
+  @Nullable private final ExecutorService inflateExecutor;
+  private final int inflateThreads;
+  private final boolean ownsResources;
 
   public GtfsZipFileInput(File file) throws IOException {
-    zipFile = new ZipFile(file);
+    this(file, 1);
+  }
+
+  /**
+   * Creates an input for a ZIP archive.
+   *
+   * <p>If {@code inflateThreads} is greater than 1, large entries are re-compressed into chunks
+   * that are cached in a sidecar file next to the archive, see {@link ChunkedEntryCache}. The first
+   * read of such an entry builds the cache and later reads inflate the chunks with {@code
+   * inflateThreads} threads, so that a single large file such as stop_times.txt is not limited by
+   * the speed of one inflater.
+   *
+   * @param file the ZIP archive
+   * @param inflateThreads number of threads to inflate a single large entry
+   * @throws IOException if the archive cannot be opened
+   */
+  public GtfsZipFileInput(File file, int inflateThreads) throws IOException {
+    this(file, inflateThreads, DEFAULT_MIN_CHUNKED_ENTRY_SIZE);
+  }
+
+  GtfsZipFileInput(File file, int inflateThreads, long minChunkedEntrySize) throws IOException {
+    this(
+        new ZipFile(file),
+        file.toPath(),
+        null,
+        createInflateExecutor(inflateThreads),
+        inflateThreads,
+        minChunkedEntrySize,
+        true);
+  }
+
+  /**
+   * Creates an input for a feed inside a ZIP archive.
+   *
+   * @param zipFile the opened archive
+   * @param path path to the archive
+   * @param root folder of the feed inside the archive, e.g. "" or "feed/", or null to detect it
+   * @param inflateExecutor executor to inflate large entries in parallel, or null
+   * @param inflateThreads number of threads of {@code inflateExecutor}
+   * @param minChunkedEntrySize entries of at least this size are inflated in parallel
+   * @param ownsResources whether the archive and the executor are closed with this input
+   */
+  GtfsZipFileInput(
+      ZipFile zipFile,
+      Path path,
+      @Nullable String root,
+      @Nullable ExecutorService inflateExecutor,
+      int inflateThreads,
+      long minChunkedEntrySize,
+      boolean ownsResources) {
+    this.zipFile = zipFile;
+    this.path = path;
+    this.root = root != null ? root : detectRoot(zipFile);
+    this.inflateExecutor = inflateExecutor;
+    this.inflateThreads = inflateThreads;
+    this.minChunkedEntrySize = minChunkedEntrySize;
+    this.ownsResources = ownsResources;
+    for (Enumeration<? extends ZipEntry> i = zipFile.entries(); i.hasMoreElements(); ) {
+      String name = i.nextElement().getName();
+      if (name.startsWith(this.root)
+          && !isInsideZipDirectory(name.substring(this.root.length()))
+          && name.length() > this.root.length()) {
+        filenames.add(name.substring(this.root.length()));
+      }
+    }
+  }
+
+  @Nullable
+  static ExecutorService createInflateExecutor(int inflateThreads) {
+    if (inflateThreads <= 1) {
+      return null;
+    }
+    return Executors.newFixedThreadPool(
+        inflateThreads,
+        runnable -> {
+          Thread thread = new Thread(runnable, "inflater");
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /** Returns the folder of a single feed wrapped in the archive, or "" for the archive root. */
+  private static String detectRoot(ZipFile zipFile) {
+    List<String> names = new ArrayList<>();
     for (Enumeration<? extends ZipEntry> i = zipFile.entries(); i.hasMoreElements(); ) {
-      ZipEntry entry = i.nextElement();
-      if (!isInsideZipDirectory(entry)) {
-        filenames.add(entry.getName());
+      String name = i.nextElement().getName();
+      if (!isInsideZipDirectory(name)) {
+        return "";
       }
+      names.add(name);
     }
+    List<String> roots = GtfsFeedBundle.findFeedRoots(names);
+    return roots.size() == 1 ? roots.get(0) : "";
+  }
+
+  /** Folder of the feed inside the archive, e.g. "" or "feed/". */
+  String getRoot() {
+    return root;
   }
 
   static boolean isInsideZipDirectory(ZipEntry entry) {
+    return isInsideZipDirectory(entry.getName());
+  }
+
+  static boolean isInsideZipDirectory(String entryName) {
     // We do not use File.separator because the .zip file specification states:
     // All slashes MUST be forward slashes '/' as opposed to backwards slashes '\' for compatibility
     // with Amiga and
     // UNIX file systems etc.
     //
     // Directory names in end with '/'.
-    return entry.getName().contains("/");
+    return entryName.contains("/");
   }
 
   @Override
@@ -60,10 +176,30 @@ public class GtfsZipFileInput extends GtfsInput {
 
   @Override
   public InputStream getFile(String filename) throws IOException {
-    ZipEntry entry = zipFile.getEntry(filename);
+    ZipEntry entry = filenames.contains(filename) ? zipFile.getEntry(root + filename) : null;
     if (entry == null) {
-      throw new FileNotFoundException(Paths.get(zipFile.getName(), filename).toString());
+      throw new FileNotFoundException(Paths.get(zipFile.getName(), root, filename).toString());
+    }
+    if (inflateExecutor == null || entry.getSize() < minChunkedEntrySize) {
+      return zipFile.getInputStream(entry);
+    }
+    ChunkedEntryCache cache =
+        new ChunkedEntryCache(path, entry, inflateExecutor, 2 * inflateThreads);
+    InputStream cached = cache.openCached();
+    if (cached != null) {
+      return cached;
+    }
+    return cache.buildWhileReading(zipFile.getInputStream(entry));
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!ownsResources) {
+      return;
+    }
+    if (inflateExecutor != null) {
+      inflateExecutor.shutdownNow();
     }
-    return zipFile.getInputStream(entry);
+    zipFile.close();
   }
 }
@@ -22,9 +22,12 @@ import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
 /** Implements support for GTFS ZIP archives located at given {@code java.nio.file.Path}. */
@@ -33,10 +36,20 @@ public class GtfsZipInMemoryInput extends GtfsInput {
   private final String path;
   private final byte[] bytes;
 
+  /**
+   * Index of the central directory. It is empty if the central directory could not be parsed, then
+   * files are found by scanning the archive sequentially.
+   */
+  private final Map<String, ZipCentralDirectory.Entry> entries = new HashMap<>();
+
   public GtfsZipInMemoryInput(String path, byte[] bytes) throws IOException {
     this.path = path;
     this.bytes = bytes;
 
+    if (indexCentralDirectory()) {
+      filenames.addAll(entries.keySet());
+      return;
+    }
     ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(bytes));
     ZipEntry entry = zipInputStream.getNextEntry();
     while (entry != null) {
@@ -47,6 +60,40 @@ public class GtfsZipInMemoryInput extends GtfsInput {
     }
   }
 
+  /**
+   * Reads the central directory so that every file may be opened directly at its offset.
+   *
+   * @return true on success, false if the archive must be scanned sequentially
+   */
+  private boolean indexCentralDirectory() {
+    try {
+      ZipCentralDirectory.Location location = ZipCentralDirectory.locate(bytes, 0);
+      if (location.offset() + location.size() > bytes.length) {
+        return false;
+      }
+      ZipCentralDirectory centralDirectory =
+          ZipCentralDirectory.parse(bytes, (int) location.offset(), location);
+      for (ZipCentralDirectory.Entry entry : centralDirectory.getEntries()) {
+        long dataOffset =
+            entry.localHeaderOffset()
+                + ZipCentralDirectory.localHeaderLength(bytes, (int) entry.localHeaderOffset());
+        if (dataOffset + entry.compressedSize() > bytes.length) {
+          entries.clear();
+          return false;
+        }
+        if (!isInsideZipDirectory(entry.name())) {
+          // ZipInputStream returns the first of duplicate entries.
+          entries.putIfAbsent(entry.name(), entry);
+        }
+      }
+      return true;
+    } catch (ZipException | RuntimeException e) {
+      // Any inconsistency of the central directory is left to ZipInputStream.
+      entries.clear();
+      return false;
+    }
+  }
+
   @Override
   public Set<String> getFilenames() {
     return filenames;
@@ -57,6 +104,17 @@ public class GtfsZipInMemoryInput extends GtfsInput {
     if (!filenames.contains(filename)) {
       throw new FileNotFoundException(path + ":" + filename);
     }
+    ZipCentralDirectory.Entry indexed = entries.get(filename);
+    if (indexed != null) {
+      int offset = (int) indexed.localHeaderOffset();
+      int dataOffset = offset + ZipCentralDirectory.localHeaderLength(bytes, offset);
+      return ZipCentralDirectory.decompress(
+          new ByteArrayInputStream(
+              bytes,
+              dataOffset,
+              (int) Math.min(indexed.compressedSize(), bytes.length - dataOffset)),
+          indexed);
+    }
     ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(bytes));
     ZipEntry entry = zipInputStream.getNextEntry();
     for (; ; ) {
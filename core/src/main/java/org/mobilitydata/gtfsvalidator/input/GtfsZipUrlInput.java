@@ -0,0 +1,231 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import static org.mobilitydata.gtfsvalidator.input.GtfsZipFileInput.isInsideZipDirectory;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Implements support for GTFS ZIP archives that are read directly from a server with HTTP range
+ * requests.
+ *
+ * <p>Only the central directory is downloaded when the input is created. Each entry is downloaded
+ * when its file is requested, so table loaders start parsing their files while other files are
+ * still being transferred and the archive is never stored as a whole.
+ *
+ * <p>Every range request carries an If-Range header with the validator of the first response, so
+ * that entries of an archive that is replaced on the server during validation are not mixed with
+ * entries of the previous version.
+ */
+public class GtfsZipUrlInput extends GtfsInput {
+  private final Map<String, ZipCentralDirectory.Entry> entries = new HashMap<>();
+  private final URI uri;
+  private final CloseableHttpClient httpClient;
+  private final ZipCentralDirectory centralDirectory;
+  private final long archiveLength;
+  // ETag or Last-Modified date of the archive, or null if the server sent neither.
+  @Nullable private final String rangeValidator;
+
+  /**
+   * Creates an input from the last bytes of a remote archive.
+   *
+   * @param uri location of the archive
+   * @param httpClient client to issue range requests, it is shared and stays open
+   * @param tail the last bytes of the archive
+   * @param archiveLength total length of the archive in bytes
+   * @param rangeValidator value for the If-Range header of later requests, see {@link
+   *     #getRangeValidator}
+   * @throws IOException if the central directory cannot be read
+   */
+  GtfsZipUrlInput(
+      URI uri,
+      CloseableHttpClient httpClient,
+      byte[] tail,
+      long archiveLength,
+      @Nullable String rangeValidator)
+      throws IOException {
+    this.uri = uri;
+    this.httpClient = httpClient;
+    this.archiveLength = archiveLength;
+    this.rangeValidator = rangeValidator;
+    long tailOffset = archiveLength - tail.length;
+    ZipCentralDirectory.Location location = ZipCentralDirectory.locate(tail, tailOffset);
+    if (location.offset() >= tailOffset) {
+      centralDirectory =
+          ZipCentralDirectory.parse(tail, (int) (location.offset() - tailOffset), location);
+    } else {
+      byte[] buffer;
+      try (InputStream stream =
+          getRange(location.offset(), location.offset() + location.size() - 1)) {
+        buffer = stream.readAllBytes();
+      }
+      centralDirectory = ZipCentralDirectory.parse(buffer, 0, location);
+    }
+    for (ZipCentralDirectory.Entry entry : centralDirectory.getEntries()) {
+      if (!isInsideZipDirectory(entry.name())) {
+        entries.put(entry.name(), entry);
+      }
+    }
+  }
+
+  /**
+   * Requests the last bytes of a remote resource.
+   *
+   * <p>If the server supports range requests, the returned response has status 206 and contains the
+   * last {@link ZipCentralDirectory#TAIL_SIZE} bytes. Otherwise, the server returns the whole
+   * resource with status 200.
+   */
+  static CloseableHttpResponse requestTail(CloseableHttpClient httpClient, URI uri)
+      throws IOException {
+    HttpGet httpGet = new HttpGet(uri);
+    httpGet.setHeader(HttpHeaders.RANGE, "bytes=-" + ZipCentralDirectory.TAIL_SIZE);
+    return httpClient.execute(httpGet);
+  }
+
+  /**
+   * Returns the total length of the resource from a Content-Range header, such as "bytes
+   * 100-199/2000", or -1 if the length is unknown.
+   */
+  static long parseTotalLength(CloseableHttpResponse response) {
+    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT
+        || !response.containsHeader("Content-Range")) {
+      return -1;
+    }
+    String contentRange = response.getFirstHeader("Content-Range").getValue();
+    int slash = contentRange.lastIndexOf('/');
+    if (slash < 0) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentRange.substring(slash + 1).trim());
+    } catch (NumberFormatException e) {
+      // The length may be "*" if it is unknown.
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the value for an If-Range header that identifies the version of the resource of a
+   * response: its ETag if it is a strong one, otherwise its Last-Modified date, or null if neither
+   * can be used.
+   */
+  @Nullable
+  static String getRangeValidator(CloseableHttpResponse response) {
+    Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+    // Weak ETags must not be used in If-Range.
+    if (etag != null && !etag.getValue().startsWith("W/")) {
+      return etag.getValue();
+    }
+    Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+    return lastModified != null ? lastModified.getValue() : null;
+  }
+
+  /** Reads the body of a response to {@link #requestTail}. */
+  static byte[] readTail(CloseableHttpResponse response) throws IOException {
+    return EntityUtils.toByteArray(response.getEntity());
+  }
+
+  private InputStream getRange(long first, long last) throws IOException {
+    HttpGet httpGet = new HttpGet(uri);
+    httpGet.setHeader(HttpHeaders.RANGE, "bytes=" + first + "-" + last);
+    if (rangeValidator != null) {
+      httpGet.setHeader(HttpHeaders.IF_RANGE, rangeValidator);
+    }
+    CloseableHttpResponse httpResponse = httpClient.execute(httpGet);
+    int statusCode = httpResponse.getStatusLine().getStatusCode();
+    if (statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+      httpResponse.close();
+      if (statusCode == HttpStatus.SC_OK && rangeValidator != null) {
+        // The server ignores the range if the validator does not match the current version.
+        throw new IOException(uri + " was modified on the server during validation");
+      }
+      throw new IOException(
+          "Range request to " + uri + " failed: " + httpResponse.getStatusLine().toString());
+    }
+    long totalLength = parseTotalLength(httpResponse);
+    if (totalLength >= 0 && totalLength != archiveLength) {
+      httpResponse.close();
+      throw new IOException(
+          uri
+              + " was modified on the server during validation: length changed from "
+              + archiveLength
+              + " to "
+              + totalLength);
+    }
+    return new ResponseInputStream(httpResponse);
+  }
+
+  @Override
+  public Set<String> getFilenames() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  @Override
+  public InputStream getFile(String filename) throws IOException {
+    ZipCentralDirectory.Entry entry = entries.get(filename);
+    if (entry == null) {
+      throw new FileNotFoundException(uri + ":" + filename);
+    }
+    InputStream stream =
+        getRange(entry.localHeaderOffset(), centralDirectory.getEntryEndOffset(entry) - 1);
+    try {
+      return ZipCentralDirectory.openEntry(stream, entry);
+    } catch (IOException e) {
+      stream.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    // Connections are released when their responses are closed, the shared client stays open.
+  }
+
+  /** Releases the HTTP connection when the body of a response is closed. */
+  private static class ResponseInputStream extends FilterInputStream {
+    private final CloseableHttpResponse httpResponse;
+
+    ResponseInputStream(CloseableHttpResponse httpResponse) throws IOException {
+      super(httpResponse.getEntity().getContent());
+      this.httpResponse = httpResponse;
+    }
+
+    @Override
+    public void close() throws IOException {
+      // Closing the response before consuming the whole body aborts the connection instead of
+      // draining it.
+      httpResponse.close();
+    }
+  }
+}
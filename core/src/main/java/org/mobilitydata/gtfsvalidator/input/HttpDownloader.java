@@ -0,0 +1,292 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Downloads files over HTTP with a pooled client that keeps connections alive between downloads.
+ *
+ * <p>Failed downloads are retried with exponential backoff when the failure may be transient: I/O
+ * errors, server errors (5xx) and "429 Too Many Requests". A single instance is meant to be shared
+ * by all downloads of a process and is thread-safe.
+ */
+public class HttpDownloader implements Closeable {
+  /** "429 Too Many Requests" is not defined in {@link HttpStatus}. */
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+
+  private static HttpDownloader defaultInstance;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+  private final int maxRetries;
+  private final long initialBackoffMillis;
+
+  private HttpDownloader(Builder builder) {
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerHost);
+    connectionManager.setMaxTotal(builder.maxConnectionsTotal);
+    RequestConfig requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout(builder.timeoutMillis)
+            .setConnectionRequestTimeout(builder.timeoutMillis)
+            .setSocketTimeout(builder.timeoutMillis)
+            .build();
+    httpClient =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+            .build();
+    maxRetries = builder.maxRetries;
+    initialBackoffMillis = builder.initialBackoffMillis;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Returns a downloader with default options that is shared by the whole process. */
+  public static synchronized HttpDownloader getDefault() {
+    if (defaultInstance == null) {
+      defaultInstance = builder().build();
+    }
+    return defaultInstance;
+  }
+
+  /**
+   * Downloads a file and stores it at the given path.
+   *
+   * <p>The file is first written to a temporary file in the same directory, so a partial download
+   * never replaces the target.
+   *
+   * @param sourceUrl the fully qualified URL
+   * @param target where to store the file
+   * @throws IOException if the file cannot be downloaded after all retries
+   * @throws URISyntaxException if URL is malformed
+   */
+  public void download(URL sourceUrl, Path target) throws IOException, URISyntaxException {
+    Path directory = target.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path tempFile = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+    try {
+      for (int attempt = 0; ; ++attempt) {
+        try (OutputStream outputStream =
+            new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+          execute(sourceUrl, outputStream);
+          break;
+        } catch (IOException e) {
+          if (attempt >= maxRetries || !isRetriable(e)) {
+            throw e;
+          }
+          backoff(attempt);
+        }
+      }
+      Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Downloads a file into an output stream.
+   *
+   * <p>Since written bytes cannot be taken back, a download is only retried if it fails before the
+   * body of the response is received.
+   *
+   * @param sourceUrl the fully qualified URL
+   * @param outputStream the output stream, it is not closed
+   * @throws IOException if the file cannot be downloaded
+   * @throws URISyntaxException if URL is malformed
+   */
+  public void download(URL sourceUrl, OutputStream outputStream)
+      throws IOException, URISyntaxException {
+    for (int attempt = 0; ; ++attempt) {
+      try {
+        execute(sourceUrl, outputStream);
+        return;
+      } catch (StatusException e) {
+        if (attempt >= maxRetries || !isRetriable(e)) {
+          throw e;
+        }
+        backoff(attempt);
+      }
+    }
+  }
+
+  private void execute(URL sourceUrl, OutputStream outputStream)
+      throws IOException, URISyntaxException {
+    HttpGet httpGet = new HttpGet(sourceUrl.toURI());
+    try (CloseableHttpResponse httpResponse = httpClient.execute(httpGet)) {
+      int statusCode = httpResponse.getStatusLine().getStatusCode();
+      if (statusCode != HttpStatus.SC_OK) {
+        throw new StatusException(sourceUrl, statusCode, httpResponse.getStatusLine().toString());
+      }
+      // Consuming the whole entity returns the connection to the pool.
+      httpResponse.getEntity().writeTo(outputStream);
+    }
+  }
+
+  static boolean isRetriable(IOException e) {
+    if (e instanceof StatusException) {
+      int statusCode = ((StatusException) e).statusCode;
+      return statusCode >= 500 || statusCode == SC_TOO_MANY_REQUESTS;
+    }
+    // Timeouts are retried but interruptions are not.
+    return !Thread.currentThread().isInterrupted();
+  }
+
+  /**
+   * Downloads a file with HTTP range requests so that an interrupted download continues from the
+   * missing bytes, see {@link ResumableDownload}.
+   *
+   * @param sourceUrl the fully qualified URL
+   * @param target where to store the file
+   * @param parallelChunks number of ranges that are downloaded in parallel
+   * @throws IOException if the file cannot be downloaded or fails verification
+   * @throws URISyntaxException if URL is malformed
+   * @throws InterruptedException if the thread is interrupted while waiting for the ranges
+   */
+  public void downloadResumable(URL sourceUrl, Path target, int parallelChunks)
+      throws IOException, URISyntaxException, InterruptedException {
+    new ResumableDownload(this, sourceUrl, target, parallelChunks).run();
+  }
+
+  CloseableHttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  /**
+   * Allows at least the given number of parallel connections to the host of a URI, e.g., to
+   * download several files of a remote archive at once.
+   */
+  void allowConnections(URI uri, int maxConnections) {
+    HttpRoute route = routeOf(uri);
+    synchronized (connectionManager) {
+      if (connectionManager.getMaxPerRoute(route) < maxConnections) {
+        connectionManager.setMaxPerRoute(route, maxConnections);
+      }
+      if (connectionManager.getMaxTotal() < maxConnections) {
+        connectionManager.setMaxTotal(maxConnections);
+      }
+    }
+  }
+
+  int getMaxConnections(URI uri) {
+    return connectionManager.getMaxPerRoute(routeOf(uri));
+  }
+
+  /** Returns the route of a direct connection to the host of a URI, as the client plans it. */
+  private static HttpRoute routeOf(URI uri) {
+    boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+    int port = uri.getPort() >= 0 ? uri.getPort() : (secure ? 443 : 80);
+    return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+  }
+
+  int getMaxRetries() {
+    return maxRetries;
+  }
+
+  void backoff(int attempt) throws InterruptedIOException {
+    try {
+      Thread.sleep(initialBackoffMillis << Math.min(attempt, 16));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to retry a download");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+  }
+
+  /** Thrown when a server responds with an unexpected status code. */
+  static class StatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    final int statusCode;
+
+    StatusException(URL sourceUrl, int statusCode, String statusLine) {
+      super("Cannot download " + sourceUrl + ": " + statusLine);
+      this.statusCode = statusCode;
+    }
+  }
+
+  /** Options of a {@link HttpDownloader}. */
+  public static class Builder {
+    private int maxConnectionsPerHost = 4;
+    private int maxConnectionsTotal = 32;
+    private int timeoutMillis = 60_000;
+    private int maxRetries = 3;
+    private long initialBackoffMillis = 1_000;
+
+    private Builder() {}
+
+    public Builder setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+      this.maxConnectionsPerHost = maxConnectionsPerHost;
+      return this;
+    }
+
+    public Builder setMaxConnectionsTotal(int maxConnectionsTotal) {
+      this.maxConnectionsTotal = maxConnectionsTotal;
+      return this;
+    }
+
+    /** Sets the timeout to connect, to get a pooled connection and to wait for data. */
+    public Builder setTimeoutMillis(int timeoutMillis) {
+      this.timeoutMillis = timeoutMillis;
+      return this;
+    }
+
+    /** Sets how many times a failed download is retried. */
+    public Builder setMaxRetries(int maxRetries) {
+      this.maxRetries = maxRetries;
+      return this;
+    }
+
+    /** Sets the delay before the first retry, it doubles for each following retry. */
+    public Builder setInitialBackoffMillis(long initialBackoffMillis) {
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    public HttpDownloader build() {
+      return new HttpDownloader(this);
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+
+/**
+ * Downloads many GTFS archives in parallel and hands them out in the order in which they complete.
+ *
+ * <p>At most {@code parallelism} downloads run at the same time. Completed downloads wait in a
+ * queue of {@code queueCapacity} elements, and downloads pause while the queue is full, so that
+ * downloading does not run far ahead of validation. Downloads run on daemon threads, so that they
+ * do not keep the JVM alive if the results are not consumed.
+ */
+public class ParallelFeedDownloader {
+  private final HttpDownloader downloader;
+  private final Path directory;
+  private final int parallelism;
+  private final int queueCapacity;
+
+  /**
+   * Creates a downloader.
+   *
+   * @param downloader the shared HTTP downloader
+   * @param directory where to store the downloaded archives
+   * @param parallelism maximal number of parallel downloads
+   * @param queueCapacity maximal number of downloaded archives that are not consumed yet
+   */
+  public ParallelFeedDownloader(
+      HttpDownloader downloader, Path directory, int parallelism, int queueCapacity) {
+    this.downloader = downloader;
+    this.directory = directory;
+    this.parallelism = parallelism;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Starts downloading the given URLs.
+   *
+   * <p>The returned iterator returns exactly one result per URL, blocking until the next download
+   * completes. Downloads are cancelled if the iterator is closed or the iterating thread is
+   * interrupted.
+   *
+   * @param urls URLs of GTFS archives
+   * @return iterator over results in the order of completion
+   */
+  public Downloads downloadAll(List<URL> urls) {
+    BlockingQueue<DownloadedFeed> completed = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, parallelism),
+            new ThreadFactoryBuilder().setNameFormat("feed-download-%d").setDaemon(true).build());
+    for (int i = 0; i < urls.size(); ++i) {
+      URL url = urls.get(i);
+      String name = feedName(i, url);
+      executor.execute(
+          () -> {
+            // Every task must put a result, otherwise the consumer waits forever.
+            DownloadedFeed result = null;
+            try {
+              Path target = directory.resolve(name + ".zip");
+              downloader.download(url, target);
+              result = new DownloadedFeed(url, name, target, null);
+            } catch (Exception e) {
+              result = new DownloadedFeed(url, name, null, e);
+            } finally {
+              if (result == null) {
+                // An error, such as OutOfMemoryError, is rethrown after the result is put.
+                result =
+                    new DownloadedFeed(
+                        url, name, null, new IllegalStateException("Download did not complete"));
+              }
+              try {
+                completed.put(result);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          });
+    }
+    executor.shutdown();
+    return new Downloads(executor, completed, urls.size());
+  }
+
+  /**
+   * Returns a unique name of the feed downloaded from the URL, the archive is stored under this
+   * name.
+   */
+  private static String feedName(int index, URL url) {
+    return String.format(
+        "%04d-%s",
+        index,
+        Hashing.sha256()
+            .hashString(url.toString(), StandardCharsets.UTF_8)
+            .toString()
+            .substring(0, 16));
+  }
+
+  /**
+   * Results of {@link #downloadAll} in the order of completion.
+   *
+   * <p>Closing it cancels the downloads that are still running.
+   */
+  public static class Downloads implements Iterator<DownloadedFeed>, AutoCloseable {
+    private final ExecutorService executor;
+    private final BlockingQueue<DownloadedFeed> completed;
+    private int remaining;
+
+    Downloads(ExecutorService executor, BlockingQueue<DownloadedFeed> completed, int remaining) {
+      this.executor = executor;
+      this.completed = completed;
+      this.remaining = remaining;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public DownloadedFeed next() {
+      if (remaining == 0) {
+        throw new NoSuchElementException();
+      }
+      try {
+        DownloadedFeed result = completed.take();
+        --remaining;
+        return result;
+      } catch (InterruptedException e) {
+        close();
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for downloads", e);
+      }
+    }
+
+    @Override
+    public void close() {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Result of a single download. */
+  public static class DownloadedFeed {
+    private final URL url;
+    private final String name;
+    @Nullable private final Path archive;
+    @Nullable private final Exception error;
+
+    DownloadedFeed(URL url, String name, @Nullable Path archive, @Nullable Exception error) {
+      this.url = url;
+      this.name = name;
+      this.archive = archive;
+      this.error = error;
+    }
+
+    public URL getUrl() {
+      return url;
+    }
+
+    /** Name of the feed that is unique among the downloaded URLs, e.g., "0003-1f2e3d4c5b6a7988". */
+    public String getName() {
+      return name;
+    }
+
+    /** Path to the downloaded archive, or null if the download failed. */
+    @Nullable
+    public Path getArchive() {
+      return archive;
+    }
+
+    /** The error that stopped the download, or null if it succeeded. */
+    @Nullable
+    public Exception getError() {
+      return error;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An input stream that reads its source ahead on a separate thread.
+ *
+ * <p>The source, e.g. an inflating ZIP entry stream, is read into a bounded ring of {@code depth}
+ * buffers of {@code bufferSize} bytes. The consumer, e.g. a CSV parser, takes filled buffers while
+ * the source is read into the free ones, so reading and parsing run concurrently.
+ *
+ * <p>{@link #getStats()} tells how long each side waited for the other one. A consumer that stalls
+ * a lot is limited by I/O or inflation; a producer that stalls a lot is limited by parsing.
+ */
+public class ReadAheadInputStream extends InputStream {
+  /** Marks the end of the source in the queue of filled buffers. */
+  private static final Chunk END = new Chunk(new byte[0]);
+
+  private final InputStream source;
+  private final BlockingQueue<Chunk> filled;
+  private final BlockingQueue<Chunk> free;
+  private final Future<?> producer;
+  private Chunk current;
+  private int position;
+  private boolean closed;
+
+  private volatile IOException sourceError;
+  private volatile long producerStallNanos;
+  private long consumerStallNanos;
+  private volatile long bytesRead;
+
+  /**
+   * Starts reading the source ahead.
+   *
+   * @param source the stream to read, it is closed together with this stream
+   * @param bufferSize size of each buffer in bytes
+   * @param depth number of buffers
+   * @param executor executor that runs the reading thread, it must not queue tasks because the
+   *     reading thread runs until the source is read or this stream is closed
+   */
+  public ReadAheadInputStream(
+      InputStream source, int bufferSize, int depth, ExecutorService executor) {
+    this.source = source;
+    int capacity = Math.max(1, depth);
+    // The consumer holds one buffer while the producer fills the others.
+    filled = new ArrayBlockingQueue<>(capacity + 1);
+    free = new ArrayBlockingQueue<>(capacity + 1);
+    for (int i = 0; i <= capacity; ++i) {
+      free.add(new Chunk(new byte[Math.max(1, bufferSize)]));
+    }
+    producer = executor.submit(this::produce);
+  }
+
+  private void produce() {
+    try {
+      while (true) {
+        long start = System.nanoTime();
+        Chunk chunk = free.take();
+        producerStallNanos += System.nanoTime() - start;
+        int length = 0;
+        int n = 0;
+        // Fill the whole buffer so that the consumer wakes up less often.
+        while (length < chunk.data.length
+            && (n = source.read(chunk.data, length, chunk.data.length - length)) >= 0) {
+          length += n;
+        }
+        chunk.length = length;
+        if (length > 0) {
+          bytesRead += length;
+          filled.put(chunk);
+        }
+        if (n < 0) {
+          filled.put(END);
+          return;
+        }
+      }
+    } catch (IOException e) {
+      sourceError = e;
+      filled.offer(END);
+    } catch (RuntimeException e) {
+      // The consumer would wait forever if the reading thread died silently.
+      sourceError = new IOException(e);
+      filled.offer(END);
+    } catch (InterruptedException e) {
+      // Closed by the consumer.
+    }
+  }
+
+  private boolean advance() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    while (current == null || position == current.length) {
+      if (current == END) {
+        return false;
+      }
+      if (current != null) {
+        free.add(current);
+      }
+      long start = System.nanoTime();
+      try {
+        current = filled.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for data");
+      } finally {
+        consumerStallNanos += System.nanoTime() - start;
+      }
+      position = 0;
+      if (current == END && sourceError != null) {
+        throw sourceError;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return advance() ? current.data[position++] & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!advance()) {
+      return -1;
+    }
+    int n = Math.min(len, current.length - position);
+    System.arraycopy(current.data, position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return current == null ? 0 : current.length - position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    producer.cancel(true);
+    source.close();
+  }
+
+  /** Returns statistics of this stream. */
+  public Stats getStats() {
+    return new Stats(bytesRead, consumerStallNanos, producerStallNanos);
+  }
+
+  private static class Chunk {
+    final byte[] data;
+    int length;
+
+    Chunk(byte[] data) {
+      this.data = data;
+    }
+  }
+
+  /** Statistics of a {@link ReadAheadInputStream}. */
+  public static class Stats {
+    private final long bytesRead;
+    private final long consumerStallNanos;
+    private final long producerStallNanos;
+
+    Stats(long bytesRead, long consumerStallNanos, long producerStallNanos) {
+      this.bytesRead = bytesRead;
+      this.consumerStallNanos = consumerStallNanos;
+      this.producerStallNanos = producerStallNanos;
+    }
+
+    /** Number of bytes read from the source so far. */
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    /** Time that the consumer waited for data because all buffers were empty. */
+    public long getConsumerStallNanos() {
+      return consumerStallNanos;
+    }
+
+    /** Time that the producer waited for a free buffer because all buffers were full. */
+    public long getProducerStallNanos() {
+      return producerStallNanos;
+    }
+  }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.MoreFiles;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+
+/**
+ * Downloads a file with HTTP range requests into a partial file that survives failures.
+ *
+ * <p>The file is split into segments of {@link #SEGMENT_SIZE} bytes that are downloaded in
+ * parallel. Progress of every segment is stored next to the partial file, so a later attempt only
+ * downloads the missing bytes. The ETag or Last-Modified date is sent in an If-Range header, so a
+ * file that has changed on the server is downloaded from scratch.
+ *
+ * <p>Before the partial file replaces the target, its size is checked, its hash is compared with a
+ * SHA-256 or SHA-512 Digest header if the server sent one, and the ZIP central directory is opened.
+ *
+ * <p>Servers without range support get a regular download with retries.
+ */
+final class ResumableDownload {
+  static final long SEGMENT_SIZE = 8 << 20;
+
+  /** The progress is stored after this many bytes of a segment are written. */
+  private static final long PROGRESS_INTERVAL = 4 << 20;
+
+  private static final String VALIDATOR_KEY = "validator";
+  private static final String LENGTH_KEY = "length";
+  private static final String SEGMENT_KEY_PREFIX = "segment.";
+
+  private final HttpDownloader downloader;
+  private final URL sourceUrl;
+  private final Path target;
+  private final Path partPath;
+  private final Path progressPath;
+  private final int parallelChunks;
+
+  ResumableDownload(HttpDownloader downloader, URL sourceUrl, Path target, int parallelChunks) {
+    this.downloader = downloader;
+    this.sourceUrl = sourceUrl;
+    this.target = target.toAbsolutePath();
+    this.partPath = partPath(this.target);
+    this.progressPath = this.target.resolveSibling(this.target.getFileName() + ".part.progress");
+    this.parallelChunks = Math.max(1, parallelChunks);
+  }
+
+  static Path partPath(Path target) {
+    return target.resolveSibling(target.getFileName() + ".part");
+  }
+
+  void run() throws IOException, URISyntaxException, InterruptedException {
+    Files.createDirectories(target.getParent());
+    Probe probe = probe();
+    if (probe.length < 0) {
+      downloader.download(sourceUrl, target);
+      verifyZip(target);
+      return;
+    }
+
+    Progress progress = Progress.load(progressPath);
+    if (progress == null
+        || !progress.matches(probe)
+        || !Files.exists(partPath)
+        || Files.size(partPath) != probe.length) {
+      progress = new Progress(probe);
+      try (RandomAccessFile file = new RandomAccessFile(partPath.toFile(), "rw")) {
+        file.setLength(probe.length);
+      }
+      progress.save(progressPath);
+    }
+
+    try (FileChannel channel = FileChannel.open(partPath, StandardOpenOption.WRITE)) {
+      fetchSegments(channel, progress);
+      channel.force(false);
+    } catch (ResourceChangedException e) {
+      discard();
+      throw e;
+    }
+    verify(probe);
+    try {
+      Files.move(
+          partPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(partPath, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    Files.deleteIfExists(progressPath);
+  }
+
+  /** Requests the first byte to learn the length, the validator and support of ranges. */
+  private Probe probe() throws IOException, URISyntaxException {
+    for (int attempt = 0; ; ++attempt) {
+      HttpGet httpGet = new HttpGet(sourceUrl.toURI());
+      httpGet.setHeader(HttpHeaders.RANGE, "bytes=0-0");
+      try (CloseableHttpResponse httpResponse = downloader.getHttpClient().execute(httpGet)) {
+        int statusCode = httpResponse.getStatusLine().getStatusCode();
+        if (statusCode != HttpStatus.SC_PARTIAL_CONTENT && statusCode != HttpStatus.SC_OK) {
+          throw new HttpDownloader.StatusException(
+              sourceUrl, statusCode, httpResponse.getStatusLine().toString());
+        }
+        String validator = headerValue(httpResponse, HttpHeaders.ETAG);
+        if (validator == null || validator.startsWith("W/")) {
+          // Weak ETags must not be used in If-Range.
+          validator = headerValue(httpResponse, HttpHeaders.LAST_MODIFIED);
+        }
+        long length =
+            statusCode == HttpStatus.SC_PARTIAL_CONTENT && validator != null
+                ? GtfsZipUrlInput.parseTotalLength(httpResponse)
+                : -1;
+        return new Probe(length, validator, headerValue(httpResponse, "Digest"));
+      } catch (IOException e) {
+        if (attempt >= downloader.getMaxRetries() || !HttpDownloader.isRetriable(e)) {
+          throw e;
+        }
+        downloader.backoff(attempt);
+      }
+    }
+  }
+
+  private void fetchSegments(FileChannel channel, Progress progress)
+      throws IOException, InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(parallelChunks);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < progress.done.length; ++i) {
+        if (progress.done[i] < progress.segmentLength(i)) {
+          final int segment = i;
+          futures.add(
+              executor.submit(
+                  () -> {
+                    fetchSegmentWithRetries(channel, progress, segment);
+                    return null;
+                  }));
+        }
+      }
+      IOException failure = null;
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure =
+                e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+          }
+        }
+      }
+      if (!(failure instanceof ResourceChangedException)) {
+        // Keep the progress of the completed bytes for the next attempt.
+        channel.force(false);
+        progress.save(progressPath);
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void fetchSegmentWithRetries(FileChannel channel, Progress progress, int segment)
+      throws IOException, URISyntaxException {
+    for (int attempt = 0; ; ++attempt) {
+      try {
+        fetchSegment(channel, progress, segment);
+        return;
+      } catch (ResourceChangedException e) {
+        throw e;
+      } catch (IOException e) {
+        if (attempt >= downloader.getMaxRetries() || !HttpDownloader.isRetriable(e)) {
+          throw e;
+        }
+        downloader.backoff(attempt);
+      }
+    }
+  }
+
+  private void fetchSegment(FileChannel channel, Progress progress, int segment)
+      throws IOException, URISyntaxException {
+    long start = segment * SEGMENT_SIZE + progress.done[segment];
+    long end = segment * SEGMENT_SIZE + progress.segmentLength(segment);
+    HttpGet httpGet = new HttpGet(sourceUrl.toURI());
+    httpGet.setHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + (end - 1));
+    httpGet.setHeader(HttpHeaders.IF_RANGE, progress.validator);
+    try (CloseableHttpResponse httpResponse = downloader.getHttpClient().execute(httpGet)) {
+      int statusCode = httpResponse.getStatusLine().getStatusCode();
+      if (statusCode == HttpStatus.SC_OK) {
+        throw new ResourceChangedException(sourceUrl);
+      }
+      if (statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+        throw new HttpDownloader.StatusException(
+            sourceUrl, statusCode, httpResponse.getStatusLine().toString());
+      }
+      byte[] buffer = new byte[64 << 10];
+      long position = start;
+      long unsaved = 0;
+      try (InputStream inputStream = httpResponse.getEntity().getContent()) {
+        int n;
+        while (position < end
+            && (n = inputStream.read(buffer, 0, (int) Math.min(buffer.length, end - position)))
+                >= 0) {
+          ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, n);
+          while (byteBuffer.hasRemaining()) {
+            position += channel.write(byteBuffer, position);
+          }
+          unsaved += n;
+          progress.advance(segment, n);
+          if (unsaved >= PROGRESS_INTERVAL) {
+            // Written bytes must reach the disk before the progress that refers to them.
+            channel.force(false);
+            progress.save(progressPath);
+            unsaved = 0;
+          }
+        }
+      }
+      if (position < end) {
+        throw new IOException("Connection closed before the end of range of " + sourceUrl);
+      }
+    }
+  }
+
+  private void verify(Probe probe) throws IOException {
+    if (Files.size(partPath) != probe.length) {
+      discard();
+      throw new IOException("Size mismatch for " + sourceUrl);
+    }
+    if (probe.digest != null) {
+      for (String digest : probe.digest.split(",")) {
+        int eq = digest.indexOf('=');
+        if (eq < 0) {
+          continue;
+        }
+        String algorithm = digest.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+        HashFunction hashFunction;
+        switch (algorithm) {
+          case "sha-256":
+            hashFunction = Hashing.sha256();
+            break;
+          case "sha-512":
+            hashFunction = Hashing.sha512();
+            break;
+          default:
+            // Other algorithms, such as the obsolete MD5, are not verified.
+            continue;
+        }
+        HashCode expected =
+            HashCode.fromBytes(BaseEncoding.base64().decode(digest.substring(eq + 1).trim()));
+        if (!MoreFiles.asByteSource(partPath).hash(hashFunction).equals(expected)) {
+          discard();
+          throw new IOException("Digest mismatch for " + sourceUrl);
+        }
+      }
+    }
+    try {
+      verifyZip(partPath);
+    } catch (IOException e) {
+      discard();
+      throw e;
+    }
+  }
+
+  /** Opens the central directory of a ZIP archive to detect truncated or corrupted files. */
+  private static void verifyZip(Path path) throws IOException {
+    new ZipFile(path.toFile()).close();
+  }
+
+  private void discard() throws IOException {
+    Files.deleteIfExists(partPath);
+    Files.deleteIfExists(progressPath);
+  }
+
+  @Nullable
+  private static String headerValue(CloseableHttpResponse httpResponse, String name) {
+    Header header = httpResponse.getFirstHeader(name);
+    return header == null ? null : header.getValue();
+  }
+
+  private static class Probe {
+    /** Total length, or -1 if ranges cannot be used. */
+    final long length;
+
+    @Nullable final String validator;
+    @Nullable final String digest;
+
+    Probe(long length, @Nullable String validator, @Nullable String digest) {
+      this.length = length;
+      this.validator = validator;
+      this.digest = digest;
+    }
+  }
+
+  /** Number of downloaded bytes at the start of every segment. */
+  private static class Progress {
+    final String validator;
+    final long length;
+    final long[] done;
+
+    Progress(Probe probe) {
+      this(probe.validator, probe.length);
+    }
+
+    private Progress(String validator, long length) {
+      this.validator = validator;
+      this.length = length;
+      this.done = new long[(int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+    }
+
+    @Nullable
+    static Progress load(Path path) {
+      if (!Files.exists(path)) {
+        return null;
+      }
+      Properties properties = new Properties();
+      try (InputStream inputStream = Files.newInputStream(path)) {
+        properties.load(inputStream);
+        Progress progress =
+            new Progress(
+                properties.getProperty(VALIDATOR_KEY),
+                Long.parseLong(properties.getProperty(LENGTH_KEY)));
+        for (int i = 0; i < progress.done.length; ++i) {
+          progress.done[i] =
+              Math.min(
+                  progress.segmentLength(i),
+                  Long.parseLong(properties.getProperty(SEGMENT_KEY_PREFIX + i, "0")));
+        }
+        return progress;
+      } catch (IOException | RuntimeException e) {
+        return null;
+      }
+    }
+
+    boolean matches(Probe probe) {
+      return probe.length == length && probe.validator.equals(validator);
+    }
+
+    long segmentLength(int segment) {
+      return Math.min(SEGMENT_SIZE, length - segment * SEGMENT_SIZE);
+    }
+
+    synchronized void advance(int segment, long bytes) {
+      done[segment] += bytes;
+    }
+
+    synchronized void save(Path path) throws IOException {
+      Properties properties = new Properties();
+      properties.setProperty(VALIDATOR_KEY, validator);
+      properties.setProperty(LENGTH_KEY, Long.toString(length));
+      for (int i = 0; i < done.length; ++i) {
+        properties.setProperty(SEGMENT_KEY_PREFIX + i, Long.toString(done[i]));
+      }
+      Path tempPath = Files.createTempFile(path.getParent(), "progress", ".tmp");
+      try (OutputStream outputStream = Files.newOutputStream(tempPath)) {
+        properties.store(outputStream, null);
+      }
+      Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /** Thrown when a file has changed on the server during a resumed download. */
+  private static class ResourceChangedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    ResourceChangedException(URL sourceUrl) {
+      super(sourceUrl + " has changed on the server, the download starts from scratch next time");
+    }
+  }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal reader for the central directory of a ZIP archive.
+ *
+ * <p>The central directory is stored at the end of the archive and lists all entries together with
+ * the offsets of their local headers. Knowing those offsets, an entry can be read directly without
+ * scanning the entries that precede it. This is used by inputs that cannot rely on {@link
+ * java.util.zip.ZipFile}, e.g., archives held in memory or fetched with HTTP range requests.
+ *
+ * <p>See https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT for the format.
+ */
+final class ZipCentralDirectory {
+  /**
+   * Maximal size of the end of central directory record: 22 bytes plus a comment of up to 65535
+   * bytes.
+   */
+  static final int MAX_END_RECORD_SIZE = 22 + 0xffff;
+
+  /** Amount of bytes that covers the end records of both ZIP and ZIP64 archives. */
+  static final int TAIL_SIZE = MAX_END_RECORD_SIZE + 20 + 56;
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final long ZIP64_MAGIC = 0xffffffffL;
+
+  private final List<Entry> entries;
+  private final long centralDirectoryOffset;
+  private final long[] sortedLocalHeaderOffsets;
+
+  private ZipCentralDirectory(List<Entry> entries, long centralDirectoryOffset) {
+    this.entries = entries;
+    this.centralDirectoryOffset = centralDirectoryOffset;
+    this.sortedLocalHeaderOffsets = new long[entries.size()];
+    for (int i = 0; i < entries.size(); ++i) {
+      sortedLocalHeaderOffsets[i] = entries.get(i).localHeaderOffset();
+    }
+    Arrays.sort(sortedLocalHeaderOffsets);
+  }
+
+  /**
+   * Locates the central directory by looking at the last bytes of an archive.
+   *
+   * @param tail the last bytes of the archive, at least {@link #TAIL_SIZE} bytes unless the archive
+   *     is shorter
+   * @param tailOffset offset of {@code tail[0]} within the archive
+   * @return location of the central directory within the archive
+   * @throws ZipException if the bytes do not end a ZIP archive
+   */
+  static Location locate(byte[] tail, long tailOffset) throws ZipException {
+    int end = -1;
+    for (int i = tail.length - 22; i >= 0 && i >= tail.length - MAX_END_RECORD_SIZE; --i) {
+      if (readInt(tail, i) == END_SIGNATURE) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new ZipException("End of central directory record not found");
+    }
+    long entryCount = readShort(tail, end + 10);
+    long size = readUnsignedInt(tail, end + 12);
+    long offset = readUnsignedInt(tail, end + 16);
+    if (entryCount != 0xffff && size != ZIP64_MAGIC && offset != ZIP64_MAGIC) {
+      return new Location(offset, size);
+    }
+    int locator = end - 20;
+    if (locator < 0 || readInt(tail, locator) != ZIP64_LOCATOR_SIGNATURE) {
+      // Not a ZIP64 archive, 0xffff entries is a legal value.
+      return new Location(offset, size);
+    }
+    long zip64EndOffset = readLong(tail, locator + 8) - tailOffset;
+    if (zip64EndOffset < 0
+        || zip64EndOffset + 56 > tail.length
+        || readInt(tail, (int) zip64EndOffset) != ZIP64_END_SIGNATURE) {
+      throw new ZipException("ZIP64 end of central directory record not found");
+    }
+    int zip64End = (int) zip64EndOffset;
+    return new Location(readLong(tail, zip64End + 48), readLong(tail, zip64End + 40));
+  }
+
+  /**
+   * Parses the central directory.
+   *
+   * @param buffer bytes that contain the whole central directory
+   * @param start position of the central directory in {@code buffer}
+   * @param location location of the central directory within the archive
+   * @return the parsed central directory
+   * @throws ZipException if the central directory is malformed
+   */
+  static ZipCentralDirectory parse(byte[] buffer, int start, Location location)
+      throws ZipException {
+    if (start < 0 || location.size() < 0 || location.size() > buffer.length - start) {
+      throw new ZipException("Central directory is out of bounds");
+    }
+    try {
+      return parseEntries(buffer, start, location);
+    } catch (IndexOutOfBoundsException e) {
+      // Lengths of names and extra fields that point outside of the central directory.
+      ZipException zipException = new ZipException("Malformed central directory");
+      zipException.initCause(e);
+      throw zipException;
+    }
+  }
+
+  private static ZipCentralDirectory parseEntries(byte[] buffer, int start, Location location)
+      throws ZipException {
+    List<Entry> entries = new ArrayList<>();
+    int pos = start;
+    int end = start + (int) location.size();
+    while (pos + CENTRAL_HEADER_SIZE <= end) {
+      if (readInt(buffer, pos) != CENTRAL_HEADER_SIGNATURE) {
+        throw new ZipException("Invalid central directory header at " + (pos - start));
+      }
+      int method = readShort(buffer, pos + 10);
+      long crc = readUnsignedInt(buffer, pos + 16);
+      long compressedSize = readUnsignedInt(buffer, pos + 20);
+      long size = readUnsignedInt(buffer, pos + 24);
+      int nameLength = readShort(buffer, pos + 28);
+      int extraLength = readShort(buffer, pos + 30);
+      int commentLength = readShort(buffer, pos + 32);
+      long localHeaderOffset = readUnsignedInt(buffer, pos + 42);
+      String name =
+          new String(buffer, pos + CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+
+      // ZIP64 extended information replaces the values that are set to 0xffffffff.
+      int extra = pos + CENTRAL_HEADER_SIZE + nameLength;
+      int extraEnd = extra + extraLength;
+      while (extra + 4 <= extraEnd) {
+        int id = readShort(buffer, extra);
+        int dataSize = readShort(buffer, extra + 2);
+        if (id == ZIP64_EXTRA_ID) {
+          int field = extra + 4;
+          if (size == ZIP64_MAGIC) {
+            size = readLong(buffer, field);
+            field += 8;
+          }
+          if (compressedSize == ZIP64_MAGIC) {
+            compressedSize = readLong(buffer, field);
+            field += 8;
+          }
+          if (localHeaderOffset == ZIP64_MAGIC) {
+            localHeaderOffset = readLong(buffer, field);
+          }
+          break;
+        }
+        extra += 4 + dataSize;
+      }
+      if (extraEnd + commentLength > end
+          || compressedSize < 0
+          || size < 0
+          || localHeaderOffset < 0) {
+        throw new ZipException("Invalid central directory header for " + name);
+      }
+      entries.add(new Entry(name, method, crc, compressedSize, size, localHeaderOffset));
+      pos = extraEnd + commentLength;
+    }
+    return new ZipCentralDirectory(entries, location.offset());
+  }
+
+  List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Returns the offset of the first byte after the data of the given entry.
+   *
+   * <p>This is the offset of the next local header or of the central directory. The returned range
+   * includes an optional data descriptor that follows the compressed data.
+   */
+  long getEntryEndOffset(Entry entry) {
+    int i = Arrays.binarySearch(sortedLocalHeaderOffsets, entry.localHeaderOffset());
+    // Skip duplicate offsets that may appear in malformed archives.
+    while (i + 1 < sortedLocalHeaderOffsets.length
+        && sortedLocalHeaderOffsets[i + 1] == entry.localHeaderOffset()) {
+      ++i;
+    }
+    return i + 1 < sortedLocalHeaderOffsets.length
+        ? sortedLocalHeaderOffsets[i + 1]
+        : centralDirectoryOffset;
+  }
+
+  /**
+   * Returns a stream with uncompressed data of an entry.
+   *
+   * @param stream a stream positioned at the local header of the entry
+   * @param entry the entry from the central directory
+   * @return a stream to read the uncompressed data of the entry
+   * @throws IOException if the local header is invalid or the compression method is not supported
+   */
+  static InputStream openEntry(InputStream stream, Entry entry) throws IOException {
+    byte[] header = new byte[LOCAL_HEADER_SIZE];
+    ByteStreams.readFully(stream, header);
+    if (readInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+      throw new ZipException("Invalid local header for " + entry.name());
+    }
+    ByteStreams.skipFully(stream, readShort(header, 26) + readShort(header, 28));
+    return decompress(ByteStreams.limit(stream, entry.compressedSize()), entry);
+  }
+
+  /**
+   * Returns the length of the local header of an entry, including the file name and extra field.
+   *
+   * @param buffer bytes of the archive
+   * @param localHeaderOffset position of the local header in {@code buffer}
+   * @return the length of the local header, the compressed data starts right after it
+   * @throws ZipException if the local header is invalid
+   */
+  static int localHeaderLength(byte[] buffer, int localHeaderOffset) throws ZipException {
+    if (localHeaderOffset + LOCAL_HEADER_SIZE > buffer.length
+        || readInt(buffer, localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+      throw new ZipException("Invalid local header at " + localHeaderOffset);
+    }
+    return LOCAL_HEADER_SIZE
+        + readShort(buffer, localHeaderOffset + 26)
+        + readShort(buffer, localHeaderOffset + 28);
+  }
+
+  /**
+   * Wraps a stream of compressed entry data with a decompressor.
+   *
+   * <p>Like {@link java.util.zip.ZipInputStream}, the returned stream verifies the CRC-32 and the
+   * size of the uncompressed data against the central directory and throws a {@link ZipException}
+   * on mismatch when the end of the entry is reached.
+   *
+   * @param compressed a stream that returns exactly the compressed data of the entry
+   * @param entry the entry from the central directory
+   * @return a stream to read the uncompressed data of the entry
+   * @throws ZipException if the compression method is not supported
+   */
+  static InputStream decompress(InputStream compressed, Entry entry) throws ZipException {
+    switch (entry.method()) {
+      case ZipEntry.STORED:
+        return new CrcCheckingInputStream(compressed, entry);
+      case ZipEntry.DEFLATED:
+        // Raw inflation may need an extra dummy byte after the compressed data, see the javadoc of
+        // Inflater(boolean).
+        return new CrcCheckingInputStream(
+            new EntryInflaterInputStream(
+                new SequenceInputStream(compressed, new ByteArrayInputStream(new byte[1]))),
+            entry);
+      default:
+        throw new ZipException(
+            "Unsupported compression method " + entry.method() + " for " + entry.name());
+    }
+  }
+
+  private static int readShort(byte[] b, int pos) {
+    return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8);
+  }
+
+  private static int readInt(byte[] b, int pos) {
+    return readShort(b, pos) | (readShort(b, pos + 2) << 16);
+  }
+
+  private static long readUnsignedInt(byte[] b, int pos) {
+    return readInt(b, pos) & 0xffffffffL;
+  }
+
+  private static long readLong(byte[] b, int pos) {
+    return readUnsignedInt(b, pos) | (readUnsignedInt(b, pos + 4) << 32);
+  }
+
+  /** Location of the central directory within an archive. */
+  static final class Location {
+    private final long offset;
+    private final long size;
+
+    Location(long offset, long size) {
+      this.offset = offset;
+      this.size = size;
+    }
+
+    long offset() {
+      return offset;
+    }
+
+    long size() {
+      return size;
+    }
+  }
+
+  /** An entry of the central directory. */
+  static final class Entry {
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+
+    Entry(
+        String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    String name() {
+      return name;
+    }
+
+    int method() {
+      return method;
+    }
+
+    long crc() {
+      return crc;
+    }
+
+    long compressedSize() {
+      return compressedSize;
+    }
+
+    long size() {
+      return size;
+    }
+
+    long localHeaderOffset() {
+      return localHeaderOffset;
+    }
+  }
+
+  /** Inflates raw deflate data and releases the native inflater on close. */
+  private static class EntryInflaterInputStream extends InflaterInputStream {
+    private boolean closed = false;
+
+    EntryInflaterInputStream(InputStream in) {
+      super(in, new Inflater(true), 8192);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      inf.end();
+      super.close();
+    }
+  }
+
+  /** Verifies the CRC-32 and the size of uncompressed entry data once its end is reached. */
+  private static class CrcCheckingInputStream extends CheckedInputStream {
+    private final Entry entry;
+    private long count = 0;
+    private boolean verified = false;
+
+    CrcCheckingInputStream(InputStream in, Entry entry) {
+      super(in, new CRC32());
+      this.entry = entry;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b < 0) {
+        verify();
+      } else {
+        ++count;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+      int n = super.read(buf, off, len);
+      if (n < 0) {
+        verify();
+      } else {
+        count += n;
+      }
+      return n;
+    }
+
+    private void verify() throws ZipException {
+      if (verified) {
+        return;
+      }
+      if (count != entry.size()) {
+        throw new ZipException(
+            "Invalid entry size for "
+                + entry.name()
+                + " (expected "
+                + entry.size()
+                + " but got "
+                + count
+                + " bytes)");
+      }
+      if (getChecksum().getValue() != entry.crc()) {
+        throw new ZipException(
+            String.format(
+                "Invalid entry CRC for %s (expected 0x%x but got 0x%x)",
+                entry.name(), entry.crc(), getChecksum().getValue()));
+      }
+      verified = true;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import javax.annotation.Nullable;
+import org.mobilitydata.gtfsvalidator.type.GtfsDate;
+import org.mobilitydata.gtfsvalidator.type.GtfsTime;
+
+/**
+ * Parses common forms of numbers, times and dates straight from UTF-8 bytes of a CSV field.
+ *
+ * <p>Every function returns null if the value has a form that it does not handle, e.g. a float in
+ * scientific notation, or if the value is invalid. The caller then falls back to parsing a string,
+ * which also produces the notice for an invalid value.
+ */
+final class ByteFieldParser {
+  // Doubles represent integers up to 2^53 exactly, so any mantissa of at most 15 digits divided by
+  // an exact power of ten is rounded correctly.
+  private static final int MAX_EXACT_DIGITS = 15;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private ByteFieldParser() {}
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  /**
+   * Tells if all bytes are printable ASCII characters. Bytes of multi-byte UTF-8 sequences are
+   * negative and therefore rejected.
+   */
+  static boolean isPrintableAscii(byte[] bytes, int offset, int length) {
+    for (int i = offset; i < offset + length; ++i) {
+      if (bytes[i] < 32 || bytes[i] == 127) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  static Integer parseInteger(byte[] bytes, int offset, int length) {
+    int end = offset + length;
+    int i = offset;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      ++i;
+    }
+    // At most 10 digits fit into an int.
+    if (i == end || end - i > 10) {
+      return null;
+    }
+    long value = 0;
+    for (; i < end; ++i) {
+      if (!isDigit(bytes[i])) {
+        return null;
+      }
+      value = value * 10 + (bytes[i] - '0');
+    }
+    if (negative) {
+      value = -value;
+    }
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      return null;
+    }
+    return (int) value;
+  }
+
+  /** Parses a float in plain decimal notation, such as "-12.345". */
+  @Nullable
+  static Double parseDouble(byte[] bytes, int offset, int length) {
+    int end = offset + length;
+    int i = offset;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      ++i;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = 0;
+    boolean seenPoint = false;
+    for (; i < end; ++i) {
+      byte b = bytes[i];
+      if (isDigit(b)) {
+        if (++digits > MAX_EXACT_DIGITS) {
+          return null;
+        }
+        mantissa = mantissa * 10 + (b - '0');
+        if (seenPoint) {
+          ++fractionDigits;
+        }
+      } else if (b == '.' && !seenPoint) {
+        seenPoint = true;
+      } else {
+        return null;
+      }
+    }
+    if (digits == 0) {
+      return null;
+    }
+    double value = mantissa / POWERS_OF_TEN[fractionDigits];
+    return negative ? -value : value;
+  }
+
+  /** Parses a time in H:MM:SS, HH:MM:SS or HHH:MM:SS format, see {@link GtfsTime#fromString}. */
+  @Nullable
+  static GtfsTime parseTime(byte[] bytes, int offset, int length) {
+    if (length < 7 || length > 9) {
+      return null;
+    }
+    int end = offset + length;
+    int hourEnd = end - 6;
+    if (bytes[hourEnd] != ':' || bytes[end - 3] != ':') {
+      return null;
+    }
+    int hour = 0;
+    for (int i = offset; i < hourEnd; ++i) {
+      if (!isDigit(bytes[i])) {
+        return null;
+      }
+      hour = hour * 10 + (bytes[i] - '0');
+    }
+    int minute = parseTwoDigits(bytes, end - 5);
+    int second = parseTwoDigits(bytes, end - 2);
+    if (minute < 0 || minute >= 60 || second < 0 || second >= 60) {
+      return null;
+    }
+    return GtfsTime.fromSecondsSinceMidnight(hour * 3600 + minute * 60 + second);
+  }
+
+  /** Parses a date in YYYYMMDD format, see {@link GtfsDate#fromString}. */
+  @Nullable
+  static GtfsDate parseDate(byte[] bytes, int offset, int length) {
+    if (length != 8) {
+      return null;
+    }
+    int year = 0;
+    for (int i = offset; i < offset + 4; ++i) {
+      if (!isDigit(bytes[i])) {
+        return null;
+      }
+      year = year * 10 + (bytes[i] - '0');
+    }
+    int month = parseTwoDigits(bytes, offset + 4);
+    int day = parseTwoDigits(bytes, offset + 6);
+    if (!GtfsDate.isValidDate(year, month, day)) {
+      return null;
+    }
+    return GtfsDate.fromYearMonthDay(year, month, day);
+  }
+
+  /** Returns the value of two decimal digits or -1 if they are not digits. */
+  private static int parseTwoDigits(byte[] bytes, int offset) {
+    if (!isDigit(bytes[offset]) || !isDigit(bytes[offset + 1])) {
+      return -1;
+    }
+    return (bytes[offset] - '0') * 10 + (bytes[offset + 1] - '0');
+  }
+}
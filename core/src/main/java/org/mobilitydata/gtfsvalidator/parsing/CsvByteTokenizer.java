@@ -0,0 +1,405 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import org.mobilitydata.gtfsvalidator.util.ByteBufferInputStream;
+
+/**
+ * Splits UTF-8 encoded CSV data into rows and fields without decoding it to chars.
+ *
+ * <p>Fields of the current row are exposed as slices of an internal buffer, so that numbers, times
+ * and dates can be parsed from bytes and strings are only created for values that are requested as
+ * text. Escaped quotes of quoted values are unescaped in place.
+ *
+ * <p>The format follows the univocity parser as configured by {@link CsvFile}: unquoted values are
+ * trimmed, whitespace around quoted values is ignored, blank lines are skipped and rows are
+ * separated by '\n' with an optional '\r' before it. Like in univocity, a blank last line without a
+ * terminator that is not empty, e.g. " ", is a row with a single empty value.
+ */
+final class CsvByteTokenizer {
+  private static final int INITIAL_BUFFER_SIZE = 64 << 10;
+
+  // States of the scanner that finds the end of a row.
+  private static final int FIELD_START = 0;
+  private static final int UNQUOTED = 1;
+  private static final int QUOTED = 2;
+  private static final int QUOTE_IN_QUOTED = 3;
+
+  // Null if the tokenizer was created for a chunk of rows.
+  @Nullable private final InputStream inputStream;
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  // Start of data that has not been tokenized yet.
+  private int position;
+  // End of valid data in the buffer.
+  private int limit;
+  private boolean endOfInput;
+  // Number of lines before the next row.
+  private long lineCount;
+
+  private int[] fieldOffsets = new int[16];
+  private int[] fieldLengths = new int[16];
+  private int fieldCount;
+  private int rowStart;
+  private int rowEnd;
+  private long rowNumber;
+
+  // Set by findRowEnd.
+  private int rowNewlines;
+  private boolean rowHasContent;
+
+  CsvByteTokenizer(InputStream inputStream) {
+    this.inputStream = inputStream;
+    try {
+      while (limit < 3 && !endOfInput) {
+        fill();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    // Skip the UTF-8 byte order mark.
+    if (limit >= 3
+        && buffer[0] == (byte) 0xEF
+        && buffer[1] == (byte) 0xBB
+        && buffer[2] == (byte) 0xBF) {
+      position = 3;
+    }
+  }
+
+  /**
+   * Creates a tokenizer for rows that were split off from a file by {@link #nextChunk}. The data is
+   * used as the buffer and modified in place.
+   */
+  CsvByteTokenizer(byte[] data) {
+    this.inputStream = null;
+    this.buffer = data;
+    this.limit = data.length;
+    this.endOfInput = true;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    // Bytes of multi-byte UTF-8 sequences are negative.
+    return b >= 0 && b <= ' ';
+  }
+
+  /**
+   * Advances to the next non-blank row, or to a blank last line without a terminator.
+   *
+   * @return false if the end of input was reached
+   */
+  boolean nextRow() {
+    try {
+      while (true) {
+        int end = findRowEnd(position);
+        if (end < 0) {
+          return false;
+        }
+        boolean terminated = end < limit;
+        rowNumber = lineCount + 1 + rowNewlines;
+        lineCount += rowNewlines + (terminated ? 1 : 0);
+        rowStart = position;
+        rowEnd = end;
+        position = terminated ? end + 1 : end;
+        if (rowHasContent || !terminated) {
+          tokenize(rowStart, rowEnd);
+          return true;
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Advances to the next non-empty line and returns its bytes without splitting them into fields,
+   * so that the header can be parsed by the univocity parser. Unlike {@link #nextRow}, lines with
+   * only whitespace are returned.
+   *
+   * @return a copy of the row without its terminator, or null if the end of input was reached
+   */
+  @Nullable
+  byte[] nextRawRow() {
+    try {
+      while (true) {
+        int end = findRowEnd(position);
+        if (end < 0) {
+          return null;
+        }
+        boolean terminated = end < limit;
+        rowNumber = lineCount + 1 + rowNewlines;
+        lineCount += rowNewlines + (terminated ? 1 : 0);
+        int start = position;
+        position = terminated ? end + 1 : end;
+        fieldCount = 0;
+        if (end > start) {
+          return Arrays.copyOfRange(buffer, start, end);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads whole rows of at least {@code minSize} bytes, unless the input ends earlier, without
+   * splitting them into fields.
+   *
+   * <p>Rows are copied with their terminators and blank lines, so that a tokenizer for the chunk,
+   * see {@link #CsvByteTokenizer(byte[])}, yields the same rows with row numbers offset by {@link
+   * #getLineCount()} before this call.
+   *
+   * @param minSize minimal size of the chunk in bytes
+   * @return the rows, or null if there are no more rows
+   */
+  @Nullable
+  byte[] nextChunk(int minSize) {
+    // Rows stay in the buffer from position on, so it grows to the size of the chunk.
+    int chunkLength = 0;
+    try {
+      while (chunkLength < minSize) {
+        int end = findRowEnd(position + chunkLength);
+        if (end < 0) {
+          break;
+        }
+        boolean terminated = end < limit;
+        lineCount += rowNewlines + (terminated ? 1 : 0);
+        chunkLength = (terminated ? end + 1 : end) - position;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (chunkLength == 0) {
+      return null;
+    }
+    byte[] chunk = Arrays.copyOfRange(buffer, position, position + chunkLength);
+    position += chunkLength;
+    return chunk;
+  }
+
+  /**
+   * Finds the '\n' that terminates the row starting at {@code from}, reading more data if needed.
+   *
+   * <p>Data is only scanned and not modified, so scanning continues after the buffer is compacted.
+   * Compaction keeps data from {@link #position} on and shifts it to the start of the buffer.
+   *
+   * @param from start of the row, at or after {@link #position}
+   * @return index of the terminating '\n', {@link #limit} for the last row without a terminator or
+   *     -1 if there are no more rows
+   */
+  private int findRowEnd(int from) throws IOException {
+    int state = FIELD_START;
+    rowNewlines = 0;
+    rowHasContent = false;
+    int i = from;
+    while (true) {
+      if (i == limit) {
+        if (endOfInput) {
+          return i > from ? i : -1;
+        }
+        int shift = position;
+        fill();
+        i -= shift;
+        from -= shift;
+        continue;
+      }
+      byte b = buffer[i];
+      switch (state) {
+        case FIELD_START:
+          if (b == '\n') {
+            return i;
+          }
+          if (b == '"') {
+            state = QUOTED;
+            rowHasContent = true;
+          } else if (b == ',') {
+            rowHasContent = true;
+          } else if (!isWhitespace(b)) {
+            state = UNQUOTED;
+            rowHasContent = true;
+          }
+          break;
+        case UNQUOTED:
+          if (b == '\n') {
+            return i;
+          }
+          if (b == ',') {
+            state = FIELD_START;
+          }
+          break;
+        case QUOTED:
+          if (b == '"') {
+            state = QUOTE_IN_QUOTED;
+          } else if (b == '\n') {
+            ++rowNewlines;
+          }
+          break;
+        case QUOTE_IN_QUOTED:
+          if (b == '\n') {
+            return i;
+          }
+          if (b == '"') {
+            state = QUOTED;
+          } else if (b == ',') {
+            state = FIELD_START;
+          } else {
+            state = UNQUOTED;
+          }
+          break;
+      }
+      ++i;
+    }
+  }
+
+  /** Moves unread data to the start of the buffer, grows it if it is full and reads more. */
+  private void fill() throws IOException {
+    if (position > 0) {
+      System.arraycopy(buffer, position, buffer, 0, limit - position);
+      limit -= position;
+      position = 0;
+    }
+    if (limit == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    int n = inputStream.read(buffer, limit, buffer.length - limit);
+    if (n < 0) {
+      endOfInput = true;
+    } else {
+      limit += n;
+    }
+  }
+
+  /** Splits a complete row into fields. */
+  private void tokenize(int from, int end) {
+    fieldCount = 0;
+    int i = from;
+    while (true) {
+      while (i < end && isWhitespace(buffer[i])) {
+        ++i;
+      }
+      if (i < end && buffer[i] == '"') {
+        int fieldStart = ++i;
+        int w = fieldStart;
+        while (i < end) {
+          byte b = buffer[i++];
+          if (b == '"') {
+            if (i < end && buffer[i] == '"') {
+              buffer[w++] = '"';
+              ++i;
+            } else {
+              break;
+            }
+          } else {
+            buffer[w++] = b;
+          }
+        }
+        // Keep characters between the closing quote and the delimiter, except whitespace.
+        int quotedEnd = w;
+        while (i < end && buffer[i] != ',') {
+          buffer[w++] = buffer[i++];
+        }
+        while (w > quotedEnd && isWhitespace(buffer[w - 1])) {
+          --w;
+        }
+        addField(fieldStart, w - fieldStart);
+      } else {
+        int fieldStart = i;
+        while (i < end && buffer[i] != ',') {
+          ++i;
+        }
+        int fieldEnd = i;
+        while (fieldEnd > fieldStart && isWhitespace(buffer[fieldEnd - 1])) {
+          --fieldEnd;
+        }
+        addField(fieldStart, fieldEnd - fieldStart);
+      }
+      if (i >= end) {
+        return;
+      }
+      // Skip the delimiter.
+      ++i;
+    }
+  }
+
+  private void addField(int offset, int length) {
+    if (fieldCount == fieldOffsets.length) {
+      fieldOffsets = Arrays.copyOf(fieldOffsets, fieldCount * 2);
+      fieldLengths = Arrays.copyOf(fieldLengths, fieldCount * 2);
+    }
+    fieldOffsets[fieldCount] = offset;
+    fieldLengths[fieldCount] = length;
+    ++fieldCount;
+  }
+
+  /** Buffer that holds the fields of the current row. It may change on the next row. */
+  byte[] getBuffer() {
+    return buffer;
+  }
+
+  int[] getFieldOffsets() {
+    return fieldOffsets;
+  }
+
+  int[] getFieldLengths() {
+    return fieldLengths;
+  }
+
+  int getFieldCount() {
+    return fieldCount;
+  }
+
+  /** Start of the current row in the buffer. All fields of the row lie within the row bounds. */
+  int getRowStart() {
+    return rowStart;
+  }
+
+  /** End of the current row in the buffer, exclusive. */
+  int getRowEnd() {
+    return rowEnd;
+  }
+
+  /** Line number of the current row, counting from 1. */
+  long getRowNumber() {
+    return rowNumber;
+  }
+
+  /** Number of lines up to the end of the current row, including its terminator. */
+  long getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * Returns the input after the current row, so that another parser continues from there. This
+   * tokenizer must not be used afterwards.
+   */
+  InputStream getRemainingInput() {
+    int unread = limit - position;
+    if (inputStream instanceof ByteBufferInputStream) {
+      // Step back in the shared buffer, so that a memory-mapped file is still decoded in place.
+      ByteBuffer byteBuffer = ((ByteBufferInputStream) inputStream).getByteBuffer();
+      byteBuffer.position(byteBuffer.position() - unread);
+      return inputStream;
+    }
+    return new SequenceInputStream(new ByteArrayInputStream(buffer, position, unread), inputStream);
+  }
+}
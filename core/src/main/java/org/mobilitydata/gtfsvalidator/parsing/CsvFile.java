@@ -18,17 +18,19 @@ package org.mobilitydata.gtfsvalidator.parsing;
 
 import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CodingErrorAction;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import javax.annotation.Nullable;
-import org.apache.commons.io.ByteOrderMark;
-import org.apache.commons.io.input.BOMInputStream;
+import org.mobilitydata.gtfsvalidator.util.ByteBufferInputStream;
 
 /**
  * Reading support for a CSV file in GTFS feed. The file normally has headers and 0 or several data
@@ -36,33 +38,79 @@ import org.apache.commons.io.input.BOMInputStream;
  */
 public class CsvFile implements Iterable<CsvRow> {
   private final boolean isEmpty;
-  private final CsvParser parser;
+  private final boolean byteTokenizer;
+  // The tokenizer is set for the byte tokenizer, otherwise the parser is set before the first row.
+  @Nullable private CsvParser parser;
+  @Nullable private final CsvByteTokenizer tokenizer;
+  // Tokenizer that has read the header until the parser is created.
+  @Nullable private CsvByteTokenizer headerTokenizer;
+  // Columns for which the parser creates strings, null for all columns, see createParser.
+  @Nullable private Integer[] selectedIndexes;
+  // Lines before the input of the parser or the tokenizer if the header was read separately.
+  private long lineOffset;
   private final HashMap<String, Integer> columnIndices = new HashMap<>();
   private final String filename;
   private String[] columnNames;
+  // The only row instance if row reuse is enabled, null otherwise.
+  @Nullable private CsvRow reusableRow;
+  // Shared with chunks of this file, see nextChunk.
+  private final Utf8Reader.Statistics decodingStatistics;
 
   public CsvFile(InputStream inputStream, String filename) {
-    this.filename = filename;
-
-    // Only UTF-8 is supported according to GTFS reference. We may add optional support for other
-    // encodings later.
-    final BOMInputStream bomInputStream = new BOMInputStream(inputStream, ByteOrderMark.UTF_8);
-    final CharsetDecoder decoder =
-        StandardCharsets.UTF_8
-            .newDecoder()
-            .replaceWith("\uFFFD")
-            .onMalformedInput(CodingErrorAction.REPLACE);
-    final BufferedReader reader =
-        new BufferedReader(new InputStreamReader(bomInputStream, decoder));
+    this(inputStream, filename, false);
+  }
 
-    CsvParserSettings settings = new CsvParserSettings();
-    settings.getFormat().setLineSeparator("\n");
-    settings.getFormat().setDelimiter(',');
-    settings.setHeaderExtractionEnabled(true);
-    parser = new CsvParser(settings);
-    parser.beginParsing(reader);
+  /**
+   * Opens a CSV file.
+   *
+   * <p>With the byte tokenizer, rows are split without decoding the file and values are kept as
+   * UTF-8 bytes, so that {@link RowParser} parses numbers, times and dates from bytes and strings
+   * are only created for values that are requested as text.
+   *
+   * @param inputStream stream with contents of the file
+   * @param filename base name of the file, e.g., "stops.txt"
+   * @param byteTokenizer whether to use {@link CsvByteTokenizer} instead of the univocity parser
+   */
+  public CsvFile(InputStream inputStream, String filename, boolean byteTokenizer) {
+    this(inputStream, filename, byteTokenizer, null);
+  }
 
-    columnNames = parser.getContext().headers();
+  /**
+   * Opens a CSV file and only reads the selected columns.
+   *
+   * <p>Values of other columns are skipped by the parser without creating strings and read as null,
+   * which saves time and memory on files with many extra columns. Column names and column counts of
+   * rows still cover all columns. The byte tokenizer ignores the selection because it only decodes
+   * the values that are requested.
+   *
+   * @param inputStream stream with contents of the file
+   * @param filename base name of the file, e.g., "stops.txt"
+   * @param byteTokenizer whether to use {@link CsvByteTokenizer} instead of the univocity parser
+   * @param selectedColumns names of columns to read, or null to read all columns
+   */
+  public CsvFile(
+      InputStream inputStream,
+      String filename,
+      boolean byteTokenizer,
+      @Nullable Set<String> selectedColumns) {
+    this.filename = filename;
+    this.byteTokenizer = byteTokenizer;
+    this.decodingStatistics = new Utf8Reader.Statistics();
+    if (byteTokenizer) {
+      tokenizer = new CsvByteTokenizer(inputStream);
+      columnNames = readHeader(tokenizer);
+    } else if (selectedColumns == null) {
+      tokenizer = null;
+      parser = createParser(inputStream, true, null, decodingStatistics);
+      columnNames = parser.getContext().headers();
+    } else {
+      // Read the header first, so that the parser selects columns by their exact indices. The
+      // parser is created for the first row, so that the rows may be split into chunks instead.
+      tokenizer = null;
+      headerTokenizer = new CsvByteTokenizer(inputStream);
+      columnNames = readHeader(headerTokenizer);
+      selectedIndexes = selectIndexes(columnNames, selectedColumns);
+    }
     isEmpty = columnNames == null;
     if (isEmpty) {
       // Do not leave them as null.
@@ -74,6 +122,136 @@ public class CsvFile implements Iterable<CsvRow> {
     }
   }
 
+  /** Creates a file for rows that were split off from another file, see {@link #nextChunk}. */
+  private CsvFile(CsvFile file, byte[] rows, long lineOffset) {
+    filename = file.filename;
+    byteTokenizer = file.byteTokenizer;
+    decodingStatistics = file.decodingStatistics;
+    columnNames = file.columnNames;
+    columnIndices.putAll(file.columnIndices);
+    isEmpty = false;
+    selectedIndexes = file.selectedIndexes;
+    this.lineOffset = lineOffset;
+    if (byteTokenizer) {
+      tokenizer = new CsvByteTokenizer(rows);
+    } else {
+      tokenizer = null;
+      parser =
+          createParser(new ByteArrayInputStream(rows), false, selectedIndexes, decodingStatistics);
+    }
+  }
+
+  /**
+   * Returns indexes of the selected columns, or null if all columns are selected.
+   *
+   * <p>The last column and the column after it are always selected, see {@link #createParser}.
+   */
+  @Nullable
+  private static Integer[] selectIndexes(
+      @Nullable String[] columnNames, Set<String> selectedColumns) {
+    if (columnNames == null || columnNames.length == 0) {
+      return null;
+    }
+    List<Integer> indexes = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    for (int i = 0; i < columnNames.length; ++i) {
+      // Loaders read the first column with a given name.
+      boolean first = seen.add(columnNames[i]);
+      if ((first && selectedColumns.contains(columnNames[i])) || i == columnNames.length - 1) {
+        indexes.add(i);
+      }
+    }
+    if (indexes.size() == columnNames.length) {
+      return null;
+    }
+    indexes.add(columnNames.length);
+    return indexes.toArray(new Integer[0]);
+  }
+
+  /**
+   * Creates a parser for the given input.
+   *
+   * <p>If columns are selected, the parser skips values of other columns. Such a parser pads all
+   * rows to the longest row seen so far and does not report their length, so the last column of the
+   * header and the column after it are always selected and empty values are read as "". A null in
+   * the last column then tells that the row is short and a value after it tells that the row is
+   * long, see {@link #countColumns}.
+   *
+   * @param inputStream the input
+   * @param extractHeader whether the first row of the input is the header
+   * @param selectedIndexes indexes of columns to read, or null to read all columns
+   * @param decodingStatistics statistics to update while the input is decoded
+   */
+  private static CsvParser createParser(
+      InputStream inputStream,
+      boolean extractHeader,
+      @Nullable Integer[] selectedIndexes,
+      Utf8Reader.Statistics decodingStatistics) {
+    // Only UTF-8 is supported according to GTFS reference. We may add optional support for other
+    // encodings later.
+    // The parser buffers its input internally, so the reader is not wrapped in a BufferedReader.
+    final Reader reader;
+    if (inputStream instanceof ByteBufferInputStream) {
+      // Decode a memory-mapped file in place without copying bytes to intermediate buffers.
+      reader =
+          new Utf8Reader(((ByteBufferInputStream) inputStream).getByteBuffer(), decodingStatistics);
+    } else {
+      reader = new Utf8Reader(inputStream, decodingStatistics);
+    }
+
+    CsvParserSettings settings = new CsvParserSettings();
+    settings.getFormat().setLineSeparator("\n");
+    settings.getFormat().setDelimiter(',');
+    settings.setHeaderExtractionEnabled(extractHeader);
+    if (selectedIndexes != null) {
+      settings.selectIndexes(selectedIndexes);
+      settings.setColumnReorderingEnabled(false);
+      settings.setNullValue("");
+      settings.setEmptyValue("");
+    }
+    CsvParser parser = new CsvParser(settings);
+    parser.beginParsing(reader);
+    return parser;
+  }
+
+  /**
+   * Reads the header from the tokenizer and parses it with the univocity parser, so that malformed
+   * or blank headers are read the same way whether the rows are tokenized by bytes or not.
+   *
+   * @return column names, or null if the file is empty
+   */
+  @Nullable
+  private static String[] readHeader(CsvByteTokenizer tokenizer) {
+    byte[] header = tokenizer.nextRawRow();
+    if (header == null) {
+      return null;
+    }
+    CsvParser headerParser =
+        createParser(new ByteArrayInputStream(header), true, null, new Utf8Reader.Statistics());
+    String[] columnNames = headerParser.getContext().headers();
+    headerParser.stopParsing();
+    return columnNames;
+  }
+
+  /**
+   * Returns the number of bytes of this file and its chunks that the univocity parser has read.
+   *
+   * <p>The byte tokenizer only decodes values that are requested, so such bytes are not counted.
+   */
+  public long getDecodedByteCount() {
+    return decodingStatistics.getByteCount();
+  }
+
+  /** Returns the number of bytes that were decoded as plain ASCII, see {@link Utf8Reader}. */
+  public long getDecodedAsciiByteCount() {
+    return decodingStatistics.getAsciiByteCount();
+  }
+
+  /** Returns the total time that readers of this file and its chunks spent in decoding. */
+  public long getDecodeNanos() {
+    return decodingStatistics.getDecodeNanos();
+  }
+
   /**
    * Tells if the file is empty, i.e. it has no rows and even no headers.
    *
@@ -83,6 +261,46 @@ public class CsvFile implements Iterable<CsvRow> {
     return isEmpty;
   }
 
+  /**
+   * Enables or disables reuse of a single {@link CsvRow} for all rows of the file.
+   *
+   * <p>Loaders of large files, e.g. stop_times.txt, copy values of each row into an entity before
+   * advancing to the next row, so they do not need a new row object per line. If reuse is enabled,
+   * the row returned by the iterator is only valid until the next call to {@code hasNext()} or
+   * {@code next()}.
+   *
+   * @param enabled whether rows are reused
+   */
+  public void setRowReuseEnabled(boolean enabled) {
+    reusableRow = enabled ? new CsvRow(this, 0, new String[] {}) : null;
+  }
+
+  /**
+   * Splits off the next rows of the file, so that they can be parsed on another thread.
+   *
+   * <p>Chunks end at row boundaries, so quoted values with line breaks are never split, and their
+   * rows keep the row numbers of the whole file. Splitting is supported for files that are read
+   * with the byte tokenizer or with selected columns and it cannot be combined with iteration over
+   * this file.
+   *
+   * @param minChunkSize minimal size of a chunk in bytes, the last chunk may be smaller
+   * @return a file with the columns of this file and the next rows, or null if there are no more
+   *     rows
+   */
+  @Nullable
+  public CsvFile nextChunk(int minChunkSize) {
+    CsvByteTokenizer source = byteTokenizer ? tokenizer : headerTokenizer;
+    if (source == null) {
+      throw new IllegalStateException("Rows of " + filename + " cannot be split into chunks");
+    }
+    if (isEmpty) {
+      return null;
+    }
+    long chunkLineOffset = lineOffset + source.getLineCount();
+    byte[] rows = source.nextChunk(minChunkSize);
+    return rows == null ? null : new CsvFile(this, rows, chunkLineOffset);
+  }
+
   /**
    * Returns an iterator over this CSV file.
    *
@@ -103,11 +321,79 @@ public class CsvFile implements Iterable<CsvRow> {
    */
   @Nullable
   private CsvRow nextResult() {
+    if (tokenizer != null) {
+      return nextTokenizedResult();
+    }
+    if (parser == null) {
+      lineOffset = headerTokenizer.getLineCount();
+      parser =
+          createParser(
+              headerTokenizer.getRemainingInput(), false, selectedIndexes, decodingStatistics);
+      headerTokenizer = null;
+    }
     String[] columnValues = parser.parseNext();
     if (columnValues == null) {
       return null;
     }
-    return new CsvRow(this, parser.getContext().currentLine(), columnValues);
+    long rowNumber = lineOffset + parser.getContext().currentLine();
+    int columnCount = columnValues.length;
+    if (selectedIndexes != null) {
+      columnCount = columnNames.length;
+      if (columnValues.length < columnCount
+          || columnValues[columnCount - 1] == null
+          || (columnValues.length > columnCount && columnValues[columnCount] != null)) {
+        columnCount = countColumns(parser.getContext().currentParsedContent());
+      }
+    }
+    if (reusableRow == null) {
+      return new CsvRow(this, rowNumber, columnValues, columnCount);
+    }
+    reusableRow.reset(rowNumber, columnValues, columnCount);
+    return reusableRow;
+  }
+
+  /**
+   * Counts the columns of a short or long row from its original content. This only happens for
+   * malformed rows, so the row is simply tokenized again.
+   */
+  private static int countColumns(@Nullable String content) {
+    if (content == null) {
+      return 1;
+    }
+    CsvByteTokenizer rowTokenizer =
+        new CsvByteTokenizer(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    // A blank row still has a single empty column.
+    return rowTokenizer.nextRow() ? rowTokenizer.getFieldCount() : 1;
+  }
+
+  @Nullable
+  private CsvRow nextTokenizedResult() {
+    if (!tokenizer.nextRow()) {
+      return null;
+    }
+    int fieldCount = tokenizer.getFieldCount();
+    if (reusableRow != null) {
+      reusableRow.reset(
+          lineOffset + tokenizer.getRowNumber(),
+          tokenizer.getBuffer(),
+          tokenizer.getFieldOffsets(),
+          tokenizer.getFieldLengths(),
+          fieldCount);
+      return reusableRow;
+    }
+    // The tokenizer overwrites its buffers on the next row, so the row gets its own copy.
+    int rowStart = tokenizer.getRowStart();
+    int[] fieldOffsets = Arrays.copyOf(tokenizer.getFieldOffsets(), fieldCount);
+    for (int i = 0; i < fieldCount; ++i) {
+      fieldOffsets[i] -= rowStart;
+    }
+    return new CsvRow(
+        this,
+        lineOffset + tokenizer.getRowNumber(),
+        Arrays.copyOfRange(tokenizer.getBuffer(), rowStart, tokenizer.getRowEnd()),
+        fieldOffsets,
+        Arrays.copyOf(tokenizer.getFieldLengths(), fieldCount),
+        fieldCount);
   }
 
   /**
@@ -139,29 +425,33 @@ public class CsvFile implements Iterable<CsvRow> {
     return columnNames[columnIndex];
   }
 
+  /**
+   * Iterates over rows of the file.
+   *
+   * <p>A row is parsed only when it is requested, so that a reused row is not overwritten before
+   * the caller has consumed it.
+   */
   class CsvFileIterator implements Iterator<CsvRow> {
-    boolean started = false;
+    boolean fetched = false;
     CsvRow nextRow = null;
 
     @Override
     public boolean hasNext() {
-      if (started) {
-        return nextRow != null;
+      if (!fetched) {
+        nextRow = nextResult();
+        fetched = true;
       }
-      started = true;
-      nextRow = nextResult();
       return nextRow != null;
     }
 
     @Override
     @Nullable
     public CsvRow next() {
-      if (!started) {
-        hasNext();
+      if (!hasNext()) {
+        return null;
       }
-      CsvRow out = nextRow;
-      nextRow = nextResult();
-      return out;
+      fetched = false;
+      return nextRow;
     }
   }
 }
@@ -17,18 +17,91 @@
 package org.mobilitydata.gtfsvalidator.parsing;
 
 import com.google.common.base.Strings;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import javax.annotation.Nullable;
 
-/** Read access to a data row in a CSV file. */
+/**
+ * Read access to a data row in a CSV file.
+ *
+ * <p>If row reuse is enabled in {@link CsvFile}, the same instance is updated in place for every
+ * row of the file and it must not be retained after advancing the iterator.
+ *
+ * <p>A row read by {@link CsvByteTokenizer} keeps its values as UTF-8 bytes and decodes a value to
+ * a string only when it is requested.
+ */
 public class CsvRow {
   private final CsvFile csvFile;
-  private final long rowNumber;
-  private final String[] columnValues;
+  private long rowNumber;
+  // Values of the row. For a row backed by bytes, these are decoded values or nulls.
+  private String[] columnValues;
+  private int columnCount;
+  @Nullable private byte[] bytes;
+  private int[] fieldOffsets;
+  private int[] fieldLengths;
 
   public CsvRow(CsvFile csvFile, long rowNumber, String[] columnValues) {
+    this(csvFile, rowNumber, columnValues, columnValues.length);
+  }
+
+  /**
+   * Creates a row whose values may be padded with nulls, see {@link CsvFile#CsvFile(
+   * java.io.InputStream, String, boolean, java.util.Set)}.
+   */
+  CsvRow(CsvFile csvFile, long rowNumber, String[] columnValues, int columnCount) {
+    this.csvFile = csvFile;
+    reset(rowNumber, columnValues, columnCount);
+  }
+
+  /** Creates a row that is backed by UTF-8 bytes of its fields. */
+  CsvRow(
+      CsvFile csvFile,
+      long rowNumber,
+      byte[] bytes,
+      int[] fieldOffsets,
+      int[] fieldLengths,
+      int fieldCount) {
     this.csvFile = csvFile;
+    this.columnValues = new String[fieldCount];
+    reset(rowNumber, bytes, fieldOffsets, fieldLengths, fieldCount);
+  }
+
+  /** Points this row to the next row of the same file. */
+  void reset(long rowNumber, String[] columnValues, int columnCount) {
     this.rowNumber = rowNumber;
     this.columnValues = columnValues;
+    this.columnCount = columnCount;
+    this.bytes = null;
+  }
+
+  /** Points this row to the next row of the same file that is backed by bytes. */
+  void reset(long rowNumber, byte[] bytes, int[] fieldOffsets, int[] fieldLengths, int fieldCount) {
+    this.rowNumber = rowNumber;
+    this.bytes = bytes;
+    this.fieldOffsets = fieldOffsets;
+    this.fieldLengths = fieldLengths;
+    this.columnCount = fieldCount;
+    if (columnValues.length < fieldCount) {
+      columnValues = new String[fieldCount];
+    } else {
+      Arrays.fill(columnValues, 0, fieldCount, null);
+    }
+  }
+
+  /** Returns UTF-8 bytes that hold the fields of this row or null if the row holds strings. */
+  @Nullable
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  /** Returns the offset of a field in {@link #getBytes()}. */
+  int getFieldOffset(int columnIndex) {
+    return fieldOffsets[columnIndex];
+  }
+
+  /** Returns the length of a field in {@link #getBytes()}, 0 for an empty field. */
+  int getFieldLength(int columnIndex) {
+    return fieldLengths[columnIndex];
   }
 
   public long getRowNumber() {
@@ -40,7 +113,7 @@ public class CsvRow {
   }
 
   public int getColumnCount() {
-    return columnValues.length;
+    return columnCount;
   }
 
   public String getColumnName(int columnIndex) {
@@ -75,10 +148,17 @@ public class CsvRow {
    */
   @Nullable
   public String asString(int columnIndex) {
-    if (columnIndex < 0 || columnIndex >= columnValues.length) {
+    // With selected columns, values of a long row after the selected ones are not kept.
+    if (columnIndex < 0 || columnIndex >= columnCount || columnIndex >= columnValues.length) {
       return null;
     }
     String s = columnValues[columnIndex];
+    if (s == null && bytes != null && fieldLengths[columnIndex] > 0) {
+      s =
+          new String(
+              bytes, fieldOffsets[columnIndex], fieldLengths[columnIndex], StandardCharsets.UTF_8);
+      columnValues[columnIndex] = s;
+    }
     // Univocity CSV parser already returns null for no explicit value and for an explicit empty
     // string "".
     // Here we just want to be sure that we always return null and never "".
@@ -16,6 +16,7 @@
 
 package org.mobilitydata.gtfsvalidator.parsing;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import javax.annotation.Nullable;
@@ -29,15 +30,64 @@ import javax.annotation.Nullable;
  * caching.
  *
  * <p>All tables are read in parallel, that's why we create a separate set of caches for each table.
- * It is tempting to use the same cache for, e.g., trip_id in both trips.txt and stop_times.txt but
- * that would require synchronization that slows down the reading.
+ * Using the same cache for, e.g., trip_id in both trips.txt and stop_times.txt would require
+ * synchronization on every lookup. Instead, values that are new to a table may be passed to a
+ * shared pool with {@link #canonicalize}, see {@link IdPool}.
+ *
+ * <p>Caching does not pay off for columns whose values rarely repeat, e.g., stop_headsign in some
+ * feeds. The cache therefore samples the hit ratio of its first lookups and stops caching if it is
+ * below a threshold, see {@link Policy}. The size of the cache is bounded: when it is full, all
+ * values are evicted at once, which is cheap and keeps frequent values since they are quickly added
+ * again.
  *
  * @param <T> the type of the cached objects. It must be suitable as a key for hash maps.
  */
 public class FieldCache<T> {
+  /** Number of lookups after which the cache decides whether caching pays off. */
+  public static final int DEFAULT_SAMPLE_SIZE = 4096;
+
+  /** Caching is disabled if the hit ratio of the sampled lookups is below this value. */
+  public static final double DEFAULT_MIN_HIT_RATIO = 0.1;
+
+  /** Maximal number of cached values. */
+  public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+  /** Caching policy that is chosen from the hit ratio of sampled lookups. */
+  public enum Policy {
+    /** Values are cached while the hit ratio is sampled. */
+    SAMPLING,
+    /** Values are cached because the sampled hit ratio was high enough. */
+    CACHING,
+    /** The cache is empty and returns the given values because the sampled hit ratio was low. */
+    DISABLED
+  }
+
   private final Map<T, T> cache = new HashMap<>();
+  private final int sampleSize;
+  private final double minHitRatio;
+  private final int maxSize;
 
+  private Policy policy = Policy.SAMPLING;
   private int lookupCount = 0;
+  private int missCount = 0;
+  private int evictionCount = 0;
+
+  public FieldCache() {
+    this(DEFAULT_SAMPLE_SIZE, DEFAULT_MIN_HIT_RATIO, DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates a cache with the given policy parameters.
+   *
+   * @param sampleSize number of lookups after which the policy is chosen
+   * @param minHitRatio caching is disabled if the sampled hit ratio is below this value
+   * @param maxSize maximal number of cached values
+   */
+  public FieldCache(int sampleSize, double minHitRatio, int maxSize) {
+    this.sampleSize = sampleSize;
+    this.minHitRatio = minHitRatio;
+    this.maxSize = maxSize;
+  }
 
   /**
    * Adds the object to the cache if it is absent. Returns a reference to the given object in cache.
@@ -45,6 +95,8 @@ public class FieldCache<T> {
    * <p>If this function is called for {@code null}, it returns {@code null} but does not add it to
    * the cache.
    *
+   * <p>If caching is disabled, the object is returned as is, see {@link #canonicalize}.
+   *
    * <p>Note that it is not the same as {@code Map.putIfAbsent()} which returns {@code null} if the
    * the object was not already in the map.
    *
@@ -55,24 +107,98 @@ public class FieldCache<T> {
     ++lookupCount;
     if (obj == null) {
       // Do not store null in the cache.
+      samplePolicy();
       return null;
     }
+    if (policy == Policy.DISABLED) {
+      ++missCount;
+      return canonicalize(obj);
+    }
     // Benchmarks show that computeIfAbsent() is about 20% more expensive than calling get() and
     // put().
     T inCache = cache.get(obj);
     if (inCache == null) {
-      inCache = obj;
+      ++missCount;
+      if (cache.size() >= maxSize) {
+        ++evictionCount;
+        clear();
+      }
+      inCache = canonicalize(obj);
       cache.put(inCache, inCache);
     }
+    samplePolicy();
     return inCache;
   }
 
   /**
-   * Returns amount of lookups using {@code addIfAbsent}.
+   * Counts a lookup that was answered by a subclass without calling {@link #addIfAbsent}.
+   *
+   * <p>This is used by caches that find values by other keys, see {@link
+   * StringFieldCache#addAsciiIfAbsent}.
+   */
+  protected void recordHit() {
+    ++lookupCount;
+    samplePolicy();
+  }
+
+  private void samplePolicy() {
+    if (policy != Policy.SAMPLING || lookupCount < sampleSize) {
+      return;
+    }
+    if (getHitRatio() < minHitRatio) {
+      policy = Policy.DISABLED;
+      clear();
+    } else {
+      policy = Policy.CACHING;
+    }
+  }
+
+  /**
+   * Removes all values from the cache.
+   *
+   * <p>Subclasses that keep values in other structures must clear them as well.
+   */
+  protected void clear() {
+    cache.clear();
+  }
+
+  /** Returns the current caching policy. */
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  /** Tells whether values are cached, i.e., caching was not disabled because of a low hit ratio. */
+  public boolean isEnabled() {
+    return policy != Policy.DISABLED;
+  }
+
+  /**
+   * Returns how many times the cache was full and all its values were evicted.
+   *
+   * @return amount of evictions.
+   */
+  public int getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Returns the instance that is stored in the cache for an object that is not cached yet.
+   *
+   * <p>The default implementation returns the object itself.
+   *
+   * @param obj object that is added to the cache
+   * @return an object that is equal to {@code obj}
+   */
+  protected T canonicalize(T obj) {
+    return obj;
+  }
+
+  /**
+   * Returns amount of lookups using {@code addIfAbsent} or {@link #recordHit}.
    *
    * <p>This is equal to {@code getCacheHits() + getCacheMisses()}.
    *
-   * @return amount of cache lookups of {@code addIfAbsent}.
+   * @return amount of cache lookups.
    */
   public int getLookupCount() {
     return lookupCount;
@@ -90,12 +216,12 @@ public class FieldCache<T> {
   /**
    * Returns the amount of cache misses.
    *
-   * <p>This is the same as the cache size because objects are not removed from cache.
+   * <p>This is greater than the cache size if values were evicted or caching was disabled.
    *
    * @return amount of cache misses.
    */
   public int getCacheMisses() {
-    return cache.size();
+    return missCount;
   }
 
   /**
@@ -115,6 +241,7 @@ public class FieldCache<T> {
    * @return hit ratio.
    */
   public double getHitRatio() {
+    int lookupCount = getLookupCount();
     return lookupCount == 0 ? 1.0 : getCacheHits() * 1.0 / lookupCount;
   }
 
@@ -126,6 +253,68 @@ public class FieldCache<T> {
    * @return miss ratio.
    */
   public double getMissRatio() {
+    int lookupCount = getLookupCount();
     return lookupCount == 0 ? 0.0 : getCacheMisses() * 1.0 / lookupCount;
   }
+
+  /**
+   * Sums the statistics of several caches of a column, e.g., of the caches of all chunks of a file
+   * that is parsed in chunks, each with its own cache.
+   *
+   * <p>This class is thread-safe.
+   */
+  public static class Statistics {
+    private final Map<Policy, Integer> policyCounts = new EnumMap<>(Policy.class);
+    private long cacheSize = 0;
+    private long lookupCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /** Adds the statistics of a cache that is no longer used. */
+    public synchronized void add(FieldCache<?> cache) {
+      policyCounts.merge(cache.getPolicy(), 1, Integer::sum);
+      cacheSize += cache.getCacheSize();
+      lookupCount += cache.getLookupCount();
+      missCount += cache.getCacheMisses();
+      evictionCount += cache.getEvictionCount();
+    }
+
+    /**
+     * Returns the policy chosen by all added caches, e.g., "CACHING", or the number of caches per
+     * policy if they differ, e.g., "{CACHING=3, DISABLED=1}".
+     */
+    public synchronized String getPolicies() {
+      if (policyCounts.size() == 1) {
+        return policyCounts.keySet().iterator().next().name();
+      }
+      return policyCounts.toString();
+    }
+
+    /** Returns the total size of the added caches. */
+    public synchronized long getCacheSize() {
+      return cacheSize;
+    }
+
+    public synchronized long getLookupCount() {
+      return lookupCount;
+    }
+
+    public synchronized long getCacheMisses() {
+      return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+      return evictionCount;
+    }
+
+    /** Returns the hit ratio of all lookups from 0.0 to 1.0, or 1.0 if there were no lookups. */
+    public synchronized double getHitRatio() {
+      return lookupCount == 0 ? 1.0 : (lookupCount - missCount) * 1.0 / lookupCount;
+    }
+
+    /** Returns the miss ratio of all lookups from 0.0 to 1.0, or 0.0 if there were no lookups. */
+    public synchronized double getMissRatio() {
+      return lookupCount == 0 ? 0.0 : missCount * 1.0 / lookupCount;
+    }
+  }
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import com.google.common.flogger.FluentLogger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Interns ID strings of all tables of a single feed, so that each distinct ID, e.g., a trip_id that
+ * is referenced from trips.txt, stop_times.txt and frequencies.txt, is stored only once.
+ *
+ * <p>The pool is shared by all table loaders of a feed, which run in parallel. Loaders do not look
+ * up every row in the pool: cached ID columns first look up values in their own {@link
+ * StringFieldCache} and only values that are new to the column are interned here, see {@link
+ * StringFieldCache#StringFieldCache(Column)}. The pool is only needed while the feed is loaded, the
+ * interned strings stay referenced by the entities.
+ *
+ * <p>The pool also assigns dense integer codes to keys that are annotated with {@code
+ * PrimaryKey(intCode = true)}, see {@link KeySpace}. Table containers keep only the {@link Token}
+ * of the pool to tell whether their codes are comparable, so the pool and its maps become garbage
+ * once the feed is loaded.
+ *
+ * <p>This class is thread-safe.
+ */
+public class IdPool {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Column> columns = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, KeySpace> keySpaces = new ConcurrentHashMap<>();
+  private final Token token = new Token();
+
+  /**
+   * Returns the pooled string that is equal to the given one, adding it to the pool if it is
+   * absent.
+   *
+   * @param s the string to intern, or null
+   * @return the pooled string or null if {@code s} is null
+   */
+  @Nullable
+  public String intern(@Nullable String s) {
+    if (s == null) {
+      return null;
+    }
+    String pooled = strings.putIfAbsent(s, s);
+    return pooled != null ? pooled : s;
+  }
+
+  /** Returns the number of distinct strings in the pool. */
+  public int size() {
+    return strings.size();
+  }
+
+  /**
+   * Returns the handle to intern values of a column and collect statistics for it.
+   *
+   * <p>All chunks of a file get the same handle for a column.
+   *
+   * @param filename name of the file, e.g., "stop_times.txt"
+   * @param columnName name of the column, e.g., "trip_id"
+   */
+  public Column column(String filename, String columnName) {
+    return columns.computeIfAbsent(
+        filename + " " + columnName, key -> new Column(this, filename, columnName));
+  }
+
+  /**
+   * Returns the key space with the given name, creating it if it is absent.
+   *
+   * @param name name of the key space, e.g., "trips.txt trip_id" for trip_id in trips.txt and all
+   *     columns that reference it
+   */
+  public KeySpace keySpace(String name) {
+    return keySpaces.computeIfAbsent(name, KeySpace::new);
+  }
+
+  /**
+   * Returns the token that identifies this pool. Integer codes of two tables are comparable if both
+   * were assigned by pools with the same token.
+   */
+  public Token getToken() {
+    return token;
+  }
+
+  /** Returns the columns that interned values, sorted by file and column name. */
+  public List<Column> getColumns() {
+    List<Column> result = new ArrayList<>(columns.values());
+    result.sort(Comparator.comparing(Column::getFilename).thenComparing(Column::getColumnName));
+    return result;
+  }
+
+  /** Logs how many strings every column shared with the pool and the estimated saved memory. */
+  public void logStatistics() {
+    long totalSavedBytes = 0;
+    for (Column column : getColumns()) {
+      logger.atInfo().log(
+          "ID pool for %s %s: interned = %d, already pooled = %d, saved = %d bytes",
+          column.getFilename(),
+          column.getColumnName(),
+          column.getInternCount(),
+          column.getPooledCount(),
+          column.getSavedBytes());
+      totalSavedBytes += column.getSavedBytes();
+    }
+    for (KeySpace keySpace : keySpaces.values()) {
+      logger.atInfo().log("ID pool key space %s: %d codes", keySpace.getName(), keySpace.size());
+    }
+    logger.atInfo().log(
+        "ID pool: %d distinct IDs, saved = %d bytes", strings.size(), totalSavedBytes);
+  }
+
+  /**
+   * Returns the approximate heap size of a string with Latin-1 content on a 64-bit JVM with
+   * compressed pointers: the String object and its byte array, both aligned to 8 bytes.
+   */
+  static long estimateStringSize(String s) {
+    return 24 + ((16 + s.length() + 7) & ~7);
+  }
+
+  /**
+   * Identifies an {@link IdPool} by reference without keeping the pool alive.
+   *
+   * <p>The token has no state, it is compared by identity.
+   */
+  public static final class Token {
+    private Token() {}
+  }
+
+  /** Interns values of a single column and counts strings that were already in the pool. */
+  public static class Column {
+    private final IdPool pool;
+    private final String filename;
+    private final String columnName;
+    private final LongAdder internCount = new LongAdder();
+    private final LongAdder pooledCount = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    private Column(IdPool pool, String filename, String columnName) {
+      this.pool = pool;
+      this.filename = filename;
+      this.columnName = columnName;
+    }
+
+    /**
+     * Interns the value in the pool, see {@link IdPool#intern(String)}.
+     *
+     * <p>If an equal string was already in the pool, the given string becomes garbage and its size
+     * is counted as saved.
+     */
+    @Nullable
+    public String intern(@Nullable String s) {
+      if (s == null) {
+        return null;
+      }
+      internCount.increment();
+      String pooled = pool.intern(s);
+      if (pooled != s) {
+        pooledCount.increment();
+        savedBytes.add(estimateStringSize(s));
+      }
+      return pooled;
+    }
+
+    public String getFilename() {
+      return filename;
+    }
+
+    public String getColumnName() {
+      return columnName;
+    }
+
+    /** Returns the number of non-null values that were interned. */
+    public long getInternCount() {
+      return internCount.sum();
+    }
+
+    /** Returns the number of values that were already in the pool when they were interned. */
+    public long getPooledCount() {
+      return pooledCount.sum();
+    }
+
+    /** Returns the estimated memory saved by reusing pooled strings, in bytes. */
+    public long getSavedBytes() {
+      return savedBytes.sum();
+    }
+  }
+
+  /**
+   * Assigns dense integer codes 0, 1, 2, ... to distinct keys, e.g., to trip IDs of trips.txt and
+   * of all tables that reference them.
+   *
+   * <p>Equal keys get equal codes no matter which table loader encodes them first, so a foreign key
+   * can be resolved by comparing codes instead of strings. Code -1 stands for a missing key.
+   */
+  public static class KeySpace {
+    private final String name;
+    private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextCode = new AtomicInteger();
+
+    private KeySpace(String name) {
+      this.name = name;
+    }
+
+    /** Returns the code of the key, or -1 if the key is null or empty. */
+    public int code(@Nullable String key) {
+      if (key == null || key.isEmpty()) {
+        return -1;
+      }
+      return codes.computeIfAbsent(key, k -> nextCode.getAndIncrement());
+    }
+
+    /** Returns a new encoder to be used by a single thread. */
+    public Encoder newEncoder() {
+      return new Encoder(this);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Returns the number of codes assigned so far. */
+    public int size() {
+      return nextCode.get();
+    }
+  }
+
+  /**
+   * Encodes keys of a single column with a {@link KeySpace}.
+   *
+   * <p>Consecutive rows often repeat a key, e.g., trip_id in stop_times.txt, and cached columns
+   * return the same instance for equal keys, so the encoder remembers the last key by identity to
+   * skip the lookup in the shared map.
+   *
+   * <p>This class is not thread-safe.
+   */
+  public static class Encoder {
+    private final KeySpace keySpace;
+    @Nullable private String lastKey;
+    private int lastCode = -1;
+
+    private Encoder(KeySpace keySpace) {
+      this.keySpace = keySpace;
+    }
+
+    /** Returns the code of the key, see {@link KeySpace#code(String)}. */
+    public int code(@Nullable String key) {
+      if (key != lastKey) {
+        lastCode = keySpace.code(key);
+        lastKey = key;
+      }
+      return lastCode;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Remembers results of an expensive check for recently seen values.
+ *
+ * <p>URLs, emails and phone numbers repeat heavily within a table, e.g., agency_url in routes.txt
+ * or stop_url in stops.txt, while checking them involves regular expressions or phone number
+ * metadata. Results of the least recently used values are dropped when the capacity is exceeded.
+ *
+ * <p>Like {@link FieldCache}, an instance belongs to a single table or chunk of a table and is not
+ * synchronized, so that parallel parsers do not contend for a shared cache.
+ */
+final class MemoizingValidator {
+  static final int DEFAULT_CAPACITY = 1024;
+
+  private final Predicate<String> validator;
+  private final Map<String, Boolean> results;
+  private int lookupCount = 0;
+  private int missCount = 0;
+
+  MemoizingValidator(Predicate<String> validator) {
+    this(validator, DEFAULT_CAPACITY);
+  }
+
+  MemoizingValidator(Predicate<String> validator, int capacity) {
+    this.validator = validator;
+    this.results =
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > capacity;
+          }
+        };
+  }
+
+  /** Tells whether the value passes the check, checking it only if its result is not known. */
+  boolean isValid(String value) {
+    ++lookupCount;
+    Boolean valid = results.get(value);
+    if (valid == null) {
+      ++missCount;
+      valid = validator.test(value);
+      results.put(value, valid);
+    }
+    return valid;
+  }
+
+  int getLookupCount() {
+    return lookupCount;
+  }
+
+  /** Number of lookups that ran the check. */
+  int getMissCount() {
+    return missCount;
+  }
+}
@@ -43,6 +43,9 @@ import org.mobilitydata.gtfsvalidator.type.GtfsTime;
  * <p>Interface functions of this class receive an instance of {@code NoticeContainer}. If a cell
  * value cannot be parsed, these functions add a notice to the container, return null and don't
  * throw an exception.
+ *
+ * <p>If the row is backed by bytes, see {@link CsvByteTokenizer}, numbers, times and dates in their
+ * common forms are parsed from bytes without creating a string.
  */
 public class RowParser {
   public static final boolean REQUIRED = true;
@@ -53,28 +56,38 @@ public class RowParser {
       new ValueParser("integer") {
         @Override
         Integer parseString(String s) {
-          return Integer.parseInt(s);
+          return StringFieldParser.parseInteger(s);
+        }
+
+        @Override
+        Integer parseBytes(byte[] bytes, int offset, int length) {
+          return ByteFieldParser.parseInteger(bytes, offset, length);
         }
       };
   private final ValueParser<Double> floatParser =
       new ValueParser("float") {
         @Override
         Double parseString(String s) {
-          return Double.parseDouble(s);
+          return StringFieldParser.parseDouble(s);
+        }
+
+        @Override
+        Double parseBytes(byte[] bytes, int offset, int length) {
+          return ByteFieldParser.parseDouble(bytes, offset, length);
         }
       };
   private final ValueParser<BigDecimal> decimalParser =
       new ValueParser("decimal") {
         @Override
         BigDecimal parseString(String s) {
-          return new BigDecimal(s);
+          return StringFieldParser.parseDecimal(s);
         }
       };
   private final ValueParser<ZoneId> timezoneParser =
       new ValueParser("timezone") {
         @Override
         ZoneId parseString(String s) {
-          return ZoneId.of(s);
+          return StringFieldParser.parseTimezone(s);
         }
       };
   private final ValueParser<Locale> languageCodeParser =
@@ -89,82 +102,99 @@ public class RowParser {
       new ValueParser("color") {
         @Override
         GtfsColor parseString(String s) {
-          return GtfsColor.fromString(s);
+          return StringFieldParser.parseColor(s);
         }
       };
   private final ValueParser<Double> latitudeParser =
       new ValueParser("latitude") {
         @Override
         Double parseString(String s) {
-          double d = Double.parseDouble(s);
-          if (!(-90 <= d && d <= 90)) {
-            throw new IllegalArgumentException("Latitude must be within [-90, 90]" + s);
-          }
-          return d;
+          Double d = StringFieldParser.parseDouble(s);
+          // Latitude must be within [-90, 90].
+          return d != null && -90 <= d && d <= 90 ? d : null;
+        }
+
+        @Override
+        Double parseBytes(byte[] bytes, int offset, int length) {
+          Double d = ByteFieldParser.parseDouble(bytes, offset, length);
+          // Values out of range are reported by parseField.
+          return d != null && -90 <= d && d <= 90 ? d : null;
         }
       };
   private final ValueParser<Double> longitudeParser =
       new ValueParser("longitude") {
         @Override
         Double parseString(String s) {
-          double d = Double.parseDouble(s);
-          if (!(-180 <= d && d <= 180)) {
-            throw new IllegalArgumentException("Longitude must be within [-180, 180]" + s);
-          }
-          return d;
+          Double d = StringFieldParser.parseDouble(s);
+          // Longitude must be within [-180, 180].
+          return d != null && -180 <= d && d <= 180 ? d : null;
+        }
+
+        @Override
+        Double parseBytes(byte[] bytes, int offset, int length) {
+          Double d = ByteFieldParser.parseDouble(bytes, offset, length);
+          return d != null && -180 <= d && d <= 180 ? d : null;
         }
       };
   private final ValueParser<Currency> currencyParser =
       new ValueParser("currency") {
         @Override
         Currency parseString(String s) {
-          return Currency.getInstance(s);
+          return StringFieldParser.parseCurrency(s);
         }
       };
   private final ValueParser<GtfsDate> dateParser =
       new ValueParser("date") {
         @Override
         GtfsDate parseString(String s) {
-          return GtfsDate.fromString(s);
+          return StringFieldParser.parseDate(s);
+        }
+
+        @Override
+        GtfsDate parseBytes(byte[] bytes, int offset, int length) {
+          return ByteFieldParser.parseDate(bytes, offset, length);
         }
       };
   private final ValueParser<GtfsTime> timeParser =
       new ValueParser("time") {
         @Override
         GtfsTime parseString(String s) {
-          return GtfsTime.fromString(s);
+          return StringFieldParser.parseTime(s);
+        }
+
+        @Override
+        GtfsTime parseBytes(byte[] bytes, int offset, int length) {
+          return ByteFieldParser.parseTime(bytes, offset, length);
         }
       };
+  // The validators are immutable and thread-safe. Results of their checks are memoized per
+  // RowParser, so that parsers of different tables and chunks do not share mutable state.
+  private static final EmailValidator EMAIL_VALIDATOR = EmailValidator.getInstance();
+  private static final UrlValidator URL_VALIDATOR = UrlValidator.getInstance();
+  private static final PhoneNumberUtil PHONE_NUMBER_UTIL = PhoneNumberUtil.getInstance();
+  private final MemoizingValidator emailValidator =
+      new MemoizingValidator(EMAIL_VALIDATOR::isValid);
+  private final MemoizingValidator urlValidator = new MemoizingValidator(URL_VALIDATOR::isValid);
+  private final MemoizingValidator phoneNumberValidator;
   private final ValueParser<String> emailParser =
       new ValueParser("email") {
         @Override
         String parseString(String s) {
-          if (!EmailValidator.getInstance().isValid(s)) {
-            throw new IllegalArgumentException("Invalid email " + s);
-          }
-          return s;
+          return emailValidator.isValid(s) ? s : null;
         }
       };
   private final ValueParser<String> urlParser =
       new ValueParser("URL") {
         @Override
         String parseString(String s) {
-          if (!UrlValidator.getInstance().isValid(s)) {
-            throw new IllegalArgumentException("Invalid URL " + s);
-          }
-          return s;
+          return urlValidator.isValid(s) ? s : null;
         }
       };
   private final ValueParser<String> phoneNumberParser =
       new ValueParser("phone number") {
-        private final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
-
         @Override
         String parseString(String s) {
-          if (!phoneUtil.isPossibleNumber(s, feedName.getISOAlpha2CountryCode())) {
-            throw new IllegalArgumentException("Invalid phone number " + s);
-          }
-          return s;
+          return phoneNumberValidator.isValid(s) ? s : null;
         }
       };
   private CsvRow row;
@@ -172,6 +202,9 @@ public class RowParser {
 
   public RowParser(GtfsFeedName feedName, NoticeContainer noticeContainer) {
     this.feedName = feedName;
+    String regionCode = feedName.getISOAlpha2CountryCode();
+    this.phoneNumberValidator =
+        new MemoizingValidator(s -> PHONE_NUMBER_UTIL.isPossibleNumber(s, regionCode));
     this.noticeContainer = noticeContainer;
   }
 
@@ -217,19 +250,47 @@ public class RowParser {
 
   @Nullable
   public String asId(int columnIndex, boolean required) {
-    String value = row.asString(columnIndex);
-    if (value == null) {
-      return asString(columnIndex, required);
+    String value = asString(columnIndex, required);
+    if (value != null && !isPrintableAscii(columnIndex, value)) {
+      addErrorInRow(
+          new NonAsciiOrNonPrintableCharNotice(
+              row.getFileName(), row.getRowNumber(), row.getColumnName(columnIndex)));
     }
-    for (char ch : value.toCharArray()) {
-      if (!(ch >= 32 && ch < 127)) {
-        addErrorInRow(
-            new NonAsciiOrNonPrintableCharNotice(
-                row.getFileName(), row.getRowNumber(), row.getColumnName(columnIndex)));
-        break;
+    return value;
+  }
+
+  /**
+   * Parses an ID like {@link #asId(int, boolean)} and returns its instance from the cache.
+   *
+   * <p>For rows backed by bytes, a printable ASCII ID is looked up in the cache by its bytes, so no
+   * string is decoded for an ID that is already cached.
+   */
+  @Nullable
+  public String asId(int columnIndex, boolean required, StringFieldCache cache) {
+    byte[] bytes = row.getBytes();
+    if (bytes != null && columnIndex >= 0 && columnIndex < row.getColumnCount()) {
+      int offset = row.getFieldOffset(columnIndex);
+      int length = row.getFieldLength(columnIndex);
+      if (length > 0 && ByteFieldParser.isPrintableAscii(bytes, offset, length)) {
+        return cache.addAsciiIfAbsent(bytes, offset, length);
       }
     }
-    return asString(columnIndex, required);
+    return cache.addIfAbsent(asId(columnIndex, required));
+  }
+
+  private boolean isPrintableAscii(int columnIndex, String value) {
+    byte[] bytes = row.getBytes();
+    if (bytes != null) {
+      return ByteFieldParser.isPrintableAscii(
+          bytes, row.getFieldOffset(columnIndex), row.getFieldLength(columnIndex));
+    }
+    for (int i = 0; i < value.length(); ++i) {
+      char ch = value.charAt(i);
+      if (ch < 32 || ch >= 127) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Nullable
@@ -424,18 +485,23 @@ public class RowParser {
 
   @Nullable
   public <E> Integer asEnum(int columnIndex, boolean required, EnumCreator<E> enumCreator) {
-    String s = asString(columnIndex, required);
-    if (s == null) {
-      return null;
+    // Most enum values are a single digit, which we read directly from the bytes of the row.
+    Integer i = parseDigitByte(columnIndex);
+    if (i == null) {
+      i = integerParser.parseFieldBytes(columnIndex);
     }
-    int i;
-    try {
-      i = Integer.parseInt(s);
-    } catch (Exception ex) {
-      addErrorInRow(
-          new FieldParsingError(
-              row.getFileName(), row.getRowNumber(), row.getColumnName(columnIndex), "enum", s));
-      return null;
+    if (i == null) {
+      String s = asString(columnIndex, required);
+      if (s == null) {
+        return null;
+      }
+      i = StringFieldParser.parseInteger(s);
+      if (i == null) {
+        addErrorInRow(
+            new FieldParsingError(
+                row.getFileName(), row.getRowNumber(), row.getColumnName(columnIndex), "enum", s));
+        return null;
+      }
     }
     if (enumCreator.convert(i) == null) {
       addErrorInRow(
@@ -445,6 +511,20 @@ public class RowParser {
     return i;
   }
 
+  /** Returns the value of a field that is a single digit in a row backed by bytes, or null. */
+  @Nullable
+  private Integer parseDigitByte(int columnIndex) {
+    byte[] bytes = row.getBytes();
+    if (bytes == null
+        || columnIndex < 0
+        || columnIndex >= row.getColumnCount()
+        || row.getFieldLength(columnIndex) != 1) {
+      return null;
+    }
+    int digit = bytes[row.getFieldOffset(columnIndex)] - '0';
+    return digit >= 0 && digit <= 9 ? digit : null;
+  }
+
   @Nullable
   public GtfsTime asTime(int columnIndex, boolean required) {
     return timeParser.parseField(columnIndex, required);
@@ -478,16 +558,54 @@ public class RowParser {
       this.formatName = formatName;
     }
 
+    /**
+     * Parses a value from a non-empty string.
+     *
+     * <p>Dirty feeds may have millions of invalid values, so invalid values are reported by
+     * returning null instead of throwing an exception, see {@link StringFieldParser}.
+     *
+     * @return the value or null if the string is invalid
+     */
+    @Nullable
     abstract T parseString(String s);
 
+    /**
+     * Parses a value from UTF-8 bytes of a field.
+     *
+     * @return the value or null if the value must be parsed from a string
+     */
+    @Nullable
+    T parseBytes(byte[] bytes, int offset, int length) {
+      return null;
+    }
+
+    /** Parses a non-empty field of a row backed by bytes, or returns null. */
+    @Nullable
+    final T parseFieldBytes(int columnIndex) {
+      byte[] bytes = row.getBytes();
+      if (bytes == null || columnIndex < 0 || columnIndex >= row.getColumnCount()) {
+        return null;
+      }
+      int length = row.getFieldLength(columnIndex);
+      return length > 0 ? parseBytes(bytes, row.getFieldOffset(columnIndex), length) : null;
+    }
+
     final T parseField(int columnIndex, boolean required) {
+      T value = parseFieldBytes(columnIndex);
+      if (value != null) {
+        return value;
+      }
       String s = asString(columnIndex, required);
       if (s == null) {
         return null;
       }
       try {
-        return parseString(s);
-      } catch (Exception ex) {
+        value = parseString(s);
+      } catch (RuntimeException ex) {
+        // Parsers return null for invalid values, other failures are treated the same way.
+        value = null;
+      }
+      if (value == null) {
         addErrorInRow(
             new FieldParsingError(
                 row.getFileName(),
@@ -495,8 +613,8 @@ public class RowParser {
                 row.getColumnName(columnIndex),
                 formatName,
                 s));
-        return null;
       }
+      return value;
     }
   }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+
+/**
+ * Caches string values for a single table and also finds ASCII values by their bytes.
+ *
+ * <p>Rows read by {@link CsvByteTokenizer} keep their values as bytes. Looking up such a value with
+ * {@link #addAsciiIfAbsent(byte[], int, int)} returns the cached string without decoding the bytes
+ * first, so that repeated IDs, such as trip_id and stop_id in stop_times.txt, do not allocate a new
+ * string for every row.
+ *
+ * <p>A cache may be backed by a column of the feed-wide {@link IdPool}, so that values that are new
+ * to the table are shared with other tables.
+ */
+public class StringFieldCache extends FieldCache<String> {
+  private static final int INITIAL_CAPACITY = 64;
+
+  // Open addressing table of cached ASCII strings. The capacity is a power of two.
+  private String[] table = new String[INITIAL_CAPACITY];
+  private int tableSize = 0;
+  @Nullable private final IdPool.Column poolColumn;
+
+  /** Creates a cache that is not backed by a pool. */
+  public StringFieldCache() {
+    this(null);
+  }
+
+  /**
+   * Creates a cache that interns values that are new to it in the given column of an {@link
+   * IdPool}.
+   *
+   * @param poolColumn the column of the pool, or null to keep values only in this cache
+   */
+  public StringFieldCache(@Nullable IdPool.Column poolColumn) {
+    this.poolColumn = poolColumn;
+  }
+
+  /** Creates a cache with the given policy parameters, see {@link FieldCache}. */
+  StringFieldCache(
+      @Nullable IdPool.Column poolColumn, int sampleSize, double minHitRatio, int maxSize) {
+    super(sampleSize, minHitRatio, maxSize);
+    this.poolColumn = poolColumn;
+  }
+
+  /**
+   * Returns the cached string for the given ASCII bytes, adding it to the cache if it is absent.
+   *
+   * @param bytes array that holds the value
+   * @param offset offset of the value in {@code bytes}
+   * @param length length of the value, it must be positive
+   * @return reference to the string in cache
+   */
+  public String addAsciiIfAbsent(byte[] bytes, int offset, int length) {
+    if (!isEnabled()) {
+      return addIfAbsent(new String(bytes, offset, length, StandardCharsets.US_ASCII));
+    }
+    // Same as String.hashCode() for ASCII strings.
+    int hash = 0;
+    for (int i = offset; i < offset + length; ++i) {
+      hash = 31 * hash + bytes[i];
+    }
+    int mask = table.length - 1;
+    int slot = spread(hash) & mask;
+    for (String s = table[slot]; s != null; s = table[slot]) {
+      if (equalsAscii(s, bytes, offset, length)) {
+        recordHit();
+        return s;
+      }
+      slot = (slot + 1) & mask;
+    }
+    // The lookup may evict all values or disable the cache, so the slot is searched again.
+    String inCache = addIfAbsent(new String(bytes, offset, length, StandardCharsets.US_ASCII));
+    if (isEnabled()) {
+      insert(inCache, hash);
+    }
+    return inCache;
+  }
+
+  private void insert(String s, int hash) {
+    int mask = table.length - 1;
+    int slot = spread(hash) & mask;
+    while (table[slot] != null) {
+      if (table[slot].equals(s)) {
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = s;
+    if (++tableSize * 2 > table.length) {
+      rehash();
+    }
+  }
+
+  @Override
+  protected String canonicalize(String obj) {
+    return poolColumn != null ? poolColumn.intern(obj) : obj;
+  }
+
+  @Override
+  protected void clear() {
+    super.clear();
+    table = new String[INITIAL_CAPACITY];
+    tableSize = 0;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean equalsAscii(String s, byte[] bytes, int offset, int length) {
+    if (s.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (s.charAt(i) != bytes[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void rehash() {
+    String[] newTable = new String[table.length * 2];
+    int mask = newTable.length - 1;
+    for (String s : table) {
+      if (s != null) {
+        int slot = spread(s.hashCode()) & mask;
+        while (newTable[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        newTable[slot] = s;
+      }
+    }
+    table = newTable;
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.mobilitydata.gtfsvalidator.type.GtfsColor;
+import org.mobilitydata.gtfsvalidator.type.GtfsDate;
+import org.mobilitydata.gtfsvalidator.type.GtfsTime;
+
+/**
+ * Parses values of CSV fields from strings and returns null for invalid values instead of throwing
+ * exceptions.
+ *
+ * <p>Dirty feeds may have millions of invalid values and creating an exception with a stack trace
+ * for each of them dominates the time to load such feeds. Every function accepts exactly the values
+ * that the corresponding Java parser accepts, e.g. {@link Integer#parseInt} for integers. Rare
+ * forms, such as non-ASCII digits or "NaN", are still passed to the Java parser and its exception
+ * is caught here.
+ */
+final class StringFieldParser {
+  private static final Set<String> ZONE_IDS = ZoneId.getAvailableZoneIds();
+  private static final Map<String, Currency> CURRENCIES = new HashMap<>();
+
+  static {
+    for (Currency currency : Currency.getAvailableCurrencies()) {
+      CURRENCIES.put(currency.getCurrencyCode(), currency);
+    }
+  }
+
+  private StringFieldParser() {}
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isAscii(String s) {
+    for (int i = 0; i < s.length(); ++i) {
+      if (s.charAt(i) >= 128) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Parses an integer as {@link Integer#parseInt(String)}. */
+  @Nullable
+  static Integer parseInteger(String s) {
+    int end = s.length();
+    int i = 0;
+    boolean negative = false;
+    if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      negative = s.charAt(i) == '-';
+      ++i;
+    }
+    if (i == end) {
+      return null;
+    }
+    long value = 0;
+    for (; i < end; ++i) {
+      char c = s.charAt(i);
+      if (!isDigit(c)) {
+        return isAscii(s) ? null : parseIntegerWithException(s);
+      }
+      value = value * 10 + (c - '0');
+      if (value > (long) Integer.MAX_VALUE + 1) {
+        return null;
+      }
+    }
+    if (negative) {
+      value = -value;
+    }
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      return null;
+    }
+    return (int) value;
+  }
+
+  @Nullable
+  private static Integer parseIntegerWithException(String s) {
+    try {
+      return Integer.parseInt(s);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** Parses a float as {@link Double#parseDouble(String)}. */
+  @Nullable
+  static Double parseDouble(String s) {
+    int start = 0;
+    int end = s.length();
+    // Double.parseDouble ignores leading and trailing whitespace.
+    while (start < end && s.charAt(start) <= ' ') {
+      ++start;
+    }
+    while (end > start && s.charAt(end - 1) <= ' ') {
+      --end;
+    }
+    int i = start;
+    if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      ++i;
+    }
+    if (s.startsWith("NaN", i)
+        || s.startsWith("Infinity", i)
+        || s.startsWith("0x", i)
+        || s.startsWith("0X", i)) {
+      try {
+        return Double.parseDouble(s);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    i = skipDecimalNumber(s, i, end);
+    if (i < 0) {
+      return null;
+    }
+    if (i < end && "fFdD".indexOf(s.charAt(i)) >= 0) {
+      ++i;
+    }
+    return i == end ? Double.parseDouble(s) : null;
+  }
+
+  /** Parses a decimal as {@link BigDecimal#BigDecimal(String)}. */
+  @Nullable
+  static BigDecimal parseDecimal(String s) {
+    int i = 0;
+    if (i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      ++i;
+    }
+    if (skipDecimalNumber(s, i, s.length()) != s.length() && isAscii(s)) {
+      return null;
+    }
+    // Non-ASCII digits are accepted and a huge exponent is rejected by BigDecimal.
+    try {
+      return new BigDecimal(s);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Skips digits with an optional decimal point and an optional exponent, such as "1.5e-3".
+   *
+   * @return index after the number or -1 if there is no valid number at {@code i}
+   */
+  private static int skipDecimalNumber(String s, int i, int end) {
+    int digits = 0;
+    while (i < end && isDigit(s.charAt(i))) {
+      ++i;
+      ++digits;
+    }
+    if (i < end && s.charAt(i) == '.') {
+      ++i;
+      while (i < end && isDigit(s.charAt(i))) {
+        ++i;
+        ++digits;
+      }
+    }
+    if (digits == 0) {
+      return -1;
+    }
+    if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+      ++i;
+      if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+        ++i;
+      }
+      int exponentStart = i;
+      while (i < end && isDigit(s.charAt(i))) {
+        ++i;
+      }
+      if (i == exponentStart) {
+        return -1;
+      }
+    }
+    return i;
+  }
+
+  /** Parses a time as {@link GtfsTime#fromString(String)}. */
+  @Nullable
+  static GtfsTime parseTime(String s) {
+    return GtfsTime.tryParse(s);
+  }
+
+  /** Parses a date as {@link GtfsDate#fromString(String)}. */
+  @Nullable
+  static GtfsDate parseDate(String s) {
+    return GtfsDate.tryParse(s);
+  }
+
+  /** Parses a color as {@link GtfsColor#fromString(String)}. */
+  @Nullable
+  static GtfsColor parseColor(String s) {
+    if (s.length() != 6) {
+      return null;
+    }
+    int rgb = 0;
+    for (int i = 0; i < 6; ++i) {
+      int digit = Character.digit(s.charAt(i), 16);
+      if (digit < 0 || s.charAt(i) >= 128) {
+        char c = s.charAt(i);
+        return c == '+' || c == '-' || c >= 128 ? parseColorWithException(s) : null;
+      }
+      rgb = rgb * 16 + digit;
+    }
+    return GtfsColor.fromInt(rgb);
+  }
+
+  @Nullable
+  private static GtfsColor parseColorWithException(String s) {
+    try {
+      return GtfsColor.fromString(s);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /** Parses a timezone as {@link ZoneId#of(String)}. */
+  @Nullable
+  static ZoneId parseTimezone(String s) {
+    if (ZONE_IDS.contains(s)) {
+      return ZoneId.of(s);
+    }
+    // Other region IDs are unknown but offsets such as "+01:00", "UTC+1" or "UT" may be valid.
+    if (s.equals("Z")
+        || s.startsWith("+")
+        || s.startsWith("-")
+        || s.startsWith("UT")
+        || s.startsWith("GMT")) {
+      try {
+        return ZoneId.of(s);
+      } catch (DateTimeException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /** Parses a currency code as {@link Currency#getInstance(String)}. */
+  @Nullable
+  static Currency parseCurrency(String s) {
+    return CURRENCIES.get(s);
+  }
+}
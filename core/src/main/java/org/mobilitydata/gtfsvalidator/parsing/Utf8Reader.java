@@ -0,0 +1,239 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A reader that decodes UTF-8 input and widens runs of ASCII bytes straight to chars.
+ *
+ * <p>GTFS files are mostly ASCII, and decoding ASCII only means copying bytes to chars. The {@link
+ * CharsetDecoder} is only called from a non-ASCII byte to the next ASCII byte. Malformed input is
+ * replaced with U+FFFD exactly as with an {@link java.io.InputStreamReader}.
+ *
+ * <p>A UTF-8 byte order mark at the start of the input is skipped.
+ */
+class Utf8Reader extends Reader {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+  @Nullable private final InputStream inputStream;
+  // Bytes that are not decoded yet are between the position and the limit.
+  private final ByteBuffer buffer;
+  private final CharsetDecoder decoder =
+      StandardCharsets.UTF_8
+          .newDecoder()
+          .replaceWith("\uFFFD")
+          .onMalformedInput(CodingErrorAction.REPLACE);
+  private final Statistics statistics;
+  private boolean endOfInput;
+  private boolean byteOrderMarkChecked = false;
+  // Decoder output for callers that request a single char, since a code point may need two chars.
+  private final char[] pair = new char[2];
+  // The second char of a pair that did not fit into the buffer of the caller, or -1.
+  private int pendingChar = -1;
+  // Time spent in reading the input stream, which is not a part of the decoding time.
+  private long inputNanos = 0;
+
+  /** Creates a reader for an input stream. */
+  Utf8Reader(InputStream inputStream, Statistics statistics) {
+    this.inputStream = inputStream;
+    this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    this.buffer.limit(0);
+    this.statistics = statistics;
+    this.endOfInput = false;
+  }
+
+  /**
+   * Creates a reader that decodes a buffer in place, e.g., a memory-mapped file, without copying
+   * bytes to intermediate buffers.
+   */
+  Utf8Reader(ByteBuffer buffer, Statistics statistics) {
+    this.inputStream = null;
+    this.buffer = buffer;
+    this.statistics = statistics;
+    this.endOfInput = true;
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    long startNanos = System.nanoTime();
+    long startInputNanos = inputNanos;
+    int n = readChars(cbuf, off, len);
+    statistics.decodeNanos.addAndGet(
+        System.nanoTime() - startNanos - (inputNanos - startInputNanos));
+    return n;
+  }
+
+  private int readChars(char[] cbuf, int off, int len) throws IOException {
+    if (pendingChar >= 0) {
+      cbuf[off] = (char) pendingChar;
+      pendingChar = -1;
+      return 1;
+    }
+    if (!byteOrderMarkChecked) {
+      while (buffer.remaining() < BYTE_ORDER_MARK.length && fill()) {}
+      skipByteOrderMark();
+      byteOrderMarkChecked = true;
+    }
+    while (true) {
+      int position = buffer.position();
+      int end = Math.min(buffer.limit(), position + len);
+      int i = position;
+      if (buffer.hasArray()) {
+        byte[] bytes = buffer.array();
+        int shift = buffer.arrayOffset();
+        int dst = off - position;
+        for (byte b; i < end && (b = bytes[i + shift]) >= 0; ++i) {
+          cbuf[dst + i] = (char) b;
+        }
+      } else {
+        for (byte b; i < end && (b = buffer.get(i)) >= 0; ++i) {
+          cbuf[off + i - position] = (char) b;
+        }
+      }
+      if (i > position) {
+        buffer.position(i);
+        statistics.add(i - position, i - position);
+        return i - position;
+      }
+      if (buffer.hasRemaining()) {
+        int n = decode(cbuf, off, len);
+        if (n > 0) {
+          return n;
+        }
+        // The buffer ends with an incomplete sequence, so more bytes are needed.
+      }
+      if (!fill()) {
+        return -1;
+      }
+    }
+  }
+
+  /** Decodes bytes from a non-ASCII byte at the position of the buffer. */
+  private int decode(char[] cbuf, int off, int len) {
+    int position = buffer.position();
+    int limit = buffer.limit();
+    // Decode up to and including the next ASCII byte. An ASCII byte is never a part of a
+    // multi-byte sequence, so the decoder either completes or rejects every sequence before it.
+    int regionEnd = position + 1;
+    while (regionEnd < limit && buffer.get(regionEnd) < 0) {
+      ++regionEnd;
+    }
+    regionEnd = Math.min(limit, regionEnd + 1);
+    CharBuffer out = len >= pair.length ? CharBuffer.wrap(cbuf, off, len) : CharBuffer.wrap(pair);
+    buffer.limit(regionEnd);
+    decoder.decode(buffer, out, endOfInput && regionEnd == limit);
+    buffer.limit(limit);
+    statistics.add(buffer.position() - position, 0);
+    if (len >= pair.length) {
+      return out.position() - off;
+    }
+    if (out.position() == 0) {
+      return 0;
+    }
+    cbuf[off] = pair[0];
+    if (out.position() > 1) {
+      pendingChar = pair[1];
+    }
+    return 1;
+  }
+
+  /**
+   * Reads more bytes from the input stream after the bytes that are not decoded yet.
+   *
+   * @return false if the end of the input was already reached
+   */
+  private boolean fill() throws IOException {
+    if (endOfInput) {
+      return false;
+    }
+    buffer.compact();
+    long startNanos = System.nanoTime();
+    try {
+      int n =
+          inputStream.read(
+              buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      if (n < 0) {
+        endOfInput = true;
+      } else {
+        buffer.position(buffer.position() + n);
+      }
+    } finally {
+      buffer.flip();
+      inputNanos += System.nanoTime() - startNanos;
+    }
+    return true;
+  }
+
+  private void skipByteOrderMark() {
+    if (buffer.remaining() < BYTE_ORDER_MARK.length) {
+      return;
+    }
+    for (int i = 0; i < BYTE_ORDER_MARK.length; ++i) {
+      if (buffer.get(buffer.position() + i) != BYTE_ORDER_MARK[i]) {
+        return;
+      }
+    }
+    buffer.position(buffer.position() + BYTE_ORDER_MARK.length);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (inputStream != null) {
+      inputStream.close();
+    }
+  }
+
+  /** Decoding statistics of a file, which may be decoded in chunks by several readers at once. */
+  static class Statistics {
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong asciiByteCount = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    private void add(long bytes, long asciiBytes) {
+      byteCount.addAndGet(bytes);
+      if (asciiBytes > 0) {
+        asciiByteCount.addAndGet(asciiBytes);
+      }
+    }
+
+    long getByteCount() {
+      return byteCount.get();
+    }
+
+    long getAsciiByteCount() {
+      return asciiByteCount.get();
+    }
+
+    long getDecodeNanos() {
+      return decodeNanos.get();
+    }
+  }
+}
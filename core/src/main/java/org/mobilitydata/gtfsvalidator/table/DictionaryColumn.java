@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mobilitydata.gtfsvalidator.table;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Dictionary-encoded column of a table annotated with {@code @GtfsTable(columnar = true)}.
+ *
+ * <p>Every distinct value is stored once in the dictionary and rows store the index of their value
+ * as an int. This suits columns with many repeated values, such as trip_id and stop_id in
+ * stop_times.txt. Null values are supported.
+ *
+ * <p>This class is not thread-safe. A column is filled by a single loader and only read afterwards.
+ *
+ * @param <T> type of values, must implement {@code equals} and {@code hashCode}
+ */
+public final class DictionaryColumn<T> {
+  private final IntColumn codes;
+  private final ArrayList<T> dictionary = new ArrayList<>();
+  // Index of each value in the dictionary. It is released by trimToSize() and rebuilt if more
+  // values are added afterwards.
+  @Nullable private Map<T, Integer> codeByValue = new HashMap<>();
+
+  public DictionaryColumn() {
+    codes = new IntColumn();
+  }
+
+  public DictionaryColumn(int initialCapacity) {
+    codes = new IntColumn(initialCapacity);
+  }
+
+  public void add(@Nullable T value) {
+    codes.add(encode(value));
+  }
+
+  /**
+   * Appends all values of another column.
+   *
+   * <p>Each distinct value of the other column is looked up only once.
+   */
+  public void addAll(DictionaryColumn<T> other) {
+    int[] remap = new int[other.dictionary.size()];
+    for (int i = 0; i < remap.length; ++i) {
+      remap[i] = encode(other.dictionary.get(i));
+    }
+    int otherSize = other.size();
+    for (int row = 0; row < otherSize; ++row) {
+      codes.add(remap[other.codes.get(row)]);
+    }
+  }
+
+  /** Returns the value of a row, the row must be less than {@link #size()}. */
+  @Nullable
+  public T get(int row) {
+    return dictionary.get(codes.get(row));
+  }
+
+  public int size() {
+    return codes.size();
+  }
+
+  /** Returns the number of distinct values in the column. */
+  public int dictionarySize() {
+    return dictionary.size();
+  }
+
+  /**
+   * Releases the unused capacity and the index of the dictionary after the last value was added.
+   */
+  public void trimToSize() {
+    codes.trimToSize();
+    dictionary.trimToSize();
+    codeByValue = null;
+  }
+
+  private int encode(@Nullable T value) {
+    Map<T, Integer> index = codeByValue();
+    Integer code = index.get(value);
+    if (code == null) {
+      code = dictionary.size();
+      dictionary.add(value);
+      index.put(value, code);
+    }
+    return code;
+  }
+
+  private Map<T, Integer> codeByValue() {
+    if (codeByValue == null) {
+      codeByValue = new HashMap<>();
+      for (int i = 0; i < dictionary.size(); ++i) {
+        codeByValue.put(dictionary.get(i), i);
+      }
+    }
+    return codeByValue;
+  }
+}
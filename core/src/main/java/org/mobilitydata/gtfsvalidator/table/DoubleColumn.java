@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mobilitydata.gtfsvalidator.table;
+
+import java.util.Arrays;
+
+/**
+ * Growable column of {@code double} values of a table annotated with {@code @GtfsTable(columnar =
+ * true)}.
+ *
+ * <p>This class is not thread-safe. A column is filled by a single loader and only read afterwards.
+ */
+public final class DoubleColumn {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private double[] values;
+  private int size;
+
+  public DoubleColumn() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public DoubleColumn(int initialCapacity) {
+    values = new double[Math.max(initialCapacity, 1)];
+  }
+
+  public void add(double value) {
+    if (size == values.length) {
+      grow(size + 1);
+    }
+    values[size++] = value;
+  }
+
+  /** Appends all values of another column. */
+  public void addAll(DoubleColumn other) {
+    if (size + other.size > values.length) {
+      grow(size + other.size);
+    }
+    System.arraycopy(other.values, 0, values, size, other.size);
+    size += other.size;
+  }
+
+  /** Returns the value of a row, the row must be less than {@link #size()}. */
+  public double get(int row) {
+    return values[row];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Releases the unused capacity after the last value was added. */
+  public void trimToSize() {
+    if (values.length > size) {
+      values = Arrays.copyOf(values, Math.max(size, 1));
+    }
+  }
+
+  private void grow(int minCapacity) {
+    values = Arrays.copyOf(values, Math.max(minCapacity, values.length + (values.length >> 1)));
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mobilitydata.gtfsvalidator.table;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Index of entities grouped by a key and sorted by a sequence within each group, e.g., stop times
+ * grouped by trip_id and sorted by stop_sequence.
+ *
+ * <p>This is the index of {@code @FirstKey} and {@code @SequenceKey} for tables annotated with
+ * {@code @GtfsTable(columnar = true)}. Unlike a multimap, it does not hold a reference to each
+ * entity: positions of entities in the table are stored in a single array, sorted by group and
+ * sequence, and groups are returned as views of that array.
+ *
+ * <p>Groups are ordered like the keys of {@code ArrayListMultimap.create()} filled with the
+ * entities in table order, so that validators visit groups in the same order as with a multimap
+ * index. Entities with equal sequences keep their order in the table.
+ *
+ * @param <K> type of the key
+ * @param <T> type of the entities
+ */
+public final class GroupedRowIndex<K, T> {
+  // Number of keys that ArrayListMultimap.create() expects, it determines the order of keys.
+  private static final int MULTIMAP_EXPECTED_KEYS = 12;
+
+  private final List<T> entities;
+  private final Map<K, Integer> groupByKey;
+  // Positions of entities in the table, sorted by group and sequence.
+  private final int[] rows;
+  // Group g occupies rows[groupStarts[g]] to rows[groupStarts[g + 1] - 1].
+  private final int[] groupStarts;
+  private final Supplier<ListMultimap<K, T>> multimap = Suppliers.memoize(this::copyToMultimap);
+
+  private GroupedRowIndex(
+      List<T> entities, Map<K, Integer> groupByKey, int[] rows, int[] groupStarts) {
+    this.entities = entities;
+    this.groupByKey = groupByKey;
+    this.rows = rows;
+    this.groupStarts = groupStarts;
+  }
+
+  /** Returns an index without entities. */
+  public static <K, T> GroupedRowIndex<K, T> empty() {
+    return new GroupedRowIndex<>(
+        Collections.emptyList(), Collections.emptyMap(), new int[0], new int[] {0});
+  }
+
+  /**
+   * Builds an index of entities.
+   *
+   * @param entities entities of the table, they must not be modified while the index is used
+   * @param keyFunction returns the key of the group of an entity
+   * @param sequenceFunction returns the sequence of an entity within its group
+   */
+  public static <K, T> GroupedRowIndex<K, T> build(
+      List<T> entities, Function<T, K> keyFunction, ToIntFunction<T> sequenceFunction) {
+    final int size = entities.size();
+    Map<K, Integer> groupByKey = Maps.newHashMapWithExpectedSize(MULTIMAP_EXPECTED_KEYS);
+    int[] groupOfRow = new int[size];
+    for (int i = 0; i < size; ++i) {
+      K key = keyFunction.apply(entities.get(i));
+      Integer group = groupByKey.get(key);
+      if (group == null) {
+        group = groupByKey.size();
+        groupByKey.put(key, group);
+      }
+      groupOfRow[i] = group;
+    }
+    // Renumber groups in the iteration order of their keys.
+    int[] groupOrder = new int[groupByKey.size()];
+    int nextGroup = 0;
+    for (Map.Entry<K, Integer> entry : groupByKey.entrySet()) {
+      groupOrder[entry.getValue()] = nextGroup;
+      entry.setValue(nextGroup++);
+    }
+    for (int i = 0; i < size; ++i) {
+      groupOfRow[i] = groupOrder[groupOfRow[i]];
+    }
+
+    // Counting sort of rows by group keeps the order of rows within each group.
+    final int groupCount = groupByKey.size();
+    int[] groupStarts = new int[groupCount + 1];
+    for (int i = 0; i < size; ++i) {
+      ++groupStarts[groupOfRow[i] + 1];
+    }
+    int maxGroupSize = 0;
+    for (int g = 0; g < groupCount; ++g) {
+      maxGroupSize = Math.max(maxGroupSize, groupStarts[g + 1]);
+      groupStarts[g + 1] += groupStarts[g];
+    }
+    int[] next = Arrays.copyOf(groupStarts, groupCount);
+    int[] rows = new int[size];
+    for (int i = 0; i < size; ++i) {
+      rows[next[groupOfRow[i]]++] = i;
+    }
+
+    // Each group is sorted by sequence and then by position, which is unique, so that the sort is
+    // stable.
+    long[] sortKeys = new long[maxGroupSize];
+    for (int g = 0; g < groupCount; ++g) {
+      final int from = groupStarts[g];
+      final int to = groupStarts[g + 1];
+      if (to - from < 2) {
+        continue;
+      }
+      for (int k = from; k < to; ++k) {
+        sortKeys[k - from] =
+            ((long) sequenceFunction.applyAsInt(entities.get(rows[k])) << 32) | rows[k];
+      }
+      Arrays.sort(sortKeys, 0, to - from);
+      for (int k = from; k < to; ++k) {
+        rows[k] = (int) sortKeys[k - from];
+      }
+    }
+    return new GroupedRowIndex<>(entities, groupByKey, rows, groupStarts);
+  }
+
+  /** Returns the entities with the given key sorted by sequence, or an empty list. */
+  public List<T> get(K key) {
+    Integer group = groupByKey.get(key);
+    return group == null ? Collections.emptyList() : group(group);
+  }
+
+  /** Returns all groups, each sorted by sequence, see the order of groups above. */
+  public List<List<T>> groups() {
+    return new Groups();
+  }
+
+  /** Returns the number of distinct keys. */
+  public int groupCount() {
+    return groupStarts.length - 1;
+  }
+
+  /**
+   * Returns an unmodifiable multimap with all groups, it is built on the first call and then kept.
+   *
+   * <p>The multimap holds a reference to every entity, so it should only be used for small tables.
+   */
+  public ListMultimap<K, T> asMultimap() {
+    return multimap.get();
+  }
+
+  private ListMultimap<K, T> copyToMultimap() {
+    ListMultimap<K, T> copy = ArrayListMultimap.create(MULTIMAP_EXPECTED_KEYS, 1);
+    for (Map.Entry<K, Integer> entry : groupByKey.entrySet()) {
+      copy.putAll(entry.getKey(), group(entry.getValue()));
+    }
+    return Multimaps.unmodifiableListMultimap(copy);
+  }
+
+  private List<T> group(int group) {
+    return new Group(groupStarts[group], groupStarts[group + 1]);
+  }
+
+  private final class Group extends AbstractList<T> implements RandomAccess {
+    private final int from;
+    private final int to;
+
+    Group(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public T get(int index) {
+      if (index < 0 || index >= to - from) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+      }
+      return entities.get(rows[from + index]);
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+  }
+
+  private final class Groups extends AbstractList<List<T>> implements RandomAccess {
+    @Override
+    public List<T> get(int index) {
+      if (index < 0 || index >= groupCount()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+      }
+      return group(index);
+    }
+
+    @Override
+    public int size() {
+      return groupCount();
+    }
+  }
+}
@@ -28,14 +28,21 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.mobilitydata.gtfsvalidator.annotation.GtfsLoader;
 import org.mobilitydata.gtfsvalidator.input.GtfsInput;
+import org.mobilitydata.gtfsvalidator.input.ReadAheadInputStream;
 import org.mobilitydata.gtfsvalidator.notice.NoticeContainer;
 import org.mobilitydata.gtfsvalidator.notice.RuntimeExceptionInLoaderError;
 import org.mobilitydata.gtfsvalidator.notice.RuntimeExceptionInValidatorError;
 import org.mobilitydata.gtfsvalidator.notice.ThreadExecutionError;
 import org.mobilitydata.gtfsvalidator.notice.ThreadInterruptedError;
 import org.mobilitydata.gtfsvalidator.notice.UnknownFileNotice;
+import org.mobilitydata.gtfsvalidator.parsing.IdPool;
+import org.mobilitydata.gtfsvalidator.util.ByteBufferInputStream;
 import org.mobilitydata.gtfsvalidator.validator.FileValidator;
 import org.mobilitydata.gtfsvalidator.validator.ValidationContext;
 import org.mobilitydata.gtfsvalidator.validator.ValidatorLoader;
@@ -50,6 +57,9 @@ public class GtfsFeedLoader {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
   private final HashMap<String, GtfsTableLoader> tableLoaders = new HashMap<>();
   private int numThreads = 1;
+  private int readAheadBufferSize = 256 << 10;
+  private int readAheadDepth = 4;
+  @Nullable private ExecutorService sharedExecutor;
 
   public GtfsFeedLoader() {
     ClassPath classPath;
@@ -87,14 +97,101 @@ public class GtfsFeedLoader {
     this.numThreads = numThreads;
   }
 
+  /**
+   * Configures reading of files ahead of the parser, see {@link ReadAheadInputStream}.
+   *
+   * @param bufferSize size of each buffer in bytes
+   * @param depth number of buffers per file, 0 disables reading ahead
+   */
+  public void setReadAhead(int bufferSize, int depth) {
+    this.readAheadBufferSize = bufferSize;
+    this.readAheadDepth = depth;
+  }
+
+  /**
+   * Makes table loaders split files into rows and fields at the byte level, see {@link
+   * org.mobilitydata.gtfsvalidator.parsing.CsvFile#CsvFile(java.io.InputStream, String, boolean)}.
+   *
+   * @param enabled whether the byte tokenizer is used instead of the univocity parser
+   */
+  public void setByteTokenizerEnabled(boolean enabled) {
+    for (GtfsTableLoader loader : tableLoaders.values()) {
+      loader.setByteTokenizerEnabled(enabled);
+    }
+  }
+
+  /**
+   * Makes table loaders split large files into chunks of rows that are parsed in parallel, see
+   * {@link GtfsTableLoader#setChunkedParsing}.
+   *
+   * <p>Chunks are parsed by a pool of their own that is shared by all files and all calls to {@link
+   * #loadAndValidate}, since loaders wait for their chunks. Idle threads of the pool exit.
+   *
+   * @param chunkSize minimal size of a chunk in bytes, 0 parses every file on a single thread
+   * @param numThreads number of threads that parse chunks
+   */
+  public void setChunkedParsing(int chunkSize, int numThreads) {
+    ExecutorService chunkExecutor = null;
+    if (chunkSize > 0) {
+      ThreadPoolExecutor pool =
+          new ThreadPoolExecutor(
+              numThreads,
+              numThreads,
+              10,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> {
+                Thread thread = new Thread(runnable, "chunk-parser");
+                thread.setDaemon(true);
+                return thread;
+              });
+      pool.allowCoreThreadTimeOut(true);
+      chunkExecutor = pool;
+    }
+    for (GtfsTableLoader loader : tableLoaders.values()) {
+      loader.setChunkedParsing(chunkExecutor, chunkSize, 2 * numThreads);
+    }
+  }
+
+  /**
+   * Makes all calls to {@link #loadAndValidate} run their loaders and validators on the given
+   * executor instead of a new pool of {@code numThreads} threads.
+   *
+   * <p>This allows several feeds to be validated concurrently from separate threads while sharing a
+   * single pool. The calling threads only wait for the tasks, so they must not belong to the given
+   * executor.
+   *
+   * @param sharedExecutor the shared executor, or null to create a pool per call
+   */
+  public void setSharedExecutor(@Nullable ExecutorService sharedExecutor) {
+    this.sharedExecutor = sharedExecutor;
+  }
+
   public GtfsFeedContainer loadAndValidate(
       GtfsInput gtfsInput,
       ValidationContext validationContext,
       ValidatorLoader validatorLoader,
       NoticeContainer noticeContainer) {
-    logger.atInfo().log("Loading in %d threads", numThreads);
-    ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+    ExecutorService exec;
+    if (sharedExecutor != null) {
+      exec = sharedExecutor;
+    } else {
+      logger.atInfo().log("Loading in %d threads", numThreads);
+      exec = Executors.newFixedThreadPool(numThreads);
+    }
+    // Every file that is being loaded needs its own reading thread, so the pool is not bounded.
+    ExecutorService readAheadExec =
+        readAheadDepth > 0
+            ? Executors.newCachedThreadPool(
+                runnable -> {
+                  Thread thread = new Thread(runnable, "read-ahead");
+                  thread.setDaemon(true);
+                  return thread;
+                })
+            : null;
 
+    // IDs are shared by all tables of this feed but not with other feeds.
+    IdPool idPool = new IdPool();
     List<Callable<TableAndNoticeContainers>> loaderCallables = new ArrayList<>();
     Map<String, GtfsTableLoader<?>> remainingLoaders =
         (Map<String, GtfsTableLoader<?>>) tableLoaders.clone();
@@ -106,11 +203,18 @@ public class GtfsFeedLoader {
         loaderCallables.add(
             () -> {
               InputStream inputStream = gtfsInput.getFile(filename);
+              // Memory-mapped files are parsed in place and gain nothing from reading ahead.
+              if (readAheadExec != null && !(inputStream instanceof ByteBufferInputStream)) {
+                inputStream =
+                    new ReadAheadInputStream(
+                        inputStream, readAheadBufferSize, readAheadDepth, readAheadExec);
+              }
               NoticeContainer loaderNotices = new NoticeContainer();
               GtfsTableContainer tableContainer;
               try {
                 tableContainer =
-                    loader.load(inputStream, validationContext, validatorLoader, loaderNotices);
+                    loader.load(
+                        inputStream, validationContext, validatorLoader, loaderNotices, idPool);
               } catch (RuntimeException e) {
                 // This handler should prevent ExecutionException for
                 // this thread. We catch an exception here for storing
@@ -124,6 +228,16 @@ public class GtfsFeedLoader {
                 tableContainer =
                     loader.loadMissingFile(validationContext, validatorLoader, loaderNotices);
               } finally {
+                if (inputStream instanceof ReadAheadInputStream) {
+                  ReadAheadInputStream.Stats stats =
+                      ((ReadAheadInputStream) inputStream).getStats();
+                  logger.atInfo().log(
+                      "Read %s: %d bytes, parser stalled %.3f s, reader stalled %.3f s",
+                      filename,
+                      stats.getBytesRead(),
+                      stats.getConsumerStallNanos() / 1e9,
+                      stats.getProducerStallNanos() / 1e9);
+                }
                 inputStream.close();
               }
               return new TableAndNoticeContainers(tableContainer, loaderNotices);
@@ -162,6 +276,7 @@ public class GtfsFeedLoader {
         logger.atSevere().withCause(e).log("Interrupted during loading GTFS tables");
         noticeContainer.addSystemError(new ThreadInterruptedError(e.getMessage()));
       }
+      idPool.logStatistics();
       GtfsFeedContainer feed = new GtfsFeedContainer(tableContainers);
       if (!feed.isParsedSuccessfully()) {
         // No need to call file validators if any file failed to parse. File validations in that
@@ -221,7 +336,12 @@ public class GtfsFeedLoader {
       }
       return feed;
     } finally {
-      exec.shutdown();
+      if (exec != sharedExecutor) {
+        exec.shutdown();
+      }
+      if (readAheadExec != null) {
+        readAheadExec.shutdownNow();
+      }
     }
   }
 
@@ -17,6 +17,8 @@
 package org.mobilitydata.gtfsvalidator.table;
 
 import java.util.List;
+import javax.annotation.Nullable;
+import org.mobilitydata.gtfsvalidator.parsing.IdPool;
 
 /**
  * Container for {@code GtfsEntity} instances for the whole GTFS table, e.g., stops.txt.
@@ -31,6 +33,8 @@ public abstract class GtfsTableContainer<T extends GtfsEntity> {
 
   private final TableStatus tableStatus;
 
+  @Nullable private IdPool.Token idPoolToken;
+
   public GtfsTableContainer(TableStatus tableStatus) {
     this.tableStatus = tableStatus;
   }
@@ -39,6 +43,22 @@ public abstract class GtfsTableContainer<T extends GtfsEntity> {
     return tableStatus;
   }
 
+  /**
+   * Returns the token of the pool that assigned integer codes to keys of the entities, or null if
+   * the entities were not loaded with a pool.
+   *
+   * <p>Codes of entities from different containers are only comparable if both containers have the
+   * same token. Only the token is kept so that the pool itself is not retained during validation.
+   */
+  @Nullable
+  public IdPool.Token getIdPoolToken() {
+    return idPoolToken;
+  }
+
+  protected void setIdPoolToken(@Nullable IdPool.Token idPoolToken) {
+    this.idPoolToken = idPoolToken;
+  }
+
   public abstract Class<T> getEntityClass();
 
   public int entityCount() {
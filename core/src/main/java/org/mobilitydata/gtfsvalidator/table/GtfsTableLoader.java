@@ -16,9 +16,22 @@
 
 package org.mobilitydata.gtfsvalidator.table;
 
+import com.google.common.flogger.FluentLogger;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
 import org.mobilitydata.gtfsvalidator.notice.NoticeContainer;
+import org.mobilitydata.gtfsvalidator.parsing.CsvFile;
+import org.mobilitydata.gtfsvalidator.parsing.FieldCache;
+import org.mobilitydata.gtfsvalidator.parsing.IdPool;
 import org.mobilitydata.gtfsvalidator.validator.ValidationContext;
 import org.mobilitydata.gtfsvalidator.validator.ValidatorLoader;
 
@@ -31,22 +44,243 @@ import org.mobilitydata.gtfsvalidator.validator.ValidatorLoader;
  * @param <T> subclass of {@code GtfsEntity}
  */
 public abstract class GtfsTableLoader<T extends GtfsEntity> {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private boolean byteTokenizerEnabled = false;
+  @Nullable private ExecutorService chunkExecutor;
+  private int chunkSize;
+  private int maxPendingChunks;
+
   public abstract String gtfsFilename();
 
+  /**
+   * Tells whether {@link #load} reads the file with the byte tokenizer, see {@link
+   * org.mobilitydata.gtfsvalidator.parsing.CsvFile#CsvFile(InputStream, String, boolean)}.
+   */
+  public boolean isByteTokenizerEnabled() {
+    return byteTokenizerEnabled;
+  }
+
+  public void setByteTokenizerEnabled(boolean byteTokenizerEnabled) {
+    this.byteTokenizerEnabled = byteTokenizerEnabled;
+  }
+
+  /**
+   * Makes {@link #load} split files into chunks of rows that are parsed in parallel, see {@link
+   * #loadChunks}.
+   *
+   * <p>Loading a file waits for its chunks, so the executor must not be the one that runs the
+   * loaders. Otherwise all its threads may end up waiting for chunks that are never started.
+   *
+   * @param executor executor for the chunks, or null to parse files on the calling thread
+   * @param chunkSize minimal size of a chunk in bytes
+   * @param maxPendingChunks maximal number of chunks of a file that are held in memory
+   */
+  public void setChunkedParsing(
+      @Nullable ExecutorService executor, int chunkSize, int maxPendingChunks) {
+    this.chunkExecutor = executor;
+    this.chunkSize = chunkSize;
+    this.maxPendingChunks = maxPendingChunks;
+  }
+
+  public boolean isChunkedParsingEnabled() {
+    return chunkExecutor != null;
+  }
+
+  /**
+   * Returns a new list for loaded entities.
+   *
+   * <p>Loaders of columnar tables return their column storage, so that chunks are loaded straight
+   * into columns, see {@code GtfsTable#columnar}.
+   */
+  protected List<T> newEntityList() {
+    return new ArrayList<>();
+  }
+
+  /**
+   * Loads rows of a file in chunks on the executor given to {@link #setChunkedParsing}.
+   *
+   * <p>The calling thread splits the file while earlier chunks are parsed. Every chunk is loaded
+   * into its own notice container and list of entities, see {@link #newEntityList}, and the results
+   * are appended in the order of the chunks, so that entities and notices are in the same order as
+   * if the whole file was loaded by {@code chunkLoader} at once. A file that fits into a single
+   * chunk is loaded on the calling thread.
+   *
+   * @param csvFile the file after its header, see {@link CsvFile#nextChunk}
+   * @param chunkLoader loads the rows of a chunk
+   * @param noticeContainer container for notices of all chunks
+   * @param entities list for entities of all chunks
+   * @return true if some rows could not be parsed
+   */
+  protected boolean loadChunks(
+      CsvFile csvFile,
+      ChunkLoader<T> chunkLoader,
+      NoticeContainer noticeContainer,
+      List<T> entities) {
+    CsvFile chunk = csvFile.nextChunk(chunkSize);
+    if (chunk == null) {
+      return false;
+    }
+    CsvFile nextChunk = csvFile.nextChunk(chunkSize);
+    if (nextChunk == null) {
+      return chunkLoader.load(chunk, noticeContainer, entities);
+    }
+    boolean hasUnparsableRows = false;
+    Queue<Future<ChunkResult<T>>> pending = new ArrayDeque<>();
+    try {
+      while (chunk != null) {
+        final CsvFile rows = chunk;
+        pending.add(
+            chunkExecutor.submit(
+                () -> {
+                  ChunkResult<T> result = new ChunkResult<>(newEntityList());
+                  result.hasUnparsableRows =
+                      chunkLoader.load(rows, result.noticeContainer, result.entities);
+                  return result;
+                }));
+        while (pending.size() > maxPendingChunks) {
+          hasUnparsableRows |= mergeChunk(pending.remove(), noticeContainer, entities);
+        }
+        chunk = nextChunk;
+        nextChunk = chunk != null ? csvFile.nextChunk(chunkSize) : null;
+      }
+      while (!pending.isEmpty()) {
+        hasUnparsableRows |= mergeChunk(pending.remove(), noticeContainer, entities);
+      }
+    } finally {
+      for (Future<ChunkResult<T>> future : pending) {
+        future.cancel(true);
+      }
+    }
+    return hasUnparsableRows;
+  }
+
+  /** Waits for a chunk and appends its results, rethrowing exceptions of the chunk. */
+  private boolean mergeChunk(
+      Future<ChunkResult<T>> future, NoticeContainer noticeContainer, List<T> entities) {
+    ChunkResult<T> result;
+    try {
+      result = future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading " + gtfsFilename(), e);
+    }
+    noticeContainer.addAll(result.noticeContainer);
+    entities.addAll(result.entities);
+    return result.hasUnparsableRows;
+  }
+
+  /**
+   * Logs how fast the characters of a loaded file were decoded.
+   *
+   * <p>Nothing is logged for files that were read by the byte tokenizer, which only decodes the
+   * requested values.
+   */
+  protected void logDecodingThroughput(CsvFile csvFile) {
+    long bytes = csvFile.getDecodedByteCount();
+    if (bytes == 0) {
+      return;
+    }
+    long nanos = Math.max(1, csvFile.getDecodeNanos());
+    logger.atInfo().log(
+        "Decoded %s: %d bytes, %.1f%% ASCII, %.1f ms, %.1f MB/s",
+        gtfsFilename(),
+        bytes,
+        csvFile.getDecodedAsciiByteCount() * 100.0 / bytes,
+        nanos / 1e6,
+        bytes * 1e3 / nanos);
+  }
+
+  /**
+   * Logs the efficiency of the field caches of a loaded file.
+   *
+   * <p>A file that is parsed in chunks uses separate caches for every chunk, their statistics are
+   * summed up so that a single line is logged per column.
+   *
+   * @param cacheStatistics statistics per column name
+   */
+  protected void logCacheStatistics(Map<String, FieldCache.Statistics> cacheStatistics) {
+    for (Map.Entry<String, FieldCache.Statistics> entry : cacheStatistics.entrySet()) {
+      FieldCache.Statistics statistics = entry.getValue();
+      logger.atInfo().log(
+          "Cache for %s %s: policy = %s, size = %d, lookup count = %d, hits = %.2f%%,"
+              + " misses = %.2f%%, evictions = %d",
+          gtfsFilename(),
+          entry.getKey(),
+          statistics.getPolicies(),
+          statistics.getCacheSize(),
+          statistics.getLookupCount(),
+          statistics.getHitRatio() * 100.0,
+          statistics.getMissRatio() * 100.0,
+          statistics.getEvictionCount());
+    }
+  }
+
   public abstract boolean isRequired();
 
   public abstract Set<String> getColumnNames();
 
   public abstract Set<String> getRequiredColumnNames();
 
+  /**
+   * Loads the table from a stream with IDs interned in a pool of their own.
+   *
+   * <p>Use {@link #load(InputStream, ValidationContext, ValidatorLoader, NoticeContainer, IdPool)}
+   * to share IDs with other tables of the feed.
+   */
+  public GtfsTableContainer<T> load(
+      InputStream inputStream,
+      ValidationContext validationContext,
+      ValidatorLoader validatorLoader,
+      NoticeContainer noticeContainer) {
+    return load(inputStream, validationContext, validatorLoader, noticeContainer, new IdPool());
+  }
+
+  /**
+   * Loads the table from a stream.
+   *
+   * @param idPool pool of IDs that is shared by all tables of the feed
+   */
   public abstract GtfsTableContainer<T> load(
       InputStream inputStream,
       ValidationContext validationContext,
       ValidatorLoader validatorLoader,
-      NoticeContainer noticeContainer);
+      NoticeContainer noticeContainer,
+      IdPool idPool);
 
   public abstract GtfsTableContainer<T> loadMissingFile(
       ValidationContext validationContext,
       ValidatorLoader validatorLoader,
       NoticeContainer noticeContainer);
+
+  /** Loads the rows of a chunk of a file, see {@link #loadChunks}. */
+  protected interface ChunkLoader<T> {
+    /**
+     * Loads the rows of a chunk.
+     *
+     * @param chunk the chunk
+     * @param noticeContainer container for notices of the chunk
+     * @param entities list for entities of the chunk
+     * @return true if some rows could not be parsed
+     */
+    boolean load(CsvFile chunk, NoticeContainer noticeContainer, List<T> entities);
+  }
+
+  private static class ChunkResult<T> {
+    final NoticeContainer noticeContainer = new NoticeContainer();
+    final List<T> entities;
+    boolean hasUnparsableRows;
+
+    ChunkResult(List<T> entities) {
+      this.entities = entities;
+    }
+  }
 }
@@ -16,25 +16,120 @@
 
 package org.mobilitydata.gtfsvalidator.type;
 
+import com.google.common.primitives.Ints;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import javax.annotation.Nullable;
 
-/** Represents GTFS date. */
+/**
+ * Represents GTFS date.
+ *
+ * <p>The date is stored as a day count since 1970-01-01, so that a date is a single small object
+ * and dates are compared and subtracted without going through {@link LocalDate}.
+ */
 public class GtfsDate implements Comparable<GtfsDate> {
-  private final LocalDate localDate;
+  // Days from 0000-01-01 to 1970-01-01 in the proleptic Gregorian calendar.
+  private static final long DAYS_0000_TO_1970 = 719528;
 
-  private GtfsDate(LocalDate localDate) {
-    this.localDate = localDate;
+  private final int epochDay;
+
+  private GtfsDate(int epochDay) {
+    this.epochDay = epochDay;
   }
 
   public static GtfsDate fromLocalDate(LocalDate localDate) {
-    return new GtfsDate(localDate);
+    return fromEpochDay(localDate.toEpochDay());
   }
 
+  /**
+   * Returns a GtfsDate for the given day count since 1970-01-01.
+   *
+   * @throws ArithmeticException if the day count does not fit into an int
+   */
   public static GtfsDate fromEpochDay(long epochDay) {
-    return new GtfsDate(LocalDate.ofEpochDay(epochDay));
+    return new GtfsDate(Math.toIntExact(epochDay));
+  }
+
+  /**
+   * Returns a GtfsDate for the given year, month and day.
+   *
+   * @throws DateTimeException if the date is not valid, see {@link LocalDate#of(int, int, int)}
+   */
+  public static GtfsDate fromYearMonthDay(int year, int month, int day) {
+    if (!isValidDate(year, month, day)) {
+      // Throws an exception with a detailed message.
+      return fromLocalDate(LocalDate.of(year, month, day));
+    }
+    return fromEpochDay(toEpochDay(year, month, day));
+  }
+
+  /** Tells if {@link LocalDate#of(int, int, int)} accepts the date. */
+  public static boolean isValidDate(int year, int month, int day) {
+    return month >= 1
+        && month <= 12
+        && day >= 1
+        && day <= Month.of(month).length(Year.isLeap(year))
+        && year >= Year.MIN_VALUE
+        && year <= Year.MAX_VALUE;
+  }
+
+  /** Computes the day count since 1970-01-01 of a valid date, like {@link LocalDate#toEpochDay}. */
+  private static long toEpochDay(int year, int month, int day) {
+    long y = year;
+    long total = 365 * y;
+    if (y >= 0) {
+      total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+    } else {
+      total -= y / -4 - y / -100 + y / -400;
+    }
+    total += (367 * month - 362) / 12;
+    total += day - 1;
+    if (month > 2) {
+      total -= Year.isLeap(year) ? 1 : 2;
+    }
+    return total - DAYS_0000_TO_1970;
   }
 
   public static GtfsDate fromString(String yyyymmdd) {
+    GtfsDate date = tryParse(yyyymmdd);
+    if (date != null) {
+      return date;
+    }
+    // Throws the same exceptions as before the fast path was added.
+    return parseWithLocalDate(yyyymmdd);
+  }
+
+  /**
+   * Parses a date in YYYYMMDD format like {@link #fromString(String)} but returns null instead of
+   * throwing an exception if the string is not a valid date.
+   *
+   * @param yyyymmdd the date string
+   * @return GtfsDate object or null
+   */
+  @Nullable
+  public static GtfsDate tryParse(String yyyymmdd) {
+    if (yyyymmdd.length() != 8) {
+      return null;
+    }
+    int value = 0;
+    for (int i = 0; i < 8; ++i) {
+      char c = yyyymmdd.charAt(i);
+      if (c < '0' || c > '9') {
+        // Integer.parseInt accepts signs and non-ASCII digits in any part of the date.
+        return c == '+' || c == '-' || c >= 128 ? tryParseWithLocalDate(yyyymmdd) : null;
+      }
+      value = value * 10 + (c - '0');
+    }
+    int year = value / 10000;
+    int month = value / 100 % 100;
+    int day = value % 100;
+    return isValidDate(year, month, day) ? fromEpochDay(toEpochDay(year, month, day)) : null;
+  }
+
+  private static GtfsDate parseWithLocalDate(String yyyymmdd) {
     if (yyyymmdd.length() != 8) {
       throw new IllegalArgumentException("Date must have YYYYMMDD format: " + yyyymmdd);
     }
@@ -46,36 +141,57 @@ public class GtfsDate implements Comparable<GtfsDate> {
     } catch (NumberFormatException ex) {
       throw new IllegalArgumentException("Date must have YYYYMMDD format: " + yyyymmdd);
     }
-    return new GtfsDate(LocalDate.of(year, month, day));
+    return fromLocalDate(LocalDate.of(year, month, day));
+  }
+
+  @Nullable
+  private static GtfsDate tryParseWithLocalDate(String yyyymmdd) {
+    try {
+      return parseWithLocalDate(yyyymmdd);
+    } catch (IllegalArgumentException | DateTimeException e) {
+      return null;
+    }
   }
 
   public int getYear() {
-    return localDate.getYear();
+    return getLocalDate().getYear();
   }
 
   public int getMonth() {
-    return localDate.getMonthValue();
+    return getLocalDate().getMonthValue();
   }
 
   public int getDay() {
-    return localDate.getDayOfMonth();
+    return getLocalDate().getDayOfMonth();
+  }
+
+  /** Returns the day of week without creating a {@link LocalDate}. */
+  public DayOfWeek getDayOfWeek() {
+    // 1970-01-01 was a Thursday.
+    return DayOfWeek.of(Math.floorMod(epochDay + 3, 7) + 1);
   }
 
   public LocalDate getLocalDate() {
-    return localDate;
+    return LocalDate.ofEpochDay(epochDay);
   }
 
   public long toEpochDay() {
-    return localDate.toEpochDay();
+    return epochDay;
+  }
+
+  /** Returns the day count since 1970-01-01 as an int, which is how the date is stored. */
+  public int getEpochDay() {
+    return epochDay;
   }
 
   public String toYYYYMMDD() {
     return String.format("%04d%02d%02d", getYear(), getMonth(), getDay());
   }
 
+  /** Returns the number of days between the dates, negative if the other date is later. */
   @Override
   public int compareTo(GtfsDate other) {
-    return localDate.compareTo(other.localDate);
+    return Ints.saturatedCast((long) epochDay - other.epochDay);
   }
 
   @Override
@@ -84,21 +200,21 @@ public class GtfsDate implements Comparable<GtfsDate> {
       return true;
     }
     if (anObject instanceof GtfsDate) {
-      return compareTo((GtfsDate) anObject) == 0;
+      return epochDay == ((GtfsDate) anObject).epochDay;
     }
     return false;
   }
 
   @Override
   public int hashCode() {
-    return localDate.hashCode();
+    return Integer.hashCode(epochDay);
   }
 
   public boolean isAfter(GtfsDate other) {
-    return localDate.isAfter(other.localDate);
+    return epochDay > other.epochDay;
   }
 
   public boolean isBefore(GtfsDate other) {
-    return localDate.isBefore(other.localDate);
+    return epochDay < other.epochDay;
   }
 }
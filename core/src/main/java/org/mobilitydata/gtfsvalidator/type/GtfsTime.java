@@ -16,8 +16,7 @@
 
 package org.mobilitydata.gtfsvalidator.type;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /**
  * Represents GTFS time.
@@ -26,7 +25,20 @@ import java.util.regex.Pattern;
  * days on which daylight savings time changes occur).
  */
 public class GtfsTime implements Comparable<GtfsTime> {
-  private static final Pattern HHMMCC_PATTERN = Pattern.compile("(\\d{1,3}):(\\d\\d):(\\d\\d)");
+  /**
+   * Times below this value share a single instance, so that the many repeated times of
+   * stop_times.txt do not need to be deduplicated with a hash table.
+   */
+  static final int INTERNED_LIMIT = 48 * 3600;
+
+  /**
+   * Interned instances, created on first use.
+   *
+   * <p>Racy initialization is safe because the only field of GtfsTime is final. Two threads may
+   * create two equal instances for the same time, which only costs a little memory.
+   */
+  private static final GtfsTime[] INTERNED = new GtfsTime[INTERNED_LIMIT];
+
   private final int secondsSinceMidnight;
 
   private GtfsTime(int secondsSinceMidnight) {
@@ -43,11 +55,19 @@ public class GtfsTime implements Comparable<GtfsTime> {
     if (second < 0 || second >= 60) {
       throw new IllegalArgumentException("Invalid second: " + second);
     }
-    return new GtfsTime(hour * 3600 + minute * 60 + second);
+    return fromSecondsSinceMidnight(hour * 3600 + minute * 60 + second);
   }
 
   public static GtfsTime fromSecondsSinceMidnight(int secondsSinceMidnight) {
-    return new GtfsTime(secondsSinceMidnight);
+    if (secondsSinceMidnight < 0 || secondsSinceMidnight >= INTERNED_LIMIT) {
+      return new GtfsTime(secondsSinceMidnight);
+    }
+    GtfsTime time = INTERNED[secondsSinceMidnight];
+    if (time == null) {
+      time = new GtfsTime(secondsSinceMidnight);
+      INTERNED[secondsSinceMidnight] = time;
+    }
+    return time;
   }
 
   /**
@@ -57,15 +77,54 @@ public class GtfsTime implements Comparable<GtfsTime> {
    * @return GtfsTime object
    */
   public static GtfsTime fromString(String time) {
-    Matcher matcher = HHMMCC_PATTERN.matcher(time);
-    if (!matcher.matches()) {
+    GtfsTime result = tryParse(time);
+    if (result == null) {
       throw new IllegalArgumentException(
           "Time must have H:MM:SS, HH:MM:SS or HHH:MM:SS format: " + time);
     }
-    return fromHourMinuteSecond(
-        Integer.parseInt(matcher.group(1)),
-        Integer.parseInt(matcher.group(2)),
-        Integer.parseInt(matcher.group(3)));
+    return result;
+  }
+
+  /**
+   * Parses a time in H:MM:SS, HH:MM:SS or HHH:MM:SS format like {@link #fromString(String)} but
+   * returns null instead of throwing an exception if the string is not a valid time.
+   *
+   * @param time the time string
+   * @return GtfsTime object or null
+   */
+  @Nullable
+  public static GtfsTime tryParse(CharSequence time) {
+    int length = time.length();
+    if (length < 7 || length > 9) {
+      return null;
+    }
+    int hourEnd = length - 6;
+    int hour = 0;
+    for (int i = 0; i < hourEnd; ++i) {
+      int digit = time.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return null;
+      }
+      hour = hour * 10 + digit;
+    }
+    int minuteTens = time.charAt(hourEnd + 1) - '0';
+    int minuteOnes = time.charAt(hourEnd + 2) - '0';
+    int secondTens = time.charAt(hourEnd + 4) - '0';
+    int secondOnes = time.charAt(hourEnd + 5) - '0';
+    if (time.charAt(hourEnd) != ':'
+        || time.charAt(hourEnd + 3) != ':'
+        || minuteTens < 0
+        || minuteTens > 5
+        || minuteOnes < 0
+        || minuteOnes > 9
+        || secondTens < 0
+        || secondTens > 5
+        || secondOnes < 0
+        || secondOnes > 9) {
+      return null;
+    }
+    return fromSecondsSinceMidnight(
+        hour * 3600 + (minuteTens * 10 + minuteOnes) * 60 + secondTens * 10 + secondOnes);
   }
 
   public int getSecondsSinceMidnight() {
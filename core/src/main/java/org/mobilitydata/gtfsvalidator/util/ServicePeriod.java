@@ -16,8 +16,9 @@ import java.util.TreeSet;
  * <p>This class is immutable.
  */
 public class ServicePeriod {
-  private final LocalDate serviceStart;
-  private final LocalDate serviceEnd;
+  // Days since 1970-01-01, so that iterating over the pattern does not create a LocalDate per day.
+  private final int serviceStart;
+  private final int serviceEnd;
   private final byte weeklyPattern;
   private final Set<LocalDate> addedDays;
   private final Set<LocalDate> removedDays;
@@ -29,11 +30,31 @@ public class ServicePeriod {
       byte weeklyPattern,
       Set<LocalDate> addedDays,
       Set<LocalDate> removedDays) {
+    this(
+        Math.toIntExact(serviceStart.toEpochDay()),
+        Math.toIntExact(serviceEnd.toEpochDay()),
+        weeklyPattern,
+        addedDays,
+        removedDays);
+  }
+
+  /**
+   * Creates a service period for the given pattern, added and removed days.
+   *
+   * @param serviceStartEpochDay the first day of the weekly pattern, in days since 1970-01-01
+   * @param serviceEndEpochDay the last day of the weekly pattern, in days since 1970-01-01
+   */
+  public ServicePeriod(
+      int serviceStartEpochDay,
+      int serviceEndEpochDay,
+      byte weeklyPattern,
+      Set<LocalDate> addedDays,
+      Set<LocalDate> removedDays) {
     Preconditions.checkArgument(
-        serviceStart.compareTo(serviceEnd) <= 0,
+        serviceStartEpochDay <= serviceEndEpochDay,
         "serviceStart must be before or equal to serviceEnd");
-    this.serviceStart = Preconditions.checkNotNull(serviceStart);
-    this.serviceEnd = Preconditions.checkNotNull(serviceEnd);
+    this.serviceStart = serviceStartEpochDay;
+    this.serviceEnd = serviceEndEpochDay;
     this.weeklyPattern = weeklyPattern;
     this.addedDays = Preconditions.checkNotNull(addedDays);
     this.removedDays = Preconditions.checkNotNull(removedDays);
@@ -45,8 +66,8 @@ public class ServicePeriod {
    * <p>serviceStart and serviceEnd will be set to {@code LocalDate.EPOCH}.
    */
   public ServicePeriod(Set<LocalDate> dates) {
-    this.serviceStart = LocalDate.EPOCH;
-    this.serviceEnd = LocalDate.EPOCH;
+    this.serviceStart = 0;
+    this.serviceEnd = 0;
     this.weeklyPattern = 0;
     this.addedDays = Preconditions.checkNotNull(dates);
     this.removedDays = ImmutableSet.of();
@@ -102,12 +123,13 @@ public class ServicePeriod {
    */
   public SortedSet<LocalDate> toDates() {
     SortedSet<LocalDate> activeDates = new TreeSet<>();
-    for (LocalDate current = serviceStart;
-        current.compareTo(serviceEnd) <= 0;
-        current = current.plusDays(1)) {
-      if (isIncludedInPattern(current.getDayOfWeek(), weeklyPattern)) {
-        activeDates.add(current);
+    // Day of week from 0 (Monday) to 6 (Sunday), 1970-01-01 was a Thursday.
+    int dayOfWeek = Math.floorMod(serviceStart + 3, 7);
+    for (int current = serviceStart; current <= serviceEnd; ++current) {
+      if (((weeklyPattern >> dayOfWeek) & 1) != 0) {
+        activeDates.add(LocalDate.ofEpochDay(current));
       }
+      dayOfWeek = dayOfWeek == 6 ? 0 : dayOfWeek + 1;
     }
     activeDates.addAll(addedDays);
     activeDates.removeAll(removedDays);
@@ -120,6 +142,15 @@ public class ServicePeriod {
    * @return the first day of the weekly pattern
    */
   public LocalDate getServiceStart() {
+    return LocalDate.ofEpochDay(serviceStart);
+  }
+
+  /**
+   * Returns the first day of the weekly pattern, inclusive, in days since 1970-01-01.
+   *
+   * @return the first day of the weekly pattern as an epoch day
+   */
+  public int getServiceStartEpochDay() {
     return serviceStart;
   }
 
@@ -130,6 +161,15 @@ public class ServicePeriod {
    * @return the last day of the weekly pattern
    */
   public LocalDate getServiceEnd() {
+    return LocalDate.ofEpochDay(serviceEnd);
+  }
+
+  /**
+   * Returns the last day of the weekly pattern, inclusive, in days since 1970-01-01.
+   *
+   * @return the last day of the weekly pattern as an epoch day
+   */
+  public int getServiceEndEpochDay() {
     return serviceEnd;
   }
 
@@ -179,8 +219,8 @@ public class ServicePeriod {
     }
     ServicePeriod that = (ServicePeriod) o;
     return weeklyPattern == that.weeklyPattern
-        && serviceStart.equals(that.serviceStart)
-        && serviceEnd.equals(that.serviceEnd)
+        && serviceStart == that.serviceStart
+        && serviceEnd == that.serviceEnd
         && addedDays.equals(that.addedDays)
         && removedDays.equals(that.removedDays);
   }
@@ -194,9 +234,9 @@ public class ServicePeriod {
   public String toString() {
     return "ServicePeriod{"
         + "serviceStart="
-        + serviceStart
+        + getServiceStart()
         + ", serviceEnd="
-        + serviceEnd
+        + getServiceEnd()
         + ", weeklyPattern="
         + weeklyPattern
         + ", addedDays="
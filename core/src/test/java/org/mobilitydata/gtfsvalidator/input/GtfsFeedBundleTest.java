@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GtfsFeedBundleTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private static void writeZip(File zipFile, String... entries) throws IOException {
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(entry.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+  }
+
+  private static String readFile(GtfsInput gtfsInput, String filename) throws IOException {
+    try (InputStream inputStream = gtfsInput.getFile(filename)) {
+      return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static List<String> feedNames(GtfsFeedBundle bundle) {
+    return bundle.getFeeds().stream()
+        .map(GtfsFeedBundle.Feed::getName)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void findFeedRoots() {
+    assertThat(
+            GtfsFeedBundle.findFeedRoots(
+                Arrays.asList(
+                    "readme.txt",
+                    "nl/stops.txt",
+                    "nl/trips.txt",
+                    "be/sncb/agency.txt",
+                    "be/sncb/shapes/",
+                    "__MACOSX/nl/stops.txt")))
+        .containsExactly("be/sncb/", "nl/")
+        .inOrder();
+    assertThat(GtfsFeedBundle.findFeedRoots(Arrays.asList("stops.txt", "docs/readme.txt")))
+        .containsExactly("");
+  }
+
+  @Test
+  public void outputNames_distinct() {
+    List<String> outputNames =
+        GtfsFeedBundle.outputNames(Arrays.asList("a b", "a_b", "A_B", "b.zip/nl", "a b", "a b"));
+
+    assertThat(outputNames.get(0)).isEqualTo("a_b");
+    assertThat(outputNames.get(1)).matches("a_b_[0-9a-f]{8}");
+    assertThat(outputNames.get(2)).matches("A_B_[0-9a-f]{8}");
+    assertThat(outputNames.get(3)).isEqualTo("b.zip_nl");
+    assertThat(outputNames.get(4)).matches("a_b_[0-9a-f]{8}");
+    assertThat(outputNames.get(5)).isEqualTo(outputNames.get(4) + "_2");
+    assertThat(outputNames.stream().map(String::toLowerCase).distinct().count()).isEqualTo(6);
+  }
+
+  @Test
+  public void archiveWithSeveralFeeds() throws IOException {
+    File zipFile = tmpDir.newFile("bundle.zip");
+    writeZip(zipFile, "nl/stops.txt", "nl/agency.txt", "be/stops.txt", "be/extra/file.txt");
+
+    try (GtfsFeedBundle bundle = GtfsFeedBundle.open(zipFile.toPath(), 1)) {
+      assertThat(feedNames(bundle)).containsExactly("bundle.zip/be", "bundle.zip/nl").inOrder();
+      assertThat(bundle.getFeeds().get(0).getOutputName()).isEqualTo("bundle.zip_be");
+      GtfsInput be = bundle.getFeeds().get(0).getInput();
+      GtfsInput nl = bundle.getFeeds().get(1).getInput();
+      assertThat(be.getFilenames()).containsExactly("stops.txt");
+      assertThat(nl.getFilenames()).containsExactly("stops.txt", "agency.txt");
+      assertThat(readFile(be, "stops.txt")).isEqualTo("be/stops.txt");
+      assertThat(readFile(nl, "stops.txt")).isEqualTo("nl/stops.txt");
+    }
+  }
+
+  @Test
+  public void directoryOfFeeds() throws IOException {
+    File directory = tmpDir.newFolder("feeds");
+    writeZip(new File(directory, "a.zip"), "stops.txt");
+    writeZip(new File(directory, "b.zip"), "feed/stops.txt");
+    File unarchived = new File(directory, "c");
+    unarchived.mkdir();
+    Files.write(unarchived.toPath().resolve("stops.txt"), "c".getBytes(StandardCharsets.UTF_8));
+    new File(directory, "notes").mkdir();
+    Files.write(directory.toPath().resolve("readme.txt"), new byte[0]);
+
+    try (GtfsFeedBundle bundle = GtfsFeedBundle.open(directory.toPath(), 2)) {
+      assertThat(feedNames(bundle)).containsExactly("a.zip", "b.zip/feed", "c").inOrder();
+      for (GtfsFeedBundle.Feed feed : bundle.getFeeds()) {
+        assertThat(feed.getInput().getFilenames()).containsExactly("stops.txt");
+      }
+      assertThat(readFile(bundle.getFeeds().get(1).getInput(), "stops.txt"))
+          .isEqualTo("feed/stops.txt");
+    }
+  }
+
+  @Test
+  public void unarchivedFeed() throws IOException {
+    File directory = tmpDir.newFolder("feed");
+    Files.write(directory.toPath().resolve("agency.txt"), new byte[0]);
+
+    try (GtfsFeedBundle bundle = GtfsFeedBundle.open(directory.toPath(), 1)) {
+      assertThat(feedNames(bundle)).containsExactly("feed");
+    }
+  }
+}
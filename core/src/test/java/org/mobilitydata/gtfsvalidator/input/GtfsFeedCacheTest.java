@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GtfsFeedCacheTest {
+  private static final String ETAG = "\"v1\"";
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private HttpServer server;
+  private URL url;
+  private byte[] content = "version 1".getBytes(StandardCharsets.UTF_8);
+  private String etag = ETAG;
+  private final List<String> receivedEtags = new ArrayList<>();
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/feed.zip",
+        exchange -> {
+          String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+          receivedEtags.add(ifNoneMatch);
+          if (etag.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+          }
+          exchange.getResponseHeaders().set("ETag", etag);
+          exchange.sendResponseHeaders(200, content.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content);
+          }
+        });
+    server.start();
+    url = new URL("http://localhost:" + server.getAddress().getPort() + "/feed.zip");
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void notModified_reusesArchive() throws Exception {
+    try (GtfsFeedCache cache = new GtfsFeedCache(tmpDir.getRoot().toPath())) {
+      GtfsFeedCache.CachedFeed first = cache.fetch(url);
+      assertThat(first.isModified()).isTrue();
+      assertThat(Files.readAllBytes(first.getArchive())).isEqualTo(content);
+
+      GtfsFeedCache.CachedFeed second = cache.fetch(url);
+      assertThat(second.isModified()).isFalse();
+      assertThat(second.getArchive().toString()).isEqualTo(first.getArchive().toString());
+      assertThat(second.getSha256()).isEqualTo(first.getSha256());
+      assertThat(receivedEtags).containsExactly(null, ETAG).inOrder();
+    }
+  }
+
+  @Test
+  public void modified_downloadsAgain() throws Exception {
+    try (GtfsFeedCache cache = new GtfsFeedCache(tmpDir.getRoot().toPath())) {
+      GtfsFeedCache.CachedFeed first = cache.fetch(url);
+
+      content = "version 2".getBytes(StandardCharsets.UTF_8);
+      etag = "\"v2\"";
+      GtfsFeedCache.CachedFeed second = cache.fetch(url);
+      assertThat(second.isModified()).isTrue();
+      assertThat(second.getSha256()).isNotEqualTo(first.getSha256());
+      assertThat(Files.readAllBytes(second.getArchive())).isEqualTo(content);
+    }
+  }
+
+  @Test
+  public void corruptedArchive_unconditionalRequest() throws Exception {
+    try (GtfsFeedCache cache = new GtfsFeedCache(tmpDir.getRoot().toPath())) {
+      GtfsFeedCache.CachedFeed first = cache.fetch(url);
+      Files.write(first.getArchive(), new byte[] {1, 2, 3});
+
+      GtfsFeedCache.CachedFeed second = cache.fetch(url);
+      assertThat(Files.readAllBytes(second.getArchive())).isEqualTo(content);
+      assertThat(receivedEtags).containsExactly(null, null).inOrder();
+    }
+  }
+}
@@ -20,6 +20,9 @@ import static com.google.common.truth.Truth.assertThat;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -51,4 +54,21 @@ public class GtfsUnarchivedInputTest {
     GtfsInput gtfsInput = GtfsInput.createFromPath(rootDir.toPath());
     assertThat(gtfsInput.getFilenames()).containsExactly("noext");
   }
+
+  @Test
+  public void readMappedFile() throws IOException {
+    File rootDir = tmpDir.newFolder("unarchived");
+    Files.write(
+        rootDir.toPath().resolve("stops.txt"), "stop_id\ns1\n".getBytes(StandardCharsets.UTF_8));
+    tmpDir.newFile("unarchived/empty.txt");
+
+    GtfsInput gtfsInput = GtfsInput.createFromPath(rootDir.toPath());
+    try (InputStream inputStream = gtfsInput.getFile("stops.txt")) {
+      assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8))
+          .isEqualTo("stop_id\ns1\n");
+    }
+    try (InputStream inputStream = gtfsInput.getFile("empty.txt")) {
+      assertThat(inputStream.read()).isEqualTo(-1);
+    }
+  }
 }
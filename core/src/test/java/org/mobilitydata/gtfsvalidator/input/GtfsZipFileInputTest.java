@@ -18,10 +18,25 @@ package org.mobilitydata.gtfsvalidator.input;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 import org.junit.Rule;
 import org.junit.Test;
@@ -51,6 +66,33 @@ public class GtfsZipFileInputTest {
     assertThat(gtfsInput.getFilenames()).containsExactly("stops.txt");
   }
 
+  @Test
+  public void singleNestedFeedRoot() throws IOException {
+    File zipFile = tmpDir.newFile("archived.zip");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+
+    out.putNextEntry(new ZipEntry("feed/stops.txt"));
+    out.write("stop_id\ns1\n".getBytes(StandardCharsets.UTF_8));
+    out.closeEntry();
+
+    out.putNextEntry(new ZipEntry("feed/nested/file.txt"));
+    out.closeEntry();
+
+    out.putNextEntry(new ZipEntry("__MACOSX/feed/stops.txt"));
+    out.closeEntry();
+
+    out.close();
+
+    GtfsZipFileInput gtfsInput = new GtfsZipFileInput(zipFile);
+    assertThat(gtfsInput.getRoot()).isEqualTo("feed/");
+    assertThat(gtfsInput.getFilenames()).containsExactly("stops.txt");
+    try (InputStream inputStream = gtfsInput.getFile("stops.txt")) {
+      assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8))
+          .isEqualTo("stop_id\ns1\n");
+    }
+    gtfsInput.close();
+  }
+
   @Test
   public void noFileExtension() throws IOException {
     File zipFile = tmpDir.newFile("archived.zip");
@@ -64,4 +106,102 @@ public class GtfsZipFileInputTest {
     GtfsInput gtfsInput = GtfsInput.createFromPath(zipFile.toPath());
     assertThat(gtfsInput.getFilenames()).containsExactly("noext");
   }
+
+  @Test
+  public void parallelInflateUsesChunkCache() throws IOException {
+    StringBuilder builder = new StringBuilder("trip_id,stop_sequence\n");
+    for (int i = 0; builder.length() < 2 * ChunkedEntryCache.CHUNK_SIZE + 100; ++i) {
+      builder.append("t").append(i % 997).append(',').append(i).append('\n');
+    }
+    byte[] content = builder.toString().getBytes(StandardCharsets.UTF_8);
+    File zipFile = tmpDir.newFile("archived.zip");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+    out.putNextEntry(new ZipEntry("stop_times.txt"));
+    out.write(content);
+    out.closeEntry();
+    out.close();
+    Path sidecar = ChunkedEntryCache.sidecarPath(zipFile.toPath(), "stop_times.txt");
+
+    try (GtfsInput gtfsInput = new GtfsZipFileInput(zipFile, 4, 1)) {
+      // A partial read does not store the cache.
+      gtfsInput.getFile("stop_times.txt").close();
+      assertThat(Files.exists(sidecar)).isFalse();
+
+      // A full read builds the cache.
+      try (InputStream inputStream = gtfsInput.getFile("stop_times.txt")) {
+        assertThat(inputStream.readAllBytes()).isEqualTo(content);
+      }
+      assertThat(Files.exists(sidecar)).isTrue();
+
+      // The next read inflates the chunks from the cache.
+      try (InputStream inputStream = gtfsInput.getFile("stop_times.txt")) {
+        assertThat(inputStream.getClass().getEnclosingClass()).isEqualTo(ChunkedEntryCache.class);
+        assertThat(inputStream.readAllBytes()).isEqualTo(content);
+      }
+    }
+  }
+
+  @Test
+  public void failedChunk_doesNotStoreCache() throws IOException {
+    // Every chunk fails to compress, so that the cache cannot be built.
+    ExecutorService executor =
+        new AbstractExecutorService() {
+          @Override
+          public <T> Future<T> submit(Callable<T> task) {
+            return Futures.immediateFailedFuture(new IOException("Cannot deflate"));
+          }
+
+          @Override
+          public void execute(Runnable command) {
+            command.run();
+          }
+
+          @Override
+          public void shutdown() {}
+
+          @Override
+          public List<Runnable> shutdownNow() {
+            return ImmutableList.of();
+          }
+
+          @Override
+          public boolean isShutdown() {
+            return false;
+          }
+
+          @Override
+          public boolean isTerminated() {
+            return false;
+          }
+
+          @Override
+          public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+          }
+        };
+    for (int size : new int[] {100, ChunkedEntryCache.CHUNK_SIZE + 100}) {
+      byte[] content = new byte[size];
+      Arrays.fill(content, (byte) 'a');
+      File zipFile = tmpDir.newFile("archived" + size + ".zip");
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+      out.putNextEntry(new ZipEntry("stop_times.txt"));
+      out.write(content);
+      out.closeEntry();
+      out.close();
+
+      try (ZipFile zip = new ZipFile(zipFile)) {
+        ZipEntry entry = zip.getEntry("stop_times.txt");
+        ChunkedEntryCache cache = new ChunkedEntryCache(zipFile.toPath(), entry, executor, 1);
+        try (InputStream inputStream = cache.buildWhileReading(zip.getInputStream(entry))) {
+          assertThat(inputStream.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(cache.openCached()).isNull();
+      }
+      assertThat(Files.exists(ChunkedEntryCache.sidecarPath(zipFile.toPath(), "stop_times.txt")))
+          .isFalse();
+      try (Stream<Path> files = Files.list(tmpDir.getRoot().toPath())) {
+        assertThat(files.filter(path -> path.toString().endsWith(".tmp")).count()).isEqualTo(0);
+      }
+    }
+  }
 }
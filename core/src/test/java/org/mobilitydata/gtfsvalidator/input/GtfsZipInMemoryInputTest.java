@@ -22,7 +22,15 @@ import static org.junit.Assert.assertThrows;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipOutputStream;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -80,4 +88,85 @@ public class GtfsZipInMemoryInputTest {
     GtfsInput gtfsInput = new GtfsZipInMemoryInput("archived.zip", byteStream.toByteArray());
     assertThat(gtfsInput.getFilenames()).containsExactly("noext");
   }
+
+  @Test
+  public void readFilesInAnyOrder() throws Exception {
+    ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    ZipOutputStream out = new ZipOutputStream(byteStream);
+    for (int i = 0; i < 10; ++i) {
+      out.putNextEntry(new ZipEntry("file" + i + ".txt"));
+      out.write(("content of file " + i).getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    out.close();
+
+    GtfsInput gtfsInput = new GtfsZipInMemoryInput("archived.zip", byteStream.toByteArray());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<String>> futures = new ArrayList<>();
+    for (int i = 9; i >= 0; --i) {
+      String filename = "file" + i + ".txt";
+      futures.add(
+          executor.submit(
+              () ->
+                  new String(gtfsInput.getFile(filename).readAllBytes(), StandardCharsets.UTF_8)));
+    }
+    executor.shutdown();
+    for (int i = 9; i >= 0; --i) {
+      assertThat(futures.get(9 - i).get()).isEqualTo("content of file " + i);
+    }
+  }
+
+  private static byte[] createStoredZip(String filename, String content) throws IOException {
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    ZipOutputStream out = new ZipOutputStream(byteStream);
+    out.setMethod(ZipEntry.STORED);
+    ZipEntry entry = new ZipEntry(filename);
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    entry.setSize(bytes.length);
+    entry.setCrc(crc.getValue());
+    out.putNextEntry(entry);
+    out.write(bytes);
+    out.closeEntry();
+    out.close();
+    return byteStream.toByteArray();
+  }
+
+  /** Returns the position of the last occurrence of {@code pattern} in {@code bytes}. */
+  private static int lastIndexOf(byte[] bytes, byte[] pattern) {
+    for (int i = bytes.length - pattern.length; i >= 0; --i) {
+      boolean found = true;
+      for (int j = 0; j < pattern.length && found; ++j) {
+        found = bytes[i + j] == pattern[j];
+      }
+      if (found) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Test
+  public void corruptedEntry_failsCrcCheck() throws IOException {
+    byte[] zip = createStoredZip("stops.txt", "stop_id\ns1\n");
+    zip[lastIndexOf(zip, "s1".getBytes(StandardCharsets.UTF_8))] = 'S';
+
+    GtfsInput gtfsInput = new GtfsZipInMemoryInput("archived.zip", zip);
+    assertThrows(ZipException.class, () -> gtfsInput.getFile("stops.txt").readAllBytes());
+  }
+
+  @Test
+  public void malformedCentralDirectory_scansArchive() throws IOException {
+    byte[] zip = createStoredZip("stops.txt", "stop_id\ns1\n");
+    // Set the length of the file name in the central directory beyond the archive.
+    int centralHeader = lastIndexOf(zip, new byte[] {0x50, 0x4b, 0x01, 0x02});
+    zip[centralHeader + 28] = (byte) 0xff;
+    zip[centralHeader + 29] = (byte) 0xff;
+
+    GtfsInput gtfsInput = new GtfsZipInMemoryInput("archived.zip", zip);
+    assertThat(gtfsInput.getFilenames()).containsExactly("stops.txt");
+    assertThat(new String(gtfsInput.getFile("stops.txt").readAllBytes(), StandardCharsets.UTF_8))
+        .isEqualTo("stop_id\ns1\n");
+  }
 }
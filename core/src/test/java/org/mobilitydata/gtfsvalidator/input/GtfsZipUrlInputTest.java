@@ -0,0 +1,233 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GtfsZipUrlInputTest {
+  private static final String STOPS = "stop_id,stop_name\ns1,First stop\n";
+  private static final String AGENCY = "agency_id,agency_name\na1,Agency\n";
+
+  private HttpServer server;
+  // Archive and ETag returned by the server, they may be replaced while a test runs.
+  private volatile byte[] archive;
+  private volatile String etag;
+  private final List<String> ifRangeHeaders = new CopyOnWriteArrayList<>();
+
+  private static byte[] createZip(int method) throws IOException {
+    ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    ZipOutputStream out = new ZipOutputStream(byteStream);
+    out.setMethod(method);
+    for (String[] file :
+        new String[][] {{"agency.txt", AGENCY}, {"nested/file.txt", "x"}, {"stops.txt", STOPS}}) {
+      ZipEntry entry = new ZipEntry(file[0]);
+      byte[] content = file[1].getBytes(StandardCharsets.UTF_8);
+      if (method == ZipEntry.STORED) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+      }
+      out.putNextEntry(entry);
+      out.write(content);
+      out.closeEntry();
+    }
+    out.close();
+    return byteStream.toByteArray();
+  }
+
+  /** Starts a local server that returns the archive and optionally supports range requests. */
+  private URL serve(byte[] initialArchive, boolean supportsRanges) throws IOException {
+    this.archive = initialArchive;
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/feed.zip",
+        exchange -> {
+          byte[] archive = this.archive;
+          String etag = this.etag;
+          if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+          }
+          String range = exchange.getRequestHeaders().getFirst("Range");
+          String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+          if (ifRange != null) {
+            ifRangeHeaders.add(ifRange);
+          }
+          if (!supportsRanges || range == null || (ifRange != null && !ifRange.equals(etag))) {
+            respond(exchange, 200, archive, 0, archive.length);
+            return;
+          }
+          String spec = range.substring("bytes=".length());
+          int first;
+          int last;
+          if (spec.startsWith("-")) {
+            first = Math.max(0, archive.length - Integer.parseInt(spec.substring(1)));
+            last = archive.length - 1;
+          } else {
+            String[] bounds = spec.split("-");
+            first = Integer.parseInt(bounds[0]);
+            last = Math.min(archive.length - 1, Integer.parseInt(bounds[1]));
+          }
+          exchange
+              .getResponseHeaders()
+              .set("Content-Range", "bytes " + first + "-" + last + "/" + archive.length);
+          respond(exchange, 206, archive, first, last - first + 1);
+        });
+    server.start();
+    return new URL("http://localhost:" + server.getAddress().getPort() + "/feed.zip");
+  }
+
+  private static void respond(
+      HttpExchange exchange, int status, byte[] body, int offset, int length) throws IOException {
+    exchange.sendResponseHeaders(status, length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body, offset, length);
+    }
+  }
+
+  /** Returns the position of the first occurrence of {@code pattern} in {@code bytes}. */
+  private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+    for (int i = from; i + pattern.length <= bytes.length; ++i) {
+      boolean found = true;
+      for (int j = 0; j < pattern.length && found; ++j) {
+        found = bytes[i + j] == pattern[j];
+      }
+      if (found) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String readFile(GtfsInput gtfsInput, String filename) throws IOException {
+    try (InputStream inputStream = gtfsInput.getFile(filename)) {
+      return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @After
+  public void stopServer() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void rangeRequests_deflated() throws Exception {
+    GtfsInput gtfsInput =
+        GtfsInput.createFromUrlStreaming(serve(createZip(ZipEntry.DEFLATED), true), 2);
+
+    assertThat(gtfsInput).isInstanceOf(GtfsZipUrlInput.class);
+    assertThat(gtfsInput.getFilenames()).containsExactly("agency.txt", "stops.txt");
+    assertThat(readFile(gtfsInput, "stops.txt")).isEqualTo(STOPS);
+    assertThat(readFile(gtfsInput, "agency.txt")).isEqualTo(AGENCY);
+    assertThrows(FileNotFoundException.class, () -> gtfsInput.getFile("nested/file.txt"));
+    gtfsInput.close();
+  }
+
+  @Test
+  public void rangeRequests_stored() throws Exception {
+    GtfsInput gtfsInput =
+        GtfsInput.createFromUrlStreaming(serve(createZip(ZipEntry.STORED), true), 2);
+
+    assertThat(gtfsInput).isInstanceOf(GtfsZipUrlInput.class);
+    assertThat(readFile(gtfsInput, "agency.txt")).isEqualTo(AGENCY);
+    assertThat(readFile(gtfsInput, "stops.txt")).isEqualTo(STOPS);
+    gtfsInput.close();
+  }
+
+  @Test
+  public void noRangeSupport_spoolsToFile() throws Exception {
+    GtfsInput gtfsInput =
+        GtfsInput.createFromUrlStreaming(serve(createZip(ZipEntry.DEFLATED), false), 2);
+
+    assertThat(gtfsInput).isInstanceOf(GtfsZipFileInput.class);
+    assertThat(gtfsInput.getFilenames()).containsExactly("agency.txt", "stops.txt");
+    assertThat(readFile(gtfsInput, "stops.txt")).isEqualTo(STOPS);
+    gtfsInput.close();
+  }
+
+  @Test
+  public void rangeRequests_sendIfRange() throws Exception {
+    etag = "\"v1\"";
+    GtfsInput gtfsInput =
+        GtfsInput.createFromUrlStreaming(serve(createZip(ZipEntry.DEFLATED), true), 2);
+
+    assertThat(readFile(gtfsInput, "stops.txt")).isEqualTo(STOPS);
+    assertThat(ifRangeHeaders).containsExactly("\"v1\"");
+    gtfsInput.close();
+  }
+
+  @Test
+  public void archiveReplacedOnServer_throws() throws Exception {
+    etag = "\"v1\"";
+    GtfsInput gtfsInput =
+        GtfsInput.createFromUrlStreaming(serve(createZip(ZipEntry.DEFLATED), true), 2);
+    archive = createZip(ZipEntry.STORED);
+    etag = "\"v2\"";
+
+    IOException e = assertThrows(IOException.class, () -> readFile(gtfsInput, "stops.txt"));
+    assertThat(e).hasMessageThat().contains("modified on the server");
+    gtfsInput.close();
+  }
+
+  @Test
+  public void corruptedEntry_failsCrcCheck() throws Exception {
+    byte[] zip = createZip(ZipEntry.STORED);
+    zip[indexOf(zip, "First stop".getBytes(StandardCharsets.UTF_8), 0)] = 'f';
+    GtfsInput gtfsInput = GtfsInput.createFromUrlStreaming(serve(zip, true), 2);
+
+    assertThat(readFile(gtfsInput, "agency.txt")).isEqualTo(AGENCY);
+    assertThrows(ZipException.class, () -> readFile(gtfsInput, "stops.txt"));
+    gtfsInput.close();
+  }
+
+  @Test
+  public void malformedCentralDirectory_throwsZipException() throws Exception {
+    byte[] zip = createZip(ZipEntry.DEFLATED);
+    // Set the length of the first file name in the central directory beyond the archive.
+    int centralHeader = indexOf(zip, new byte[] {0x50, 0x4b, 0x01, 0x02}, 0);
+    zip[centralHeader + 28] = (byte) 0xff;
+    zip[centralHeader + 29] = (byte) 0xff;
+    URL url = serve(zip, true);
+
+    assertThrows(ZipException.class, () -> GtfsInput.createFromUrlStreaming(url, 2));
+  }
+}
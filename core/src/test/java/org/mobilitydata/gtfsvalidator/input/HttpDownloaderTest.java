@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class HttpDownloaderTest {
+  private static final byte[] CONTENT = "feed".getBytes(StandardCharsets.UTF_8);
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private HttpServer server;
+  private final AtomicInteger flakyRequests = new AtomicInteger();
+  private final AtomicInteger missingRequests = new AtomicInteger();
+  private HttpDownloader downloader;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/flaky.zip",
+        exchange -> {
+          if (flakyRequests.incrementAndGet() < 3) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+          }
+          exchange.sendResponseHeaders(200, CONTENT.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(CONTENT);
+          }
+        });
+    server.createContext(
+        "/missing.zip",
+        exchange -> {
+          missingRequests.incrementAndGet();
+          exchange.sendResponseHeaders(404, -1);
+          exchange.close();
+        });
+    server.start();
+    downloader =
+        HttpDownloader.builder()
+            .setMaxRetries(3)
+            .setInitialBackoffMillis(1)
+            .setTimeoutMillis(5_000)
+            .build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    downloader.close();
+    server.stop(0);
+  }
+
+  private URL url(String path) throws IOException {
+    return new URL("http://localhost:" + server.getAddress().getPort() + path);
+  }
+
+  @Test
+  public void serverError_retried() throws Exception {
+    Path target = tmpDir.getRoot().toPath().resolve("feed.zip");
+    downloader.download(url("/flaky.zip"), target);
+
+    assertThat(flakyRequests.get()).isEqualTo(3);
+    assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+  }
+
+  @Test
+  public void notFound_notRetried() throws Exception {
+    Path target = tmpDir.getRoot().toPath().resolve("feed.zip");
+    assertThrows(IOException.class, () -> downloader.download(url("/missing.zip"), target));
+    assertThat(missingRequests.get()).isEqualTo(1);
+    assertThat(Files.exists(target)).isFalse();
+    // No temporary file is left behind.
+    assertThat(tmpDir.getRoot().list()).isEmpty();
+  }
+
+  @Test
+  public void outputStream_retriedBeforeBody() throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    downloader.download(url("/flaky.zip"), outputStream);
+    assertThat(outputStream.toByteArray()).isEqualTo(CONTENT);
+  }
+
+  @Test
+  public void allowConnections_raisesLimitOfHost() throws Exception {
+    try (HttpDownloader downloader = HttpDownloader.builder().setMaxConnectionsPerHost(2).build()) {
+      URI uri = new URI("https://example.com/feed.zip");
+      downloader.allowConnections(uri, 8);
+      downloader.allowConnections(uri, 4);
+
+      assertThat(downloader.getMaxConnections(uri)).isEqualTo(8);
+      assertThat(downloader.getMaxConnections(new URI("https://example.com:443/other.zip")))
+          .isEqualTo(8);
+      assertThat(downloader.getMaxConnections(new URI("http://example.com/feed.zip"))).isEqualTo(2);
+    }
+  }
+}
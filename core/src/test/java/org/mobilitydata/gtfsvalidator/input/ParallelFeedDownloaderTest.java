@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ParallelFeedDownloaderTest {
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private HttpServer server;
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          String path = exchange.getRequestURI().getPath();
+          if (path.startsWith("/missing")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+          }
+          byte[] content = path.getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, content.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content);
+          }
+        });
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void downloadAll() throws Exception {
+    String base = "http://localhost:" + server.getAddress().getPort();
+    ImmutableList<URL> urls =
+        ImmutableList.of(
+            new URL(base + "/a.zip"),
+            new URL(base + "/missing.zip"),
+            new URL(base + "/b.zip"),
+            new URL(base + "/c.zip"));
+
+    Map<String, String> contents = new HashMap<>();
+    int failures = 0;
+    try (HttpDownloader downloader =
+        HttpDownloader.builder().setMaxRetries(0).setTimeoutMillis(5_000).build()) {
+      ParallelFeedDownloader.Downloads results =
+          new ParallelFeedDownloader(downloader, tmpDir.getRoot().toPath(), 2, 1).downloadAll(urls);
+      while (results.hasNext()) {
+        ParallelFeedDownloader.DownloadedFeed result = results.next();
+        if (result.getError() != null) {
+          ++failures;
+          assertThat(result.getArchive() == null).isTrue();
+          continue;
+        }
+        contents.put(
+            result.getUrl().getPath(),
+            new String(Files.readAllBytes(result.getArchive()), StandardCharsets.UTF_8));
+      }
+    }
+
+    assertThat(failures).isEqualTo(1);
+    assertThat(contents)
+        .containsExactly("/a.zip", "/a.zip", "/b.zip", "/b.zip", "/c.zip", "/c.zip");
+  }
+
+  @Test
+  public void runtimeException_isReported() throws Exception {
+    String base = "http://localhost:" + server.getAddress().getPort();
+    ImmutableList<URL> urls = ImmutableList.of(new URL(base + "/a.zip"), new URL(base + "/b.zip"));
+    HttpDownloader downloader = HttpDownloader.builder().setMaxRetries(0).build();
+    // A closed client throws IllegalStateException instead of IOException.
+    downloader.close();
+
+    Set<String> names = new HashSet<>();
+    try (ParallelFeedDownloader.Downloads results =
+        new ParallelFeedDownloader(downloader, tmpDir.getRoot().toPath(), 2, 1).downloadAll(urls)) {
+      while (results.hasNext()) {
+        ParallelFeedDownloader.DownloadedFeed result = results.next();
+        assertThat(result.getArchive() == null).isTrue();
+        assertThat(result.getError()).isInstanceOf(IllegalStateException.class);
+        names.add(result.getName());
+      }
+    }
+
+    assertThat(names).hasSize(2);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ReadAheadInputStreamTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void readsAllBytes() throws IOException {
+    byte[] content = new byte[100_000];
+    new Random(1).nextBytes(content);
+
+    try (ReadAheadInputStream inputStream =
+        new ReadAheadInputStream(new ByteArrayInputStream(content), 1000, 3, executor)) {
+      assertThat(inputStream.read()).isEqualTo(content[0] & 0xff);
+      byte[] rest = inputStream.readAllBytes();
+      assertThat(rest.length).isEqualTo(content.length - 1);
+      assertThat(rest[rest.length - 1]).isEqualTo(content[content.length - 1]);
+      assertThat(inputStream.read()).isEqualTo(-1);
+      assertThat(inputStream.getStats().getBytesRead()).isEqualTo(content.length);
+    }
+  }
+
+  @Test
+  public void emptySource() throws IOException {
+    try (ReadAheadInputStream inputStream =
+        new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]), 1000, 3, executor)) {
+      assertThat(inputStream.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void sourceError_propagatedAfterData() throws IOException {
+    InputStream failing =
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("broken source");
+          }
+        };
+    try (ReadAheadInputStream inputStream =
+        new ReadAheadInputStream(
+            new SequenceInputStream(new ByteArrayInputStream(new byte[] {1, 2}), failing),
+            1,
+            2,
+            executor)) {
+      assertThat(inputStream.read()).isEqualTo(1);
+      assertThat(inputStream.read()).isEqualTo(2);
+      IOException e = assertThrows(IOException.class, inputStream::read);
+      assertThat(e).hasMessageThat().isEqualTo("broken source");
+    }
+  }
+
+  @Test
+  public void closeBeforeEnd() throws IOException {
+    ReadAheadInputStream inputStream =
+        new ReadAheadInputStream(new ByteArrayInputStream(new byte[10_000]), 10, 2, executor);
+    inputStream.read();
+    inputStream.close();
+    assertThrows(IOException.class, inputStream::read);
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.input;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ResumableDownloadTest {
+  private static final String ETAG = "\"v1\"";
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private byte[] archive;
+  private HttpServer server;
+  private HttpDownloader downloader;
+  private final AtomicBoolean truncateNextRange = new AtomicBoolean();
+  private final AtomicLong servedBytes = new AtomicLong();
+  private String digest;
+
+  private static byte[] createZip(int size) throws IOException {
+    byte[] content = new byte[size];
+    new Random(42).nextBytes(content);
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    ZipEntry entry = new ZipEntry("stop_times.txt");
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(size);
+    entry.setCrc(crc.getValue());
+    ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(byteStream)) {
+      out.putNextEntry(entry);
+      out.write(content);
+      out.closeEntry();
+    }
+    return byteStream.toByteArray();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    archive = createZip((int) (2 * ResumableDownload.SEGMENT_SIZE + 1000));
+    digest =
+        "sha-256=" + BaseEncoding.base64().encode(Hashing.sha256().hashBytes(archive).asBytes());
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/feed.zip", this::handle);
+    server.start();
+    downloader = HttpDownloader.builder().setMaxRetries(0).setTimeoutMillis(10_000).build();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().set("ETag", ETAG);
+    exchange.getResponseHeaders().set("Digest", digest);
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+    if (range == null || (ifRange != null && !ifRange.equals(ETAG))) {
+      send(exchange, 200, 0, archive.length, archive.length);
+      return;
+    }
+    String[] bounds = range.substring("bytes=".length()).split("-");
+    int first = Integer.parseInt(bounds[0]);
+    int last = Integer.parseInt(bounds[1]);
+    exchange
+        .getResponseHeaders()
+        .set("Content-Range", "bytes " + first + "-" + last + "/" + archive.length);
+    int length = last - first + 1;
+    int sent = length > 1 && truncateNextRange.getAndSet(false) ? length / 2 : length;
+    send(exchange, 206, first, length, sent);
+  }
+
+  private void send(HttpExchange exchange, int status, int offset, int length, int sent)
+      throws IOException {
+    exchange.sendResponseHeaders(status, length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(archive, offset, sent);
+    servedBytes.addAndGet(sent);
+    if (sent == length) {
+      out.close();
+    } else {
+      // Drop the connection in the middle of the body.
+      exchange.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    downloader.close();
+    server.stop(0);
+  }
+
+  private URL url() throws IOException {
+    return new URL("http://localhost:" + server.getAddress().getPort() + "/feed.zip");
+  }
+
+  @Test
+  public void resumeAfterFailure() throws Exception {
+    Path target = tmpDir.getRoot().toPath().resolve("feed.zip");
+    truncateNextRange.set(true);
+    assertThrows(IOException.class, () -> downloader.downloadResumable(url(), target, 1));
+    assertThat(Files.exists(target)).isFalse();
+    assertThat(Files.exists(ResumableDownload.partPath(target))).isTrue();
+
+    long servedBeforeResume = servedBytes.get();
+    downloader.downloadResumable(url(), target, 3);
+
+    assertThat(Files.readAllBytes(target)).isEqualTo(archive);
+    assertThat(Files.exists(ResumableDownload.partPath(target))).isFalse();
+    // Bytes that were received before the failure are not downloaded again.
+    assertThat(servedBytes.get() - servedBeforeResume).isLessThan((long) archive.length);
+  }
+
+  @Test
+  public void digestMismatch() throws Exception {
+    Path target = tmpDir.getRoot().toPath().resolve("feed.zip");
+    digest = "sha-256=" + BaseEncoding.base64().encode(new byte[32]);
+
+    assertThrows(IOException.class, () -> downloader.downloadResumable(url(), target, 2));
+    assertThat(Files.exists(target)).isFalse();
+    assertThat(Files.exists(ResumableDownload.partPath(target))).isFalse();
+  }
+}
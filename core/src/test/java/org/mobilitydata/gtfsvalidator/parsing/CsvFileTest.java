@@ -17,17 +17,26 @@
 package org.mobilitydata.gtfsvalidator.parsing;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.Bytes;
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import org.apache.commons.io.ByteOrderMark;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mobilitydata.gtfsvalidator.util.ByteBufferInputStream;
 
 @RunWith(JUnit4.class)
 public class CsvFileTest {
@@ -36,6 +45,45 @@ public class CsvFileTest {
     return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
   }
 
+  /** Returns a stream that returns at most one byte per read. */
+  private static InputStream toTrickleInputStream(String s) {
+    return new FilterInputStream(toInputStream(s)) {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return super.read(b, off, Math.min(len, 1));
+      }
+    };
+  }
+
+  /** Describes all rows of a file as strings, including row numbers and column counts. */
+  private static List<String> describeRows(CsvFile csvFile) {
+    return describeRows(csvFile, null);
+  }
+
+  /**
+   * Describes rows of a file as strings with values of the given columns or of all columns.
+   *
+   * <p>Only the first occurrence of a duplicated column is described if columns are given.
+   */
+  private static List<String> describeRows(CsvFile csvFile, Set<String> columns) {
+    List<String> rows = new ArrayList<>();
+    rows.add(String.join("|", csvFile.getColumnNames()));
+    List<String> columnNames = Arrays.asList(csvFile.getColumnNames());
+    for (CsvRow row : csvFile) {
+      StringBuilder builder =
+          new StringBuilder().append(row.getRowNumber()).append('#').append(row.getColumnCount());
+      for (int i = 0; i < row.getColumnCount(); ++i) {
+        if (columns == null
+            || (columns.contains(row.getColumnName(i))
+                && columnNames.indexOf(row.getColumnName(i)) == i)) {
+          builder.append('|').append(row.asString(i));
+        }
+      }
+      rows.add(builder.toString());
+    }
+    return rows;
+  }
+
   @Test
   public void emptyFile() throws IOException {
     InputStream inputStream = toInputStream("");
@@ -96,6 +144,32 @@ public class CsvFileTest {
     inputStream.close();
   }
 
+  @Test
+  public void reuseRows() throws IOException {
+    InputStream inputStream =
+        toInputStream("stop_id,stop_name\n" + "s1,First stop\n" + "s2,Second stop\n");
+    CsvFile csvFile = new CsvFile(inputStream, "stops.txt");
+    csvFile.setRowReuseEnabled(true);
+
+    Iterator<CsvRow> iterator = csvFile.iterator();
+    CsvRow first = iterator.next();
+    assertThat(first.getRowNumber()).isEqualTo(2);
+    assertThat(first.asString(0)).isEqualTo("s1");
+    assertThat(first.asString(1)).isEqualTo("First stop");
+
+    assertThat(iterator.hasNext()).isEqualTo(true);
+    CsvRow second = iterator.next();
+    assertThat(second).isSameInstanceAs(first);
+    assertThat(second.getRowNumber()).isEqualTo(3);
+    assertThat(second.asString(0)).isEqualTo("s2");
+    assertThat(second.getColumnCount()).isEqualTo(2);
+
+    assertThat(iterator.hasNext()).isEqualTo(false);
+    assertThat(iterator.next()).isNull();
+
+    inputStream.close();
+  }
+
   @Test
   public void fileWithEntitiesWindows() throws IOException {
     InputStream inputStream =
@@ -175,4 +249,282 @@ public class CsvFileTest {
 
     inputStream.close();
   }
+
+  @Test
+  public void byteBufferWithBomAndMalformedUtf8() throws IOException {
+    InputStream inputStream =
+        new ByteBufferInputStream(
+            ByteBuffer.wrap(
+                Bytes.concat(
+                    ByteOrderMark.UTF_8.getBytes(),
+                    "stop_id,stop_name\ns1,Первая\ns2,".getBytes(StandardCharsets.UTF_8),
+                    new byte[] {(byte) 0xff},
+                    "\n".getBytes(StandardCharsets.UTF_8))));
+    CsvFile csvFile = new CsvFile(inputStream, "stops.txt");
+
+    assertThat(csvFile.getColumnNames()).asList().containsExactly("stop_id", "stop_name");
+    Iterator<CsvRow> iterator = csvFile.iterator();
+    assertThat(iterator.next().asString(1)).isEqualTo("Первая");
+    assertThat(iterator.next().asString(1)).isEqualTo("\uFFFD");
+    assertThat(iterator.hasNext()).isFalse();
+
+    inputStream.close();
+  }
+
+  @Test
+  public void byteTokenizerMatchesUnivocity() {
+    String content =
+        "\uFEFFstop_id, stop_name ,stop_desc\r\n"
+            + "s1,\"Quoted, with comma\",\"He said \"\"hi\"\"\"\r\n"
+            + "\r\n"
+            + "  s2 ,  ,\"\"\n"
+            + "s3,\"multi\nline\", \"padded\" ,extra\n"
+            + "s4,Первая,\t\n"
+            + "\n"
+            + ",,\n"
+            + "s5,last";
+
+    List<String> expected = describeRows(new CsvFile(toInputStream(content), "stops.txt"));
+    assertThat(describeRows(new CsvFile(toInputStream(content), "stops.txt", true)))
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+    assertThat(describeRows(new CsvFile(toTrickleInputStream(content), "stops.txt", true)))
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+  }
+
+  @Test
+  public void byteTokenizer_blankLinesMatchUnivocity() {
+    String[] contents = {
+      // A blank last line without a terminator is a row with a single empty value.
+      "stop_id,stop_name\n \ns1,First\n\t\r\n  ",
+      "stop_id,stop_name\r\ns1,First\r\n\r",
+      // A blank first line is a header without columns.
+      "\n \nstop_id\ns1\n",
+      "   ",
+      // Malformed quotes in the header are kept as is.
+      "\"\"stop_id,\"stop_name\"x\ns1,First\n",
+    };
+    for (String content : contents) {
+      List<String> expected = describeRows(new CsvFile(toInputStream(content), "stops.txt"));
+      assertThat(describeRows(new CsvFile(toInputStream(content), "stops.txt", true)))
+          .containsExactlyElementsIn(expected)
+          .inOrder();
+      assertThat(describeRows(new CsvFile(toTrickleInputStream(content), "stops.txt", true)))
+          .containsExactlyElementsIn(expected)
+          .inOrder();
+    }
+    assertThat(
+            describeRows(
+                new CsvFile(toInputStream("stop_id,stop_name\ns1,First\n  "), "stops.txt", true)))
+        .containsExactly("stop_id|stop_name", "2#2|s1|First", "3#1|null")
+        .inOrder();
+  }
+
+  @Test
+  public void byteTokenizer_longRowsAndReuse() {
+    StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 100000; ++i) {
+      longValue.append((char) ('a' + i % 26));
+    }
+    String content = "stop_id,stop_desc\ns1," + longValue + "\ns2,short\n";
+    CsvFile csvFile = new CsvFile(toInputStream(content), "stops.txt", true);
+    csvFile.setRowReuseEnabled(true);
+
+    Iterator<CsvRow> iterator = csvFile.iterator();
+    CsvRow row = iterator.next();
+    assertThat(row.asString(1)).isEqualTo(longValue.toString());
+    row = iterator.next();
+    assertThat(row.getRowNumber()).isEqualTo(3);
+    assertThat(row.asString(0)).isEqualTo("s2");
+    assertThat(row.asString(1)).isEqualTo("short");
+    assertThat(iterator.hasNext()).isFalse();
+  }
+
+  @Test
+  public void byteTokenizer_emptyFile() {
+    assertThat(new CsvFile(toInputStream(""), "stops.txt", true).isEmpty()).isTrue();
+    assertThat(new CsvFile(toInputStream("\n\n"), "stops.txt", true).isEmpty()).isTrue();
+    // Like univocity, a line with a carriage return is a header without columns.
+    assertThat(new CsvFile(toInputStream("\n\r\n"), "stops.txt", true).isEmpty()).isFalse();
+  }
+
+  @Test
+  public void selectedColumns() {
+    String content =
+        "\uFEFFstop_id,vendor_a,stop_name,vendor_b,stop_name,vendor_c\r\n"
+            + "\n"
+            + "s1,x,\"Quoted, \"\"name\"\"\",y,dup,z\r\n"
+            + "s2,x\n"
+            + "s3,\"multi\nline\",Name,,,\n"
+            + "s4,,\"\",,,,extra\n"
+            + ",,,,,\n"
+            + "s5,x,Last,y,dup";
+    Set<String> selected = ImmutableSet.of("stop_id", "stop_name", "unknown");
+
+    List<String> expected =
+        describeRows(new CsvFile(toInputStream(content), "stops.txt"), selected);
+    assertThat(
+            describeRows(
+                new CsvFile(toInputStream(content), "stops.txt", false, selected), selected))
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+    assertThat(
+            describeRows(
+                new CsvFile(toTrickleInputStream(content), "stops.txt", false, selected), selected))
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+    assertThat(
+            describeRows(
+                new CsvFile(
+                    new ByteBufferInputStream(
+                        ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8))),
+                    "stops.txt",
+                    false,
+                    selected),
+                selected))
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+  }
+
+  @Test
+  public void selectedColumns_skipsOtherColumns() {
+    CsvFile csvFile =
+        new CsvFile(
+            toInputStream("stop_id,vendor_a,stop_name\ns1,x,Name\n"),
+            "stops.txt",
+            false,
+            ImmutableSet.of("stop_id"));
+
+    assertThat(csvFile.getColumnNames())
+        .asList()
+        .containsExactly("stop_id", "vendor_a", "stop_name");
+    CsvRow row = csvFile.iterator().next();
+    assertThat(row.getRowNumber()).isEqualTo(2);
+    assertThat(row.getColumnCount()).isEqualTo(3);
+    assertThat(row.asString(0)).isEqualTo("s1");
+    assertThat(row.asString(1)).isNull();
+  }
+
+  @Test
+  public void selectedColumns_allColumns() {
+    String content = "stop_id,stop_name\ns1,First\ns2\n";
+    Set<String> selected = ImmutableSet.of("stop_id", "stop_name");
+
+    assertThat(
+            describeRows(
+                new CsvFile(toInputStream(content), "stops.txt", false, selected), selected))
+        .containsExactly("stop_id|stop_name", "2#2|s1|First", "3#1|s2")
+        .inOrder();
+  }
+
+  @Test
+  public void selectedColumns_rowsAfterLongRow() {
+    String content =
+        "stop_id,vendor,stop_name,stop_lat,stop_lon\n"
+            + "s0,v,Zero,52.0,4.0,extra,extra2\n"
+            + "s1,v,One,52.1,4.1\n"
+            + "s2,,Two,52.2,4.2\n"
+            + "s3,v,Three\n"
+            + "s4,v,Four,52.4,4.4,extra\n"
+            + "s5,,,,\n"
+            + " ";
+    Set<String> selected = ImmutableSet.of("stop_id", "stop_name", "stop_lat", "stop_lon");
+
+    List<String> expected =
+        describeRows(new CsvFile(toInputStream(content), "stops.txt"), selected);
+    assertThat(expected)
+        .containsExactly(
+            "stop_id|vendor|stop_name|stop_lat|stop_lon",
+            "2#7|s0|Zero|52.0|4.0",
+            "3#5|s1|One|52.1|4.1",
+            "4#5|s2|Two|52.2|4.2",
+            "5#3|s3|Three",
+            "6#6|s4|Four|52.4|4.4",
+            "7#5|s5|null|null|null",
+            "8#1|null")
+        .inOrder();
+    assertThat(
+            describeRows(
+                new CsvFile(toInputStream(content), "stops.txt", false, selected), selected))
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+    for (int chunkSize : new int[] {1, 60, 1000}) {
+      CsvFile csvFile = new CsvFile(toInputStream(content), "stops.txt", false, selected);
+      List<String> rows = new ArrayList<>();
+      rows.add(String.join("|", csvFile.getColumnNames()));
+      CsvFile chunk;
+      while ((chunk = csvFile.nextChunk(chunkSize)) != null) {
+        List<String> chunkRows = describeRows(chunk, selected);
+        rows.addAll(chunkRows.subList(1, chunkRows.size()));
+      }
+      assertThat(rows).containsExactlyElementsIn(expected).inOrder();
+    }
+  }
+
+  @Test
+  public void selectedColumns_headerMatchesUnivocity() {
+    Set<String> selected = ImmutableSet.of("c");
+    for (String content :
+        new String[] {"  \n", " ", "\"\"b,c\nx,y\n", "\"\na\n", "\"a\"x,c\n1,2\n"}) {
+      CsvFile expected = new CsvFile(toInputStream(content), "stops.txt");
+      CsvFile csvFile = new CsvFile(toInputStream(content), "stops.txt", false, selected);
+
+      assertThat(csvFile.isEmpty()).isEqualTo(expected.isEmpty());
+      assertThat(describeRows(csvFile, selected))
+          .containsExactlyElementsIn(describeRows(expected, selected))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void nextChunk_matchesWholeFile() {
+    String content =
+        "\uFEFFstop_id,stop_name,stop_desc\r\n"
+            + "s1,\"Quoted, with comma\",\"He said \"\"hi\"\"\"\r\n"
+            + "\r\n"
+            + "s2,\"multi\nline\nname\",desc\n"
+            + "s3\n"
+            + "\n"
+            + "s4,Первая,desc,extra\n"
+            + "s5,last";
+    Set<String> columns = ImmutableSet.of("stop_id", "stop_name");
+
+    List<String> expected = describeRows(new CsvFile(toInputStream(content), "stops.txt"));
+    for (boolean byteTokenizer : new boolean[] {false, true}) {
+      for (int chunkSize : new int[] {1, 20, 1000}) {
+        CsvFile csvFile =
+            new CsvFile(toTrickleInputStream(content), "stops.txt", byteTokenizer, columns);
+        List<String> rows = new ArrayList<>();
+        rows.add(String.join("|", csvFile.getColumnNames()));
+        CsvFile chunk;
+        while ((chunk = csvFile.nextChunk(chunkSize)) != null) {
+          List<String> chunkRows = describeRows(chunk, byteTokenizer ? null : columns);
+          rows.addAll(chunkRows.subList(1, chunkRows.size()));
+        }
+        assertThat(rows)
+            .containsExactlyElementsIn(
+                byteTokenizer
+                    ? expected
+                    : describeRows(new CsvFile(toInputStream(content), "stops.txt"), columns))
+            .inOrder();
+      }
+    }
+  }
+
+  @Test
+  public void nextChunk_headersOnlyFile() {
+    CsvFile csvFile =
+        new CsvFile(
+            toInputStream("stop_id,stop_name\n"), "stops.txt", false, ImmutableSet.of("stop_id"));
+
+    assertThat(csvFile.nextChunk(1)).isNull();
+  }
+
+  @Test
+  public void nextChunk_requiresHeaderReadSeparately() {
+    CsvFile csvFile = new CsvFile(toInputStream("stop_id\ns1\n"), "stops.txt");
+
+    assertThrows(IllegalStateException.class, () -> csvFile.nextChunk(1));
+  }
 }
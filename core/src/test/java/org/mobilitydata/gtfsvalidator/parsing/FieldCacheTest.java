@@ -157,4 +157,78 @@ public class FieldCacheTest {
     assertThat(cache.getCacheSize()).isEqualTo(3);
     assertThat(cache.getLookupCount()).isEqualTo(5);
   }
+
+  @Test
+  public void lowHitRatio_disablesCaching() {
+    FieldCache<String> cache = new FieldCache<>(10, 0.5, 100);
+    for (int i = 0; i < 9; ++i) {
+      cache.addIfAbsent("s" + i);
+    }
+    assertThat(cache.getPolicy()).isEqualTo(FieldCache.Policy.SAMPLING);
+    assertThat(cache.getCacheSize()).isEqualTo(9);
+
+    cache.addIfAbsent("s0");
+    assertThat(cache.getPolicy()).isEqualTo(FieldCache.Policy.DISABLED);
+    assertThat(cache.isEnabled()).isFalse();
+    assertThat(cache.getCacheSize()).isEqualTo(0);
+
+    String s0 = new String("s0");
+    assertThat(cache.addIfAbsent(s0)).isSameInstanceAs(s0);
+    assertThat(cache.getCacheSize()).isEqualTo(0);
+    assertThat(cache.getLookupCount()).isEqualTo(11);
+    assertThat(cache.getCacheMisses()).isEqualTo(10);
+  }
+
+  @Test
+  public void highHitRatio_keepsCaching() {
+    FieldCache<String> cache = new FieldCache<>(10, 0.5, 100);
+    String s1 = "s1";
+    cache.addIfAbsent(s1);
+    for (int i = 0; i < 9; ++i) {
+      assertThat(cache.addIfAbsent(new String("s1"))).isSameInstanceAs(s1);
+    }
+    assertThat(cache.getPolicy()).isEqualTo(FieldCache.Policy.CACHING);
+    assertThat(cache.addIfAbsent(new String("s1"))).isSameInstanceAs(s1);
+    assertThat(cache.getCacheSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void fullCache_evictsAllValues() {
+    FieldCache<String> cache = new FieldCache<>(1000, 0.5, 3);
+    String s1 = "s1";
+    cache.addIfAbsent(s1);
+    cache.addIfAbsent("s2");
+    cache.addIfAbsent("s3");
+    assertThat(cache.getEvictionCount()).isEqualTo(0);
+
+    cache.addIfAbsent("s4");
+    assertThat(cache.getEvictionCount()).isEqualTo(1);
+    assertThat(cache.getCacheSize()).isEqualTo(1);
+    String s1Again = new String("s1");
+    assertThat(cache.addIfAbsent(s1Again)).isSameInstanceAs(s1Again);
+    assertThat(cache.getCacheMisses()).isEqualTo(5);
+  }
+
+  @Test
+  public void statistics_sumCaches() {
+    FieldCache<String> caching = new FieldCache<>(2, 0.5, 10);
+    caching.addIfAbsent("a");
+    caching.addIfAbsent("a");
+    FieldCache<String> disabled = new FieldCache<>(2, 0.5, 10);
+    disabled.addIfAbsent("a");
+    disabled.addIfAbsent("b");
+    FieldCache.Statistics statistics = new FieldCache.Statistics();
+
+    statistics.add(caching);
+    assertThat(statistics.getPolicies()).isEqualTo("CACHING");
+
+    statistics.add(disabled);
+    assertThat(statistics.getPolicies()).isEqualTo("{CACHING=1, DISABLED=1}");
+    assertThat(statistics.getCacheSize()).isEqualTo(1);
+    assertThat(statistics.getLookupCount()).isEqualTo(4);
+    assertThat(statistics.getCacheMisses()).isEqualTo(3);
+    assertThat(statistics.getHitRatio()).isEqualTo(0.25);
+    assertThat(statistics.getMissRatio()).isEqualTo(0.75);
+    assertThat(statistics.getEvictionCount()).isEqualTo(0);
+  }
 }
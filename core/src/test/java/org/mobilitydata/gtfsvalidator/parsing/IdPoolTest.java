@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class IdPoolTest {
+  @Test
+  public void intern_returnsFirstInstance() {
+    IdPool pool = new IdPool();
+    String s1 = new String("s1");
+
+    assertThat(pool.intern(s1)).isSameInstanceAs(s1);
+    assertThat(pool.intern(new String("s1"))).isSameInstanceAs(s1);
+    assertThat(pool.intern(null)).isNull();
+    assertThat(pool.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void token_identifiesPool() {
+    IdPool pool = new IdPool();
+
+    assertThat(pool.getToken()).isSameInstanceAs(pool.getToken());
+    assertThat(pool.getToken()).isNotSameInstanceAs(new IdPool().getToken());
+  }
+
+  @Test
+  public void column_countsPooledValues() {
+    IdPool pool = new IdPool();
+    IdPool.Column trips = pool.column("trips.txt", "trip_id");
+    IdPool.Column stopTimes = pool.column("stop_times.txt", "trip_id");
+
+    trips.intern(new String("t1"));
+    trips.intern(new String("t2"));
+    stopTimes.intern(new String("t2"));
+    stopTimes.intern(new String("t3"));
+    stopTimes.intern(null);
+
+    assertThat(pool.column("trips.txt", "trip_id")).isSameInstanceAs(trips);
+    assertThat(trips.getInternCount()).isEqualTo(2);
+    assertThat(trips.getPooledCount()).isEqualTo(0);
+    assertThat(stopTimes.getInternCount()).isEqualTo(2);
+    assertThat(stopTimes.getPooledCount()).isEqualTo(1);
+    assertThat(stopTimes.getSavedBytes()).isEqualTo(IdPool.estimateStringSize("t2"));
+    assertThat(pool.getColumns()).containsExactly(stopTimes, trips).inOrder();
+  }
+
+  @Test
+  public void keySpace_assignsDenseCodes() {
+    IdPool pool = new IdPool();
+    IdPool.KeySpace trips = pool.keySpace("trips.txt trip_id");
+
+    assertThat(trips.code("t1")).isEqualTo(0);
+    assertThat(trips.code("t2")).isEqualTo(1);
+    assertThat(trips.code(new String("t1"))).isEqualTo(0);
+    assertThat(trips.code(null)).isEqualTo(-1);
+    assertThat(trips.code("")).isEqualTo(-1);
+    assertThat(trips.size()).isEqualTo(2);
+    assertThat(pool.keySpace("trips.txt trip_id")).isSameInstanceAs(trips);
+    assertThat(pool.keySpace("stops.txt stop_id").code("t2")).isEqualTo(0);
+  }
+
+  @Test
+  public void encoder_sharesCodesWithKeySpace() {
+    IdPool.KeySpace trips = new IdPool().keySpace("trips.txt trip_id");
+    IdPool.Encoder stopTimes = trips.newEncoder();
+    IdPool.Encoder frequencies = trips.newEncoder();
+    String t1 = "t1";
+
+    assertThat(stopTimes.code(null)).isEqualTo(-1);
+    assertThat(stopTimes.code(t1)).isEqualTo(0);
+    assertThat(stopTimes.code(t1)).isEqualTo(0);
+    assertThat(stopTimes.code("t2")).isEqualTo(1);
+    assertThat(frequencies.code("t2")).isEqualTo(1);
+    assertThat(frequencies.code(new String("t1"))).isEqualTo(0);
+    assertThat(trips.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void estimateStringSize() {
+    assertThat(IdPool.estimateStringSize("")).isEqualTo(40);
+    assertThat(IdPool.estimateStringSize("12345678")).isEqualTo(48);
+    assertThat(IdPool.estimateStringSize("123456789")).isEqualTo(56);
+  }
+
+  @Test
+  public void intern_concurrently() throws Exception {
+    IdPool pool = new IdPool();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<String[]>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; ++t) {
+      IdPool.Column column = pool.column("file" + t + ".txt", "id");
+      futures.add(
+          executor.submit(
+              () -> {
+                String[] interned = new String[1000];
+                for (int i = 0; i < interned.length; ++i) {
+                  interned[i] = column.intern("id" + i);
+                }
+                return interned;
+              }));
+    }
+    String[] first = futures.get(0).get();
+    long pooledCount = 0;
+    for (int t = 0; t < 4; ++t) {
+      String[] interned = futures.get(t).get();
+      for (int i = 0; i < interned.length; ++i) {
+        assertThat(interned[i]).isSameInstanceAs(first[i]);
+      }
+      pooledCount += pool.column("file" + t + ".txt", "id").getPooledCount();
+    }
+    executor.shutdown();
+
+    assertThat(pool.size()).isEqualTo(1000);
+    assertThat(pooledCount).isEqualTo(3000);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MemoizingValidatorTest {
+  @Test
+  public void checksEveryValueOnce() {
+    MemoizingValidator validator = new MemoizingValidator(s -> s.startsWith("http"));
+
+    assertThat(validator.isValid("http://a")).isTrue();
+    assertThat(validator.isValid("invalid")).isFalse();
+    assertThat(validator.isValid("http://a")).isTrue();
+    assertThat(validator.isValid("invalid")).isFalse();
+
+    assertThat(validator.getLookupCount()).isEqualTo(4);
+    assertThat(validator.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void dropsLeastRecentlyUsedValues() {
+    MemoizingValidator validator = new MemoizingValidator(s -> true, 2);
+
+    validator.isValid("a");
+    validator.isValid("b");
+    // Makes "b" the least recently used value.
+    validator.isValid("a");
+    validator.isValid("c");
+    assertThat(validator.getMissCount()).isEqualTo(3);
+
+    validator.isValid("a");
+    validator.isValid("c");
+    assertThat(validator.getMissCount()).isEqualTo(3);
+    validator.isValid("b");
+    assertThat(validator.getMissCount()).isEqualTo(4);
+  }
+}
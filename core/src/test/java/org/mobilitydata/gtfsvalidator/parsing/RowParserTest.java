@@ -18,10 +18,15 @@ package org.mobilitydata.gtfsvalidator.parsing;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
+import java.util.function.BiFunction;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -52,6 +57,18 @@ public class RowParserTest {
     return createParser("au-sydney-buses", cellValue);
   }
 
+  /** Creates a parser for a row that is read by the byte tokenizer. */
+  private RowParser createBytesParser(String cellValue) {
+    String content = "col,other\n\"" + cellValue.replace("\"", "\"\"") + "\",x\n";
+    CsvFile csvFile =
+        new CsvFile(
+            new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "filename", true);
+    RowParser parser =
+        new RowParser(GtfsFeedName.parseString("au-sydney-buses"), new NoticeContainer());
+    parser.setRow(csvFile.iterator().next());
+    return parser;
+  }
+
   @Test
   public void asUrl() {
     assertThat(createParser("http://google.com").asUrl(0, true)).isEqualTo("http://google.com");
@@ -119,6 +136,23 @@ public class RowParserTest {
     assertThat(createParser("abc").asFloat(0, true)).isNull();
   }
 
+  @Test
+  public void memoizedChecks_reportEveryRow() {
+    RowParser parser = createParser("invalid");
+    CsvRow row = Mockito.mock(CsvRow.class);
+    Mockito.when(row.asString(0)).thenReturn("invalid");
+    Mockito.when(row.asString(1)).thenReturn("http://google.com");
+
+    for (int i = 0; i < 3; ++i) {
+      parser.setRow(row);
+      assertThat(parser.asUrl(1, true)).isEqualTo("http://google.com");
+      assertThat(parser.hasParseErrorsInRow()).isFalse();
+      assertThat(parser.asUrl(0, true)).isNull();
+      assertThat(parser.hasParseErrorsInRow()).isTrue();
+    }
+    assertThat(parser.getNoticeContainer().getValidationNotices()).hasSize(3);
+  }
+
   @Test
   public void asEmail() {
     assertThat(createParser("no-reply@google.com").asEmail(0, true))
@@ -197,6 +231,38 @@ public class RowParserTest {
         .containsExactly(new NonAsciiOrNonPrintableCharNotice("filename", 8L, "column name"));
   }
 
+  @Test
+  public void asId_bytes() {
+    assertThat(createBytesParser("32tgklu34y3k").asId(0, true)).isEqualTo("32tgklu34y3k");
+    RowParser parser = createBytesParser("קום");
+    assertThat(parser.asId(0, true)).isEqualTo("קום");
+    assertThat(parser.getNoticeContainer().getValidationNotices())
+        .containsExactly(new NonAsciiOrNonPrintableCharNotice("filename", 2L, "col"));
+    parser = createBytesParser("a\tb");
+    parser.asId(0, true);
+    assertThat(parser.getNoticeContainer().getValidationNotices())
+        .containsExactly(new NonAsciiOrNonPrintableCharNotice("filename", 2L, "col"));
+  }
+
+  @Test
+  public void asId_withCache() {
+    StringFieldCache cache = new StringFieldCache();
+    String first = createBytesParser("trip1").asId(0, true, cache);
+    assertThat(first).isEqualTo("trip1");
+    assertThat(createBytesParser("trip1").asId(0, true, cache)).isSameInstanceAs(first);
+    assertThat(createParser("trip1").asId(0, true, cache)).isSameInstanceAs(first);
+
+    RowParser parser = createBytesParser("קום");
+    String nonAscii = parser.asId(0, true, cache);
+    assertThat(nonAscii).isEqualTo("קום");
+    assertThat(createBytesParser("קום").asId(0, true, cache)).isSameInstanceAs(nonAscii);
+    assertThat(parser.getNoticeContainer().getValidationNotices())
+        .containsExactly(new NonAsciiOrNonPrintableCharNotice("filename", 2L, "col"));
+
+    assertThat(createBytesParser("").asId(0, false, cache)).isNull();
+    assertThat(cache.getCacheSize()).isEqualTo(2);
+  }
+
   @Test
   public void asLatitude() {
     assertThat(createParser("32.5").asLatitude(0, true)).isEqualTo(32.5);
@@ -216,4 +282,59 @@ public class RowParserTest {
     assertThat(createParser("181").asLongitude(0, true)).isNull();
     assertThat(createParser("invalid").asLongitude(0, true)).isNull();
   }
+
+  @Test
+  public void bytesMatchStrings() {
+    List<String> values =
+        Arrays.asList(
+            "0",
+            "3",
+            "7",
+            "-17",
+            "+5",
+            "2147483647",
+            "2147483648",
+            "-2147483648",
+            "12.5",
+            "-0",
+            "-0.000123",
+            "45.123456789012345678",
+            "1e5",
+            ".5",
+            "1.",
+            "-",
+            ".",
+            "",
+            "abc",
+            "91",
+            "-181",
+            "\u0663",
+            "7:05:09",
+            "24:20:30",
+            "123:00:00",
+            "12:60:00",
+            "1:2:3",
+            "20200901",
+            "20200230",
+            "2020-9-1");
+    List<BiFunction<RowParser, Integer, Object>> parsers =
+        Arrays.asList(
+            (parser, i) -> parser.asInteger(i, true),
+            (parser, i) -> parser.asFloat(i, true),
+            (parser, i) -> parser.asLatitude(i, true),
+            (parser, i) -> parser.asLongitude(i, false),
+            (parser, i) -> parser.asTime(i, true),
+            (parser, i) -> parser.asDate(i, true),
+            (parser, i) -> parser.asEnum(i, true, value -> value <= 3 ? value : null));
+    for (String value : values) {
+      for (BiFunction<RowParser, Integer, Object> parse : parsers) {
+        RowParser stringParser = createParser(value.isEmpty() ? null : value);
+        RowParser bytesParser = createBytesParser(value);
+        assertThat(parse.apply(bytesParser, 0)).isEqualTo(parse.apply(stringParser, 0));
+        assertThat(bytesParser.hasParseErrorsInRow()).isEqualTo(stringParser.hasParseErrorsInRow());
+        assertThat(bytesParser.getNoticeContainer().getValidationNotices().size())
+            .isEqualTo(stringParser.getNoticeContainer().getValidationNotices().size());
+      }
+    }
+  }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class StringFieldCacheTest {
+  private static String addAscii(StringFieldCache cache, String value) {
+    byte[] bytes = ("xx" + value + "yy").getBytes(StandardCharsets.US_ASCII);
+    return cache.addAsciiIfAbsent(bytes, 2, value.length());
+  }
+
+  @Test
+  public void addAsciiIfAbsent_returnsCachedInstance() {
+    StringFieldCache cache = new StringFieldCache();
+    String s1 = "s1";
+    assertThat(cache.addIfAbsent(s1)).isSameInstanceAs(s1);
+
+    assertThat(addAscii(cache, "s1")).isSameInstanceAs(s1);
+    String s2 = addAscii(cache, "s2");
+    assertThat(s2).isEqualTo("s2");
+    assertThat(addAscii(cache, "s2")).isSameInstanceAs(s2);
+    assertThat(cache.addIfAbsent("s2")).isSameInstanceAs(s2);
+
+    assertThat(cache.getLookupCount()).isEqualTo(5);
+    assertThat(cache.getCacheSize()).isEqualTo(2);
+    assertThat(cache.getCacheHits()).isEqualTo(3);
+    assertThat(cache.getHitRatio()).isEqualTo(0.6);
+  }
+
+  @Test
+  public void addAsciiIfAbsent_manyValues() {
+    StringFieldCache cache = new StringFieldCache();
+    for (int i = 0; i < 1000; ++i) {
+      assertThat(addAscii(cache, "id" + i)).isEqualTo("id" + i);
+    }
+    for (int i = 0; i < 1000; ++i) {
+      assertThat(addAscii(cache, "id" + i)).isSameInstanceAs(cache.addIfAbsent("id" + i));
+    }
+    assertThat(cache.getCacheSize()).isEqualTo(1000);
+  }
+
+  @Test
+  public void poolColumn_sharesValuesBetweenCaches() {
+    IdPool pool = new IdPool();
+    StringFieldCache trips = new StringFieldCache(pool.column("trips.txt", "trip_id"));
+    StringFieldCache stopTimes = new StringFieldCache(pool.column("stop_times.txt", "trip_id"));
+
+    String t1 = trips.addIfAbsent(new String("t1"));
+    assertThat(addAscii(stopTimes, "t1")).isSameInstanceAs(t1);
+    assertThat(addAscii(stopTimes, "t1")).isSameInstanceAs(t1);
+    assertThat(stopTimes.addIfAbsent(new String("t2"))).isEqualTo("t2");
+
+    IdPool.Column column = pool.column("stop_times.txt", "trip_id");
+    // Values are interned once per cache, not once per lookup.
+    assertThat(column.getInternCount()).isEqualTo(2);
+    assertThat(column.getPooledCount()).isEqualTo(1);
+    assertThat(column.getSavedBytes()).isEqualTo(IdPool.estimateStringSize("t1"));
+    assertThat(pool.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void addAsciiIfAbsent_disabled() {
+    StringFieldCache cache = new StringFieldCache(null, 4, 0.5, 100);
+    for (int i = 0; i < 4; ++i) {
+      addAscii(cache, "id" + i);
+    }
+    assertThat(cache.getPolicy()).isEqualTo(FieldCache.Policy.DISABLED);
+
+    String id0 = addAscii(cache, "id0");
+    assertThat(id0).isEqualTo("id0");
+    assertThat(addAscii(cache, "id0")).isNotSameInstanceAs(id0);
+    assertThat(cache.getCacheSize()).isEqualTo(0);
+    assertThat(cache.getLookupCount()).isEqualTo(6);
+    assertThat(cache.getCacheHits()).isEqualTo(0);
+  }
+
+  @Test
+  public void addAsciiIfAbsent_evicted() {
+    StringFieldCache cache = new StringFieldCache(null, 1000, 0.5, 2);
+    String id0 = addAscii(cache, "id0");
+    addAscii(cache, "id1");
+    assertThat(addAscii(cache, "id0")).isSameInstanceAs(id0);
+
+    String id2 = addAscii(cache, "id2");
+    assertThat(cache.getEvictionCount()).isEqualTo(1);
+    assertThat(addAscii(cache, "id2")).isSameInstanceAs(id2);
+    assertThat(addAscii(cache, "id0")).isNotSameInstanceAs(id0);
+    assertThat(cache.getCacheSize()).isEqualTo(2);
+  }
+}
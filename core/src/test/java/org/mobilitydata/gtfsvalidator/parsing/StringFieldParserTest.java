@@ -0,0 +1,206 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import com.google.common.collect.ImmutableList;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Currency;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mobilitydata.gtfsvalidator.type.GtfsColor;
+import org.mobilitydata.gtfsvalidator.type.GtfsDate;
+import org.mobilitydata.gtfsvalidator.type.GtfsTime;
+
+/** Checks that {@link StringFieldParser} accepts exactly what the Java parsers accept. */
+@RunWith(JUnit4.class)
+public class StringFieldParserTest {
+  private static final ImmutableList<String> NUMBERS =
+      ImmutableList.of(
+          "0",
+          "-0",
+          "+12",
+          "-",
+          "+",
+          "12a",
+          "1 2",
+          " 12",
+          "12 ",
+          "2147483647",
+          "2147483648",
+          "-2147483648",
+          "-2147483649",
+          "99999999999999999999",
+          "٣٤",
+          "1.5",
+          ".5",
+          "5.",
+          ".",
+          "-1.5e3",
+          "1e",
+          "1e+",
+          "1E-7",
+          "1.5f",
+          "1.5D",
+          "1.5x",
+          "NaN",
+          "-Infinity",
+          "Infinityx",
+          "0x1p3",
+          "0x",
+          "1,5",
+          "N/A",
+          "null",
+          "1e99999999999");
+
+  private static final ImmutableList<String> DATES =
+      ImmutableList.of(
+          "20200101",
+          "20200229",
+          "20210229",
+          "20201301",
+          "20200001",
+          "20200100",
+          "20201231",
+          "20201232",
+          "2020-1-1",
+          "2020+1+1",
+          "2020010",
+          "202001011",
+          "2020o101",
+          "٢٠٢٠0101",
+          "00000101");
+
+  private static final ImmutableList<String> TIMES =
+      ImmutableList.of(
+          "1:02:03",
+          "01:02:03",
+          "101:02:03",
+          "1001:02:03",
+          "1:2:03",
+          "01:60:00",
+          "01:00:60",
+          "01:00:59",
+          "01-00-00",
+          "a1:00:00",
+          "1:00:0a",
+          "٠1:00:00");
+
+  private static final ImmutableList<String> COLORS =
+      ImmutableList.of(
+          "FFFFFF", "abcdef", "12345G", "+FFFFF", "-00001", "FFFFF", "FFFFFFF", "ＦFFFFF");
+
+  private static final ImmutableList<String> TIMEZONES =
+      ImmutableList.of(
+          "Europe/Zurich",
+          "America/New_York",
+          "EST",
+          "Mars/Olympus",
+          "europe/zurich",
+          "Z",
+          "+01:00",
+          "-25:00",
+          "UTC",
+          "UTC+1",
+          "UT",
+          "GMT-02:30",
+          "GMTx",
+          "",
+          "%");
+
+  private static final ImmutableList<String> CURRENCIES =
+      ImmutableList.of("USD", "CHF", "usd", "US", "USDD", "XXX", "ABC", "");
+
+  /** Calls a Java parser and returns null if it throws. */
+  @Nullable
+  private static <T> T parseWithException(Function<String, T> parser, String s) {
+    try {
+      return parser.apply(s);
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static <T> void assertSameAsJava(
+      ImmutableList<String> values, Function<String, T> parser, Function<String, T> javaParser) {
+    for (String s : values) {
+      assertWithMessage(s).that(parser.apply(s)).isEqualTo(parseWithException(javaParser, s));
+    }
+  }
+
+  @Test
+  public void parseInteger() {
+    assertSameAsJava(NUMBERS, StringFieldParser::parseInteger, Integer::parseInt);
+    assertSameAsJava(DATES, StringFieldParser::parseInteger, Integer::parseInt);
+  }
+
+  @Test
+  public void parseDouble() {
+    assertSameAsJava(NUMBERS, StringFieldParser::parseDouble, Double::parseDouble);
+    assertSameAsJava(
+        ImmutableList.of(" 1.5 ", "\t-2\n", " "),
+        StringFieldParser::parseDouble,
+        Double::parseDouble);
+  }
+
+  @Test
+  public void parseDecimal() {
+    assertSameAsJava(NUMBERS, StringFieldParser::parseDecimal, BigDecimal::new);
+  }
+
+  @Test
+  public void parseDate() {
+    assertSameAsJava(
+        DATES,
+        StringFieldParser::parseDate,
+        // The original implementation of GtfsDate.fromString.
+        s ->
+            s.length() != 8
+                ? null
+                : GtfsDate.fromLocalDate(
+                    LocalDate.of(
+                        Integer.parseInt(s.substring(0, 4)),
+                        Integer.parseInt(s.substring(4, 6)),
+                        Integer.parseInt(s.substring(6)))));
+  }
+
+  @Test
+  public void parseTime() {
+    assertSameAsJava(TIMES, StringFieldParser::parseTime, GtfsTime::fromString);
+  }
+
+  @Test
+  public void parseColor() {
+    assertSameAsJava(COLORS, StringFieldParser::parseColor, GtfsColor::fromString);
+  }
+
+  @Test
+  public void parseTimezone() {
+    assertSameAsJava(TIMEZONES, StringFieldParser::parseTimezone, ZoneId::of);
+  }
+
+  @Test
+  public void parseCurrency() {
+    assertSameAsJava(CURRENCIES, StringFieldParser::parseCurrency, Currency::getInstance);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.parsing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.apache.commons.io.ByteOrderMark;
+import org.apache.commons.io.input.BOMInputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class Utf8ReaderTest {
+  /** Byte sequences to build the input from, including malformed and truncated sequences. */
+  private static final byte[][] PIECES = {
+    "a".getBytes(StandardCharsets.UTF_8),
+    ",".getBytes(StandardCharsets.UTF_8),
+    "stop_id".getBytes(StandardCharsets.UTF_8),
+    "é".getBytes(StandardCharsets.UTF_8),
+    "東".getBytes(StandardCharsets.UTF_8),
+    "🚌".getBytes(StandardCharsets.UTF_8),
+    ByteOrderMark.UTF_8.getBytes(),
+    {(byte) 0xC3},
+    {(byte) 0xE6, (byte) 0x9D},
+    {(byte) 0xF0, (byte) 0x9F, (byte) 0x9A},
+    {(byte) 0x80},
+    {(byte) 0xFF},
+    {(byte) 0xED, (byte) 0xA0, (byte) 0x80},
+    {(byte) 0xE0, (byte) 0x80},
+    {(byte) 0xF5},
+  };
+
+  /** Returns at most {@code maxRead} bytes on every read to split the input at every offset. */
+  private static InputStream slowStream(byte[] bytes, int maxRead) {
+    return new ByteArrayInputStream(bytes) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, maxRead));
+      }
+    };
+  }
+
+  private static String readAll(Reader reader, int readSize) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    char[] buffer = new char[readSize];
+    for (int n = reader.read(buffer); n >= 0; n = reader.read(buffer)) {
+      builder.append(buffer, 0, n);
+    }
+    return builder.toString();
+  }
+
+  private static String decodeWithInputStreamReader(byte[] bytes) throws IOException {
+    return readAll(
+        new InputStreamReader(
+            new BOMInputStream(new ByteArrayInputStream(bytes), ByteOrderMark.UTF_8),
+            StandardCharsets.UTF_8
+                .newDecoder()
+                .replaceWith("\uFFFD")
+                .onMalformedInput(CodingErrorAction.REPLACE)),
+        1024);
+  }
+
+  @Test
+  public void asciiAndMultiByteCharacters() throws IOException {
+    String content = "stop_id,stop_name\ns1,Gare de l'Est é\ns2,東京 🚌\n";
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    Utf8Reader.Statistics statistics = new Utf8Reader.Statistics();
+
+    assertThat(readAll(new Utf8Reader(new ByteArrayInputStream(bytes), statistics), 16))
+        .isEqualTo(content);
+    assertThat(statistics.getByteCount()).isEqualTo(bytes.length);
+    assertThat(statistics.getAsciiByteCount()).isLessThan((long) bytes.length);
+    assertThat(statistics.getAsciiByteCount())
+        .isAtLeast((long) "stop_id,stop_name\ns1,Gare de l'Est ".length());
+  }
+
+  @Test
+  public void skipsByteOrderMark() throws IOException {
+    byte[] bytes = "\uFEFFa,b\n\uFEFF".getBytes(StandardCharsets.UTF_8);
+    Utf8Reader.Statistics statistics = new Utf8Reader.Statistics();
+
+    assertThat(readAll(new Utf8Reader(new ByteArrayInputStream(bytes), statistics), 16))
+        .isEqualTo("a,b\n\uFEFF");
+    assertThat(readAll(new Utf8Reader(ByteBuffer.wrap(bytes), statistics), 16))
+        .isEqualTo("a,b\n\uFEFF");
+    assertThat(readAll(new Utf8Reader(slowStream(bytes, 1), statistics), 1))
+        .isEqualTo("a,b\n\uFEFF");
+  }
+
+  @Test
+  public void emptyInput() throws IOException {
+    Utf8Reader.Statistics statistics = new Utf8Reader.Statistics();
+
+    assertThat(readAll(new Utf8Reader(new ByteArrayInputStream(new byte[0]), statistics), 16))
+        .isEmpty();
+    assertThat(readAll(new Utf8Reader(ByteBuffer.allocate(0), statistics), 16)).isEmpty();
+  }
+
+  @Test
+  public void sameAsInputStreamReader() throws IOException {
+    Random random = new Random(20210901);
+    for (int iteration = 0; iteration < 2000; ++iteration) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      int pieceCount = random.nextInt(30);
+      for (int i = 0; i < pieceCount; ++i) {
+        out.write(PIECES[random.nextInt(PIECES.length)]);
+      }
+      byte[] bytes = out.toByteArray();
+      String expected = decodeWithInputStreamReader(bytes);
+      Utf8Reader.Statistics statistics = new Utf8Reader.Statistics();
+
+      assertThat(readAll(new Utf8Reader(ByteBuffer.wrap(bytes), statistics), 1 + iteration % 7))
+          .isEqualTo(expected);
+      assertThat(
+              readAll(
+                  new Utf8Reader(slowStream(bytes, 1 + iteration % 5), statistics),
+                  1 + iteration % 3))
+          .isEqualTo(expected);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.table;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DictionaryColumnTest {
+  @Test
+  public void add_storesDistinctValuesOnce() {
+    DictionaryColumn<String> column = new DictionaryColumn<>(1);
+    column.add("a");
+    column.add(null);
+    column.add("b");
+    column.add("a");
+    column.add(null);
+
+    assertThat(column.size()).isEqualTo(5);
+    assertThat(column.dictionarySize()).isEqualTo(3);
+    assertThat(column.get(0)).isEqualTo("a");
+    assertThat(column.get(1)).isNull();
+    assertThat(column.get(2)).isEqualTo("b");
+    assertThat(column.get(3)).isEqualTo("a");
+    assertThat(column.get(4)).isNull();
+  }
+
+  @Test
+  public void addAll_remapsCodes() {
+    DictionaryColumn<String> column = new DictionaryColumn<>();
+    column.add("a");
+    DictionaryColumn<String> other = new DictionaryColumn<>();
+    other.add("b");
+    other.add("a");
+    other.add("b");
+
+    column.addAll(other);
+    column.addAll(column);
+
+    assertThat(column.size()).isEqualTo(8);
+    assertThat(column.dictionarySize()).isEqualTo(2);
+    assertThat(column.get(1)).isEqualTo("b");
+    assertThat(column.get(2)).isEqualTo("a");
+    assertThat(column.get(7)).isEqualTo("b");
+  }
+
+  @Test
+  public void add_afterTrimToSize() {
+    DictionaryColumn<String> column = new DictionaryColumn<>();
+    column.add("a");
+    column.trimToSize();
+    column.add("a");
+    column.add("b");
+
+    assertThat(column.dictionarySize()).isEqualTo(2);
+    assertThat(column.get(1)).isEqualTo("a");
+    assertThat(column.get(2)).isEqualTo("b");
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.table;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GroupedRowIndexTest {
+  private static final class Row {
+    final String key;
+    final int sequence;
+
+    Row(String key, int sequence) {
+      this.key = key;
+      this.sequence = sequence;
+    }
+  }
+
+  private static GroupedRowIndex<String, Row> index(List<Row> rows) {
+    return GroupedRowIndex.build(rows, row -> row.key, row -> row.sequence);
+  }
+
+  @Test
+  public void groups_sortedBySequence() {
+    Row b2 = new Row("b", 2);
+    Row a3 = new Row("a", 3);
+    Row b1 = new Row("b", 1);
+    Row a1 = new Row("a", 1);
+    Row c0 = new Row("c", 0);
+
+    GroupedRowIndex<String, Row> index = index(ImmutableList.of(b2, a3, b1, a1, c0));
+
+    assertThat(index.groupCount()).isEqualTo(3);
+    assertThat(index.groups())
+        .containsExactly(ImmutableList.of(b1, b2), ImmutableList.of(a1, a3), ImmutableList.of(c0));
+    assertThat(index.get("a")).containsExactly(a1, a3).inOrder();
+  }
+
+  @Test
+  public void groups_inOrderOfMultimapKeys() {
+    for (int keyCount : new int[] {3, 13, 100, 1000}) {
+      List<Row> rows = new ArrayList<>();
+      ListMultimap<String, Row> multimap = ArrayListMultimap.create();
+      for (int i = 0; i < 2 * keyCount; ++i) {
+        Row row = new Row("trip" + (i * 7919 % keyCount), i);
+        rows.add(row);
+        multimap.put(row.key, row);
+      }
+
+      List<String> groupKeys = new ArrayList<>();
+      for (List<Row> group : index(rows).groups()) {
+        groupKeys.add(group.get(0).key);
+      }
+      assertThat(groupKeys).containsExactlyElementsIn(multimap.keySet()).inOrder();
+    }
+  }
+
+  @Test
+  public void equalSequences_keepTableOrder() {
+    Row first = new Row("a", 5);
+    Row second = new Row("a", -1);
+    Row third = new Row("a", 5);
+
+    assertThat(index(ImmutableList.of(first, second, third)).get("a"))
+        .containsExactly(second, first, third)
+        .inOrder();
+  }
+
+  @Test
+  public void missingKey_returnsEmptyList() {
+    assertThat(index(ImmutableList.of(new Row("a", 1))).get("b")).isEmpty();
+    assertThat(GroupedRowIndex.<String, Row>empty().get("a")).isEmpty();
+    assertThat(GroupedRowIndex.empty().groups()).isEmpty();
+  }
+
+  @Test
+  public void asMultimap_containsAllGroups() {
+    Row a2 = new Row("a", 2);
+    Row b1 = new Row("b", 1);
+    Row a1 = new Row("a", 1);
+
+    GroupedRowIndex<String, Row> index = index(ImmutableList.of(a2, b1, a1));
+
+    assertThat(index.asMultimap().asMap())
+        .containsExactly("a", ImmutableList.of(a1, a2), "b", ImmutableList.of(b1));
+    assertThat(index.asMultimap()).isSameInstanceAs(index.asMultimap());
+  }
+}
@@ -19,6 +19,7 @@ package org.mobilitydata.gtfsvalidator.type;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -74,4 +75,27 @@ public class GtfsDateTest {
     assertThat(underTest.isBefore(underTest)).isFalse();
     assertThat(underTest.isAfter(underTest)).isFalse();
   }
+
+  @Test
+  public void tryParse() {
+    assertThat(GtfsDate.tryParse("20200229")).isEqualTo(GtfsDate.fromYearMonthDay(2020, 2, 29));
+    assertThat(GtfsDate.tryParse("+0200101")).isEqualTo(GtfsDate.fromYearMonthDay(20, 1, 1));
+    assertThat(GtfsDate.tryParse("20210229")).isNull();
+    assertThat(GtfsDate.tryParse("20201301")).isNull();
+    assertThat(GtfsDate.tryParse("2020010")).isNull();
+    assertThat(GtfsDate.tryParse("2020o101")).isNull();
+  }
+
+  @Test
+  public void fromYearMonthDay_sameAsLocalDate() {
+    for (LocalDate date = LocalDate.of(-1, 1, 1);
+        date.isBefore(LocalDate.of(2401, 1, 1));
+        date = date.plusDays(1)) {
+      GtfsDate gtfsDate =
+          GtfsDate.fromYearMonthDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+      assertThat(gtfsDate.getEpochDay()).isEqualTo(date.toEpochDay());
+      assertThat(gtfsDate.getDayOfWeek()).isEqualTo(date.getDayOfWeek());
+    }
+    assertThrows(DateTimeException.class, () -> GtfsDate.fromYearMonthDay(2021, 2, 29));
+  }
 }
@@ -41,6 +41,35 @@ public class GtfsTimeTest {
     assertThrows(IllegalArgumentException.class, () -> GtfsTime.fromString("prefix4:00:12suffix"));
   }
 
+  @Test
+  public void tryParse() {
+    assertThat(GtfsTime.tryParse("0:00:00")).isEqualTo(GtfsTime.fromSecondsSinceMidnight(0));
+    assertThat(GtfsTime.tryParse("23:59:59")).isEqualTo(GtfsTime.fromHourMinuteSecond(23, 59, 59));
+    assertThat(GtfsTime.tryParse("999:59:59"))
+        .isEqualTo(GtfsTime.fromHourMinuteSecond(999, 59, 59));
+
+    assertThat(GtfsTime.tryParse("")).isNull();
+    assertThat(GtfsTime.tryParse("1:2:03")).isNull();
+    assertThat(GtfsTime.tryParse("12:60:00")).isNull();
+    assertThat(GtfsTime.tryParse("12:00:60")).isNull();
+    assertThat(GtfsTime.tryParse("12-00-00")).isNull();
+    assertThat(GtfsTime.tryParse("-1:00:00")).isNull();
+    assertThat(GtfsTime.tryParse("12:0a:00")).isNull();
+    assertThat(GtfsTime.tryParse("12:00:0a")).isNull();
+    assertThat(GtfsTime.tryParse("1\u0661:00:00")).isNull();
+  }
+
+  @Test
+  public void commonTimesAreInterned() {
+    assertThat(GtfsTime.fromString("08:30:00")).isSameInstanceAs(GtfsTime.fromString("8:30:00"));
+    assertThat(GtfsTime.fromSecondsSinceMidnight(GtfsTime.INTERNED_LIMIT - 1))
+        .isSameInstanceAs(GtfsTime.fromHourMinuteSecond(47, 59, 59));
+
+    GtfsTime late = GtfsTime.fromSecondsSinceMidnight(GtfsTime.INTERNED_LIMIT);
+    assertThat(late).isEqualTo(GtfsTime.fromHourMinuteSecond(48, 0, 0));
+    assertThat(late).isNotSameInstanceAs(GtfsTime.fromHourMinuteSecond(48, 0, 0));
+  }
+
   @Test
   public void fromHourMinuteSecondShouldReturnEntityWithCorrectData() {
     assertThat(GtfsTime.fromHourMinuteSecond(12, 20, 20).getSecond()).isEqualTo(20);
@@ -116,4 +116,38 @@ public class ServicePeriodTest {
                 .toDates())
         .isEqualTo(ImmutableSortedSet.of(LocalDate.of(2021, 1, 4)));
   }
+
+  @Test
+  public void epochDayConstructor() {
+    final LocalDate serviceStart = LocalDate.of(2021, 1, 4);
+    final LocalDate serviceEnd = LocalDate.of(2021, 1, 17);
+    final byte weeklyPattern = 0b1010001;
+    ServicePeriod period =
+        new ServicePeriod(
+            (int) serviceStart.toEpochDay(),
+            (int) serviceEnd.toEpochDay(),
+            weeklyPattern,
+            ImmutableSortedSet.of(),
+            ImmutableSortedSet.of());
+    assertThat(period)
+        .isEqualTo(
+            new ServicePeriod(
+                serviceStart,
+                serviceEnd,
+                weeklyPattern,
+                ImmutableSortedSet.of(),
+                ImmutableSortedSet.of()));
+    assertThat(period.getServiceStart()).isEqualTo(serviceStart);
+    assertThat(period.getServiceEndEpochDay()).isEqualTo(serviceEnd.toEpochDay());
+    // Monday, Friday and Sunday.
+    assertThat(period.toDates())
+        .containsExactly(
+            LocalDate.of(2021, 1, 4),
+            LocalDate.of(2021, 1, 8),
+            LocalDate.of(2021, 1, 10),
+            LocalDate.of(2021, 1, 11),
+            LocalDate.of(2021, 1, 15),
+            LocalDate.of(2021, 1, 17))
+        .inOrder();
+  }
 }
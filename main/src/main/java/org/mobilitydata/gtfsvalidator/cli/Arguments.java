@@ -53,9 +53,66 @@ public class Arguments {
       names = {"-s", "--storage_directory"},
       description =
           "Target path where to store the GTFS archive "
-              + "downloaded from network (if not provided, the ZIP will be stored in memory)")
+              + "downloaded from network (if not provided, the ZIP files are streamed from the server"
+              + " or the whole ZIP is spooled to a temporary file)")
   private String storageDirectory;
 
+  @Parameter(
+      names = {"-fc", "--feed_cache_directory"},
+      description =
+          "Directory to cache GTFS archives downloaded from network. "
+              + "An archive is downloaded again only if it has changed on the server. "
+              + "Takes precedence over '--storage_directory'")
+  private String feedCacheDirectory;
+
+  @Parameter(
+      names = {"-rc", "--report_cache_directory"},
+      description =
+          "Directory to cache validation reports. An identical feed validated on the same day "
+              + "with the same validators gets the stored report without validation")
+  private String reportCacheDirectory;
+
+  @Parameter(
+      names = {"-pi", "--parallel_inflate"},
+      description =
+          "Inflate large files of the input ZIP with all threads. "
+              + "A re-compressed copy of these files is cached next to the archive")
+  private boolean parallelInflate = false;
+
+  @Parameter(
+      names = {"-m", "--multi_feed"},
+      description =
+          "Validate every feed found in the input: a ZIP with feeds in folders or a directory "
+              + "of ZIP archives. With '--url', the URL or local path of a text file with one URL "
+              + "of a GTFS archive per line: the archives are downloaded in parallel and each is "
+              + "validated once its download completes. Reports are stored in a subdirectory per "
+              + "feed")
+  private boolean multiFeed = false;
+
+  @Parameter(
+      names = {"--byte_tokenizer"},
+      description =
+          "Split CSV files at the byte level and parse numbers, times and dates without creating"
+              + " strings")
+  private boolean byteTokenizer = false;
+
+  @Parameter(
+      names = {"--parse_chunk_size"},
+      description =
+          "Split CSV files into chunks of at least this many bytes that are parsed by all threads,"
+              + " 0 parses each file on a single thread")
+  private int parseChunkSize = 0;
+
+  @Parameter(
+      names = {"--read_ahead_buffer_size"},
+      description = "Size in bytes of each buffer that a file is read ahead into while parsing")
+  private int readAheadBufferSize = 256 << 10;
+
+  @Parameter(
+      names = {"--read_ahead_depth"},
+      description = "Number of buffers that each file is read ahead into, 0 disables reading ahead")
+  private int readAheadDepth = 4;
+
   public String getInput() {
     return input;
   }
@@ -79,4 +136,36 @@ public class Arguments {
   public String getStorageDirectory() {
     return storageDirectory;
   }
+
+  public String getFeedCacheDirectory() {
+    return feedCacheDirectory;
+  }
+
+  public String getReportCacheDirectory() {
+    return reportCacheDirectory;
+  }
+
+  public boolean getParallelInflate() {
+    return parallelInflate;
+  }
+
+  public int getReadAheadBufferSize() {
+    return readAheadBufferSize;
+  }
+
+  public int getReadAheadDepth() {
+    return readAheadDepth;
+  }
+
+  public boolean getMultiFeed() {
+    return multiFeed;
+  }
+
+  public boolean getByteTokenizer() {
+    return byteTokenizer;
+  }
+
+  public int getParseChunkSize() {
+    return parseChunkSize;
+  }
 }
@@ -19,19 +19,36 @@ package org.mobilitydata.gtfsvalidator.cli;
 import com.beust.jcommander.JCommander;
 import com.google.common.base.Strings;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.mobilitydata.gtfsvalidator.input.GtfsFeedBundle;
+import org.mobilitydata.gtfsvalidator.input.GtfsFeedCache;
 import org.mobilitydata.gtfsvalidator.input.GtfsFeedName;
 import org.mobilitydata.gtfsvalidator.input.GtfsInput;
+import org.mobilitydata.gtfsvalidator.input.HttpDownloader;
+import org.mobilitydata.gtfsvalidator.input.ParallelFeedDownloader;
 import org.mobilitydata.gtfsvalidator.notice.IOError;
 import org.mobilitydata.gtfsvalidator.notice.NoticeContainer;
+import org.mobilitydata.gtfsvalidator.notice.SystemError;
+import org.mobilitydata.gtfsvalidator.notice.ThreadExecutionError;
 import org.mobilitydata.gtfsvalidator.notice.ThreadInterruptedError;
 import org.mobilitydata.gtfsvalidator.notice.URISyntaxError;
 import org.mobilitydata.gtfsvalidator.table.GtfsFeedContainer;
@@ -67,18 +84,58 @@ public class Main {
     final long startNanos = System.nanoTime();
     // Input.
     feedLoader.setNumThreads(args.getNumThreads());
+    feedLoader.setReadAhead(args.getReadAheadBufferSize(), args.getReadAheadDepth());
+    feedLoader.setByteTokenizerEnabled(args.getByteTokenizer());
+    feedLoader.setChunkedParsing(args.getParseChunkSize(), args.getNumThreads());
+    if (args.getMultiFeed()) {
+      if (args.getInput() != null) {
+        validateBundle(args, feedLoader, validatorLoader, feedName);
+      } else {
+        validateUrlList(args, feedLoader, validatorLoader, feedName);
+      }
+      final long endNanos = System.nanoTime();
+      System.out.printf("Validation took %.3f seconds%n", (endNanos - startNanos) / 1e9);
+      return;
+    }
     NoticeContainer noticeContainer = new NoticeContainer();
     GtfsFeedContainer feedContainer;
     GtfsInput gtfsInput = null;
+    ReportCache reportCache =
+        Strings.isNullOrEmpty(args.getReportCacheDirectory())
+            ? null
+            : new ReportCache(Paths.get(args.getReportCacheDirectory()));
+    // Hash of the feed content for the report cache, null if the content cannot be hashed.
+    String feedHash = null;
     try {
+      int inflateThreads = args.getParallelInflate() ? args.getNumThreads() : 1;
       if (args.getInput() == null) {
-        if (Strings.isNullOrEmpty(args.getStorageDirectory())) {
-          gtfsInput = GtfsInput.createFromUrlInMemory(new URL(args.getUrl()));
+        if (!Strings.isNullOrEmpty(args.getFeedCacheDirectory())) {
+          try (GtfsFeedCache feedCache =
+              new GtfsFeedCache(Paths.get(args.getFeedCacheDirectory()))) {
+            GtfsFeedCache.CachedFeed cachedFeed = feedCache.fetch(new URL(args.getUrl()));
+            System.out.println(
+                cachedFeed.isModified()
+                    ? "Feed downloaded to cache"
+                    : "Feed not modified since the previous download");
+            gtfsInput = GtfsInput.createFromPath(cachedFeed.getArchive(), inflateThreads);
+            feedHash = cachedFeed.getSha256();
+          }
+        } else if (Strings.isNullOrEmpty(args.getStorageDirectory())) {
+          gtfsInput =
+              GtfsInput.createFromUrlStreaming(new URL(args.getUrl()), args.getNumThreads());
         } else {
-          gtfsInput = GtfsInput.createFromUrl(new URL(args.getUrl()), args.getStorageDirectory());
+          gtfsInput =
+              GtfsInput.createFromUrl(
+                  new URL(args.getUrl()), args.getStorageDirectory(), args.getNumThreads());
+          if (reportCache != null) {
+            feedHash = ReportCache.hashPath(Paths.get(args.getStorageDirectory()));
+          }
         }
       } else {
-        gtfsInput = GtfsInput.createFromPath(Paths.get(args.getInput()));
+        gtfsInput = GtfsInput.createFromPath(Paths.get(args.getInput()), inflateThreads);
+        if (reportCache != null) {
+          feedHash = ReportCache.hashPath(Paths.get(args.getInput()));
+        }
       }
     } catch (IOException e) {
       logger.atSevere().withCause(e).log("Cannot load GTFS feed");
@@ -99,16 +156,302 @@ public class Main {
             .setFeedName(feedName)
             .setNow(ZonedDateTime.now(ZoneId.systemDefault()))
             .build();
+    String reportKey = null;
+    if (reportCache != null && feedHash != null) {
+      reportKey =
+          ReportCache.computeKey(
+              feedHash,
+              feedLoader.listTableLoaders(),
+              validatorLoader.listValidators(),
+              validationContext);
+    }
+    if (reportKey != null) {
+      try {
+        if (reportCache.restore(reportKey, args.getOutputBase())) {
+          System.out.println("Report restored from cache for an identical feed");
+          closeInput(gtfsInput);
+          return;
+        }
+      } catch (IOException e) {
+        logger.atSevere().withCause(e).log("Cannot restore report from cache");
+      }
+    }
     feedContainer =
         feedLoader.loadAndValidate(gtfsInput, validationContext, validatorLoader, noticeContainer);
+    closeInput(gtfsInput);
 
     // Output
     exportReport(args.getOutputBase(), noticeContainer);
+    // System errors may be transient, e.g. I/O errors, so such reports are not cached.
+    if (reportKey != null && noticeContainer.getSystemErrors().isEmpty()) {
+      try {
+        reportCache.store(reportKey, args.getOutputBase());
+      } catch (IOException e) {
+        logger.atSevere().withCause(e).log("Cannot store report in cache");
+      }
+    }
     final long endNanos = System.nanoTime();
     System.out.printf("Validation took %.3f seconds%n", (endNanos - startNanos) / 1e9);
     System.out.println(feedContainer.tableTotals());
   }
 
+  /**
+   * Validates all feeds of a bundle, see {@link GtfsFeedBundle}.
+   *
+   * <p>Feeds are validated concurrently by coordinator threads that share a single pool of {@code
+   * --threads} workers for loading and validation. Reports of every feed are stored in a
+   * subdirectory of the output base named after the feed.
+   */
+  private static void validateBundle(
+      Arguments args,
+      GtfsFeedLoader feedLoader,
+      ValidatorLoader validatorLoader,
+      GtfsFeedName feedName) {
+    int inflateThreads = args.getParallelInflate() ? args.getNumThreads() : 1;
+    try (GtfsFeedBundle bundle = GtfsFeedBundle.open(Paths.get(args.getInput()), inflateThreads)) {
+      System.out.println("Feeds in bundle: " + bundle.getFeeds().size());
+      ExecutorService workers = Executors.newFixedThreadPool(args.getNumThreads());
+      ExecutorService coordinators =
+          Executors.newFixedThreadPool(
+              Math.max(1, Math.min(args.getNumThreads(), bundle.getFeeds().size())));
+      feedLoader.setSharedExecutor(workers);
+      List<GtfsFeedBundle.Feed> feeds = bundle.getFeeds();
+      List<NoticeContainer> noticeContainers = new ArrayList<>();
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (GtfsFeedBundle.Feed feed : feeds) {
+          NoticeContainer noticeContainer = new NoticeContainer();
+          noticeContainers.add(noticeContainer);
+          String outputDirectory = Paths.get(args.getOutputBase(), feed.getOutputName()).toString();
+          futures.add(
+              coordinators.submit(
+                  () ->
+                      validateFeedOfMany(
+                          feed.getInput(),
+                          feed.getName(),
+                          outputDirectory,
+                          noticeContainer,
+                          feedLoader,
+                          validatorLoader,
+                          feedName)));
+        }
+        for (int i = 0; i < futures.size(); ++i) {
+          awaitFeed(
+              futures.get(i),
+              feeds.get(i).getName(),
+              Paths.get(args.getOutputBase(), feeds.get(i).getOutputName()).toString(),
+              noticeContainers.get(i));
+        }
+      } catch (InterruptedException e) {
+        logger.atSevere().withCause(e).log("Interrupted thread");
+      } finally {
+        feedLoader.setSharedExecutor(null);
+        coordinators.shutdownNow();
+        workers.shutdownNow();
+      }
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Cannot load GTFS feed bundle");
+      NoticeContainer noticeContainer = new NoticeContainer();
+      noticeContainer.addSystemError(new IOError(e.getMessage()));
+      exportReport(args.getOutputBase(), noticeContainer);
+    }
+  }
+
+  /**
+   * Downloads and validates the feeds of a URL list given by {@code --url} with {@code
+   * --multi_feed}.
+   *
+   * <p>Archives are downloaded in parallel by a {@link ParallelFeedDownloader} and each is
+   * validated as soon as its download completes, like a feed of a bundle. Downloads pause while all
+   * coordinator threads are busy. Reports are stored in a subdirectory of the output base named
+   * after the feed, see {@link ParallelFeedDownloader.DownloadedFeed#getName()}.
+   */
+  private static void validateUrlList(
+      Arguments args,
+      GtfsFeedLoader feedLoader,
+      ValidatorLoader validatorLoader,
+      GtfsFeedName feedName) {
+    List<URL> urls;
+    Path directory;
+    boolean temporaryDirectory = Strings.isNullOrEmpty(args.getStorageDirectory());
+    try {
+      urls = readUrlList(args.getUrl());
+      directory =
+          temporaryDirectory
+              ? Files.createTempDirectory("gtfs-feeds")
+              : Paths.get(args.getStorageDirectory());
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Cannot read URL list");
+      NoticeContainer noticeContainer = new NoticeContainer();
+      noticeContainer.addSystemError(new IOError(e.getMessage()));
+      exportReport(args.getOutputBase(), noticeContainer);
+      return;
+    } catch (URISyntaxException e) {
+      logger.atSevere().withCause(e).log("Syntax error in URI");
+      NoticeContainer noticeContainer = new NoticeContainer();
+      noticeContainer.addSystemError(new URISyntaxError(e.getMessage()));
+      exportReport(args.getOutputBase(), noticeContainer);
+      return;
+    }
+    System.out.println("Feeds in URL list: " + urls.size());
+    int inflateThreads = args.getParallelInflate() ? args.getNumThreads() : 1;
+    int coordinatorCount = Math.max(1, Math.min(args.getNumThreads(), urls.size()));
+    ExecutorService workers = Executors.newFixedThreadPool(args.getNumThreads());
+    ExecutorService coordinators = Executors.newFixedThreadPool(coordinatorCount);
+    // A downloaded feed waits until a coordinator is free, so that downloads do not run ahead.
+    Semaphore freeCoordinators = new Semaphore(coordinatorCount);
+    feedLoader.setSharedExecutor(workers);
+    try (ParallelFeedDownloader.Downloads downloads =
+        new ParallelFeedDownloader(
+                HttpDownloader.getDefault(), directory, args.getNumThreads(), coordinatorCount)
+            .downloadAll(urls)) {
+      List<ParallelFeedDownloader.DownloadedFeed> feeds = new ArrayList<>();
+      List<NoticeContainer> noticeContainers = new ArrayList<>();
+      List<Future<?>> futures = new ArrayList<>();
+      while (downloads.hasNext()) {
+        ParallelFeedDownloader.DownloadedFeed feed = downloads.next();
+        System.out.println("Feed " + feed.getName() + ": " + feed.getUrl());
+        String outputDirectory = Paths.get(args.getOutputBase(), feed.getName()).toString();
+        NoticeContainer noticeContainer = new NoticeContainer();
+        if (feed.getError() != null) {
+          logger.atSevere().withCause(feed.getError()).log("Cannot download %s", feed.getUrl());
+          noticeContainer.addSystemError(downloadError(feed.getError()));
+          exportReport(outputDirectory, noticeContainer);
+          continue;
+        }
+        freeCoordinators.acquire();
+        feeds.add(feed);
+        noticeContainers.add(noticeContainer);
+        futures.add(
+            coordinators.submit(
+                () -> {
+                  try (GtfsInput gtfsInput =
+                      GtfsInput.createFromPath(feed.getArchive(), inflateThreads)) {
+                    validateFeedOfMany(
+                        gtfsInput,
+                        feed.getName(),
+                        outputDirectory,
+                        noticeContainer,
+                        feedLoader,
+                        validatorLoader,
+                        feedName);
+                  } finally {
+                    freeCoordinators.release();
+                    if (temporaryDirectory) {
+                      Files.deleteIfExists(feed.getArchive());
+                    }
+                  }
+                  return null;
+                }));
+      }
+      for (int i = 0; i < futures.size(); ++i) {
+        awaitFeed(
+            futures.get(i),
+            feeds.get(i).getName(),
+            Paths.get(args.getOutputBase(), feeds.get(i).getName()).toString(),
+            noticeContainers.get(i));
+      }
+    } catch (InterruptedException e) {
+      logger.atSevere().withCause(e).log("Interrupted thread");
+    } finally {
+      feedLoader.setSharedExecutor(null);
+      coordinators.shutdownNow();
+      workers.shutdownNow();
+      if (temporaryDirectory) {
+        try {
+          MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+        } catch (IOException e) {
+          logger.atWarning().withCause(e).log("Cannot delete downloaded feeds in %s", directory);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads URLs of GTFS archives, one per line, from an HTTP(S) URL or a local file. Blank lines and
+   * lines starting with '#' are skipped.
+   */
+  private static List<URL> readUrlList(String location) throws IOException, URISyntaxException {
+    byte[] content;
+    if (location.matches("(?i)https?://.*")) {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      HttpDownloader.getDefault().download(new URL(location), outputStream);
+      content = outputStream.toByteArray();
+    } else {
+      content = Files.readAllBytes(Paths.get(location));
+    }
+    List<URL> urls = new ArrayList<>();
+    for (String line : new String(content, StandardCharsets.UTF_8).split("\\R")) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        urls.add(new URL(line));
+      }
+    }
+    return urls;
+  }
+
+  private static SystemError downloadError(Exception e) {
+    if (e instanceof IOException) {
+      return new IOError(e.getMessage());
+    }
+    if (e instanceof URISyntaxException) {
+      return new URISyntaxError(e.getMessage());
+    }
+    return new ThreadExecutionError(
+        e.getClass().getCanonicalName(), Strings.nullToEmpty(e.getMessage()));
+  }
+
+  /**
+   * Validates one of several feeds on a coordinator thread and stores its report in the given
+   * directory.
+   */
+  private static Void validateFeedOfMany(
+      GtfsInput gtfsInput,
+      String name,
+      String outputDirectory,
+      NoticeContainer noticeContainer,
+      GtfsFeedLoader feedLoader,
+      ValidatorLoader validatorLoader,
+      GtfsFeedName feedName) {
+    ValidationContext validationContext =
+        ValidationContext.builder()
+            .setFeedName(feedName)
+            .setNow(ZonedDateTime.now(ZoneId.systemDefault()))
+            .build();
+    GtfsFeedContainer feedContainer =
+        feedLoader.loadAndValidate(gtfsInput, validationContext, validatorLoader, noticeContainer);
+    exportReport(outputDirectory, noticeContainer);
+    System.out.println("Feed " + name + ":\n" + feedContainer.tableTotals());
+    return null;
+  }
+
+  /**
+   * Waits for the validation of one of several feeds. A failed feed gets a report with the error
+   * and does not stop the validation of other feeds.
+   */
+  private static void awaitFeed(
+      Future<?> future, String name, String outputDirectory, NoticeContainer noticeContainer)
+      throws InterruptedException {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      logger.atSevere().withCause(e).log("Cannot validate feed %s", name);
+      final Throwable cause = e.getCause();
+      noticeContainer.addSystemError(
+          new ThreadExecutionError(
+              cause.getClass().getCanonicalName(), Strings.nullToEmpty(cause.getMessage())));
+      exportReport(outputDirectory, noticeContainer);
+    }
+  }
+
+  private static void closeInput(GtfsInput gtfsInput) {
+    try {
+      gtfsInput.close();
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Cannot close GTFS input");
+    }
+  }
+
   /** Generates and exports reports for both validation notices and system errors reports. */
   private static void exportReport(final String outputBase, final NoticeContainer noticeContainer) {
     new File(outputBase).mkdirs();
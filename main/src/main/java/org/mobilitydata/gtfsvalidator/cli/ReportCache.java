@@ -0,0 +1,222 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.cli;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.mobilitydata.gtfsvalidator.input.GtfsInput;
+import org.mobilitydata.gtfsvalidator.validator.ValidationContext;
+
+/**
+ * Stores validation reports keyed by everything that affects them, so that an identical feed is not
+ * validated again.
+ *
+ * <p>The key covers the content of the feed, the table loaders, the validators, the classes of the
+ * validator and the fields of {@link ValidationContext}. The classes are identified by a hash of
+ * the jars or directories they are loaded from, so that reports of a previous build are not reused
+ * during development, where no implementation version is set. Validators may depend on the current
+ * date (e.g., {@code FeedExpirationDateValidator}), so the date of {@link ValidationContext#now()}
+ * is a part of the key and a report is reused only on the same day.
+ */
+public class ReportCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String[] REPORT_FILENAMES = {"report.json", "system_errors.json"};
+
+  // Hash of the code of the validator, computed once. Empty if the code cannot be located.
+  private static final Supplier<Optional<String>> BUILD_HASH =
+      Suppliers.memoize(ReportCache::computeBuildHash);
+
+  private final Path directory;
+
+  public ReportCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Computes a key for a report.
+   *
+   * @param feedHash hash of the content of the feed, see {@link #hashPath(Path)}
+   * @param tableLoaders description of the table loaders
+   * @param validators description of the validators
+   * @param context validation context
+   * @return hex-encoded key, or null if the code of the validator cannot be identified and reports
+   *     must not be cached
+   */
+  @Nullable
+  public static String computeKey(
+      String feedHash, String tableLoaders, String validators, ValidationContext context) {
+    Optional<String> build = BUILD_HASH.get();
+    if (build.isEmpty()) {
+      return null;
+    }
+    return Hashing.sha256()
+        .newHasher()
+        .putString("feed=" + feedHash, StandardCharsets.UTF_8)
+        .putString(
+            "\nversion=" + ReportCache.class.getPackage().getImplementationVersion(),
+            StandardCharsets.UTF_8)
+        .putString("\nbuild=" + build.get(), StandardCharsets.UTF_8)
+        .putString("\nloaders=" + tableLoaders, StandardCharsets.UTF_8)
+        .putString("\nvalidators=" + validators, StandardCharsets.UTF_8)
+        .putString(
+            "\nfeed_name=" + context.feedName().getCountryFirstName(), StandardCharsets.UTF_8)
+        .putString("\ndate=" + context.now().toLocalDate(), StandardCharsets.UTF_8)
+        .hash()
+        .toString();
+  }
+
+  /**
+   * Computes a SHA-256 hash of a GTFS archive or of all files in an unarchived GTFS directory.
+   *
+   * @param path path to a ZIP archive or a directory
+   * @return hex-encoded hash
+   * @throws IOException if the files cannot be read
+   */
+  public static String hashPath(Path path) throws IOException {
+    if (!Files.isDirectory(path)) {
+      return MoreFiles.asByteSource(path).hash(Hashing.sha256()).toString();
+    }
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(path)) {
+      files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (Path file : files) {
+      hasher.putString(file.getFileName().toString(), StandardCharsets.UTF_8);
+      hasher.putLong(Files.size(file));
+      hasher.putBytes(MoreFiles.asByteSource(file).hash(Hashing.sha256()).asBytes());
+    }
+    return hasher.hash().toString();
+  }
+
+  private static Optional<String> computeBuildHash() {
+    try {
+      // Locations of the main and core modules, they are the same in a shaded jar.
+      List<Path> codeSources = new ArrayList<>();
+      for (Class<?> clazz : new Class<?>[] {ReportCache.class, GtfsInput.class}) {
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+          throw new IOException("Unknown location of " + clazz.getName());
+        }
+        Path path = Paths.get(codeSource.getLocation().toURI());
+        if (!codeSources.contains(path)) {
+          codeSources.add(path);
+        }
+      }
+      return Optional.of(hashCodeSources(codeSources));
+    } catch (IOException | URISyntaxException | RuntimeException e) {
+      logger.atWarning().withCause(e).log("Cannot identify the build, reports are not cached");
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Computes a SHA-256 hash of jars or of all files in directories of classes, recursively.
+   *
+   * @param codeSources paths to jars or directories
+   * @return hex-encoded hash
+   * @throws IOException if the files cannot be read
+   */
+  static String hashCodeSources(List<Path> codeSources) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (Path codeSource : codeSources) {
+      if (!Files.isDirectory(codeSource)) {
+        hasher.putBytes(MoreFiles.asByteSource(codeSource).hash(Hashing.sha256()).asBytes());
+        continue;
+      }
+      List<Path> files;
+      try (Stream<Path> stream = Files.walk(codeSource)) {
+        files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        hasher.putString(codeSource.relativize(file).toString(), StandardCharsets.UTF_8);
+        hasher.putBytes(MoreFiles.asByteSource(file).hash(Hashing.sha256()).asBytes());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Copies a stored report to the output directory.
+   *
+   * @param key key from {@link #computeKey}
+   * @param outputBase base directory to store the outputs
+   * @return true if the report was found, false otherwise
+   * @throws IOException if the report cannot be copied
+   */
+  public boolean restore(String key, String outputBase) throws IOException {
+    Path entry = directory.resolve(key);
+    for (String filename : REPORT_FILENAMES) {
+      if (!Files.isRegularFile(entry.resolve(filename))) {
+        return false;
+      }
+    }
+    Files.createDirectories(Paths.get(outputBase));
+    for (String filename : REPORT_FILENAMES) {
+      Files.copy(
+          entry.resolve(filename),
+          Paths.get(outputBase, filename),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    return true;
+  }
+
+  /**
+   * Stores the report from the output directory.
+   *
+   * @param key key from {@link #computeKey}
+   * @param outputBase base directory with the outputs
+   * @throws IOException if the report cannot be stored
+   */
+  public void store(String key, String outputBase) throws IOException {
+    Files.createDirectories(directory);
+    // Prepare the entry in a temporary directory, so that a partial entry is never visible.
+    Path tempEntry = Files.createTempDirectory(directory, key + ".tmp");
+    try {
+      for (String filename : REPORT_FILENAMES) {
+        Files.copy(Paths.get(outputBase, filename), tempEntry.resolve(filename));
+      }
+      Path entry = directory.resolve(key);
+      if (!Files.exists(entry)) {
+        Files.move(tempEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } finally {
+      if (Files.exists(tempEntry)) {
+        MoreFiles.deleteRecursively(tempEntry);
+      }
+    }
+  }
+}
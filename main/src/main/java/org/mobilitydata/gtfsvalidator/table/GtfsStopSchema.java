@@ -31,7 +31,7 @@ import org.mobilitydata.gtfsvalidator.annotation.Required;
 public interface GtfsStopSchema extends GtfsEntity {
   @FieldType(FieldTypeEnum.ID)
   @Required
-  @PrimaryKey
+  @PrimaryKey(intCode = true)
   String stopId();
 
   String stopCode();
@@ -29,7 +29,7 @@ import org.mobilitydata.gtfsvalidator.annotation.Required;
 import org.mobilitydata.gtfsvalidator.annotation.SequenceKey;
 import org.mobilitydata.gtfsvalidator.type.GtfsTime;
 
-@GtfsTable("stop_times.txt")
+@GtfsTable(value = "stop_times.txt", columnar = true)
 @Required
 public interface GtfsStopTimeSchema extends GtfsEntity {
   @FieldType(FieldTypeEnum.ID)
@@ -30,7 +30,7 @@ import org.mobilitydata.gtfsvalidator.annotation.Required;
 public interface GtfsTripSchema extends GtfsEntity {
   @FieldType(FieldTypeEnum.ID)
   @Required
-  @PrimaryKey
+  @PrimaryKey(intCode = true)
   String tripId();
 
   @FieldType(FieldTypeEnum.ID)
@@ -36,12 +36,12 @@ public final class CalendarUtil {
   public static ServicePeriod createServicePeriod(
       @Nullable GtfsCalendar calendar, @Nonnull List<GtfsCalendarDate> calendarDates) {
     // Store service period from calendar.txt, if provided.
-    LocalDate serviceStart;
-    LocalDate serviceEnd;
+    int serviceStart;
+    int serviceEnd;
     byte weeklyPattern;
     if (calendar != null) {
-      serviceStart = calendar.startDate().getLocalDate();
-      serviceEnd = calendar.endDate().getLocalDate();
+      serviceStart = calendar.startDate().getEpochDay();
+      serviceEnd = calendar.endDate().getEpochDay();
       weeklyPattern =
           ServicePeriod.weeklyPatternFromMTWTFSS(
               calendar.mondayValue(),
@@ -52,8 +52,8 @@ public final class CalendarUtil {
               calendar.saturdayValue(),
               calendar.sundayValue());
     } else {
-      serviceStart = LocalDate.EPOCH;
-      serviceEnd = LocalDate.EPOCH;
+      serviceStart = 0;
+      serviceEnd = 0;
       weeklyPattern = 0;
     }
 
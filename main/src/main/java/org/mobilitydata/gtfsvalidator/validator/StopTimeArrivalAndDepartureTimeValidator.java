@@ -16,7 +16,6 @@
 
 package org.mobilitydata.gtfsvalidator.validator;
 
-import com.google.common.collect.Multimaps;
 import java.util.List;
 import org.mobilitydata.gtfsvalidator.annotation.GtfsValidator;
 import org.mobilitydata.gtfsvalidator.annotation.Inject;
@@ -47,7 +46,7 @@ public class StopTimeArrivalAndDepartureTimeValidator extends FileValidator {
 
   @Override
   public void validate(NoticeContainer noticeContainer) {
-    for (List<GtfsStopTime> stopTimeList : Multimaps.asMap(table.byTripIdMap()).values()) {
+    for (List<GtfsStopTime> stopTimeList : table.byTripIdGroups()) {
       int previousDepartureRow = -1;
       for (int i = 0; i < stopTimeList.size(); ++i) {
         GtfsStopTime stopTime = stopTimeList.get(i);
@@ -16,7 +16,6 @@
 
 package org.mobilitydata.gtfsvalidator.validator;
 
-import com.google.common.collect.Multimaps;
 import java.util.List;
 import org.mobilitydata.gtfsvalidator.annotation.GtfsValidator;
 import org.mobilitydata.gtfsvalidator.annotation.Inject;
@@ -37,7 +36,7 @@ public class StopTimeIncreasingDistanceValidator extends FileValidator {
 
   @Override
   public void validate(NoticeContainer noticeContainer) {
-    for (List<GtfsStopTime> stopTimeList : Multimaps.asMap(stopTimeTable.byTripIdMap()).values()) {
+    for (List<GtfsStopTime> stopTimeList : stopTimeTable.byTripIdGroups()) {
       // GtfsStopTime objects are sorted based on @SequenceKey annotation on stop_sequence field.
       for (int i = 1; i < stopTimeList.size(); ++i) {
         GtfsStopTime prev = stopTimeList.get(i - 1);
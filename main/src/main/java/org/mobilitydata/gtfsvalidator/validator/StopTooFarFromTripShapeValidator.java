@@ -28,6 +28,7 @@ import org.mobilitydata.gtfsvalidator.notice.StopTooFarFromTripShapeNotice;
 import org.mobilitydata.gtfsvalidator.table.GtfsShapeTableContainer;
 import org.mobilitydata.gtfsvalidator.table.GtfsStop;
 import org.mobilitydata.gtfsvalidator.table.GtfsStopTableContainer;
+import org.mobilitydata.gtfsvalidator.table.GtfsStopTime;
 import org.mobilitydata.gtfsvalidator.table.GtfsStopTimeTableContainer;
 import org.mobilitydata.gtfsvalidator.table.GtfsTrip;
 import org.mobilitydata.gtfsvalidator.table.GtfsTripTableContainer;
@@ -53,26 +54,19 @@ public class StopTooFarFromTripShapeValidator extends FileValidator {
     // once
     final Set<String> testedCache = new HashSet<>();
 
-    stopTimeTable
-        .byTripIdMap()
-        .forEach(
-            (tripId, tripStopTimes) -> {
-              GtfsTrip trip = tripTable.byTripId(tripId);
-              if (trip == null || !trip.hasShapeId()) {
-                // No shape for this trip - skip to the next trip
-                return;
-              }
-              // Check for possible errors for this combination of stop times and shape points for
-              // this trip_id
-              List<StopTooFarFromTripShapeNotice> noticesForTrip =
-                  GeospatialUtil.checkStopsWithinTripShape(
-                      trip,
-                      stopTimeTable.byTripId(tripId),
-                      shapeTable.byShapeId(trip.shapeId()),
-                      stopTable,
-                      testedCache);
-              notices.addAll(noticesForTrip);
-            });
+    for (List<GtfsStopTime> tripStopTimes : stopTimeTable.byTripIdGroups()) {
+      GtfsTrip trip = tripTable.byTripId(tripStopTimes.get(0).tripId());
+      if (trip == null || !trip.hasShapeId()) {
+        // No shape for this trip - skip to the next trip
+        continue;
+      }
+      // Check for possible errors for this combination of stop times and shape points for this
+      // trip_id
+      List<StopTooFarFromTripShapeNotice> noticesForTrip =
+          GeospatialUtil.checkStopsWithinTripShape(
+              trip, tripStopTimes, shapeTable.byShapeId(trip.shapeId()), stopTable, testedCache);
+      notices.addAll(noticesForTrip);
+    }
     notices.forEach(noticeContainer::addValidationNotice);
   }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.cli;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mobilitydata.gtfsvalidator.input.GtfsFeedName;
+import org.mobilitydata.gtfsvalidator.validator.ValidationContext;
+
+@RunWith(JUnit4.class)
+public class ReportCacheTest {
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private static ValidationContext context(ZonedDateTime now) {
+    return ValidationContext.builder()
+        .setFeedName(GtfsFeedName.parseString("nl-openov"))
+        .setNow(now)
+        .build();
+  }
+
+  @Test
+  public void key_dependsOnDateAndValidators() {
+    ZonedDateTime morning = ZonedDateTime.of(2021, 1, 1, 8, 0, 0, 0, ZoneOffset.UTC);
+    String key = ReportCache.computeKey("hash", "loaders", "validators", context(morning));
+
+    assertThat(key).isNotNull();
+
+    assertThat(
+            ReportCache.computeKey("hash", "loaders", "validators", context(morning.plusHours(10))))
+        .isEqualTo(key);
+    assertThat(
+            ReportCache.computeKey("hash", "loaders", "validators", context(morning.plusDays(1))))
+        .isNotEqualTo(key);
+    assertThat(ReportCache.computeKey("hash", "loaders", "other", context(morning)))
+        .isNotEqualTo(key);
+    assertThat(ReportCache.computeKey("other", "loaders", "validators", context(morning)))
+        .isNotEqualTo(key);
+  }
+
+  @Test
+  public void hashCodeSources_nestedClassFiles() throws IOException {
+    Path classes = tmpDir.newFolder("classes").toPath();
+    Path classFile = Files.createDirectories(classes.resolve("org/example")).resolve("A.class");
+    Files.write(classFile, new byte[] {1});
+    Path jar = tmpDir.newFile("lib.jar").toPath();
+    String hash = ReportCache.hashCodeSources(ImmutableList.of(classes, jar));
+
+    assertThat(ReportCache.hashCodeSources(ImmutableList.of(classes, jar))).isEqualTo(hash);
+    Files.write(classFile, new byte[] {2});
+    assertThat(ReportCache.hashCodeSources(ImmutableList.of(classes, jar))).isNotEqualTo(hash);
+  }
+
+  @Test
+  public void hashPath_directoryContent() throws IOException {
+    Path directory = tmpDir.newFolder("feed").toPath();
+    Files.write(directory.resolve("stops.txt"), "stop_id\n".getBytes(StandardCharsets.UTF_8));
+    String hash = ReportCache.hashPath(directory);
+
+    Files.write(directory.resolve("stops.txt"), "stop_id\ns1\n".getBytes(StandardCharsets.UTF_8));
+    assertThat(ReportCache.hashPath(directory)).isNotEqualTo(hash);
+  }
+
+  @Test
+  public void storeAndRestore() throws IOException {
+    ReportCache cache = new ReportCache(tmpDir.newFolder("cache").toPath());
+    Path output = tmpDir.newFolder("output").toPath();
+    assertThat(cache.restore("key", output.toString())).isFalse();
+
+    Files.write(output.resolve("report.json"), "{}".getBytes(StandardCharsets.UTF_8));
+    Files.write(output.resolve("system_errors.json"), "[]".getBytes(StandardCharsets.UTF_8));
+    cache.store("key", output.toString());
+
+    Path restored = tmpDir.getRoot().toPath().resolve("restored");
+    assertThat(cache.restore("key", restored.toString())).isTrue();
+    assertThat(Files.readAllBytes(restored.resolve("report.json")))
+        .isEqualTo("{}".getBytes(StandardCharsets.UTF_8));
+    assertThat(Files.readAllBytes(restored.resolve("system_errors.json")))
+        .isEqualTo("[]".getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -24,6 +24,8 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -98,4 +100,64 @@ public class GtfsLevelTableLoaderTest {
         .isEqualTo("EmptyFileNotice");
     inputStream.close();
   }
+
+  private static GtfsLevelTableContainer load(
+      String content, GtfsLevelTableLoader loader, NoticeContainer noticeContainer) {
+    return (GtfsLevelTableContainer)
+        loader.load(
+            toInputStream(content), VALIDATION_CONTEXT, new ValidatorLoader(), noticeContainer);
+  }
+
+  @Test
+  public void chunkedParsing_sameEntitiesInOrder() {
+    StringBuilder content = new StringBuilder("level_id,level_name,level_index\n");
+    for (int i = 0; i < 100; ++i) {
+      content.append("level").append(i).append(",\"Level\n").append(i).append("\",").append(i);
+      content.append('\n');
+    }
+    GtfsLevelTableContainer expectedContainer =
+        load(content.toString(), new GtfsLevelTableLoader(), new NoticeContainer());
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    GtfsLevelTableLoader chunkedLoader = new GtfsLevelTableLoader();
+    chunkedLoader.setChunkedParsing(executor, 50, 3);
+    NoticeContainer noticeContainer = new NoticeContainer();
+    GtfsLevelTableContainer tableContainer =
+        load(content.toString(), chunkedLoader, noticeContainer);
+    executor.shutdown();
+
+    assertThat(noticeContainer.getValidationNotices()).isEmpty();
+    assertThat(tableContainer.entityCount()).isEqualTo(100);
+    for (int i = 0; i < 100; ++i) {
+      GtfsLevel level = tableContainer.getEntities().get(i);
+      assertThat(level.levelId()).isEqualTo("level" + i);
+      assertThat(level.levelName()).isEqualTo("Level\n" + i);
+      assertThat(level.csvRowNumber())
+          .isEqualTo(expectedContainer.getEntities().get(i).csvRowNumber());
+    }
+  }
+
+  @Test
+  public void chunkedParsing_sameNoticesInOrder() {
+    StringBuilder content = new StringBuilder("level_id,level_name,level_index\n");
+    for (int i = 0; i < 100; ++i) {
+      content.append(i % 3 == 0 ? "" : "level" + i).append(",Level,");
+      content.append(i % 5 == 0 ? "invalid" : String.valueOf(i)).append('\n');
+    }
+    NoticeContainer expectedNotices = new NoticeContainer();
+    load(content.toString(), new GtfsLevelTableLoader(), expectedNotices);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    GtfsLevelTableLoader chunkedLoader = new GtfsLevelTableLoader();
+    chunkedLoader.setChunkedParsing(executor, 100, 3);
+    NoticeContainer noticeContainer = new NoticeContainer();
+    GtfsLevelTableContainer tableContainer =
+        load(content.toString(), chunkedLoader, noticeContainer);
+    executor.shutdown();
+
+    assertThat(tableContainer.isParsedSuccessfully()).isFalse();
+    assertThat(noticeContainer.getValidationNotices()).isNotEmpty();
+    assertThat(noticeContainer.exportValidationNotices())
+        .isEqualTo(expectedNotices.exportValidationNotices());
+  }
 }
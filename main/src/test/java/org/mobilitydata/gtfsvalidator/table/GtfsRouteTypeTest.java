@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.table;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the generated lookup of enum constants by number on an enum with gaps. */
+@RunWith(JUnit4.class)
+public class GtfsRouteTypeTest {
+  @Test
+  public void forNumber() {
+    for (GtfsRouteType routeType : GtfsRouteType.values()) {
+      if (routeType != GtfsRouteType.UNRECOGNIZED) {
+        assertThat(GtfsRouteType.forNumber(routeType.getNumber())).isSameInstanceAs(routeType);
+      }
+    }
+    assertThat(GtfsRouteType.forNumber(3)).isEqualTo(GtfsRouteType.BUS);
+    assertThat(GtfsRouteType.forNumber(8)).isNull();
+    assertThat(GtfsRouteType.forNumber(13)).isNull();
+    assertThat(GtfsRouteType.forNumber(-1)).isNull();
+    assertThat(GtfsRouteType.forNumber(Integer.MIN_VALUE)).isNull();
+    assertThat(GtfsRouteType.forNumber(Integer.MAX_VALUE)).isNull();
+  }
+}
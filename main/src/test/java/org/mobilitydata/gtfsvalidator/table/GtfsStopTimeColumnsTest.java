@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.table;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mobilitydata.gtfsvalidator.type.GtfsTime;
+
+/** Tests the generated columnar storage of stop_times.txt. */
+@RunWith(JUnit4.class)
+public class GtfsStopTimeColumnsTest {
+  private static GtfsStopTime.Builder builder(String tripId, int stopSequence) {
+    return new GtfsStopTime.Builder()
+        .setCsvRowNumber(stopSequence + 1)
+        .setTripId(tripId)
+        .setTripIdCode(tripId.hashCode())
+        .setStopSequence(stopSequence)
+        .setArrivalTime(GtfsTime.fromSecondsSinceMidnight(stopSequence * 60))
+        .setPickupType(1)
+        .setShapeDistTraveled(stopSequence * 1.5);
+  }
+
+  @Test
+  public void append_storesAllFields() {
+    GtfsStopTime.Columns columns = new GtfsStopTime.Columns(1);
+    columns.append(builder("t1", 0));
+    GtfsStopTime stopTime = columns.append(builder("t2", 3));
+
+    assertThat(columns).hasSize(2);
+    assertThat(columns.get(1)).isEqualTo(stopTime);
+    assertThat(stopTime.csvRowNumber()).isEqualTo(4);
+    assertThat(stopTime.tripId()).isEqualTo("t2");
+    assertThat(stopTime.tripIdCode()).isEqualTo("t2".hashCode());
+    assertThat(stopTime.stopSequence()).isEqualTo(3);
+    assertThat(stopTime.arrivalTime()).isEqualTo(GtfsTime.fromSecondsSinceMidnight(180));
+    assertThat(stopTime.pickupType()).isEqualTo(GtfsPickupDropOff.NOT_AVAILABLE);
+    assertThat(stopTime.shapeDistTraveled()).isEqualTo(4.5);
+    assertThat(stopTime.hasDepartureTime()).isFalse();
+    assertThat(stopTime.hasDropOffType()).isFalse();
+    assertThat(stopTime.stopIdCode()).isEqualTo(-1);
+  }
+
+  @Test
+  public void build_keepsValuesOfMissingFields() {
+    GtfsStopTime.Builder builder = new GtfsStopTime.Builder();
+    GtfsStopTime stopTime = builder.build();
+
+    assertThat(stopTime.hasTripId()).isFalse();
+    assertThat(stopTime.tripId()).isNull();
+    assertThat(stopTime.arrivalTime()).isNull();
+    assertThat(stopTime.tripIdCode()).isEqualTo(-1);
+
+    builder.clear();
+    stopTime = builder.build();
+
+    assertThat(stopTime.hasArrivalTime()).isFalse();
+    assertThat(stopTime.arrivalTime()).isEqualTo(GtfsStopTime.DEFAULT_ARRIVAL_TIME);
+  }
+
+  @Test
+  public void build_keepsValuesAfterBuilderChanges() {
+    GtfsStopTime.Builder builder = builder("t1", 2);
+    GtfsStopTime stopTime = builder.build();
+    GtfsStopTime other = builder.setTripId("t2").build();
+
+    assertThat(stopTime.tripId()).isEqualTo("t1");
+    assertThat(stopTime.stopSequence()).isEqualTo(2);
+    assertThat(stopTime.hasPickupType()).isTrue();
+    assertThat(other.tripId()).isEqualTo("t2");
+    assertThat(stopTime).isEqualTo(stopTime);
+    assertThat(stopTime).isNotEqualTo(other);
+  }
+
+  @Test
+  public void addAll_copiesRows() {
+    GtfsStopTime.Columns first = new GtfsStopTime.Columns();
+    first.append(builder("t1", 1));
+    GtfsStopTime.Columns second = new GtfsStopTime.Columns();
+    second.append(builder("t2", 2));
+    second.append(builder("t1", 3));
+
+    first.addAll(second);
+    first.add(new GtfsStopTime.Builder().setTripId("t3").build());
+
+    assertThat(first).hasSize(4);
+    assertThat(first.get(1).tripId()).isEqualTo("t2");
+    assertThat(first.get(2).tripId()).isEqualTo("t1");
+    assertThat(first.get(2).stopSequence()).isEqualTo(3);
+    assertThat(first.get(3).tripId()).isEqualTo("t3");
+    assertThat(first.get(3).hasStopSequence()).isFalse();
+    assertThat(first.get(2)).isNotEqualTo(second.get(1));
+  }
+}
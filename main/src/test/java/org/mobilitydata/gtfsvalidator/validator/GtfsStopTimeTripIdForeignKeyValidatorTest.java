@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 MobilityData IO
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.validator;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mobilitydata.gtfsvalidator.notice.ForeignKeyError;
+import org.mobilitydata.gtfsvalidator.notice.NoticeContainer;
+import org.mobilitydata.gtfsvalidator.parsing.IdPool;
+import org.mobilitydata.gtfsvalidator.table.GtfsStopTime;
+import org.mobilitydata.gtfsvalidator.table.GtfsStopTimeTableContainer;
+import org.mobilitydata.gtfsvalidator.table.GtfsTrip;
+import org.mobilitydata.gtfsvalidator.table.GtfsTripTableContainer;
+
+@RunWith(JUnit4.class)
+public class GtfsStopTimeTripIdForeignKeyValidatorTest {
+  private static final String TRIP_SPACE = "trips.txt trip_id";
+
+  private static GtfsTrip createTrip(long csvRowNumber, String tripId, IdPool idPool) {
+    return new GtfsTrip.Builder()
+        .setCsvRowNumber(csvRowNumber)
+        .setRouteId("r1")
+        .setServiceId("s1")
+        .setTripId(tripId)
+        .setTripIdCode(idPool.keySpace(TRIP_SPACE).code(tripId))
+        .build();
+  }
+
+  private static GtfsStopTime createStopTime(long csvRowNumber, String tripId, IdPool idPool) {
+    return new GtfsStopTime.Builder()
+        .setCsvRowNumber(csvRowNumber)
+        .setTripId(tripId)
+        .setTripIdCode(idPool.keySpace(TRIP_SPACE).code(tripId))
+        .setStopId("stop1")
+        .setStopSequence(1)
+        .build();
+  }
+
+  private static GtfsStopTimeTripIdForeignKeyValidator createValidator(
+      GtfsTripTableContainer trips, GtfsStopTimeTableContainer stopTimes) {
+    GtfsStopTimeTripIdForeignKeyValidator validator = new GtfsStopTimeTripIdForeignKeyValidator();
+    validator.parentContainer = trips;
+    validator.childContainer = stopTimes;
+    return validator;
+  }
+
+  @Test
+  public void byTripIdCode() {
+    IdPool idPool = new IdPool();
+    NoticeContainer noticeContainer = new NoticeContainer();
+    // The code of t0 is assigned by another table before trips.txt is loaded.
+    int t0Code = idPool.keySpace(TRIP_SPACE).code("t0");
+    GtfsTrip t1 = createTrip(2, "t1", idPool);
+    GtfsTrip t2 = createTrip(3, "t2", idPool);
+    GtfsTripTableContainer trips =
+        GtfsTripTableContainer.forEntities(ImmutableList.of(t1, t2), noticeContainer, idPool);
+
+    assertThat(trips.getIdPoolToken()).isSameInstanceAs(idPool.getToken());
+    assertThat(trips.byTripIdCode(t1.tripIdCode())).isSameInstanceAs(t1);
+    assertThat(trips.byTripIdCode(t2.tripIdCode())).isSameInstanceAs(t2);
+    assertThat(trips.byTripIdCode(t0Code)).isNull();
+    assertThat(trips.byTripIdCode(-1)).isNull();
+    assertThat(trips.byTripIdCode(100)).isNull();
+  }
+
+  @Test
+  public void byTripIdCode_keepsFirstDuplicate() {
+    IdPool idPool = new IdPool();
+    NoticeContainer noticeContainer = new NoticeContainer();
+    GtfsTrip first = createTrip(2, "t1", idPool);
+    GtfsTrip second = createTrip(3, "t1", idPool);
+    GtfsTripTableContainer trips =
+        GtfsTripTableContainer.forEntities(
+            ImmutableList.of(first, second), noticeContainer, idPool);
+
+    assertThat(trips.byTripIdCode(first.tripIdCode())).isSameInstanceAs(first);
+    assertThat(trips.byTripId("t1")).isSameInstanceAs(first);
+  }
+
+  @Test
+  public void sharedPool_usesCodes() {
+    IdPool idPool = new IdPool();
+    NoticeContainer noticeContainer = new NoticeContainer();
+    GtfsStopTimeTableContainer stopTimes =
+        GtfsStopTimeTableContainer.forEntities(
+            ImmutableList.of(createStopTime(2, "t1", idPool), createStopTime(3, "t2", idPool)),
+            noticeContainer,
+            idPool);
+    GtfsTripTableContainer trips =
+        GtfsTripTableContainer.forEntities(
+            ImmutableList.of(createTrip(2, "t1", idPool)), noticeContainer, idPool);
+
+    createValidator(trips, stopTimes).validate(noticeContainer);
+
+    assertThat(noticeContainer.getValidationNotices())
+        .containsExactly(
+            new ForeignKeyError("stop_times.txt", "trip_id", "trips.txt", "trip_id", "t2", 3));
+  }
+
+  @Test
+  public void differentPools_usesStrings() {
+    NoticeContainer noticeContainer = new NoticeContainer();
+    // Codes of different pools are not comparable: t2 has code 0 in its pool like t1.
+    IdPool childPool = new IdPool();
+    GtfsStopTimeTableContainer stopTimes =
+        GtfsStopTimeTableContainer.forEntities(
+            ImmutableList.of(createStopTime(2, "t2", childPool)), noticeContainer, childPool);
+    IdPool parentPool = new IdPool();
+    GtfsTripTableContainer trips =
+        GtfsTripTableContainer.forEntities(
+            ImmutableList.of(createTrip(2, "t1", parentPool)), noticeContainer, parentPool);
+
+    createValidator(trips, stopTimes).validate(noticeContainer);
+
+    assertThat(noticeContainer.getValidationNotices())
+        .containsExactly(
+            new ForeignKeyError("stop_times.txt", "trip_id", "trips.txt", "trip_id", "t2", 2));
+  }
+}
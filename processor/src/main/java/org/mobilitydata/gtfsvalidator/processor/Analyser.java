@@ -66,6 +66,7 @@ public class Analyser {
     GtfsTable gtfsFileAnnotation = type.getAnnotation(GtfsTable.class);
     fileBuilder.setFilename(gtfsFileAnnotation.value().toLowerCase());
     fileBuilder.setSingleRow(gtfsFileAnnotation.singleRow());
+    fileBuilder.setColumnar(gtfsFileAnnotation.columnar());
     fileBuilder.interfacesBuilder().add(type.asType());
     fileBuilder.setClassName(entityImplementationSimpleName(type.getSimpleName().toString()));
     fileBuilder.setRequired(type.getAnnotation(Required.class) != null);
@@ -79,7 +80,9 @@ public class Analyser {
               ? fieldTypeAnnotation.value()
               : javaTypeToGtfsType(method.getReturnType()));
       fieldBuilder.setRequired(method.getAnnotation(Required.class) != null);
-      fieldBuilder.setPrimaryKey(method.getAnnotation(PrimaryKey.class) != null);
+      PrimaryKey primaryKey = method.getAnnotation(PrimaryKey.class);
+      fieldBuilder.setPrimaryKey(primaryKey != null);
+      fieldBuilder.setIntCode(primaryKey != null && primaryKey.intCode());
       fieldBuilder.setFirstKey(method.getAnnotation(FirstKey.class) != null);
       fieldBuilder.setSequenceKey(method.getAnnotation(SequenceKey.class) != null);
       fieldBuilder.setIndex(method.getAnnotation(Index.class) != null);
@@ -20,21 +20,33 @@ import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.fieldD
 import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.getValueMethodName;
 import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.getterMethodName;
 import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.hasMethodName;
+import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.intCodeName;
 import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.setterMethodName;
 import static org.mobilitydata.gtfsvalidator.processor.GtfsEntityClasses.TABLE_PACKAGE_NAME;
 
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
 import java.time.ZoneId;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.type.TypeMirror;
 import org.mobilitydata.gtfsvalidator.annotation.FieldTypeEnum;
 import org.mobilitydata.gtfsvalidator.annotation.Generated;
+import org.mobilitydata.gtfsvalidator.table.DictionaryColumn;
+import org.mobilitydata.gtfsvalidator.table.DoubleColumn;
 import org.mobilitydata.gtfsvalidator.table.GtfsEntity;
+import org.mobilitydata.gtfsvalidator.table.IntColumn;
+import org.mobilitydata.gtfsvalidator.table.LongColumn;
 import org.mobilitydata.gtfsvalidator.type.GtfsColor;
 import org.mobilitydata.gtfsvalidator.type.GtfsDate;
 import org.mobilitydata.gtfsvalidator.type.GtfsTime;
@@ -48,10 +60,17 @@ public class EntityImplementationGenerator {
   private static final String CSV_ROW_NUMBER = "csvRowNumber";
   private final GtfsFileDescriptor fileDescriptor;
   private final GtfsEntityClasses classNames;
+  private final IntCodedKeys intCodedKeys;
 
-  public EntityImplementationGenerator(GtfsFileDescriptor fileDescriptor) {
+  public EntityImplementationGenerator(
+      GtfsFileDescriptor fileDescriptor, IntCodedKeys intCodedKeys) {
     this.fileDescriptor = fileDescriptor;
     this.classNames = new GtfsEntityClasses(fileDescriptor);
+    this.intCodedKeys = intCodedKeys;
+  }
+
+  private boolean isCoded(GtfsFieldDescriptor field) {
+    return intCodedKeys.isCoded(fileDescriptor, field);
   }
 
   private static int lastBitFieldNumber(int fieldCount) {
@@ -164,6 +183,15 @@ public class EntityImplementationGenerator {
     for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
       typeSpec.addField(getClassFieldType(field), field.name(), Modifier.PRIVATE);
     }
+    // Integer codes of keys are not tracked in bitFields: -1 means that the key is not set.
+    for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
+      if (isCoded(field)) {
+        typeSpec.addField(
+            FieldSpec.builder(int.class, intCodeName(field.name()), Modifier.PRIVATE)
+                .initializer("-1")
+                .build());
+      }
+    }
     for (int i = 0; i <= lastBitFieldNumber(fileDescriptor.fields().size()); ++i) {
       typeSpec.addField(
           FieldSpec.builder(int.class, "bitField" + i + "_", Modifier.PRIVATE)
@@ -187,6 +215,9 @@ public class EntityImplementationGenerator {
   }
 
   public TypeSpec generateGtfsEntityClass() {
+    if (fileDescriptor.columnar()) {
+      return generateColumnarEntityClass();
+    }
     TypeSpec.Builder typeSpec =
         TypeSpec.classBuilder(classNames.entityImplementationSimpleName())
             .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
@@ -213,6 +244,7 @@ public class EntityImplementationGenerator {
       typeSpec.addMethod(generateGetterMethod(field));
       maybeAddEnumValueGetter(field, typeSpec);
       typeSpec.addMethod(generateHasMethod(field, fieldNumber));
+      maybeAddIntCodeGetter(field, typeSpec);
       ++fieldNumber;
     }
 
@@ -250,6 +282,18 @@ public class EntityImplementationGenerator {
             .build());
   }
 
+  private void maybeAddIntCodeGetter(GtfsFieldDescriptor field, TypeSpec.Builder typeSpec) {
+    if (!isCoded(field)) {
+      return;
+    }
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder(getterMethodName(intCodeName(field.name())))
+            .addModifiers(Modifier.PUBLIC)
+            .returns(int.class)
+            .addStatement("return $L", intCodeName(field.name()))
+            .build());
+  }
+
   private MethodSpec generateHasMethod(GtfsFieldDescriptor field, int fieldNumber) {
     return MethodSpec.methodBuilder(hasMethodName(field.name()))
         .addModifiers(Modifier.PUBLIC)
@@ -307,6 +351,17 @@ public class EntityImplementationGenerator {
                   "$L |= $L", bitFieldForFieldNumber(fieldNumber), maskForFieldNumber(fieldNumber))
               .addStatement("return this")
               .build());
+      if (isCoded(field)) {
+        maybeAddIntCodeGetter(field, typeSpec);
+        typeSpec.addMethod(
+            MethodSpec.methodBuilder(setterMethodName(intCodeName(field.name())))
+                .addModifiers(Modifier.PUBLIC)
+                .returns(classNames.entityBuilderTypeName())
+                .addParameter(int.class, "value")
+                .addStatement("$L = value", intCodeName(field.name()))
+                .addStatement("return this")
+                .build());
+      }
       ++fieldNumber;
     }
 
@@ -318,6 +373,15 @@ public class EntityImplementationGenerator {
 
   private MethodSpec generateBuilderBuildMethod() {
     TypeName gtfsEntityType = classNames.entityImplementationTypeName();
+    if (fileDescriptor.columnar()) {
+      // A standalone entity keeps its values in a single row instead of columns.
+      return MethodSpec.methodBuilder("build")
+          .addModifiers(Modifier.PUBLIC)
+          .returns(gtfsEntityType)
+          .addStatement(
+              "return new $T(new $T(this))", gtfsEntityType, classNames.entityRowTypeName())
+          .build();
+    }
     MethodSpec.Builder buildMethod =
         MethodSpec.methodBuilder("build")
             .addModifiers(Modifier.PUBLIC)
@@ -329,6 +393,10 @@ public class EntityImplementationGenerator {
     }
     for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
       buildMethod.addStatement("entity.$L = this.$L", field.name(), field.name());
+      if (isCoded(field)) {
+        buildMethod.addStatement(
+            "entity.$L = this.$L", intCodeName(field.name()), intCodeName(field.name()));
+      }
     }
     buildMethod.addStatement("return entity");
 
@@ -346,7 +414,346 @@ public class EntityImplementationGenerator {
     }
     for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
       buildMethod.addStatement("$L = $L", field.name(), fieldDefaultName(field.name()));
+      if (isCoded(field)) {
+        buildMethod.addStatement("$L = -1", intCodeName(field.name()));
+      }
     }
     return buildMethod.build();
   }
+
+  /**
+   * Returns the type of the column that stores a field in a columnar table.
+   *
+   * <p>Numbers and enums are stored as primitives. Other values, such as strings and times, are
+   * dictionary-encoded, which also keeps null values of fields that were never set.
+   */
+  private static TypeName getColumnType(GtfsFieldDescriptor field) {
+    TypeName fieldType = getClassFieldType(field);
+    if (fieldType.equals(TypeName.INT)) {
+      return ClassName.get(IntColumn.class);
+    }
+    if (fieldType.equals(TypeName.DOUBLE)) {
+      return ClassName.get(DoubleColumn.class);
+    }
+    return ParameterizedTypeName.get(ClassName.get(DictionaryColumn.class), fieldType.box());
+  }
+
+  private static CodeBlock readColumn(String column) {
+    return CodeBlock.of("(columns != null ? columns.$L.get(row) : singleRow.$L)", column, column);
+  }
+
+  /**
+   * Generates an entity class for a columnar table.
+   *
+   * <p>The entity is a view of a row in the nested {@code Columns} class and implements the same
+   * getters as the entity of a regular table. Entities made by the builder hold their values in the
+   * nested {@code Row} class instead, so that a single entity does not allocate whole columns.
+   */
+  private TypeSpec generateColumnarEntityClass() {
+    ClassName columnsType = classNames.entityColumnsTypeName();
+    TypeSpec.Builder typeSpec =
+        TypeSpec.classBuilder(classNames.entityImplementationSimpleName())
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addAnnotation(Generated.class)
+            .addSuperinterface(GtfsEntity.class);
+    for (TypeMirror superinterface : fileDescriptor.interfaces()) {
+      typeSpec.addSuperinterface(superinterface);
+    }
+
+    ClassName rowType = classNames.entityRowTypeName();
+    typeSpec.addField(columnsType, "columns", Modifier.PRIVATE, Modifier.FINAL);
+    typeSpec.addField(int.class, "row", Modifier.PRIVATE, Modifier.FINAL);
+    typeSpec.addField(rowType, "singleRow", Modifier.PRIVATE, Modifier.FINAL);
+    addDefaultValueFields(typeSpec);
+    typeSpec.addMethod(
+        MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(columnsType, "columns")
+            .addParameter(int.class, "row")
+            .addStatement("this.columns = columns")
+            .addStatement("this.row = row")
+            .addStatement("this.singleRow = null")
+            .build());
+    typeSpec.addMethod(
+        MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(rowType, "singleRow")
+            .addStatement("this.columns = null")
+            .addStatement("this.row = 0")
+            .addStatement("this.singleRow = singleRow")
+            .build());
+
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder(getterMethodName(CSV_ROW_NUMBER))
+            .addModifiers(Modifier.PUBLIC)
+            .returns(long.class)
+            .addAnnotation(Override.class)
+            .addStatement("return $L", readColumn(CSV_ROW_NUMBER))
+            .build());
+    int fieldNumber = 0;
+    for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
+      MethodSpec.Builder getter =
+          MethodSpec.methodBuilder(getterMethodName(field.name()))
+              .addModifiers(Modifier.PUBLIC)
+              .returns(TypeName.get(field.javaType()))
+              .addAnnotation(Override.class);
+      if (field.type() == FieldTypeEnum.ENUM) {
+        getter
+            .addStatement(
+                "$T result = $T.forNumber($L)",
+                field.javaType(),
+                field.javaType(),
+                readColumn(field.name()))
+            .addStatement("return result == null ? $T.UNRECOGNIZED : result", field.javaType());
+        typeSpec.addMethod(getter.build());
+        typeSpec.addMethod(
+            MethodSpec.methodBuilder(getValueMethodName(field.name()))
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return $L", readColumn(field.name()))
+                .build());
+      } else {
+        getter.addStatement("return $L", readColumn(field.name()));
+        typeSpec.addMethod(getter.build());
+      }
+      typeSpec.addMethod(
+          MethodSpec.methodBuilder(hasMethodName(field.name()))
+              .addModifiers(Modifier.PUBLIC)
+              .returns(boolean.class)
+              .addStatement(
+                  "return ($L & $L) != 0",
+                  readColumn(bitFieldForFieldNumber(fieldNumber)),
+                  maskForFieldNumber(fieldNumber))
+              .build());
+      if (isCoded(field)) {
+        typeSpec.addMethod(
+            MethodSpec.methodBuilder(getterMethodName(intCodeName(field.name())))
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return $L", readColumn(intCodeName(field.name())))
+                .build());
+      }
+      ++fieldNumber;
+    }
+
+    // Views are created on demand, so two views of the same row must be equal.
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder("equals")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(boolean.class)
+            .addParameter(Object.class, "obj")
+            .beginControlFlow(
+                "if (!(obj instanceof $T))", classNames.entityImplementationTypeName())
+            .addStatement("return false")
+            .endControlFlow()
+            .addStatement(
+                "$T other = ($T) obj",
+                classNames.entityImplementationTypeName(),
+                classNames.entityImplementationTypeName())
+            .addStatement(
+                "return columns == other.columns && row == other.row"
+                    + " && singleRow == other.singleRow")
+            .build());
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder("hashCode")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(int.class)
+            .addStatement(
+                "return columns != null ? 31 * System.identityHashCode(columns) + row"
+                    + " : System.identityHashCode(singleRow)")
+            .build());
+
+    typeSpec.addType(generateGtfsEntityBuilderClass());
+    typeSpec.addType(generateColumnsClass());
+    typeSpec.addType(generateRowClass());
+    return typeSpec.build();
+  }
+
+  /** Adds the fields of all columns of a columnar table and creates them in the constructor. */
+  private void addColumnFields(TypeSpec.Builder typeSpec, MethodSpec.Builder constructor) {
+    typeSpec.addField(LongColumn.class, CSV_ROW_NUMBER, Modifier.PRIVATE, Modifier.FINAL);
+    constructor.addStatement(
+        "$L = new $T(initialCapacity)", CSV_ROW_NUMBER, ClassName.get(LongColumn.class));
+    for (int i = 0; i <= lastBitFieldNumber(fileDescriptor.fields().size()); ++i) {
+      typeSpec.addField(IntColumn.class, bitFieldName(i), Modifier.PRIVATE, Modifier.FINAL);
+      constructor.addStatement("$L = new $T(initialCapacity)", bitFieldName(i), IntColumn.class);
+    }
+    for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
+      TypeName columnType = getColumnType(field);
+      typeSpec.addField(columnType, field.name(), Modifier.PRIVATE, Modifier.FINAL);
+      constructor.addStatement(
+          "$L = new $T$L(initialCapacity)",
+          field.name(),
+          columnType instanceof ParameterizedTypeName
+              ? ((ParameterizedTypeName) columnType).rawType
+              : columnType,
+          columnType instanceof ParameterizedTypeName ? "<>" : "");
+      if (isCoded(field)) {
+        typeSpec.addField(
+            IntColumn.class, intCodeName(field.name()), Modifier.PRIVATE, Modifier.FINAL);
+        constructor.addStatement(
+            "$L = new $T(initialCapacity)", intCodeName(field.name()), IntColumn.class);
+      }
+    }
+  }
+
+  /** Adds a statement for every column, e.g., to append or trim all of them. */
+  private void forEachColumn(MethodSpec.Builder method, ColumnStatement statement) {
+    statement.add(method, CSV_ROW_NUMBER);
+    for (int i = 0; i <= lastBitFieldNumber(fileDescriptor.fields().size()); ++i) {
+      statement.add(method, bitFieldName(i));
+    }
+    for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
+      statement.add(method, field.name());
+      if (isCoded(field)) {
+        statement.add(method, intCodeName(field.name()));
+      }
+    }
+  }
+
+  private TypeSpec generateColumnsClass() {
+    TypeName gtfsEntityType = classNames.entityImplementationTypeName();
+    TypeSpec.Builder typeSpec =
+        TypeSpec.classBuilder(classNames.entityColumnsTypeName().simpleName())
+            .addJavadoc(
+                "Stores rows of $L in columns and provides views of them as entities.\n",
+                fileDescriptor.filename())
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL, Modifier.STATIC)
+            .superclass(
+                ParameterizedTypeName.get(ClassName.get(AbstractList.class), gtfsEntityType))
+            .addSuperinterface(RandomAccess.class);
+
+    MethodSpec.Builder constructor =
+        MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(int.class, "initialCapacity");
+    addColumnFields(typeSpec, constructor);
+    typeSpec.addMethod(
+        MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PUBLIC)
+            .addStatement("this(16)")
+            .build());
+    typeSpec.addMethod(constructor.build());
+
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder("get")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(gtfsEntityType)
+            .addParameter(int.class, "row")
+            .addStatement("$T.checkIndex(row, size())", Objects.class)
+            .addStatement("return new $T(this, row)", gtfsEntityType)
+            .build());
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder("size")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(int.class)
+            .addStatement("return $L.size()", CSV_ROW_NUMBER)
+            .build());
+
+    MethodSpec.Builder appendMethod =
+        MethodSpec.methodBuilder("append")
+            .addJavadoc("Appends the values of a builder and returns the view of the new row.\n")
+            .addModifiers(Modifier.PUBLIC)
+            .returns(gtfsEntityType)
+            .addParameter(classNames.entityBuilderTypeName(), "builder");
+    forEachColumn(
+        appendMethod,
+        (method, column) -> method.addStatement("$L.add(builder.$L)", column, column));
+    appendMethod.addStatement("++modCount").addStatement("return get(size() - 1)");
+    typeSpec.addMethod(appendMethod.build());
+
+    MethodSpec.Builder addMethod =
+        MethodSpec.methodBuilder("add")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(boolean.class)
+            .addParameter(gtfsEntityType, "entity")
+            .beginControlFlow("if (entity.singleRow != null)");
+    forEachColumn(
+        addMethod,
+        (method, column) -> method.addStatement("$L.add(entity.singleRow.$L)", column, column));
+    addMethod
+        .nextControlFlow("else")
+        .addStatement("$T source = entity.columns", classNames.entityColumnsTypeName())
+        .addStatement("int row = entity.row");
+    forEachColumn(
+        addMethod,
+        (method, column) -> method.addStatement("$L.add(source.$L.get(row))", column, column));
+    addMethod.endControlFlow().addStatement("++modCount").addStatement("return true");
+    typeSpec.addMethod(addMethod.build());
+
+    MethodSpec.Builder addAllMethod =
+        MethodSpec.methodBuilder("addAll")
+            .addJavadoc("Appends entities, copying whole columns if they are stored in columns.\n")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(boolean.class)
+            .addParameter(
+                ParameterizedTypeName.get(
+                    ClassName.get(Collection.class), WildcardTypeName.subtypeOf(gtfsEntityType)),
+                "entities")
+            .beginControlFlow("if (!(entities instanceof $T))", classNames.entityColumnsTypeName())
+            .addStatement("return super.addAll(entities)")
+            .endControlFlow()
+            .addStatement(
+                "$T source = ($T) entities",
+                classNames.entityColumnsTypeName(),
+                classNames.entityColumnsTypeName())
+            .beginControlFlow("if (source.isEmpty())")
+            .addStatement("return false")
+            .endControlFlow();
+    forEachColumn(
+        addAllMethod,
+        (method, column) -> method.addStatement("$L.addAll(source.$L)", column, column));
+    addAllMethod.addStatement("++modCount").addStatement("return true");
+    typeSpec.addMethod(addAllMethod.build());
+
+    MethodSpec.Builder trimMethod =
+        MethodSpec.methodBuilder("trimToSize")
+            .addJavadoc("Releases memory that is only needed to append rows.\n")
+            .addModifiers(Modifier.PUBLIC);
+    forEachColumn(trimMethod, (method, column) -> method.addStatement("$L.trimToSize()", column));
+    typeSpec.addMethod(trimMethod.build());
+
+    return typeSpec.build();
+  }
+
+  /**
+   * Generates the storage of an entity that was made by the builder of a columnar table.
+   *
+   * <p>It holds one value of every column in a plain field.
+   */
+  private TypeSpec generateRowClass() {
+    TypeSpec.Builder typeSpec =
+        TypeSpec.classBuilder(classNames.entityRowTypeName().simpleName())
+            .addModifiers(Modifier.PRIVATE, Modifier.FINAL, Modifier.STATIC);
+    typeSpec.addField(long.class, CSV_ROW_NUMBER, Modifier.PRIVATE, Modifier.FINAL);
+    for (int i = 0; i <= lastBitFieldNumber(fileDescriptor.fields().size()); ++i) {
+      typeSpec.addField(int.class, bitFieldName(i), Modifier.PRIVATE, Modifier.FINAL);
+    }
+    for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
+      typeSpec.addField(getClassFieldType(field), field.name(), Modifier.PRIVATE, Modifier.FINAL);
+      if (isCoded(field)) {
+        typeSpec.addField(int.class, intCodeName(field.name()), Modifier.PRIVATE, Modifier.FINAL);
+      }
+    }
+    MethodSpec.Builder constructor =
+        MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(classNames.entityBuilderTypeName(), "builder");
+    forEachColumn(
+        constructor,
+        (method, column) -> method.addStatement("this.$L = builder.$L", column, column));
+    typeSpec.addMethod(constructor.build());
+    return typeSpec.build();
+  }
+
+  /** Adds a statement for a single column, see {@link #forEachColumn}. */
+  private interface ColumnStatement {
+    void add(MethodSpec.Builder method, String column);
+  }
 }
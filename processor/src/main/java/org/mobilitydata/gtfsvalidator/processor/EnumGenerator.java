@@ -16,22 +16,34 @@
 
 package org.mobilitydata.gtfsvalidator.processor;
 
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static org.mobilitydata.gtfsvalidator.processor.GtfsEntityClasses.TABLE_PACKAGE_NAME;
 
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeVariableName;
+import java.util.Arrays;
 import javax.lang.model.element.Modifier;
 import org.mobilitydata.gtfsvalidator.table.GtfsEnum;
 
 /**
  * Generates an enum class for a GTFS enumeration. The class implements convenient methods {@code
  * forNumber()} and {@code getNumber()} for conversion to and from an integer.
+ *
+ * <p>{@code forNumber()} is called for every enum field of every row, so it looks up the constant
+ * in a dense array if the numbers of the enumeration are in a small range.
  */
 public class EnumGenerator {
   public static final String ENUM_SUFFIX = "Enum";
+
+  /** Maximal size of the lookup table of {@code forNumber()}. */
+  private static final int MAX_LOOKUP_TABLE_SIZE = 256;
+
   private final GtfsEnumDescriptor enumDescriptor;
 
   public EnumGenerator(GtfsEnumDescriptor enumDescriptor) {
@@ -79,7 +91,9 @@ public class EnumGenerator {
             .addStatement("this.value = value")
             .build());
 
-    enumType.addMethod(forNumberMethod());
+    if (!addLookupTable(enumType)) {
+      enumType.addMethod(forNumberMethod());
+    }
     enumType.addMethod(getNumberMethod());
 
     return enumType.build();
@@ -99,4 +113,53 @@ public class EnumGenerator {
     method.endControlFlow();
     return method.build();
   }
+
+  /**
+   * Adds a {@code forNumber()} method that looks up the constant in an array indexed by the number.
+   * Returns false if the numbers are too sparse for such a table.
+   */
+  private boolean addLookupTable(TypeSpec.Builder enumType) {
+    if (enumDescriptor.values().isEmpty()) {
+      return false;
+    }
+    int minValue = 0;
+    int maxValue = 0;
+    for (GtfsEnumValueDescriptor enumValue : enumDescriptor.values()) {
+      minValue = min(minValue, enumValue.value());
+      maxValue = max(maxValue, enumValue.value());
+    }
+    if ((long) maxValue - minValue + 1 > MAX_LOOKUP_TABLE_SIZE) {
+      return false;
+    }
+    String[] table = new String[maxValue - minValue + 1];
+    Arrays.fill(table, "null");
+    for (GtfsEnumValueDescriptor enumValue : enumDescriptor.values()) {
+      table[enumValue.value() - minValue] = enumValue.name();
+    }
+    TypeName enumTypeName = TypeVariableName.get(enumDescriptor.name());
+    enumType.addField(
+        FieldSpec.builder(
+                ArrayTypeName.of(enumTypeName),
+                "FOR_NUMBER",
+                Modifier.PRIVATE,
+                Modifier.STATIC,
+                Modifier.FINAL)
+            .initializer("{$L}", String.join(", ", table))
+            .build());
+
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("forNumber")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .returns(enumTypeName)
+            .addParameter(int.class, "value");
+    String index = "value";
+    if (minValue != 0) {
+      method.addStatement("final int index = value - ($L)", minValue);
+      index = "index";
+    }
+    method.addStatement(
+        "return $L >= 0 && $L < FOR_NUMBER.length ? FOR_NUMBER[$L] : null", index, index, index);
+    enumType.addMethod(method.build());
+    return true;
+  }
 }
@@ -48,6 +48,18 @@ public final class FieldNameConverter {
     return "by" + StringUtils.capitalize(field) + "Map";
   }
 
+  public static String intCodeName(String field) {
+    return field + "Code";
+  }
+
+  public static String byIntCodeMethodName(String field) {
+    return "by" + StringUtils.capitalize(field) + "Code";
+  }
+
+  public static String byIntCodeArrayName(String field) {
+    return "by" + StringUtils.capitalize(field) + "CodeArray";
+  }
+
   public static String gtfsColumnName(String javaFieldName) {
     return CaseFormat.LOWER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, javaFieldName);
   }
@@ -42,11 +42,14 @@ public class ForeignKeyValidatorGenerator {
   private static final String VALIDATOR_PACKAGE_NAME = "org.mobilitydata.gtfsvalidator.validator";
 
   private final Map<String, GtfsFileDescriptor> fileDescriptors = new HashMap<>();
+  private final IntCodedKeys intCodedKeys;
 
-  public ForeignKeyValidatorGenerator(List<GtfsFileDescriptor> fileDescriptors) {
+  public ForeignKeyValidatorGenerator(
+      List<GtfsFileDescriptor> fileDescriptors, IntCodedKeys intCodedKeys) {
     for (GtfsFileDescriptor descriptor : fileDescriptors) {
       this.fileDescriptors.put(descriptor.filename(), descriptor);
     }
+    this.intCodedKeys = intCodedKeys;
   }
 
   public List<JavaFile> generateValidatorFiles() {
@@ -105,26 +108,47 @@ public class ForeignKeyValidatorGenerator {
             .addModifiers(Modifier.PUBLIC)
             .addAnnotation(Override.class)
             .returns(void.class)
-            .addParameter(NoticeContainer.class, "noticeContainer")
-            .beginControlFlow(
-                "for ($T childEntity: childContainer.getEntities())",
-                childClasses.entityImplementationTypeName())
-            .beginControlFlow(
-                "if (!childEntity.$L())", FieldNameConverter.hasMethodName(childField.name()))
-            .addStatement("continue")
-            .endControlFlow()
-            .addStatement("String childKey = childEntity.$L()", childField.name())
-            .beginControlFlow("if (!hasReferencedKey(childKey, parentContainer))")
-            .addStatement(
-                "noticeContainer.addValidationNotice(new $T($S, $S, $S, $S, childKey,"
-                    + " childEntity.csvRowNumber()))",
-                ForeignKeyError.class,
-                childFile.filename(),
-                FieldNameConverter.gtfsColumnName(childField.name()),
-                parentFile.filename(),
-                FieldNameConverter.gtfsColumnName(parentField.name()))
-            .endControlFlow()
-            .endControlFlow();
+            .addParameter(NoticeContainer.class, "noticeContainer");
+    // Codes can be compared only if both tables were encoded with the same key space.
+    boolean coded =
+        intCodedKeys.isCoded(parentFile, parentField)
+            && intCodedKeys
+                .keySpace(childFile, childField)
+                .equals(intCodedKeys.keySpace(parentFile, parentField));
+    if (coded) {
+      validateMethod.addStatement(
+          "final boolean useCodes = parentContainer.getIdPoolToken() != null"
+              + " && parentContainer.getIdPoolToken() == childContainer.getIdPoolToken()");
+    }
+    validateMethod
+        .beginControlFlow(
+            "for ($T childEntity: childContainer.getEntities())",
+            childClasses.entityImplementationTypeName())
+        .beginControlFlow(
+            "if (!childEntity.$L())", FieldNameConverter.hasMethodName(childField.name()))
+        .addStatement("continue")
+        .endControlFlow()
+        .addStatement("String childKey = childEntity.$L()", childField.name());
+    if (coded) {
+      validateMethod.beginControlFlow(
+          "if (useCodes ? parentContainer.$L(childEntity.$L()) == null"
+              + " : !hasReferencedKey(childKey, parentContainer))",
+          FieldNameConverter.byIntCodeMethodName(parentField.name()),
+          FieldNameConverter.intCodeName(childField.name()));
+    } else {
+      validateMethod.beginControlFlow("if (!hasReferencedKey(childKey, parentContainer))");
+    }
+    validateMethod
+        .addStatement(
+            "noticeContainer.addValidationNotice(new $T($S, $S, $S, $S, childKey,"
+                + " childEntity.csvRowNumber()))",
+            ForeignKeyError.class,
+            childFile.filename(),
+            FieldNameConverter.gtfsColumnName(childField.name()),
+            parentFile.filename(),
+            FieldNameConverter.gtfsColumnName(parentField.name()))
+        .endControlFlow()
+        .endControlFlow();
     typeSpec.addMethod(validateMethod.build());
 
     MethodSpec.Builder hasReferencedKeyMethod =
@@ -95,13 +95,19 @@ public class GtfsAnnotationProcessor extends AbstractProcessor {
     for (TypeElement type : typesIn(annotatedElementsIn(roundEnv, GtfsTable.class))) {
       fileDescriptors.add(analyser.analyzeGtfsFileType(type));
     }
+    IntCodedKeys intCodedKeys = new IntCodedKeys(fileDescriptors);
     for (GtfsFileDescriptor fileDescriptor : fileDescriptors) {
-      writeJavaFile(new EntityImplementationGenerator(fileDescriptor).generateGtfsEntityJavaFile());
-      writeJavaFile(new TableLoaderGenerator(fileDescriptor).generateGtfsTableLoaderJavaFile());
-      writeJavaFile(new TableContainerGenerator(fileDescriptor).generateGtfsContainerJavaFile());
+      writeJavaFile(
+          new EntityImplementationGenerator(fileDescriptor, intCodedKeys)
+              .generateGtfsEntityJavaFile());
+      writeJavaFile(
+          new TableLoaderGenerator(fileDescriptor, intCodedKeys).generateGtfsTableLoaderJavaFile());
+      writeJavaFile(
+          new TableContainerGenerator(fileDescriptor, intCodedKeys)
+              .generateGtfsContainerJavaFile());
     }
     ForeignKeyValidatorGenerator foreignKeyValidatorGenerator =
-        new ForeignKeyValidatorGenerator(fileDescriptors);
+        new ForeignKeyValidatorGenerator(fileDescriptors, intCodedKeys);
     for (JavaFile javaFile : foreignKeyValidatorGenerator.generateValidatorFiles()) {
       writeJavaFile(javaFile);
     }
@@ -66,6 +66,14 @@ public final class GtfsEntityClasses {
     return ClassName.get(TABLE_PACKAGE_NAME, entityImplementationSimpleName() + ".Builder");
   }
 
+  public ClassName entityColumnsTypeName() {
+    return ClassName.get(TABLE_PACKAGE_NAME, entityImplementationSimpleName(), "Columns");
+  }
+
+  public ClassName entityRowTypeName() {
+    return ClassName.get(TABLE_PACKAGE_NAME, entityImplementationSimpleName(), "Row");
+  }
+
   public TypeName tableLoaderTypeName() {
     return ClassName.get(TABLE_PACKAGE_NAME, tableLoaderSimpleName());
   }
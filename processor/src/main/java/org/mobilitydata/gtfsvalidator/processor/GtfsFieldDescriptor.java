@@ -39,6 +39,11 @@ public abstract class GtfsFieldDescriptor {
 
   public abstract boolean primaryKey();
 
+  /**
+   * Whether the field is a primary key with dense integer codes, see {@code PrimaryKey#intCode}.
+   */
+  public abstract boolean intCode();
+
   public abstract boolean firstKey();
 
   public abstract boolean sequenceKey();
@@ -65,6 +70,8 @@ public abstract class GtfsFieldDescriptor {
 
     public abstract Builder setPrimaryKey(boolean value);
 
+    public abstract Builder setIntCode(boolean value);
+
     public abstract Builder setFirstKey(boolean value);
 
     public abstract Builder setSequenceKey(boolean value);
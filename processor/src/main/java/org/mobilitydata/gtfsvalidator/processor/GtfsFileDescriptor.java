@@ -38,6 +38,9 @@ public abstract class GtfsFileDescriptor {
 
   public abstract boolean singleRow();
 
+  /** Whether rows are stored in columns, see {@code GtfsTable#columnar}. */
+  public abstract boolean columnar();
+
   public abstract ImmutableList<GtfsFieldDescriptor> fields();
 
   public abstract ImmutableMap<String, GtfsFieldDescriptor> fieldByName();
@@ -66,6 +69,8 @@ public abstract class GtfsFileDescriptor {
 
     public abstract Builder setSingleRow(boolean value);
 
+    public abstract Builder setColumnar(boolean value);
+
     public abstract ImmutableList.Builder<GtfsFieldDescriptor> fieldsBuilder();
 
     abstract ImmutableList<GtfsFieldDescriptor> fields();
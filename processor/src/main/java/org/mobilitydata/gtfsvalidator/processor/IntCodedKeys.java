@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mobilitydata.gtfsvalidator.processor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resolves which fields of GTFS tables store dense integer codes of keys.
+ *
+ * <p>A field is coded if it is a primary key annotated with {@code @PrimaryKey(intCode = true)} or
+ * if it is a foreign key that references such a primary key. Both fields share a key space, so a
+ * child entity can find its parent by code.
+ */
+public class IntCodedKeys {
+  // Maps "filename fieldName" of coded primary keys to the name of their key space.
+  private final Map<String, String> keySpaces = new HashMap<>();
+
+  public IntCodedKeys(List<GtfsFileDescriptor> fileDescriptors) {
+    for (GtfsFileDescriptor file : fileDescriptors) {
+      for (GtfsFieldDescriptor field : file.fields()) {
+        if (field.primaryKey() && field.intCode()) {
+          keySpaces.put(
+              file.filename() + " " + field.name(),
+              file.filename() + " " + FieldNameConverter.gtfsColumnName(field.name()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the name of the key space of the field, e.g., "trips.txt trip_id", or empty if the
+   * field is not coded.
+   */
+  public Optional<String> keySpace(GtfsFileDescriptor file, GtfsFieldDescriptor field) {
+    if (field.primaryKey() && field.intCode()) {
+      return Optional.of(keySpaces.get(file.filename() + " " + field.name()));
+    }
+    if (field.foreignKey().isPresent()) {
+      ForeignKeyDescriptor foreignKey = field.foreignKey().get();
+      return Optional.ofNullable(keySpaces.get(foreignKey.table() + " " + foreignKey.field()));
+    }
+    return Optional.empty();
+  }
+
+  public boolean isCoded(GtfsFileDescriptor file, GtfsFieldDescriptor field) {
+    return keySpace(file, field).isPresent();
+  }
+}
@@ -16,6 +16,8 @@
 
 package org.mobilitydata.gtfsvalidator.processor;
 
+import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.byIntCodeArrayName;
+import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.byIntCodeMethodName;
 import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.byKeyMapName;
 import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.byKeyMethodName;
 import static org.mobilitydata.gtfsvalidator.processor.FieldNameConverter.fieldNameField;
@@ -24,6 +26,7 @@ import static org.mobilitydata.gtfsvalidator.processor.GtfsEntityClasses.TABLE_P
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimaps;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
@@ -32,14 +35,18 @@ import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import javax.lang.model.element.Modifier;
 import org.mobilitydata.gtfsvalidator.annotation.Generated;
 import org.mobilitydata.gtfsvalidator.notice.DuplicateKeyError;
 import org.mobilitydata.gtfsvalidator.notice.MoreThanOneEntityNotice;
 import org.mobilitydata.gtfsvalidator.notice.NoticeContainer;
+import org.mobilitydata.gtfsvalidator.parsing.IdPool;
+import org.mobilitydata.gtfsvalidator.table.GroupedRowIndex;
 import org.mobilitydata.gtfsvalidator.table.GtfsTableContainer;
 
 /**
@@ -50,10 +57,22 @@ import org.mobilitydata.gtfsvalidator.table.GtfsTableContainer;
 public class TableContainerGenerator {
   private final GtfsFileDescriptor fileDescriptor;
   private final GtfsEntityClasses classNames;
+  private final IntCodedKeys intCodedKeys;
 
-  public TableContainerGenerator(GtfsFileDescriptor fileDescriptor) {
+  public TableContainerGenerator(GtfsFileDescriptor fileDescriptor, IntCodedKeys intCodedKeys) {
     this.fileDescriptor = fileDescriptor;
     this.classNames = new GtfsEntityClasses(fileDescriptor);
+    this.intCodedKeys = intCodedKeys;
+  }
+
+  /** Returns the primary key if the container has an index by its integer codes. */
+  private Optional<GtfsFieldDescriptor> codedPrimaryKey() {
+    if (fileDescriptor.singleRow() || fileDescriptor.sequenceKey().isPresent()) {
+      return Optional.empty();
+    }
+    return fileDescriptor
+        .primaryKey()
+        .filter(primaryKey -> intCodedKeys.isCoded(fileDescriptor, primaryKey));
   }
 
   private static void addListMultimapWithGetters(
@@ -82,6 +101,70 @@ public class TableContainerGenerator {
             .build());
   }
 
+  /**
+   * Adds the getters of an index by {@code @FirstKey} and {@code @SequenceKey}.
+   *
+   * <p>Columnar tables store the index in a {@link GroupedRowIndex}, other tables in a multimap.
+   */
+  private void addSequenceIndexWithGetters(
+      TypeSpec.Builder typeSpec, GtfsFieldDescriptor firstKey, TypeName entityTypeName) {
+    TypeName groupsType =
+        ParameterizedTypeName.get(
+            ClassName.get(Collection.class),
+            ParameterizedTypeName.get(ClassName.get(List.class), entityTypeName));
+    MethodSpec.Builder groupsMethod =
+        MethodSpec.methodBuilder(byKeyMethodName(firstKey.name()) + "Groups")
+            .addJavadoc(
+                "Returns the entities grouped by $L, each group sorted by $L.\n",
+                FieldNameConverter.gtfsColumnName(firstKey.name()),
+                FieldNameConverter.gtfsColumnName(fileDescriptor.sequenceKey().get().name()))
+            .addModifiers(Modifier.PUBLIC)
+            .returns(groupsType);
+    if (!fileDescriptor.columnar()) {
+      addListMultimapWithGetters(typeSpec, firstKey, entityTypeName);
+      typeSpec.addMethod(
+          groupsMethod
+              .addStatement(
+                  "return $T.asMap($L).values()", Multimaps.class, byKeyMapName(firstKey.name()))
+              .build());
+      return;
+    }
+    TypeName keyType = TypeName.get(firstKey.javaType());
+    TypeName indexType =
+        ParameterizedTypeName.get(ClassName.get(GroupedRowIndex.class), keyType, entityTypeName);
+    String methodName = byKeyMethodName(firstKey.name());
+    String fieldName = byKeyIndexName(firstKey.name());
+    typeSpec.addField(
+        FieldSpec.builder(indexType, fieldName, Modifier.PRIVATE)
+            .initializer("$T.empty()", GroupedRowIndex.class)
+            .build());
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder(methodName)
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(keyType, "key")
+            .returns(ParameterizedTypeName.get(ClassName.get(List.class), entityTypeName))
+            .addStatement("return $L.get(key)", fieldName)
+            .build());
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder(methodName + "Map")
+            .addJavadoc(
+                "Returns an unmodifiable copy of the index that is built on the first call and"
+                    + " holds every entity, prefer {@link #$L} and {@link #$L}.\n",
+                methodName,
+                methodName + "Groups")
+            .addModifiers(Modifier.PUBLIC)
+            .returns(
+                ParameterizedTypeName.get(
+                    ClassName.get(ListMultimap.class), keyType, entityTypeName))
+            .addStatement("return $L.asMultimap()", fieldName)
+            .build());
+    typeSpec.addMethod(groupsMethod.addStatement("return $L.groups()", fieldName).build());
+  }
+
+  private static String byKeyIndexName(String field) {
+    return byKeyMethodName(field) + "Index";
+  }
+
   private static void addMapWithGetter(
       TypeSpec.Builder typeSpec, GtfsFieldDescriptor indexField, TypeName entityTypeName) {
     String methodName = byKeyMethodName(indexField.name());
@@ -102,6 +185,23 @@ public class TableContainerGenerator {
             .build());
   }
 
+  private static void addArrayWithGetter(
+      TypeSpec.Builder typeSpec, GtfsFieldDescriptor indexField, TypeName entityTypeName) {
+    String fieldName = byIntCodeArrayName(indexField.name());
+    typeSpec.addField(
+        FieldSpec.builder(ArrayTypeName.of(entityTypeName), fieldName, Modifier.PRIVATE)
+            .initializer("new $T[0]", entityTypeName)
+            .build());
+    typeSpec.addMethod(
+        MethodSpec.methodBuilder(byIntCodeMethodName(indexField.name()))
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(int.class, "code")
+            .returns(entityTypeName)
+            .addStatement(
+                "return code >= 0 && code < $L.length ? $L[code] : null", fieldName, fieldName)
+            .build());
+  }
+
   public JavaFile generateGtfsContainerJavaFile() {
     return JavaFile.builder(TABLE_PACKAGE_NAME, generateGtfsContainerClass()).build();
   }
@@ -160,12 +260,16 @@ public class TableContainerGenerator {
               .addStatement("return entities.isEmpty() ? null : entities.get(0)")
               .build());
     } else if (fileDescriptor.sequenceKey().isPresent()) {
-      addListMultimapWithGetters(
+      addSequenceIndexWithGetters(
           typeSpec, fileDescriptor.firstKey().get(), classNames.entityImplementationTypeName());
     } else if (fileDescriptor.primaryKey().isPresent()) {
       addMapWithGetter(
           typeSpec, fileDescriptor.primaryKey().get(), classNames.entityImplementationTypeName());
     }
+    if (codedPrimaryKey().isPresent()) {
+      addArrayWithGetter(
+          typeSpec, codedPrimaryKey().get(), classNames.entityImplementationTypeName());
+    }
     for (GtfsFieldDescriptor indexField : fileDescriptor.indices()) {
       addListMultimapWithGetters(typeSpec, indexField, classNames.entityImplementationTypeName());
     }
@@ -174,6 +278,7 @@ public class TableContainerGenerator {
     typeSpec.addMethod(generateConstructorWithStatus());
     typeSpec.addMethod(generateSetupIndicesMethod());
     typeSpec.addMethod(generateForEntitiesMethod());
+    typeSpec.addMethod(generateForEntitiesWithIdPoolMethod());
 
     return typeSpec.build();
   }
@@ -215,6 +320,24 @@ public class TableContainerGenerator {
         .build();
   }
 
+  private MethodSpec generateForEntitiesWithIdPoolMethod() {
+    TypeName tableContainerTypeName = classNames.tableContainerTypeName();
+    return MethodSpec.methodBuilder("forEntities")
+        .returns(tableContainerTypeName)
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addParameter(
+            ParameterizedTypeName.get(
+                ClassName.get(List.class), classNames.entityImplementationTypeName()),
+            "entities")
+        .addParameter(NoticeContainer.class, "noticeContainer")
+        .addParameter(IdPool.class, "idPool")
+        .addStatement("$T table = new $T(entities)", tableContainerTypeName, tableContainerTypeName)
+        .addStatement("table.setIdPoolToken(idPool.getToken())")
+        .addStatement("table.setupIndices(noticeContainer)")
+        .addStatement("return table")
+        .build();
+  }
+
   private MethodSpec generateSetupIndicesMethod() {
     TypeName gtfsEntityType = classNames.entityImplementationTypeName();
     TypeName loaderType = classNames.tableLoaderTypeName();
@@ -234,21 +357,39 @@ public class TableContainerGenerator {
     } else if (fileDescriptor.sequenceKey().isPresent() && fileDescriptor.firstKey().isPresent()) {
       GtfsFieldDescriptor firstKey = fileDescriptor.firstKey().get();
       GtfsFieldDescriptor sequenceKey = fileDescriptor.sequenceKey().get();
-      String byKeyMap = byKeyMapName(firstKey.name());
-      method.beginControlFlow("for ($T entity : entities)", gtfsEntityType);
-      method.addStatement("$L.put(entity.$L(), entity)", byKeyMap, firstKey.name());
-      method.endControlFlow();
+      if (fileDescriptor.columnar()) {
+        // The index sorts each group by sequence.
+        method
+            .addStatement(
+                "$L = $T.build(entities, $T::$L, $T::$L)",
+                byKeyIndexName(firstKey.name()),
+                GroupedRowIndex.class,
+                gtfsEntityType,
+                firstKey.name(),
+                gtfsEntityType,
+                sequenceKey.name())
+            .beginControlFlow(
+                "for (List<$T> entityList: $L.groups())",
+                gtfsEntityType,
+                byKeyIndexName(firstKey.name()));
+      } else {
+        String byKeyMap = byKeyMapName(firstKey.name());
+        method.beginControlFlow("for ($T entity : entities)", gtfsEntityType);
+        method.addStatement("$L.put(entity.$L(), entity)", byKeyMap, firstKey.name());
+        method.endControlFlow();
 
+        method
+            .beginControlFlow(
+                "for (List<$T> entityList: $T.asMap($L).values())",
+                gtfsEntityType,
+                Multimaps.class,
+                byKeyMap)
+            .addStatement(
+                "entityList.sort((entity1, entity2) -> Integer.compare(entity1.$L(), entity2.$L()))",
+                sequenceKey.name(),
+                sequenceKey.name());
+      }
       method
-          .beginControlFlow(
-              "for (List<$T> entityList: $T.asMap($L).values())",
-              gtfsEntityType,
-              Multimaps.class,
-              byKeyMap)
-          .addStatement(
-              "entityList.sort((entity1, entity2) -> Integer.compare(entity1.$L(), entity2.$L()))",
-              sequenceKey.name(),
-              sequenceKey.name())
           .beginControlFlow("for (int i = 1; i < entityList.size(); ++i)")
           .addStatement("$T a = entityList.get(i - 1)", gtfsEntityType)
           .addStatement("$T b = entityList.get(i)", gtfsEntityType)
@@ -272,6 +413,19 @@ public class TableContainerGenerator {
     } else if (fileDescriptor.primaryKey().isPresent()) {
       GtfsFieldDescriptor primaryKey = fileDescriptor.primaryKey().get();
       String byKeyMap = byKeyMapName(primaryKey.name());
+      boolean coded = codedPrimaryKey().isPresent();
+      String codeGetter = FieldNameConverter.intCodeName(primaryKey.name());
+      String byCodeArray = byIntCodeArrayName(primaryKey.name());
+      if (coded) {
+        // Codes are dense in the key space of the feed, so the array is not much larger than the
+        // table.
+        method
+            .addStatement("int maxCode = -1")
+            .beginControlFlow("for ($T entity : entities)", gtfsEntityType)
+            .addStatement("maxCode = Math.max(maxCode, entity.$L())", codeGetter)
+            .endControlFlow()
+            .addStatement("$L = new $T[maxCode + 1]", byCodeArray, gtfsEntityType);
+      }
       method.beginControlFlow("for ($T newEntity : entities)", gtfsEntityType);
       method
           .addStatement(
@@ -288,8 +442,14 @@ public class TableContainerGenerator {
               fieldNameField(primaryKey.name()),
               primaryKey.name())
           .nextControlFlow("else")
-          .addStatement("$L.put(newEntity.$L(), newEntity)", byKeyMap, primaryKey.name())
-          .endControlFlow();
+          .addStatement("$L.put(newEntity.$L(), newEntity)", byKeyMap, primaryKey.name());
+      if (coded) {
+        method
+            .beginControlFlow("if (newEntity.$L() >= 0)", codeGetter)
+            .addStatement("$L[newEntity.$L()] = newEntity", byCodeArray, codeGetter)
+            .endControlFlow();
+      }
+      method.endControlFlow();
       method.endControlFlow();
     }
 
@@ -35,7 +35,10 @@ import com.squareup.javapoet.TypeSpec;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import javax.lang.model.element.Modifier;
 import org.mobilitydata.gtfsvalidator.annotation.FieldTypeEnum;
@@ -47,7 +50,9 @@ import org.mobilitydata.gtfsvalidator.notice.NoticeContainer;
 import org.mobilitydata.gtfsvalidator.parsing.CsvFile;
 import org.mobilitydata.gtfsvalidator.parsing.CsvRow;
 import org.mobilitydata.gtfsvalidator.parsing.FieldCache;
+import org.mobilitydata.gtfsvalidator.parsing.IdPool;
 import org.mobilitydata.gtfsvalidator.parsing.RowParser;
+import org.mobilitydata.gtfsvalidator.parsing.StringFieldCache;
 import org.mobilitydata.gtfsvalidator.table.GtfsTableContainer;
 import org.mobilitydata.gtfsvalidator.table.GtfsTableContainer.TableStatus;
 import org.mobilitydata.gtfsvalidator.table.GtfsTableLoader;
@@ -66,10 +71,12 @@ public class TableLoaderGenerator {
   private static final int LOG_EVERY_N_ROWS = 200000;
   private final GtfsFileDescriptor fileDescriptor;
   private final GtfsEntityClasses classNames;
+  private final IntCodedKeys intCodedKeys;
 
-  public TableLoaderGenerator(GtfsFileDescriptor fileDescriptor) {
+  public TableLoaderGenerator(GtfsFileDescriptor fileDescriptor, IntCodedKeys intCodedKeys) {
     this.fileDescriptor = fileDescriptor;
     this.classNames = new GtfsEntityClasses(fileDescriptor);
+    this.intCodedKeys = intCodedKeys;
   }
 
   private static String gtfsTypeToParserMethod(FieldTypeEnum typeEnum) {
@@ -88,10 +95,10 @@ public class TableLoaderGenerator {
       // cached.
       return false;
     }
-    // Caching is enabled by default for certain field types.
+    // Caching is enabled by default for certain field types. Times are not cached because GtfsTime
+    // already interns common values.
     return field.type() == FieldTypeEnum.COLOR
         || field.type() == FieldTypeEnum.DATE
-        || field.type() == FieldTypeEnum.TIME
         || field.type() == FieldTypeEnum.LANGUAGE_CODE
         || field.type() == FieldTypeEnum.ID;
   }
@@ -114,6 +121,14 @@ public class TableLoaderGenerator {
     }
   }
 
+  private static String fieldEncoder(GtfsFieldDescriptor field) {
+    return field.name() + "Encoder";
+  }
+
+  private static String fieldPoolColumn(GtfsFieldDescriptor field) {
+    return field.name() + "PoolColumn";
+  }
+
   public JavaFile generateGtfsTableLoaderJavaFile() {
     return JavaFile.builder(TABLE_PACKAGE_NAME, generateGtfsTableLoaderClass()).build();
   }
@@ -155,6 +170,10 @@ public class TableLoaderGenerator {
     typeSpec.addMethod(generateGtfsFilenameMethod());
     typeSpec.addMethod(generateIsRequiredMethod());
     typeSpec.addMethod(generateLoadMethod());
+    typeSpec.addMethod(generateLoadRowsMethod());
+    if (fileDescriptor.columnar()) {
+      typeSpec.addMethod(generateNewEntityListMethod());
+    }
     typeSpec.addMethod(generateLoadMissingFileMethod());
     typeSpec.addMethod(generateGetColumnNamesMethod());
     typeSpec.addMethod(generateGetRequiredColumnNamesMethod());
@@ -208,10 +227,14 @@ public class TableLoaderGenerator {
             .addParameter(ValidationContext.class, "validationContext")
             .addParameter(ValidatorLoader.class, "validatorLoader")
             .addParameter(NoticeContainer.class, "noticeContainer")
+            .addParameter(IdPool.class, "idPool")
             .returns(
                 ParameterizedTypeName.get(ClassName.get(GtfsTableContainer.class), gtfsEntityType))
             .addStatement(
-                "$T csvFile = new $T(inputStream, FILENAME)", CsvFile.class, CsvFile.class)
+                "$T csvFile = new $T(inputStream, FILENAME, isByteTokenizerEnabled(),"
+                    + " getColumnNames())",
+                CsvFile.class,
+                CsvFile.class)
             .beginControlFlow("if (csvFile.isEmpty())")
             .addStatement(
                 "noticeContainer.addValidationNotice(new $T(FILENAME))", EmptyFileNotice.class)
@@ -231,8 +254,109 @@ public class TableLoaderGenerator {
                 TableHeaderValidator.class)
             .addStatement(
                 "return new $T($T.INVALID_HEADERS)", tableContainerTypeName, TableStatus.class)
+            .endControlFlow()
+            .addCode(
+                fileDescriptor.columnar()
+                    ? CodeBlock.of(
+                        "final $T entities = new $T();\n",
+                        classNames.entityColumnsTypeName(),
+                        classNames.entityColumnsTypeName())
+                    : CodeBlock.of(
+                        "final $T entities = new $T<>();\n",
+                        ParameterizedTypeName.get(ClassName.get(List.class), gtfsEntityType),
+                        ArrayList.class))
+            .addCode(generateCacheStatisticsMap())
+            .addStatement("final boolean hasUnparsableRows")
+            .beginControlFlow("if (isChunkedParsingEnabled())")
+            .addStatement(
+                "hasUnparsableRows = loadChunks(csvFile, (chunk, chunkNotices, chunkEntities) ->"
+                    + " loadRows(chunk, validationContext, validatorLoader, chunkNotices,"
+                    + " chunkEntities, idPool, cacheStatistics), noticeContainer, entities)")
+            .nextControlFlow("else")
+            .addStatement(
+                "hasUnparsableRows = loadRows(csvFile, validationContext, validatorLoader,"
+                    + " noticeContainer, entities, idPool, cacheStatistics)")
+            .endControlFlow()
+            .addStatement("logCacheStatistics(cacheStatistics)")
+            .addStatement("logDecodingThroughput(csvFile)")
+            .beginControlFlow("if (hasUnparsableRows)")
+            .addStatement("logger.atSevere().log($S, FILENAME)", "Failed to parse some rows in %s")
+            .addStatement(
+                "return new $T($T.UNPARSABLE_ROWS)", tableContainerTypeName, TableStatus.class)
+            .nextControlFlow("else")
+            .addCode(fileDescriptor.columnar() ? "entities.trimToSize();\n" : "")
+            .addStatement(
+                "$T table = $T.forEntities(entities, noticeContainer, idPool)",
+                tableContainerTypeName,
+                tableContainerTypeName)
+            .addStatement(
+                "validatorLoader.invokeSingleFileValidators(table, validationContext,"
+                    + " noticeContainer)")
+            .addStatement("return table")
             .endControlFlow();
 
+    return method.build();
+  }
+
+  /**
+   * Generates a map of cache statistics with an entry for every cached field, in the order of the
+   * fields. Chunks only add to existing entries, so the map may be shared by their threads.
+   */
+  private CodeBlock generateCacheStatisticsMap() {
+    CodeBlock.Builder code =
+        CodeBlock.builder()
+            .addStatement(
+                "final $T cacheStatistics = new $T<>()",
+                ParameterizedTypeName.get(Map.class, String.class, FieldCache.Statistics.class),
+                LinkedHashMap.class);
+    for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
+      if (cachingEnabled(field)) {
+        code.addStatement(
+            "cacheStatistics.put($L, new $T())",
+            fieldNameField(field.name()),
+            FieldCache.Statistics.class);
+      }
+    }
+    return code.build();
+  }
+
+  private MethodSpec generateNewEntityListMethod() {
+    return MethodSpec.methodBuilder("newEntityList")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PROTECTED)
+        .returns(
+            ParameterizedTypeName.get(
+                ClassName.get(List.class), classNames.entityImplementationTypeName()))
+        .addStatement("return new $T()", classNames.entityColumnsTypeName())
+        .build();
+  }
+
+  private MethodSpec generateLoadRowsMethod() {
+    TypeName gtfsEntityType = classNames.entityImplementationTypeName();
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("loadRows")
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(CsvFile.class, "csvFile")
+            .addParameter(ValidationContext.class, "validationContext")
+            .addParameter(ValidatorLoader.class, "validatorLoader")
+            .addParameter(NoticeContainer.class, "noticeContainer")
+            .addParameter(
+                ParameterizedTypeName.get(ClassName.get(List.class), gtfsEntityType), "entities")
+            .addParameter(IdPool.class, "idPool")
+            .addParameter(
+                ParameterizedTypeName.get(Map.class, String.class, FieldCache.Statistics.class),
+                "cacheStatistics")
+            .returns(boolean.class)
+            // Values of a row are copied to the builder before the next row is read.
+            .addStatement("csvFile.setRowReuseEnabled(true)");
+    if (fileDescriptor.columnar()) {
+      // Entity lists of columnar tables are created by newEntityList().
+      method.addStatement(
+          "final $T columns = ($T) entities",
+          classNames.entityColumnsTypeName(),
+          classNames.entityColumnsTypeName());
+    }
+
     for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
       method.addStatement(
           "final int $L = csvFile.getColumnIndex($L)",
@@ -245,7 +369,18 @@ public class TableLoaderGenerator {
     for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
       if (cachingEnabled(field)) {
         String cacheVarName = fieldColumnCache(field);
-        if (cacheVars.add(cacheVarName)) {
+        if (!cacheVars.add(cacheVarName)) {
+          continue;
+        }
+        if (field.type() == FieldTypeEnum.ID) {
+          // Values that are new to the table are shared with other tables of the feed.
+          method.addStatement(
+              "final $T $L = new $T(idPool.column(FILENAME, $L))",
+              StringFieldCache.class,
+              cacheVarName,
+              StringFieldCache.class,
+              fieldNameField(field.name()));
+        } else {
           method.addStatement(
               "final $T<$T> $L = new $T<>()",
               FieldCache.class,
@@ -253,6 +388,23 @@ public class TableLoaderGenerator {
               cacheVarName,
               FieldCache.class);
         }
+      } else if (field.type() == FieldTypeEnum.ID) {
+        // Primary keys are unique in the table, so they are interned without a cache.
+        method.addStatement(
+            "final $T $L = idPool.column(FILENAME, $L)",
+            IdPool.Column.class,
+            fieldPoolColumn(field),
+            fieldNameField(field.name()));
+      }
+    }
+    for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
+      Optional<String> keySpace = intCodedKeys.keySpace(fileDescriptor, field);
+      if (keySpace.isPresent()) {
+        method.addStatement(
+            "final $T $L = idPool.keySpace($S).newEncoder()",
+            IdPool.Encoder.class,
+            fieldEncoder(field),
+            keySpace.get());
       }
     }
 
@@ -262,10 +414,6 @@ public class TableLoaderGenerator {
             "final $T rowParser = new $T(validationContext.feedName(), noticeContainer)",
             RowParser.class,
             RowParser.class)
-        .addStatement(
-            "final $T entities = new $T<>()",
-            ParameterizedTypeName.get(ClassName.get(List.class), gtfsEntityType),
-            ArrayList.class)
         .addStatement("boolean hasUnparsableRows = false")
         .addStatement(
             "final $T singleEntityValidators = validatorLoader.createSingleEntityValidators("
@@ -303,56 +451,66 @@ public class TableLoaderGenerator {
                       ? ", " + field.javaType().toString() + "::forNumber"
                       : "");
       if (cachingEnabled(field)) {
-        fieldValue = CodeBlock.of("$L.addIfAbsent($L)", fieldColumnCache(field), fieldValue);
+        if (field.type() == FieldTypeEnum.ID) {
+          // IDs are looked up in the cache by their bytes before they are decoded.
+          fieldValue =
+              CodeBlock.of(
+                  "rowParser.asId($L, $T.$L, $L)",
+                  fieldColumnIndex(field.name()),
+                  RowParser.class,
+                  field.required() ? "REQUIRED" : "OPTIONAL",
+                  fieldColumnCache(field));
+        } else {
+          fieldValue = CodeBlock.of("$L.addIfAbsent($L)", fieldColumnCache(field), fieldValue);
+        }
+      } else if (field.type() == FieldTypeEnum.ID) {
+        fieldValue = CodeBlock.of("$L.intern($L)", fieldPoolColumn(field), fieldValue);
       }
       method.addStatement(
           "builder.$L($L)", FieldNameConverter.setterMethodName(field.name()), fieldValue);
+      if (intCodedKeys.isCoded(fileDescriptor, field)) {
+        // A missing key has the default value "", which is encoded as -1.
+        method.addStatement(
+            "builder.$L($L.code(builder.$L()))",
+            FieldNameConverter.setterMethodName(FieldNameConverter.intCodeName(field.name())),
+            fieldEncoder(field),
+            field.name());
+      }
     }
 
     method
         .beginControlFlow("if (rowParser.hasParseErrorsInRow())")
         .addStatement("hasUnparsableRows = true")
-        .nextControlFlow("else")
-        .addStatement("$T entity = builder.build()", gtfsEntityType)
-        .addStatement(
-            "ValidatorLoader.invokeSingleEntityValidators(entity, singleEntityValidators,"
-                + " noticeContainer)")
-        .addStatement("entities.add(entity)")
-        .endControlFlow();
+        .nextControlFlow("else");
+    if (fileDescriptor.columnar()) {
+      method
+          .addStatement("$T entity = columns.append(builder)", gtfsEntityType)
+          .addStatement(
+              "ValidatorLoader.invokeSingleEntityValidators(entity, singleEntityValidators,"
+                  + " noticeContainer)");
+    } else {
+      method
+          .addStatement("$T entity = builder.build()", gtfsEntityType)
+          .addStatement(
+              "ValidatorLoader.invokeSingleEntityValidators(entity, singleEntityValidators,"
+                  + " noticeContainer)")
+          .addStatement("entities.add(entity)");
+    }
+    method.endControlFlow();
 
     method.endControlFlow(); // end for (row)
 
-    // Print statistics for cache efficiency.
+    // Statistics of the caches of all chunks are summed up and logged once per file.
     for (GtfsFieldDescriptor field : fileDescriptor.fields()) {
       if (cachingEnabled(field)) {
-        final String cacheName = fieldColumnCache(field);
         method.addStatement(
-            "logger.atInfo().log("
-                + "$S, gtfsFilename(), $L, $L.getCacheSize(), $L.getLookupCount(), "
-                + "$L.getHitRatio() * 100.0, $L.getMissRatio() * 100.0)",
-            "Cache for %s %s: size = %d, lookup count = %d, hits = %.2f%%, misses = %.2f%%",
+            "cacheStatistics.get($L).add($L)",
             fieldNameField(field.name()),
-            cacheName,
-            cacheName,
-            cacheName,
-            cacheName);
+            fieldColumnCache(field));
       }
     }
 
-    method
-        .beginControlFlow("if (hasUnparsableRows)")
-        .addStatement("logger.atSevere().log($S, FILENAME)", "Failed to parse some rows in %s")
-        .addStatement(
-            "return new $T($T.UNPARSABLE_ROWS)", tableContainerTypeName, TableStatus.class)
-        .nextControlFlow("else")
-        .addStatement(
-            "$T table = $T.forEntities(entities, noticeContainer)",
-            tableContainerTypeName,
-            tableContainerTypeName)
-        .addStatement(
-            "validatorLoader.invokeSingleFileValidators(table, validationContext, noticeContainer)")
-        .addStatement("return table")
-        .endControlFlow();
+    method.addStatement("return hasUnparsableRows");
 
     return method.build();
   }